@@ -1,5 +1,6 @@
 import subprocess
 import tempfile
+import time
 from pathlib import Path
 
 
@@ -8,16 +9,21 @@ VM_EXECUTABLE = PROJECT_ROOT / "frogitovm" / "build" / "frogvm"
 
 
 class Benchmark:
-    def __init__(self, name, code_generator, validator):
+    def __init__(self, name, code_generator, validator, build_flags=()):
         self.name = name
         self.code_generator = code_generator
         self.validator = validator
+        self.build_flags = list(build_flags)
+        self.elapsed = None
 
     def run(self):
         code = self.code_generator()
         bytecode_file = self._compile(code)
+        started = time.perf_counter()
         stdout = self._execute(bytecode_file)
+        self.elapsed = time.perf_counter() - started
         self.validator(stdout)
+        return self.elapsed
 
     def _compile(self, code: str) -> Path:
         """
@@ -35,7 +41,7 @@ class Benchmark:
                 "./gradlew",
                 "run",
                 "--args",
-                f"build {source_file} -o {bytecode_file}",
+                " ".join([f"build {source_file} -o {bytecode_file}", *self.build_flags]),
             ],
             cwd=PROJECT_ROOT,
             capture_output=True,
@@ -198,3 +204,22 @@ def primes_val(stdout):
         raise AssertionError(
             f"Expected 9592, got:\n{stdout}"
         )
+
+
+def fibonacci_30_gen():
+    return """func int fibonacci(int n) {
+    if (n <= 1) {
+        return n;
+    }
+    return fibonacci(n - 1) + fibonacci(n - 2);
+}
+
+var int n = 30;
+print(fibonacci(n));"""
+
+
+def fibonacci_30_val(stdout):
+    if "832040" not in stdout:
+        raise AssertionError(
+            f"Expected 832040, got:\n{stdout}"
+        )
@@ -10,6 +10,8 @@ from runner import (
     sorting_val,
     primes_gen,
     primes_val,
+    fibonacci_30_gen,
+    fibonacci_30_val,
 )
 
 
@@ -25,11 +27,21 @@ def test_benchmark_primes_100000():
     Benchmark("count_primes(100000)", primes_gen, primes_val).run()
 
 
+def test_benchmark_fibonacci_30_memoized():
+    plain = Benchmark("fibonacci(30)", fibonacci_30_gen, fibonacci_30_val)
+    memo = Benchmark("fibonacci(30) -fmemoize", fibonacci_30_gen, fibonacci_30_val, ["-fmemoize"])
+    plain.run()
+    memo.run()
+    print(f"fibonacci(30): {plain.elapsed:.3f}s plain, {memo.elapsed:.3f}s memoized")
+    assert memo.elapsed < plain.elapsed
+
+
 if __name__ == "__main__":
     benchmarks = [
         test_benchmark_factorial_20,
         test_benchmark_sorting_10000,
         test_benchmark_primes_100000,
+        test_benchmark_fibonacci_30_memoized,
     ]
 
     print("=" * 70)
@@ -1,10 +1,14 @@
 #include "bytecode_loader.h"
 
+#include <algorithm>
 #include <cstdint>
 #include <cstring>
 #include <fstream>
 #include <stdexcept>
 #include <string>
+#include <unordered_map>
+#include <utility>
+#include <vector>
 
 namespace {
 
@@ -67,6 +71,15 @@ std::string ReadStringBe(std::istream& in) {
     return s;
 }
 
+bool IsDecimalInteger(const std::string& s) {
+    std::size_t start = (!s.empty() && s[0] == '-') ? 1 : 0;
+    if (start == s.size()) return false;
+    for (std::size_t i = start; i < s.size(); ++i) {
+        if (s[i] < '0' || s[i] > '9') return false;
+    }
+    return true;
+}
+
 ConstTag ConstTagFromByte(std::uint8_t v) {
     switch (v) {
         case 1:
@@ -77,6 +90,8 @@ ConstTag ConstTagFromByte(std::uint8_t v) {
             return ConstTag::kBool;
         case 4:
             return ConstTag::kString;
+        case 5:
+            return ConstTag::kBigInt;
         default:
             throw std::runtime_error("invalid const tag");
     }
@@ -101,20 +116,141 @@ TypeTag TypeTagFromByte(std::uint8_t v) {
     }
 }
 
-OpCode OpCodeFromByte(std::uint8_t v) {
-    if (v > static_cast<std::uint8_t>(OpCode::kKva)) {
+// Операции по статическим типам появились в версии 2, регистровые — в версии 5.
+OpCode OpCodeFromByte(std::uint8_t v, std::uint16_t version) {
+    OpCode last = version >= 5 ? OpCode::kRStrAppend : version >= 2 ? OpCode::kNeqStr : OpCode::kNeqJumpFalse;
+    if (v > static_cast<std::uint8_t>(last)) {
         throw std::runtime_error("invalid opcode");
     }
     return static_cast<OpCode>(v);
 }
 
+// До v3 операнд глобальной операции — индекс имени в пуле констант.
+// Слоты раздаются в порядке первого упоминания имени в коде.
+void AssignGlobalSlots(BytecodeModule& m) {
+    std::unordered_map<std::uint32_t, std::uint32_t> slots;
+    for (Instruction& ins : m.code) {
+        if (ins.op != OpCode::kLoadGlobal && ins.op != OpCode::kStoreGlobal) continue;
+        if (!ins.has_a || ins.a >= m.const_pool.size() || m.const_pool[ins.a].tag != ConstTag::kString) {
+            throw std::runtime_error("invalid name constIndex in LOAD/STORE_GLOBAL");
+        }
+        auto [it, added] = slots.emplace(ins.a, static_cast<std::uint32_t>(m.globals.size()));
+        if (added) {
+            m.globals.push_back(GlobalInfo{std::get<std::string>(m.const_pool[ins.a].value), TypeTag::kVoid});
+        }
+        ins.a = it->second;
+    }
+}
+
+bool IsRegisterOp(OpCode op) {
+    return op >= OpCode::kRMove;
+}
+
+bool IsRegisterJump(OpCode op) {
+    return op >= OpCode::kRJumpFalse && op <= OpCode::kRNeqJumpFalse;
+}
+
+// Число регистров, которых требует регистровая операция: наибольший номер + 1.
+std::uint32_t RegistersUsed(const Instruction& ins) {
+    auto reg = [](std::uint32_t packed, int n) { return ((packed >> (8 * n)) & 0xFFu) + 1; };
+    switch (ins.op) {
+        case OpCode::kRMove:
+        case OpCode::kRNeg:
+        case OpCode::kRNot:
+        case OpCode::kRAddI:
+        case OpCode::kRStrAppend:
+            return std::max(reg(ins.a, 0), reg(ins.a, 1));
+        case OpCode::kRLoadK:
+        case OpCode::kRLoadGlobal:
+        case OpCode::kRStoreGlobal:
+        case OpCode::kRNewArraySized:
+        case OpCode::kRJumpFalse:
+        case OpCode::kRJumpTrue:
+        case OpCode::kRRet:
+            return static_cast<std::uint32_t>(ins.b) + 1;
+        case OpCode::kRLtJumpFalse:
+        case OpCode::kRLeJumpFalse:
+        case OpCode::kRGtJumpFalse:
+        case OpCode::kRGeJumpFalse:
+        case OpCode::kREqJumpFalse:
+        case OpCode::kRNeqJumpFalse:
+            return std::max(reg(ins.b, 0), reg(ins.b, 1));
+        case OpCode::kRCall:
+            return (ins.b & 0xFFu) + std::max(1u, static_cast<std::uint32_t>(ins.b >> 8));
+        case OpCode::kRNewArray:
+        case OpCode::kRConcatN:
+            return std::max(reg(ins.a, 0), ((ins.a >> 8) & 0xFFu) + (ins.a >> 16));
+        default:
+            return std::max({reg(ins.a, 0), reg(ins.a, 1), reg(ins.a, 2)});
+    }
+}
+
+// Функция, в диапазон кода которой [entry, следующий entry) попадает каждая инструкция; -1 — код верхнего уровня.
+std::vector<std::int32_t> CodeOwners(const BytecodeModule& m) {
+    std::vector<std::pair<std::uint32_t, std::int32_t>> entries;
+    for (std::size_t i = 0; i < m.functions.size(); ++i) {
+        std::uint32_t entry = m.functions[i].entry_ip;
+        if (entry < m.code.size()) entries.push_back({entry, static_cast<std::int32_t>(i)});
+    }
+    std::sort(entries.begin(), entries.end());
+    std::vector<std::int32_t> owner(m.code.size(), -1);
+    for (std::size_t i = 0; i < entries.size(); ++i) {
+        std::size_t end = i + 1 < entries.size() ? entries[i + 1].first : m.code.size();
+        std::fill(owner.begin() + entries[i].first, owner.begin() + end, entries[i].second);
+    }
+    return owner;
+}
+
+// Регистровая операция стоит в коде функции с флагом kFuncRegisters, её регистры есть в кадре,
+// а регистровый переход не выходит из функции.
+void ValidateRegisterOp(const BytecodeModule& m, const std::vector<std::int32_t>& owner, std::size_t ip) {
+    const Instruction& ins = m.code[ip];
+    std::int32_t func = owner[ip];
+    if (func < 0 || (m.functions[func].flags & kFuncRegisters) == 0) {
+        throw std::runtime_error("register op outside register function");
+    }
+    if (RegistersUsed(ins) > m.functions[func].local_count) {
+        throw std::runtime_error("register out of range");
+    }
+    switch (ins.op) {
+        case OpCode::kRLoadK:
+            if (!ins.has_a || ins.a >= m.const_pool.size()) throw std::runtime_error("invalid constIndex in R_LOADK");
+            break;
+        case OpCode::kRLoadGlobal:
+        case OpCode::kRStoreGlobal:
+            if (!ins.has_a || ins.a >= m.globals.size()) {
+                throw std::runtime_error("invalid global slot in R_LOAD/R_STORE_GLOBAL");
+            }
+            break;
+        case OpCode::kRCall:
+            if (!ins.has_a || ins.a >= m.functions.size()) throw std::runtime_error("invalid funcIndex in R_CALL");
+            break;
+        default:
+            if (IsRegisterJump(ins.op) && (!ins.has_a || ins.a >= m.code.size() || owner[ins.a] != func)) {
+                throw std::runtime_error("invalid jump target");
+            }
+            break;
+    }
+}
+
 void ValidateModule(const BytecodeModule& m) {
     const std::size_t const_count = m.const_pool.size();
     const std::size_t func_count = m.functions.size();
     const std::size_t code_size = m.code.size();
 
+    for (const FunctionInfo& f : m.functions) {
+        if ((f.flags & kFuncRegisters) != 0 && f.local_count > 256) {
+            throw std::runtime_error("too many registers");
+        }
+    }
+    const std::vector<std::int32_t> owner = CodeOwners(m);
+
     for (std::size_t ip = 0; ip < code_size; ++ip) {
         const Instruction& ins = m.code[ip];
+        if (IsRegisterOp(ins.op)) {
+            ValidateRegisterOp(m, owner, ip);
+            continue;
+        }
         switch (ins.op) {
             case OpCode::kPushConst:
                 if (!ins.has_a || ins.a >= const_count) {
@@ -123,8 +259,8 @@ void ValidateModule(const BytecodeModule& m) {
                 break;
             case OpCode::kLoadGlobal:
             case OpCode::kStoreGlobal:
-                if (!ins.has_a || ins.a >= const_count) {
-                    throw std::runtime_error("invalid name constIndex in LOAD/STORE_GLOBAL");
+                if (!ins.has_a || ins.a >= m.globals.size()) {
+                    throw std::runtime_error("invalid global slot in LOAD/STORE_GLOBAL");
                 }
                 break;
             case OpCode::kCall:
@@ -134,6 +270,13 @@ void ValidateModule(const BytecodeModule& m) {
                 break;
             case OpCode::kJump:
             case OpCode::kJumpFalse:
+            case OpCode::kJumpTrue:
+            case OpCode::kLtJumpFalse:
+            case OpCode::kLeJumpFalse:
+            case OpCode::kGtJumpFalse:
+            case OpCode::kGeJumpFalse:
+            case OpCode::kEqJumpFalse:
+            case OpCode::kNeqJumpFalse:
                 if (!ins.has_a || ins.a >= code_size) {
                     throw std::runtime_error("invalid jump target");
                 }
@@ -165,7 +308,7 @@ BytecodeModule load_frogc(const std::filesystem::path& path) {
     }
 
     std::uint16_t version = ReadU16Be(in);
-    if (version != 1) {
+    if (version < 1 || version > kFrogcVersion) {
         throw std::runtime_error("unsupported version");
     }
 
@@ -174,6 +317,17 @@ BytecodeModule load_frogc(const std::filesystem::path& path) {
     std::uint32_t code_size = ReadU32Be(in);
 
     BytecodeModule m;
+    if (version >= 3) {
+        std::uint32_t global_count = ReadU32Be(in);
+        m.globals.reserve(global_count);
+        for (std::uint32_t i = 0; i < global_count; ++i) {
+            GlobalInfo g;
+            g.name = ReadStringBe(in);
+            g.type = TypeTagFromByte(ReadU8(in));
+            m.globals.push_back(std::move(g));
+        }
+    }
+
     m.const_pool.reserve(const_count);
     m.functions.reserve(func_count);
     m.code.reserve(code_size);
@@ -200,6 +354,12 @@ BytecodeModule load_frogc(const std::filesystem::path& path) {
             case ConstTag::kString:
                 c.value = ReadStringBe(in);
                 break;
+            case ConstTag::kBigInt:
+                c.value = ReadStringBe(in);
+                if (!IsDecimalInteger(std::get<std::string>(c.value))) {
+                    throw std::runtime_error("invalid bigint constant");
+                }
+                break;
         }
 
         m.const_pool.push_back(std::move(c));
@@ -220,13 +380,20 @@ BytecodeModule load_frogc(const std::filesystem::path& path) {
             std::uint8_t pt = ReadU8(in);
             f.param_types.push_back(TypeTagFromByte(pt));
         }
+        if (version >= 4) {
+            f.max_stack = ReadU16Be(in);
+            f.flags = ReadU8(in);
+            if ((f.flags & ~kFuncRegisters) != 0) {
+                throw std::runtime_error("unknown function flags");
+            }
+        }
 
         m.functions.push_back(std::move(f));
     }
 
     for (std::uint32_t i = 0; i < code_size; ++i) {
         std::uint8_t op_byte = ReadU8(in);
-        OpCode op = OpCodeFromByte(op_byte);
+        OpCode op = OpCodeFromByte(op_byte, version);
 
         std::uint8_t flags = ReadU8(in);
         bool has_a = (flags & 1) != 0;
@@ -249,6 +416,9 @@ BytecodeModule load_frogc(const std::filesystem::path& path) {
         m.code.push_back(ins);
     }
 
+    if (version < 3) {
+        AssignGlobalSlots(m);
+    }
     ValidateModule(m);
     return m;
 }
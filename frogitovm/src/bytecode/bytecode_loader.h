@@ -4,4 +4,9 @@
 
 #include "bytecode_module.h"
 
+// Последняя поддерживаемая версия .frogc; v1 читается без операций по статическим типам,
+// v1 и v2 — без таблицы глобальных переменных, v1–v3 — без глубины стека и флагов функций,
+// v1–v4 — без регистровых операций.
+inline constexpr std::uint16_t kFrogcVersion = 5;
+
 BytecodeModule load_frogc(const std::filesystem::path& path);
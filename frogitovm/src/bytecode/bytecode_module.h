@@ -9,7 +9,8 @@ enum class ConstTag : std::uint8_t {
     kInt = 1,
     kFloat = 2,
     kBool = 3,
-    kString = 4
+    kString = 4,
+    kBigInt = 5
 };
 
 enum class TypeTag : std::uint8_t {
@@ -51,7 +52,93 @@ enum class OpCode : std::uint8_t {
     kLoadIndex,
     kStoreIndex,
     kPop,
-    kKva
+    kKva,
+    kLoadIndexUnchecked,
+    kStoreIndexUnchecked,
+    kFreeLocal,
+    kJumpTrue,
+    kDup,
+    kConcatN,
+    kStrBuilder,
+    kStrAppend,
+    kAddI64,
+    kSubI64,
+    kLtI64,
+    kLeI64,
+    kGtI64,
+    kGeI64,
+    kIncLocalI64,
+    kIncLocal,
+    kLoad2Local,
+    kLoadLocalIndex,
+    kLoadLocalIndexUnchecked,
+    kLtJumpFalse,
+    kLeJumpFalse,
+    kGtJumpFalse,
+    kGeJumpFalse,
+    kEqJumpFalse,
+    kNeqJumpFalse,
+    kAddInt,
+    kSubInt,
+    kMulInt,
+    kAddFloat,
+    kSubFloat,
+    kMulFloat,
+    kDivFloat,
+    kConcatStr,
+    kLtInt,
+    kLeInt,
+    kGtInt,
+    kGeInt,
+    kEqInt,
+    kNeqInt,
+    kLtFloat,
+    kLeFloat,
+    kGtFloat,
+    kGeFloat,
+    kEqStr,
+    kNeqStr,
+    // Регистровые операции (.frogc v5), только в функциях с флагом kFuncRegisters.
+    // Регистры — локальные слоты кадра; номер регистра занимает байт упакованного операнда:
+    // "a = d | s1 << 8 | s2 << 16" — приёмник и источники, у переходов в b лежат сравниваемые регистры.
+    kRMove,
+    kRLoadK,
+    kRLoadGlobal,
+    kRStoreGlobal,
+    kRAdd,
+    kRSub,
+    kRMul,
+    kRDiv,
+    kRMod,
+    kREq,
+    kRNeq,
+    kRLt,
+    kRLe,
+    kRGt,
+    kRGe,
+    kRAnd,
+    kROr,
+    kRNeg,
+    kRNot,
+    kRAddI,
+    kRJumpFalse,
+    kRJumpTrue,
+    kRLtJumpFalse,
+    kRLeJumpFalse,
+    kRGtJumpFalse,
+    kRGeJumpFalse,
+    kREqJumpFalse,
+    kRNeqJumpFalse,
+    kRCall,
+    kRRet,
+    kRNewArray,
+    kRNewArraySized,
+    kRLoadIndex,
+    kRLoadIndexUnchecked,
+    kRStoreIndex,
+    kRStoreIndexUnchecked,
+    kRConcatN,
+    kRStrAppend
 };
 
 struct Constant {
@@ -59,6 +146,9 @@ struct Constant {
     std::variant<std::int32_t, double, bool, std::string> value;
 };
 
+// Флаги функции (.frogc v4), считает компилятор.
+inline constexpr std::uint8_t kFuncRegisters = 1;  // код функции — регистровые операции (v5)
+
 struct FunctionInfo {
     std::uint32_t name_const_index = 0;
     std::uint16_t param_count = 0;
@@ -66,6 +156,9 @@ struct FunctionInfo {
     std::uint32_t entry_ip = 0;
     TypeTag return_type = TypeTag::kVoid;
     std::vector<TypeTag> param_types;
+    // Наибольшая глубина стека операндов в кадре; 0 — неизвестна (файлы до v4).
+    std::uint16_t max_stack = 0;
+    std::uint8_t flags = 0;
 };
 
 struct Instruction {
@@ -76,8 +169,16 @@ struct Instruction {
     bool has_b = false;
 };
 
+// Запись таблицы глобальных переменных; слот — индекс записи, имя нужно только для отладки.
+struct GlobalInfo {
+    std::string name;
+    TypeTag type = TypeTag::kVoid;
+};
+
 struct BytecodeModule {
     std::vector<Constant> const_pool;
     std::vector<FunctionInfo> functions;
     std::vector<Instruction> code;
+    // Операнд LOAD_GLOBAL/STORE_GLOBAL — индекс в этой таблице.
+    std::vector<GlobalInfo> globals;
 };
@@ -10,7 +10,7 @@
 namespace {
 
 void PrintUsage() {
-    std::cerr << "usage: frogvm run <file.frogc> [--trace] [--jit-log] [--gc-log]\n";
+    std::cerr << "usage: frogvm run <file.frogc> [--trace] [--jit-log] [--gc-log] [--profile-out <file>]\n";
 }
 
 bool IsFlag(std::string_view s, std::string_view flag) {
@@ -49,6 +49,10 @@ int main(int argc, char** argv) {
                 opts.gc_log = true;
                 continue;
             }
+            if (IsFlag(a, "--profile-out") && i + 1 < argc) {
+                opts.profile_out = argv[++i];
+                continue;
+            }
             std::cerr << "unknown flag: " << a << "\n";
             PrintUsage();
             return 1;
@@ -19,6 +19,32 @@ public:
 
     explicit BigInt(std::int64_t v) { assign(v); }
 
+    static BigInt Parse(const std::string& text) {
+        std::size_t start = 0;
+        bool negative = false;
+        if (!text.empty() && text[0] == '-') {
+            negative = true;
+            start = 1;
+        }
+        if (start == text.size()) throw RuntimeError("invalid integer literal");
+        for (std::size_t i = start; i < text.size(); ++i) {
+            if (text[i] < '0' || text[i] > '9') throw RuntimeError("invalid integer literal");
+        }
+
+        BigInt out;
+        std::size_t end = text.size();
+        while (end > start) {
+            std::size_t begin = end >= start + kBaseDigits ? end - kBaseDigits : start;
+            if (out.len_ >= kMaxDigits) throw RuntimeError("integer overflow");
+            out.digits_[out.len_++] = static_cast<std::uint32_t>(std::stoul(text.substr(begin, end - begin)));
+            end = begin;
+        }
+        out.trim();
+        out.negative_ = negative;
+        out.normalize_zero();
+        return out;
+    }
+
     bool is_zero() const noexcept { return len_ == 0; }
     bool is_negative() const noexcept { return negative_; }
 
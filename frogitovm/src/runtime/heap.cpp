@@ -43,6 +43,22 @@ ArrayObject* Heap::AllocateArray(std::size_t length, bool gc_log, const RootsEnu
     return obj;
 }
 
+void Heap::Release(ArrayObject* arr) {
+    std::size_t shell = sizeof(ArrayObject);
+    if (arr->size_bytes > shell) {
+        heap_bytes_ -= arr->size_bytes - shell;
+        arr->size_bytes = shell;
+    }
+    std::vector<Value>().swap(arr->elements);
+    ++released_count_;
+}
+
+void Heap::AppendString(StringObject* str, const std::string& tail) {
+    str->value += tail;
+    str->size_bytes += tail.size();
+    heap_bytes_ += tail.size();
+}
+
 void Heap::Collect(bool gc_log, const RootsEnumerator& roots) {
     if (gc_log) {
         std::cout << "GC START heap=" << heap_bytes_ << " objects=" << objects_.size() << "\n";
@@ -17,15 +17,21 @@ public:
 
     StringObject* AllocateString(const std::string& s, bool gc_log, const RootsEnumerator& roots);
     ArrayObject* AllocateArray(std::size_t length, bool gc_log, const RootsEnumerator& roots);
+    // Освобождает элементы массива без сборки; сам объект удалит ближайший Sweep.
+    void Release(ArrayObject* arr);
+    // Дописывает строку на месте; вызывающий гарантирует, что на неё нет других ссылок.
+    void AppendString(StringObject* str, const std::string& tail);
 
     std::size_t object_count_for_testing() const { return objects_.size(); }
     std::size_t heap_bytes_for_testing() const { return heap_bytes_; }
     std::size_t threshold_for_testing() const { return threshold_; }
+    std::size_t released_count_for_testing() const { return released_count_; }
 
 private:
     std::vector<HeapObject*> objects_;
     std::size_t heap_bytes_ = 0;
     std::size_t threshold_ = 1024 * 1024;
+    std::size_t released_count_ = 0;
 
     void MaybeCollect(std::size_t upcoming_bytes, bool gc_log, const RootsEnumerator& roots);
     void Collect(bool gc_log, const RootsEnumerator& roots);
@@ -1,10 +1,61 @@
 #include "vm/vm.h"
 
 #include <algorithm>
+#include <fstream>
 #include <iostream>
+#include <limits>
 #include <sstream>
 #include <utility>
 
+namespace {
+
+// Операнд *_I64: компилятор доказал, что значение помещается в int64.
+std::int64_t SmallInt(const Value& v, const char* op) {
+    std::int64_t out = 0;
+    if (v.tag != ValueTag::kInt || !v.AsInt().TryToInt64(out)) {
+        throw RuntimeError(std::string(op) + " expects 64-bit int");
+    }
+    return out;
+}
+
+std::int64_t CheckedAdd(std::int64_t a, std::int64_t b, const char* op) {
+    if ((b > 0 && a > std::numeric_limits<std::int64_t>::max() - b) ||
+        (b < 0 && a < std::numeric_limits<std::int64_t>::min() - b)) {
+        throw RuntimeError(std::string(op) + " overflow");
+    }
+    return a + b;
+}
+
+std::int64_t CheckedSub(std::int64_t a, std::int64_t b, const char* op) {
+    if ((b < 0 && a > std::numeric_limits<std::int64_t>::max() + b) ||
+        (b > 0 && a < std::numeric_limits<std::int64_t>::min() + b)) {
+        throw RuntimeError(std::string(op) + " overflow");
+    }
+    return a - b;
+}
+
+// Результат пишется на место левого операнда, без копирования значений через pop/push.
+template <typename Op>
+void BinaryI64(std::vector<Value>& stack, const char* op, Op apply) {
+    if (stack.size() < 2) throw RuntimeError("stack underflow");
+    std::int64_t r = SmallInt(stack.back(), op);
+    Value& l = stack[stack.size() - 2];
+    l = apply(SmallInt(l, op), r);
+    stack.pop_back();
+}
+
+// Типы операндов проверил компилятор (.frogc v2): теги не сравниваются, результат
+// пишется на место левого операнда.
+template <typename Op>
+void BinaryTyped(std::vector<Value>& stack, Op apply) {
+    if (stack.size() < 2) throw RuntimeError("stack underflow");
+    Value& l = stack[stack.size() - 2];
+    l = apply(l, stack.back());
+    stack.pop_back();
+}
+
+}  // namespace
+
 Vm::TempRoots::TempRoots(Vm& vm, std::span<const Value> values) : vm_(vm) {
     start_ = vm_.temp_roots_.size();
     vm_.temp_roots_.reserve(vm_.temp_roots_.size() + values.size());
@@ -33,18 +84,31 @@ Vm::Vm(const BytecodeModule& module, VmOptions options)
     BuildConstValues();
     BuildFuncRanges();
     hot_counters_.assign(module_.functions.size(), 0);
+    for (std::uint32_t i = 0; i < module_.functions.size(); ++i) {
+        const FunctionInfo& fn = module_.functions[i];
+        if (fn.entry_ip == kBuiltinEntryIp || fn.name_const_index >= module_.const_pool.size()) continue;
+        const Constant& name = module_.const_pool[fn.name_const_index];
+        if (name.tag == ConstTag::kString && std::get<std::string>(name.value) == kMainFuncName) {
+            hot_counters_[i] = kHotFuncThreshold - 1;
+        }
+    }
 
-    globals_values_.assign(module_.const_pool.size(), Value::Null());
-    globals_set_.assign(module_.const_pool.size(), 0);
+    profiling_ = !options_.profile_out.empty();
+    if (profiling_) {
+        profile_calls_.assign(module_.functions.size(), 0);
+        profile_taken_.assign(module_.code.size(), 0);
+        profile_not_taken_.assign(module_.code.size(), 0);
+    }
+
+    globals_values_.assign(module_.globals.size(), Value::Null());
+    globals_set_.assign(module_.globals.size(), 0);
 }
 
 std::unordered_map<std::string, Value> Vm::globals() const {
     std::unordered_map<std::string, Value> out;
-    for (std::size_t i = 0; i < globals_values_.size() && i < module_.const_pool.size(); ++i) {
+    for (std::size_t i = 0; i < globals_values_.size(); ++i) {
         if (!globals_set_[i]) continue;
-        const Constant& c = module_.const_pool[i];
-        if (c.tag != ConstTag::kString) continue;
-        out.emplace(std::get<std::string>(c.value), globals_values_[i]);
+        out.emplace(module_.globals[i].name, globals_values_[i]);
     }
     return out;
 }
@@ -88,6 +152,90 @@ const std::array<Vm::Handler, Vm::kOpCount>& Vm::Dispatch() {
         t[static_cast<std::size_t>(OpCode::kNewArraySized)] = &Vm::H_NewArraySized;
         t[static_cast<std::size_t>(OpCode::kLoadIndex)] = &Vm::H_LoadIndex;
         t[static_cast<std::size_t>(OpCode::kStoreIndex)] = &Vm::H_StoreIndex;
+        t[static_cast<std::size_t>(OpCode::kLoadIndexUnchecked)] = &Vm::H_LoadIndexUnchecked;
+        t[static_cast<std::size_t>(OpCode::kStoreIndexUnchecked)] = &Vm::H_StoreIndexUnchecked;
+        t[static_cast<std::size_t>(OpCode::kFreeLocal)] = &Vm::H_FreeLocal;
+        t[static_cast<std::size_t>(OpCode::kJumpTrue)] = &Vm::H_JumpTrue;
+        t[static_cast<std::size_t>(OpCode::kDup)] = &Vm::H_Dup;
+        t[static_cast<std::size_t>(OpCode::kConcatN)] = &Vm::H_ConcatN;
+        t[static_cast<std::size_t>(OpCode::kStrBuilder)] = &Vm::H_StrBuilder;
+        t[static_cast<std::size_t>(OpCode::kStrAppend)] = &Vm::H_StrAppend;
+        t[static_cast<std::size_t>(OpCode::kAddI64)] = &Vm::H_AddI64;
+        t[static_cast<std::size_t>(OpCode::kSubI64)] = &Vm::H_SubI64;
+        t[static_cast<std::size_t>(OpCode::kLtI64)] = &Vm::H_LtI64;
+        t[static_cast<std::size_t>(OpCode::kLeI64)] = &Vm::H_LeI64;
+        t[static_cast<std::size_t>(OpCode::kGtI64)] = &Vm::H_GtI64;
+        t[static_cast<std::size_t>(OpCode::kGeI64)] = &Vm::H_GeI64;
+        t[static_cast<std::size_t>(OpCode::kIncLocalI64)] = &Vm::H_IncLocalI64;
+        t[static_cast<std::size_t>(OpCode::kIncLocal)] = &Vm::H_IncLocal;
+        t[static_cast<std::size_t>(OpCode::kLoad2Local)] = &Vm::H_Load2Local;
+        t[static_cast<std::size_t>(OpCode::kLoadLocalIndex)] = &Vm::H_LoadLocalIndex;
+        t[static_cast<std::size_t>(OpCode::kLoadLocalIndexUnchecked)] = &Vm::H_LoadLocalIndexUnchecked;
+        t[static_cast<std::size_t>(OpCode::kLtJumpFalse)] = &Vm::H_LtJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kLeJumpFalse)] = &Vm::H_LeJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kGtJumpFalse)] = &Vm::H_GtJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kGeJumpFalse)] = &Vm::H_GeJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kEqJumpFalse)] = &Vm::H_EqJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kNeqJumpFalse)] = &Vm::H_NeqJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kAddInt)] = &Vm::H_AddInt;
+        t[static_cast<std::size_t>(OpCode::kSubInt)] = &Vm::H_SubInt;
+        t[static_cast<std::size_t>(OpCode::kMulInt)] = &Vm::H_MulInt;
+        t[static_cast<std::size_t>(OpCode::kAddFloat)] = &Vm::H_AddFloat;
+        t[static_cast<std::size_t>(OpCode::kSubFloat)] = &Vm::H_SubFloat;
+        t[static_cast<std::size_t>(OpCode::kMulFloat)] = &Vm::H_MulFloat;
+        t[static_cast<std::size_t>(OpCode::kDivFloat)] = &Vm::H_DivFloat;
+        t[static_cast<std::size_t>(OpCode::kConcatStr)] = &Vm::H_ConcatStr;
+        t[static_cast<std::size_t>(OpCode::kLtInt)] = &Vm::H_LtInt;
+        t[static_cast<std::size_t>(OpCode::kLeInt)] = &Vm::H_LeInt;
+        t[static_cast<std::size_t>(OpCode::kGtInt)] = &Vm::H_GtInt;
+        t[static_cast<std::size_t>(OpCode::kGeInt)] = &Vm::H_GeInt;
+        t[static_cast<std::size_t>(OpCode::kEqInt)] = &Vm::H_EqInt;
+        t[static_cast<std::size_t>(OpCode::kNeqInt)] = &Vm::H_NeqInt;
+        t[static_cast<std::size_t>(OpCode::kLtFloat)] = &Vm::H_LtFloat;
+        t[static_cast<std::size_t>(OpCode::kLeFloat)] = &Vm::H_LeFloat;
+        t[static_cast<std::size_t>(OpCode::kGtFloat)] = &Vm::H_GtFloat;
+        t[static_cast<std::size_t>(OpCode::kGeFloat)] = &Vm::H_GeFloat;
+        t[static_cast<std::size_t>(OpCode::kEqStr)] = &Vm::H_EqStr;
+        t[static_cast<std::size_t>(OpCode::kNeqStr)] = &Vm::H_NeqStr;
+
+        t[static_cast<std::size_t>(OpCode::kRMove)] = &Vm::H_RMove;
+        t[static_cast<std::size_t>(OpCode::kRLoadK)] = &Vm::H_RLoadK;
+        t[static_cast<std::size_t>(OpCode::kRLoadGlobal)] = &Vm::H_RLoadGlobal;
+        t[static_cast<std::size_t>(OpCode::kRStoreGlobal)] = &Vm::H_RStoreGlobal;
+        t[static_cast<std::size_t>(OpCode::kRAdd)] = &Vm::H_RAdd;
+        t[static_cast<std::size_t>(OpCode::kRSub)] = &Vm::H_RSub;
+        t[static_cast<std::size_t>(OpCode::kRMul)] = &Vm::H_RMul;
+        t[static_cast<std::size_t>(OpCode::kRDiv)] = &Vm::H_RDiv;
+        t[static_cast<std::size_t>(OpCode::kRMod)] = &Vm::H_RMod;
+        t[static_cast<std::size_t>(OpCode::kREq)] = &Vm::H_REq;
+        t[static_cast<std::size_t>(OpCode::kRNeq)] = &Vm::H_RNeq;
+        t[static_cast<std::size_t>(OpCode::kRLt)] = &Vm::H_RLt;
+        t[static_cast<std::size_t>(OpCode::kRLe)] = &Vm::H_RLe;
+        t[static_cast<std::size_t>(OpCode::kRGt)] = &Vm::H_RGt;
+        t[static_cast<std::size_t>(OpCode::kRGe)] = &Vm::H_RGe;
+        t[static_cast<std::size_t>(OpCode::kRAnd)] = &Vm::H_RAnd;
+        t[static_cast<std::size_t>(OpCode::kROr)] = &Vm::H_ROr;
+        t[static_cast<std::size_t>(OpCode::kRNeg)] = &Vm::H_RNeg;
+        t[static_cast<std::size_t>(OpCode::kRNot)] = &Vm::H_RNot;
+        t[static_cast<std::size_t>(OpCode::kRAddI)] = &Vm::H_RAddI;
+        t[static_cast<std::size_t>(OpCode::kRJumpFalse)] = &Vm::H_RJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRJumpTrue)] = &Vm::H_RJumpTrue;
+        t[static_cast<std::size_t>(OpCode::kRLtJumpFalse)] = &Vm::H_RLtJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRLeJumpFalse)] = &Vm::H_RLeJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRGtJumpFalse)] = &Vm::H_RGtJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRGeJumpFalse)] = &Vm::H_RGeJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kREqJumpFalse)] = &Vm::H_REqJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRNeqJumpFalse)] = &Vm::H_RNeqJumpFalse;
+        t[static_cast<std::size_t>(OpCode::kRCall)] = &Vm::H_RCall;
+        t[static_cast<std::size_t>(OpCode::kRRet)] = &Vm::H_RRet;
+        t[static_cast<std::size_t>(OpCode::kRNewArray)] = &Vm::H_RNewArray;
+        t[static_cast<std::size_t>(OpCode::kRNewArraySized)] = &Vm::H_RNewArraySized;
+        t[static_cast<std::size_t>(OpCode::kRLoadIndex)] = &Vm::H_RLoadIndex;
+        t[static_cast<std::size_t>(OpCode::kRLoadIndexUnchecked)] = &Vm::H_RLoadIndexUnchecked;
+        t[static_cast<std::size_t>(OpCode::kRStoreIndex)] = &Vm::H_RStoreIndex;
+        t[static_cast<std::size_t>(OpCode::kRStoreIndexUnchecked)] = &Vm::H_RStoreIndexUnchecked;
+        t[static_cast<std::size_t>(OpCode::kRConcatN)] = &Vm::H_RConcatN;
+        t[static_cast<std::size_t>(OpCode::kRStrAppend)] = &Vm::H_RStrAppend;
 
         t[static_cast<std::size_t>(OpCode::kPop)] = &Vm::H_Pop;
         t[static_cast<std::size_t>(OpCode::kKva)] = &Vm::H_Kva;
@@ -126,6 +274,9 @@ void Vm::BuildConstValues() {
             case ConstTag::kBool:
                 const_values_.push_back(Value::FromBool(std::get<bool>(c.value)));
                 break;
+            case ConstTag::kBigInt:
+                const_values_.push_back(Value::FromInt(BigInt::Parse(std::get<std::string>(c.value))));
+                break;
             case ConstTag::kString: {
                 StringObject* s = heap_.AllocateString(std::get<std::string>(c.value), options_.gc_log, Roots());
                 const_values_.push_back(Value::FromRaw(s, ValueTag::kString));
@@ -191,9 +342,44 @@ int Vm::run() {
         }
     }
 
+    if (profiling_) write_profile();
     return 0;
 }
 
+// Общий хвост JUMP_FALSE и составных сравнений с переходом.
+void Vm::jump_unless(const Instruction& ins, const Value& cond) {
+    if (!ins.has_a) throw RuntimeError(opcode_name(ins.op) + " missing a");
+    if (ins.a >= module_.code.size()) throw RuntimeError(opcode_name(ins.op) + " target out of range");
+    if (cond.tag != ValueTag::kBool) throw RuntimeError(opcode_name(ins.op) + " expects bool");
+    bool taken = !cond.AsBool();
+    if (profiling_) record_branch(taken);
+    if (taken) frame().ip = ins.a;
+}
+
+void Vm::record_branch(bool taken) {
+    std::uint32_t ip = frame().ip - 1;
+    if (taken) {
+        ++profile_taken_[ip];
+    } else {
+        ++profile_not_taken_[ip];
+    }
+}
+
+// Формат: "call <индекс функции> <вызовы>" и "jump <ip> <переходов> <проходов>".
+void Vm::write_profile() const {
+    std::ofstream out(options_.profile_out);
+    if (!out) throw RuntimeError("cannot write profile: " + options_.profile_out);
+    out << "frogprof 1\n";
+    for (std::size_t i = 0; i < profile_calls_.size(); ++i) {
+        if (module_.functions[i].entry_ip == kBuiltinEntryIp) continue;
+        out << "call " << i << " " << profile_calls_[i] << "\n";
+    }
+    for (std::size_t ip = 0; ip < profile_taken_.size(); ++ip) {
+        if (profile_taken_[ip] == 0 && profile_not_taken_[ip] == 0) continue;
+        out << "jump " << ip << " " << profile_taken_[ip] << " " << profile_not_taken_[ip] << "\n";
+    }
+}
+
 void Vm::run_jit(CompiledFunc& cf) {
     if (options_.jit_log) {
         std::cout << "ENTER JIT func " << func_name_view(cf.func_index) << "@" << cf.func_index << "\n";
@@ -246,6 +432,13 @@ const CallFrame& Vm::frame() const {
     return frames_.back();
 }
 
+Value& Vm::reg(std::uint32_t packed, int n) {
+    std::size_t r = (packed >> (8 * n)) & 0xFFu;
+    CallFrame& f = frame();
+    if (r >= f.locals.size()) throw RuntimeError("register out of range");
+    return f.locals[r];
+}
+
 std::string Vm::opcode_name(OpCode op) const {
     switch (op) {
         case OpCode::kPushConst: return "PUSH_CONST";
@@ -278,6 +471,89 @@ std::string Vm::opcode_name(OpCode op) const {
         case OpCode::kStoreIndex: return "STORE_INDEX";
         case OpCode::kPop: return "POP";
         case OpCode::kKva: return "KVA";
+        case OpCode::kLoadIndexUnchecked: return "LOAD_INDEX_UNCHECKED";
+        case OpCode::kStoreIndexUnchecked: return "STORE_INDEX_UNCHECKED";
+        case OpCode::kFreeLocal: return "FREE_LOCAL";
+        case OpCode::kJumpTrue: return "JUMP_TRUE";
+        case OpCode::kDup: return "DUP";
+        case OpCode::kConcatN: return "CONCAT_N";
+        case OpCode::kStrBuilder: return "STR_BUILDER";
+        case OpCode::kStrAppend: return "STR_APPEND";
+        case OpCode::kAddI64: return "ADD_I64";
+        case OpCode::kSubI64: return "SUB_I64";
+        case OpCode::kLtI64: return "LT_I64";
+        case OpCode::kLeI64: return "LE_I64";
+        case OpCode::kGtI64: return "GT_I64";
+        case OpCode::kGeI64: return "GE_I64";
+        case OpCode::kIncLocalI64: return "INC_LOCAL_I64";
+        case OpCode::kIncLocal: return "INC_LOCAL";
+        case OpCode::kLoad2Local: return "LOAD2_LOCAL";
+        case OpCode::kLoadLocalIndex: return "LOAD_LOCAL_INDEX";
+        case OpCode::kLoadLocalIndexUnchecked: return "LOAD_LOCAL_INDEX_UNCHECKED";
+        case OpCode::kLtJumpFalse: return "LT_JUMP_FALSE";
+        case OpCode::kLeJumpFalse: return "LE_JUMP_FALSE";
+        case OpCode::kGtJumpFalse: return "GT_JUMP_FALSE";
+        case OpCode::kGeJumpFalse: return "GE_JUMP_FALSE";
+        case OpCode::kEqJumpFalse: return "EQ_JUMP_FALSE";
+        case OpCode::kNeqJumpFalse: return "NEQ_JUMP_FALSE";
+        case OpCode::kAddInt: return "ADD_INT";
+        case OpCode::kSubInt: return "SUB_INT";
+        case OpCode::kMulInt: return "MUL_INT";
+        case OpCode::kAddFloat: return "ADD_FLOAT";
+        case OpCode::kSubFloat: return "SUB_FLOAT";
+        case OpCode::kMulFloat: return "MUL_FLOAT";
+        case OpCode::kDivFloat: return "DIV_FLOAT";
+        case OpCode::kConcatStr: return "CONCAT_STR";
+        case OpCode::kLtInt: return "LT_INT";
+        case OpCode::kLeInt: return "LE_INT";
+        case OpCode::kGtInt: return "GT_INT";
+        case OpCode::kGeInt: return "GE_INT";
+        case OpCode::kEqInt: return "EQ_INT";
+        case OpCode::kNeqInt: return "NEQ_INT";
+        case OpCode::kLtFloat: return "LT_FLOAT";
+        case OpCode::kLeFloat: return "LE_FLOAT";
+        case OpCode::kGtFloat: return "GT_FLOAT";
+        case OpCode::kGeFloat: return "GE_FLOAT";
+        case OpCode::kEqStr: return "EQ_STR";
+        case OpCode::kNeqStr: return "NEQ_STR";
+        case OpCode::kRMove: return "R_MOVE";
+        case OpCode::kRLoadK: return "R_LOADK";
+        case OpCode::kRLoadGlobal: return "R_LOAD_GLOBAL";
+        case OpCode::kRStoreGlobal: return "R_STORE_GLOBAL";
+        case OpCode::kRAdd: return "R_ADD";
+        case OpCode::kRSub: return "R_SUB";
+        case OpCode::kRMul: return "R_MUL";
+        case OpCode::kRDiv: return "R_DIV";
+        case OpCode::kRMod: return "R_MOD";
+        case OpCode::kREq: return "R_EQ";
+        case OpCode::kRNeq: return "R_NEQ";
+        case OpCode::kRLt: return "R_LT";
+        case OpCode::kRLe: return "R_LE";
+        case OpCode::kRGt: return "R_GT";
+        case OpCode::kRGe: return "R_GE";
+        case OpCode::kRAnd: return "R_AND";
+        case OpCode::kROr: return "R_OR";
+        case OpCode::kRNeg: return "R_NEG";
+        case OpCode::kRNot: return "R_NOT";
+        case OpCode::kRAddI: return "R_ADDI";
+        case OpCode::kRJumpFalse: return "R_JUMP_FALSE";
+        case OpCode::kRJumpTrue: return "R_JUMP_TRUE";
+        case OpCode::kRLtJumpFalse: return "R_LT_JUMP_FALSE";
+        case OpCode::kRLeJumpFalse: return "R_LE_JUMP_FALSE";
+        case OpCode::kRGtJumpFalse: return "R_GT_JUMP_FALSE";
+        case OpCode::kRGeJumpFalse: return "R_GE_JUMP_FALSE";
+        case OpCode::kREqJumpFalse: return "R_EQ_JUMP_FALSE";
+        case OpCode::kRNeqJumpFalse: return "R_NEQ_JUMP_FALSE";
+        case OpCode::kRCall: return "R_CALL";
+        case OpCode::kRRet: return "R_RET";
+        case OpCode::kRNewArray: return "R_NEW_ARRAY";
+        case OpCode::kRNewArraySized: return "R_NEW_ARRAY_SIZED";
+        case OpCode::kRLoadIndex: return "R_LOAD_INDEX";
+        case OpCode::kRLoadIndexUnchecked: return "R_LOAD_INDEX_UNCHECKED";
+        case OpCode::kRStoreIndex: return "R_STORE_INDEX";
+        case OpCode::kRStoreIndexUnchecked: return "R_STORE_INDEX_UNCHECKED";
+        case OpCode::kRConcatN: return "R_CONCAT_N";
+        case OpCode::kRStrAppend: return "R_STR_APPEND";
     }
     return "UNKNOWN";
 }
@@ -591,28 +867,67 @@ void Vm::call_function(std::uint32_t func_index, std::uint16_t argc) {
         return;
     }
 
-    maybe_jit_compile(func_index);
+    CallFrame callee = enter_frame(func_index, stack_.size() - argc);
+    for (std::uint16_t i = argc; i > 0; --i) {
+        callee.locals[static_cast<std::size_t>(i - 1)] = pop();
+    }
 
-    CallFrame& caller = frame();
+    frames_.push_back(std::move(callee));
+}
+
+// R_CALL: аргументы лежат в регистрах first.. вызывающей функции, результат пишется в first.
+void Vm::call_function_regs(std::uint32_t func_index, std::uint32_t first, std::uint32_t argc) {
+    if (func_index >= module_.functions.size()) throw RuntimeError("R_CALL bad func index");
+    const FunctionInfo& fn = module_.functions[func_index];
+    if (argc != fn.param_count) throw RuntimeError("R_CALL argc mismatch");
+    if (first + argc > frame().locals.size()) throw RuntimeError("R_CALL register out of range");
+    bool has_ret = fn.return_type != TypeTag::kVoid;
+
+    if (fn.entry_ip == kBuiltinEntryIp) {
+        // аргументы остаются в регистрах и служат корнями
+        std::span<const Value> args(frame().locals.data() + first, argc);
+        Value out = call_builtin(func_name_view(func_index), args, has_ret);
+        if (has_ret) frame().locals[first] = std::move(out);
+        return;
+    }
+
+    CallFrame callee = enter_frame(func_index, stack_.size());
+    std::vector<Value>& regs = frame().locals;
+    for (std::uint32_t i = 0; i < argc; ++i) {
+        callee.locals[i] = std::move(regs[first + i]);
+    }
+    if (has_ret) callee.ret_reg = static_cast<std::int32_t>(first);
+
+    frames_.push_back(std::move(callee));
+}
+
+// Кадр вызова без аргументов: счётчики, JIT, буфер локальных и место на стеке.
+CallFrame Vm::enter_frame(std::uint32_t func_index, std::size_t base_stack_size) {
+    const FunctionInfo& fn = module_.functions[func_index];
+    if (profiling_) ++profile_calls_[func_index];
+    maybe_jit_compile(func_index);
 
     CallFrame callee;
     callee.func_index = func_index;
     callee.ip = static_cast<std::uint32_t>(fn.entry_ip);
-    callee.return_ip = caller.ip;
-    callee.base_stack_size = stack_.size() - argc;
-    callee.locals.resize(fn.local_count, Value::Null());
-
-    for (std::uint16_t i = argc; i > 0; --i) {
-        callee.locals[static_cast<std::size_t>(i - 1)] = pop();
+    callee.return_ip = frame().ip;
+    callee.base_stack_size = base_stack_size;
+    if (!spare_locals_.empty()) {
+        callee.locals = std::move(spare_locals_.back());
+        spare_locals_.pop_back();
     }
+    callee.locals.assign(fn.local_count, Value::Null());
 
-    frames_.push_back(std::move(callee));
+    // Глубина стека известна заранее: в теле функции стек не перевыделяется.
+    std::size_t need = stack_.size() + fn.max_stack;
+    if (stack_.capacity() < need) stack_.reserve(std::max(need, stack_.capacity() * 2));
+    return callee;
 }
 
 void Vm::ret_from_function() {
     if (frames_.empty()) throw RuntimeError("RET with no frame");
 
-    CallFrame finished = frame();
+    CallFrame finished = std::move(frame());
     std::uint32_t finished_func = finished.func_index;
 
     bool has_ret = !is_void_return(finished_func);
@@ -623,12 +938,19 @@ void Vm::ret_from_function() {
     stack_.resize(finished.base_stack_size);
 
     frames_.pop_back();
+    finished.locals.clear();
+    spare_locals_.push_back(std::move(finished.locals));
     if (frames_.empty()) return;
 
     CallFrame& caller = frame();
     caller.ip = finished.return_ip;
 
-    if (has_ret) push(ret);
+    if (!has_ret) return;
+    if (finished.ret_reg >= 0) {
+        caller.locals[static_cast<std::size_t>(finished.ret_reg)] = std::move(ret);
+    } else {
+        push(ret);
+    }
 }
 
 void Vm::step() {
@@ -661,19 +983,17 @@ void Vm::H_Pop(Vm& vm, const Instruction&) {
 void Vm::H_StoreGlobal(Vm& vm, const Instruction& ins) {
     if (!ins.has_a) throw RuntimeError("STORE_GLOBAL missing a");
     std::uint32_t idx = ins.a;
-    if (idx >= vm.globals_values_.size()) throw RuntimeError("STORE_GLOBAL const index out of range");
-    std::string_view name = vm.const_string_view(idx);
+    if (idx >= vm.globals_values_.size()) throw RuntimeError("STORE_GLOBAL slot out of range");
     vm.globals_values_[idx] = vm.pop();
     vm.globals_set_[idx] = 1;
-    (void)name;
 }
 
 void Vm::H_LoadGlobal(Vm& vm, const Instruction& ins) {
     if (!ins.has_a) throw RuntimeError("LOAD_GLOBAL missing a");
     std::uint32_t idx = ins.a;
-    if (idx >= vm.globals_values_.size()) throw RuntimeError("LOAD_GLOBAL const index out of range");
+    if (idx >= vm.globals_values_.size()) throw RuntimeError("LOAD_GLOBAL slot out of range");
     if (!vm.globals_set_[idx]) {
-        throw RuntimeError(std::string("LOAD_GLOBAL unknown global: ").append(vm.const_string_view(idx)));
+        throw RuntimeError("LOAD_GLOBAL unknown global: " + vm.module_.globals[idx].name);
     }
     vm.push(vm.globals_values_[idx]);
 }
@@ -793,7 +1113,269 @@ void Vm::H_JumpFalse(Vm& vm, const Instruction& ins) {
     if (ins.a >= vm.module_.code.size()) throw RuntimeError("JUMP_FALSE target out of range");
     Value cond = vm.pop();
     if (cond.tag != ValueTag::kBool) throw RuntimeError("JUMP_FALSE expects bool");
-    if (!cond.AsBool()) f.ip = ins.a;
+    bool taken = !cond.AsBool();
+    if (vm.profiling_) vm.record_branch(taken);
+    if (taken) f.ip = ins.a;
+}
+
+void Vm::H_JumpTrue(Vm& vm, const Instruction& ins) {
+    if (!ins.has_a) throw RuntimeError("JUMP_TRUE missing a");
+    CallFrame& f = vm.frame();
+    if (ins.a >= vm.module_.code.size()) throw RuntimeError("JUMP_TRUE target out of range");
+    Value cond = vm.pop();
+    if (cond.tag != ValueTag::kBool) throw RuntimeError("JUMP_TRUE expects bool");
+    bool taken = cond.AsBool();
+    if (vm.profiling_) vm.record_branch(taken);
+    if (taken) f.ip = ins.a;
+}
+
+void Vm::H_Dup(Vm& vm, const Instruction&) {
+    if (vm.stack_.empty()) throw RuntimeError("stack underflow");
+    Value top = vm.stack_.back();
+    vm.push(top);
+}
+
+void Vm::H_ConcatN(Vm& vm, const Instruction& ins) {
+    if (!ins.has_b) throw RuntimeError("CONCAT_N missing b");
+    std::size_t n = ins.b;
+    if (n > vm.stack_.size()) throw RuntimeError("stack underflow");
+
+    std::size_t base = vm.stack_.size() - n;
+    std::string s;
+    for (std::size_t i = base; i < vm.stack_.size(); ++i) {
+        if (vm.stack_[i].tag != ValueTag::kString) throw RuntimeError("CONCAT_N type mismatch");
+        s += vm.stack_[i].AsString()->value;
+    }
+    // операнды остаются на стеке и служат корнями, пока выделяется результат
+    StringObject* obj = vm.heap_.AllocateString(s, vm.options_.gc_log, vm.Roots());
+    vm.stack_.resize(base);
+    vm.push(Value::FromRaw(obj, ValueTag::kString));
+}
+
+void Vm::H_StrBuilder(Vm& vm, const Instruction& ins) {
+    if (!ins.has_b) throw RuntimeError("STR_BUILDER missing b");
+    CallFrame& f = vm.frame();
+    std::size_t slot = ins.b;
+    if (slot >= f.locals.size()) throw RuntimeError("STR_BUILDER slot out of range");
+    if (f.locals[slot].tag != ValueTag::kString) return;
+
+    // строка могла быть общей (константа, другая переменная): дописывать можно только в свою копию
+    std::string copy = f.locals[slot].AsString()->value;
+    StringObject* obj = vm.heap_.AllocateString(copy, vm.options_.gc_log, vm.Roots());
+    vm.frame().locals[slot] = Value::FromRaw(obj, ValueTag::kString);
+}
+
+void Vm::H_StrAppend(Vm& vm, const Instruction& ins) {
+    if (!ins.has_b) throw RuntimeError("STR_APPEND missing b");
+    CallFrame& f = vm.frame();
+    std::size_t slot = ins.b;
+    if (slot >= f.locals.size()) throw RuntimeError("STR_APPEND slot out of range");
+    Value tail = vm.pop();
+    if (f.locals[slot].tag != ValueTag::kString || tail.tag != ValueTag::kString) {
+        throw RuntimeError("ADD type mismatch");
+    }
+    vm.heap_.AppendString(f.locals[slot].AsString(), tail.AsString()->value);
+}
+
+void Vm::H_AddI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "ADD_I64", [](std::int64_t l, std::int64_t r) {
+        return Value::FromInt(CheckedAdd(l, r, "ADD_I64"));
+    });
+}
+
+void Vm::H_SubI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "SUB_I64", [](std::int64_t l, std::int64_t r) {
+        return Value::FromInt(CheckedSub(l, r, "SUB_I64"));
+    });
+}
+
+void Vm::H_LtI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "LT_I64", [](std::int64_t l, std::int64_t r) { return Value::FromBool(l < r); });
+}
+
+void Vm::H_LeI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "LE_I64", [](std::int64_t l, std::int64_t r) { return Value::FromBool(l <= r); });
+}
+
+void Vm::H_GtI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "GT_I64", [](std::int64_t l, std::int64_t r) { return Value::FromBool(l > r); });
+}
+
+void Vm::H_GeI64(Vm& vm, const Instruction&) {
+    BinaryI64(vm.stack_, "GE_I64", [](std::int64_t l, std::int64_t r) { return Value::FromBool(l >= r); });
+}
+
+void Vm::H_IncLocalI64(Vm& vm, const Instruction& ins) {
+    if (!ins.has_a || !ins.has_b) throw RuntimeError("INC_LOCAL_I64 missing operands");
+    CallFrame& f = vm.frame();
+    std::size_t slot = ins.b;
+    if (slot >= f.locals.size()) throw RuntimeError("INC_LOCAL_I64 slot out of range");
+    Value& v = f.locals[slot];
+    std::int64_t delta = static_cast<std::int32_t>(ins.a);
+    v.AsInt() = BigInt(CheckedAdd(SmallInt(v, "INC_LOCAL_I64"), delta, "INC_LOCAL_I64"));
+}
+
+void Vm::H_IncLocal(Vm& vm, const Instruction& ins) {
+    if (!ins.has_a || !ins.has_b) throw RuntimeError("INC_LOCAL missing operands");
+    std::size_t slot = ins.b;
+    if (slot >= vm.frame().locals.size()) throw RuntimeError("INC_LOCAL slot out of range");
+    Value sum = vm.add_values(vm.frame().locals[slot], Value::FromInt(static_cast<std::int32_t>(ins.a)));
+    vm.frame().locals[slot] = sum;
+}
+
+void Vm::H_Load2Local(Vm& vm, const Instruction& ins) {
+    if (!ins.has_a || !ins.has_b) throw RuntimeError("LOAD2_LOCAL missing operands");
+    CallFrame& f = vm.frame();
+    if (ins.a >= f.locals.size() || ins.b >= f.locals.size()) throw RuntimeError("LOAD2_LOCAL slot out of range");
+    vm.push(f.locals[ins.a]);
+    vm.push(vm.frame().locals[ins.b]);
+}
+
+void Vm::H_LoadLocalIndex(Vm& vm, const Instruction& ins) {
+    if (!ins.has_a || !ins.has_b) throw RuntimeError("LOAD_LOCAL_INDEX missing operands");
+    CallFrame& f = vm.frame();
+    if (ins.a >= f.locals.size() || ins.b >= f.locals.size()) throw RuntimeError("LOAD_LOCAL_INDEX slot out of range");
+    const Value& arrv = f.locals[ins.a];
+    const Value& idx = f.locals[ins.b];
+    if (idx.tag != ValueTag::kInt) throw RuntimeError("LOAD_INDEX expects int index");
+    if (arrv.tag != ValueTag::kArray) throw RuntimeError("LOAD_INDEX expects array");
+    std::int64_t i = 0;
+    if (!idx.AsInt().TryToInt64(i)) throw RuntimeError("array index out of bounds");
+    ArrayObject* arr = arrv.AsArray();
+    if (i < 0 || static_cast<std::size_t>(i) >= arr->elements.size()) throw RuntimeError("array index out of bounds");
+    vm.push(arr->elements[static_cast<std::size_t>(i)]);
+}
+
+void Vm::H_LoadLocalIndexUnchecked(Vm& vm, const Instruction& ins) {
+    CallFrame& f = vm.frame();
+    std::int64_t i = 0;
+    f.locals[ins.b].AsInt().TryToInt64(i);
+    vm.push(f.locals[ins.a].AsArray()->elements[static_cast<std::size_t>(i)]);
+}
+
+void Vm::H_LtJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.lt_values(l, r));
+}
+
+void Vm::H_LeJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.le_values(l, r));
+}
+
+void Vm::H_GtJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.gt_values(l, r));
+}
+
+void Vm::H_GeJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.ge_values(l, r));
+}
+
+void Vm::H_EqJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.eq_values(l, r));
+}
+
+void Vm::H_NeqJumpFalse(Vm& vm, const Instruction& ins) {
+    Value r = vm.pop();
+    Value l = vm.pop();
+    vm.jump_unless(ins, vm.neq_values(l, r));
+}
+
+void Vm::H_AddInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromInt(l.AsInt() + r.AsInt()); });
+}
+
+void Vm::H_SubInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromInt(l.AsInt() - r.AsInt()); });
+}
+
+void Vm::H_MulInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromInt(l.AsInt() * r.AsInt()); });
+}
+
+void Vm::H_AddFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromFloat(l.AsFloat() + r.AsFloat()); });
+}
+
+void Vm::H_SubFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromFloat(l.AsFloat() - r.AsFloat()); });
+}
+
+void Vm::H_MulFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromFloat(l.AsFloat() * r.AsFloat()); });
+}
+
+void Vm::H_DivFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) {
+        if (r.AsFloat() == 0.0) throw RuntimeError("division by zero");
+        return Value::FromFloat(l.AsFloat() / r.AsFloat());
+    });
+}
+
+void Vm::H_ConcatStr(Vm& vm, const Instruction&) {
+    if (vm.stack_.size() < 2) throw RuntimeError("stack underflow");
+    std::size_t top = vm.stack_.size();
+    std::string s = vm.stack_[top - 2].AsString()->value + vm.stack_[top - 1].AsString()->value;
+    // операнды остаются на стеке и служат корнями, пока выделяется результат
+    StringObject* obj = vm.heap_.AllocateString(s, vm.options_.gc_log, vm.Roots());
+    vm.stack_.pop_back();
+    vm.stack_.back() = Value::FromRaw(obj, ValueTag::kString);
+}
+
+void Vm::H_LtInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() < r.AsInt()); });
+}
+
+void Vm::H_LeInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() <= r.AsInt()); });
+}
+
+void Vm::H_GtInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() > r.AsInt()); });
+}
+
+void Vm::H_GeInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() >= r.AsInt()); });
+}
+
+void Vm::H_EqInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() == r.AsInt()); });
+}
+
+void Vm::H_NeqInt(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsInt() != r.AsInt()); });
+}
+
+void Vm::H_LtFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsFloat() < r.AsFloat()); });
+}
+
+void Vm::H_LeFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsFloat() <= r.AsFloat()); });
+}
+
+void Vm::H_GtFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsFloat() > r.AsFloat()); });
+}
+
+void Vm::H_GeFloat(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsFloat() >= r.AsFloat()); });
+}
+
+void Vm::H_EqStr(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsString()->value == r.AsString()->value); });
+}
+
+void Vm::H_NeqStr(Vm& vm, const Instruction&) {
+    BinaryTyped(vm.stack_, [](const Value& l, const Value& r) { return Value::FromBool(l.AsString()->value != r.AsString()->value); });
 }
 
 void Vm::H_Call(Vm& vm, const Instruction& ins) {
@@ -860,6 +1442,254 @@ void Vm::H_StoreIndex(Vm& vm, const Instruction&) {
     if (i < 0 || static_cast<std::size_t>(i) >= arr->elements.size()) throw RuntimeError("array index out of bounds");
     arr->elements[static_cast<std::size_t>(i)] = val;
 }
+// Компилятор доказал, что индекс в границах массива: проверки типа и границ не нужны.
+void Vm::H_LoadIndexUnchecked(Vm& vm, const Instruction&) {
+    Value idx = vm.pop();
+    Value arrv = vm.pop();
+    std::int64_t i = 0;
+    idx.AsInt().TryToInt64(i);
+    vm.push(arrv.AsArray()->elements[static_cast<std::size_t>(i)]);
+}
+
+void Vm::H_StoreIndexUnchecked(Vm& vm, const Instruction&) {
+    Value val = vm.pop();
+    Value idx = vm.pop();
+    Value arrv = vm.pop();
+    std::int64_t i = 0;
+    idx.AsInt().TryToInt64(i);
+    arrv.AsArray()->elements[static_cast<std::size_t>(i)] = val;
+}
+
+// Компилятор доказал, что массив в слоте не пережил функцию: отдаём память сразу.
+void Vm::H_FreeLocal(Vm& vm, const Instruction& ins) {
+    if (!ins.has_b) throw RuntimeError("FREE_LOCAL missing b");
+    CallFrame& f = vm.frame();
+    std::size_t slot = ins.b;
+    if (slot >= f.locals.size()) throw RuntimeError("FREE_LOCAL slot out of range");
+    if (f.locals[slot].tag == ValueTag::kArray) {
+        vm.heap_.Release(f.locals[slot].AsArray());
+    }
+    f.locals[slot] = Value::Null();
+}
+
 void Vm::H_Kva(Vm& vm, const Instruction&) {
     vm.frames_.clear();
 }
+
+// Регистровые операции (.frogc v5): операнды — регистры кадра, стек не используется.
+void Vm::H_RMove(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.reg(ins.a, 1);
+}
+
+void Vm::H_RLoadK(Vm& vm, const Instruction& ins) {
+    if (ins.a >= vm.const_values_.size()) throw RuntimeError("R_LOADK const index out of range");
+    vm.reg(ins.b, 0) = vm.const_values_[ins.a];
+}
+
+void Vm::H_RLoadGlobal(Vm& vm, const Instruction& ins) {
+    if (ins.a >= vm.globals_values_.size()) throw RuntimeError("R_LOAD_GLOBAL slot out of range");
+    if (!vm.globals_set_[ins.a]) {
+        throw RuntimeError("LOAD_GLOBAL unknown global: " + vm.module_.globals[ins.a].name);
+    }
+    vm.reg(ins.b, 0) = vm.globals_values_[ins.a];
+}
+
+void Vm::H_RStoreGlobal(Vm& vm, const Instruction& ins) {
+    if (ins.a >= vm.globals_values_.size()) throw RuntimeError("R_STORE_GLOBAL slot out of range");
+    vm.globals_values_[ins.a] = vm.reg(ins.b, 0);
+    vm.globals_set_[ins.a] = 1;
+}
+
+void Vm::H_RAdd(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.add_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RSub(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.sub_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RMul(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.mul_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RDiv(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.div_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RMod(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.mod_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_REq(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.eq_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RNeq(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.neq_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RLt(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.lt_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RLe(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.le_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RGt(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.gt_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RGe(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.ge_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RAnd(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.and_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_ROr(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.or_values(vm.reg(ins.a, 1), vm.reg(ins.a, 2));
+}
+
+void Vm::H_RNeg(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.neg_value(vm.reg(ins.a, 1));
+}
+
+void Vm::H_RNot(Vm& vm, const Instruction& ins) {
+    vm.reg(ins.a, 0) = vm.not_value(vm.reg(ins.a, 1));
+}
+
+// Непосредственное слагаемое — знаковые старшие 16 бит операнда.
+void Vm::H_RAddI(Vm& vm, const Instruction& ins) {
+    Value imm = Value::FromInt(static_cast<std::int16_t>(ins.a >> 16));
+    vm.reg(ins.a, 0) = vm.add_values(vm.reg(ins.a, 1), imm);
+}
+
+void Vm::H_RJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.reg(ins.b, 0));
+}
+
+void Vm::H_RJumpTrue(Vm& vm, const Instruction& ins) {
+    if (ins.a >= vm.module_.code.size()) throw RuntimeError("R_JUMP_TRUE target out of range");
+    const Value& cond = vm.reg(ins.b, 0);
+    if (cond.tag != ValueTag::kBool) throw RuntimeError("R_JUMP_TRUE expects bool");
+    bool taken = cond.AsBool();
+    if (vm.profiling_) vm.record_branch(taken);
+    if (taken) vm.frame().ip = ins.a;
+}
+
+void Vm::H_RLtJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.lt_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_RLeJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.le_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_RGtJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.gt_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_RGeJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.ge_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_REqJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.eq_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_RNeqJumpFalse(Vm& vm, const Instruction& ins) {
+    vm.jump_unless(ins, vm.neq_values(vm.reg(ins.b, 0), vm.reg(ins.b, 1)));
+}
+
+void Vm::H_RCall(Vm& vm, const Instruction& ins) {
+    vm.call_function_regs(ins.a, ins.b & 0xFFu, static_cast<std::uint32_t>(ins.b >> 8));
+}
+
+// Значение уходит через стек: ret_from_function снимает его и отдаёт вызывающему.
+void Vm::H_RRet(Vm& vm, const Instruction& ins) {
+    vm.push(vm.reg(ins.b, 0));
+    vm.ret_from_function();
+}
+
+void Vm::H_RNewArray(Vm& vm, const Instruction& ins) {
+    std::size_t first = (ins.a >> 8) & 0xFFu;
+    std::size_t count = ins.a >> 16;
+    if (first + count > vm.frame().locals.size()) throw RuntimeError("R_NEW_ARRAY register out of range");
+
+    // элементы остаются в регистрах и служат корнями, пока выделяется массив
+    ArrayObject* arr = vm.heap_.AllocateArray(count, vm.options_.gc_log, vm.Roots());
+    const std::vector<Value>& regs = vm.frame().locals;
+    for (std::size_t i = 0; i < count; ++i) {
+        arr->elements[i] = regs[first + i];
+    }
+    vm.reg(ins.a, 0) = Value::FromRaw(arr, ValueTag::kArray);
+}
+
+void Vm::H_RNewArraySized(Vm& vm, const Instruction& ins) {
+    std::size_t size = static_cast<std::size_t>(ins.a);
+    ArrayObject* arr = vm.heap_.AllocateArray(size, vm.options_.gc_log, vm.Roots());
+    for (std::size_t i = 0; i < size; ++i) {
+        arr->elements[i] = Value::FromInt(0);
+    }
+    vm.reg(ins.b, 0) = Value::FromRaw(arr, ValueTag::kArray);
+}
+
+void Vm::H_RLoadIndex(Vm& vm, const Instruction& ins) {
+    const Value& arrv = vm.reg(ins.a, 1);
+    const Value& idx = vm.reg(ins.a, 2);
+    if (idx.tag != ValueTag::kInt) throw RuntimeError("LOAD_INDEX expects int index");
+    if (arrv.tag != ValueTag::kArray) throw RuntimeError("LOAD_INDEX expects array");
+    std::int64_t i = 0;
+    if (!idx.AsInt().TryToInt64(i)) throw RuntimeError("array index out of bounds");
+    ArrayObject* arr = arrv.AsArray();
+    if (i < 0 || static_cast<std::size_t>(i) >= arr->elements.size()) throw RuntimeError("array index out of bounds");
+    vm.reg(ins.a, 0) = arr->elements[static_cast<std::size_t>(i)];
+}
+
+void Vm::H_RLoadIndexUnchecked(Vm& vm, const Instruction& ins) {
+    std::int64_t i = 0;
+    vm.reg(ins.a, 2).AsInt().TryToInt64(i);
+    vm.reg(ins.a, 0) = vm.reg(ins.a, 1).AsArray()->elements[static_cast<std::size_t>(i)];
+}
+
+void Vm::H_RStoreIndex(Vm& vm, const Instruction& ins) {
+    const Value& arrv = vm.reg(ins.a, 0);
+    const Value& idx = vm.reg(ins.a, 1);
+    if (idx.tag != ValueTag::kInt) throw RuntimeError("STORE_INDEX expects int index");
+    if (arrv.tag != ValueTag::kArray) throw RuntimeError("STORE_INDEX expects array");
+    std::int64_t i = 0;
+    if (!idx.AsInt().TryToInt64(i)) throw RuntimeError("array index out of bounds");
+    ArrayObject* arr = arrv.AsArray();
+    if (i < 0 || static_cast<std::size_t>(i) >= arr->elements.size()) throw RuntimeError("array index out of bounds");
+    arr->elements[static_cast<std::size_t>(i)] = vm.reg(ins.a, 2);
+}
+
+void Vm::H_RStoreIndexUnchecked(Vm& vm, const Instruction& ins) {
+    std::int64_t i = 0;
+    vm.reg(ins.a, 1).AsInt().TryToInt64(i);
+    vm.reg(ins.a, 0).AsArray()->elements[static_cast<std::size_t>(i)] = vm.reg(ins.a, 2);
+}
+
+void Vm::H_RConcatN(Vm& vm, const Instruction& ins) {
+    std::size_t first = (ins.a >> 8) & 0xFFu;
+    std::size_t count = ins.a >> 16;
+    const std::vector<Value>& regs = vm.frame().locals;
+    if (first + count > regs.size()) throw RuntimeError("R_CONCAT_N register out of range");
+
+    std::string s;
+    for (std::size_t i = first; i < first + count; ++i) {
+        if (regs[i].tag != ValueTag::kString) throw RuntimeError("CONCAT_N type mismatch");
+        s += regs[i].AsString()->value;
+    }
+    StringObject* obj = vm.heap_.AllocateString(s, vm.options_.gc_log, vm.Roots());
+    vm.reg(ins.a, 0) = Value::FromRaw(obj, ValueTag::kString);
+}
+
+void Vm::H_RStrAppend(Vm& vm, const Instruction& ins) {
+    const Value& dst = vm.reg(ins.a, 0);
+    const Value& tail = vm.reg(ins.a, 1);
+    if (dst.tag != ValueTag::kString || tail.tag != ValueTag::kString) throw RuntimeError("ADD type mismatch");
+    vm.heap_.AppendString(dst.AsString(), tail.AsString()->value);
+}
@@ -17,6 +17,8 @@ struct VmOptions {
     bool trace = false;
     bool jit_log = false;
     bool gc_log = false;
+    // если не пусто — после run() сюда пишутся счётчики вызовов и переходов
+    std::string profile_out;
 };
 
 struct CallFrame {
@@ -25,6 +27,8 @@ struct CallFrame {
     std::uint32_t return_ip = 0;
     std::size_t base_stack_size = 0;
     std::vector<Value> locals;
+    // Регистр вызывающей функции, куда R_CALL ждёт результат; -1 — результат кладётся на стек.
+    std::int32_t ret_reg = -1;
 };
 
 class Vm {
@@ -60,7 +64,9 @@ private:
     static constexpr std::uint32_t kBuiltinEntryIp = 0xFFFFFFFFu;
     static constexpr std::uint32_t kGlobalFuncIndex = 0xFFFFFFFFu;
     static constexpr std::uint32_t kHotFuncThreshold = 50;
-    static constexpr std::size_t kOpCount = static_cast<std::size_t>(OpCode::kKva) + 1;
+    // Вынесенный компилятором код верхнего уровня: вызывается один раз, но держит циклы программы.
+    static constexpr std::string_view kMainFuncName = "__main__";
+    static constexpr std::size_t kOpCount = static_cast<std::size_t>(OpCode::kRStrAppend) + 1;
 
     const BytecodeModule& module_;
     VmOptions options_;
@@ -74,12 +80,19 @@ private:
     std::vector<std::uint8_t> globals_set_;
 
     std::vector<CallFrame> frames_;
+    // Буферы локальных переменных завершённых кадров: следующий вызов берёт готовый.
+    std::vector<std::vector<Value>> spare_locals_;
     std::vector<Value> temp_roots_;
 
     std::vector<std::uint32_t> func_end_ip_;
     std::vector<std::uint32_t> hot_counters_;
     std::unordered_map<std::uint32_t, CompiledFunc> code_cache_;
 
+    bool profiling_ = false;
+    std::vector<std::uint64_t> profile_calls_;
+    std::vector<std::uint64_t> profile_taken_;
+    std::vector<std::uint64_t> profile_not_taken_;
+
     void BuildConstValues();
     void BuildFuncRanges();
     Heap::RootsEnumerator Roots() const;
@@ -92,6 +105,8 @@ private:
 
     CallFrame& frame();
     const CallFrame& frame() const;
+    // Регистр текущего кадра из байта n упакованного операнда.
+    Value& reg(std::uint32_t packed, int n);
 
     void step();
     void run_jit(CompiledFunc& cf);
@@ -124,8 +139,14 @@ private:
     Value not_value(const Value& v) const;
 
     void call_function(std::uint32_t func_index, std::uint16_t argc);
+    void call_function_regs(std::uint32_t func_index, std::uint32_t first, std::uint32_t argc);
+    CallFrame enter_frame(std::uint32_t func_index, std::size_t base_stack_size);
     void ret_from_function();
 
+    void record_branch(bool taken);
+    void jump_unless(const Instruction& ins, const Value& cond);
+    void write_profile() const;
+
     void maybe_jit_compile(std::uint32_t func_index);
     bool jit_compile(std::uint32_t func_index);
 
@@ -166,5 +187,89 @@ private:
     static void H_NewArraySized(Vm& vm, const Instruction& ins);
     static void H_LoadIndex(Vm& vm, const Instruction& ins);
     static void H_StoreIndex(Vm& vm, const Instruction& ins);
+    static void H_LoadIndexUnchecked(Vm& vm, const Instruction& ins);
+    static void H_StoreIndexUnchecked(Vm& vm, const Instruction& ins);
+    static void H_FreeLocal(Vm& vm, const Instruction& ins);
+    static void H_JumpTrue(Vm& vm, const Instruction& ins);
+    static void H_Dup(Vm& vm, const Instruction& ins);
+    static void H_ConcatN(Vm& vm, const Instruction& ins);
+    static void H_StrBuilder(Vm& vm, const Instruction& ins);
+    static void H_StrAppend(Vm& vm, const Instruction& ins);
+    static void H_AddI64(Vm& vm, const Instruction& ins);
+    static void H_SubI64(Vm& vm, const Instruction& ins);
+    static void H_LtI64(Vm& vm, const Instruction& ins);
+    static void H_LeI64(Vm& vm, const Instruction& ins);
+    static void H_GtI64(Vm& vm, const Instruction& ins);
+    static void H_GeI64(Vm& vm, const Instruction& ins);
+    static void H_IncLocalI64(Vm& vm, const Instruction& ins);
+    static void H_IncLocal(Vm& vm, const Instruction& ins);
+    static void H_Load2Local(Vm& vm, const Instruction& ins);
+    static void H_LoadLocalIndex(Vm& vm, const Instruction& ins);
+    static void H_LoadLocalIndexUnchecked(Vm& vm, const Instruction& ins);
+    static void H_LtJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_LeJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_GtJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_GeJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_EqJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_NeqJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_AddInt(Vm& vm, const Instruction& ins);
+    static void H_SubInt(Vm& vm, const Instruction& ins);
+    static void H_MulInt(Vm& vm, const Instruction& ins);
+    static void H_AddFloat(Vm& vm, const Instruction& ins);
+    static void H_SubFloat(Vm& vm, const Instruction& ins);
+    static void H_MulFloat(Vm& vm, const Instruction& ins);
+    static void H_DivFloat(Vm& vm, const Instruction& ins);
+    static void H_ConcatStr(Vm& vm, const Instruction& ins);
+    static void H_LtInt(Vm& vm, const Instruction& ins);
+    static void H_LeInt(Vm& vm, const Instruction& ins);
+    static void H_GtInt(Vm& vm, const Instruction& ins);
+    static void H_GeInt(Vm& vm, const Instruction& ins);
+    static void H_EqInt(Vm& vm, const Instruction& ins);
+    static void H_NeqInt(Vm& vm, const Instruction& ins);
+    static void H_LtFloat(Vm& vm, const Instruction& ins);
+    static void H_LeFloat(Vm& vm, const Instruction& ins);
+    static void H_GtFloat(Vm& vm, const Instruction& ins);
+    static void H_GeFloat(Vm& vm, const Instruction& ins);
+    static void H_EqStr(Vm& vm, const Instruction& ins);
+    static void H_NeqStr(Vm& vm, const Instruction& ins);
     static void H_Kva(Vm& vm, const Instruction& ins);
+
+    static void H_RMove(Vm& vm, const Instruction& ins);
+    static void H_RLoadK(Vm& vm, const Instruction& ins);
+    static void H_RLoadGlobal(Vm& vm, const Instruction& ins);
+    static void H_RStoreGlobal(Vm& vm, const Instruction& ins);
+    static void H_RAdd(Vm& vm, const Instruction& ins);
+    static void H_RSub(Vm& vm, const Instruction& ins);
+    static void H_RMul(Vm& vm, const Instruction& ins);
+    static void H_RDiv(Vm& vm, const Instruction& ins);
+    static void H_RMod(Vm& vm, const Instruction& ins);
+    static void H_REq(Vm& vm, const Instruction& ins);
+    static void H_RNeq(Vm& vm, const Instruction& ins);
+    static void H_RLt(Vm& vm, const Instruction& ins);
+    static void H_RLe(Vm& vm, const Instruction& ins);
+    static void H_RGt(Vm& vm, const Instruction& ins);
+    static void H_RGe(Vm& vm, const Instruction& ins);
+    static void H_RAnd(Vm& vm, const Instruction& ins);
+    static void H_ROr(Vm& vm, const Instruction& ins);
+    static void H_RNeg(Vm& vm, const Instruction& ins);
+    static void H_RNot(Vm& vm, const Instruction& ins);
+    static void H_RAddI(Vm& vm, const Instruction& ins);
+    static void H_RJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RJumpTrue(Vm& vm, const Instruction& ins);
+    static void H_RLtJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RLeJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RGtJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RGeJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_REqJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RNeqJumpFalse(Vm& vm, const Instruction& ins);
+    static void H_RCall(Vm& vm, const Instruction& ins);
+    static void H_RRet(Vm& vm, const Instruction& ins);
+    static void H_RNewArray(Vm& vm, const Instruction& ins);
+    static void H_RNewArraySized(Vm& vm, const Instruction& ins);
+    static void H_RLoadIndex(Vm& vm, const Instruction& ins);
+    static void H_RLoadIndexUnchecked(Vm& vm, const Instruction& ins);
+    static void H_RStoreIndex(Vm& vm, const Instruction& ins);
+    static void H_RStoreIndexUnchecked(Vm& vm, const Instruction& ins);
+    static void H_RConcatN(Vm& vm, const Instruction& ins);
+    static void H_RStrAppend(Vm& vm, const Instruction& ins);
 };
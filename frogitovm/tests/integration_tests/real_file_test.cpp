@@ -80,6 +80,7 @@ std::uint8_t ConstTagByte(ConstTag tag) {
         case ConstTag::kFloat: return 2;
         case ConstTag::kBool: return 3;
         case ConstTag::kString: return 4;
+        case ConstTag::kBigInt: return 5;
     }
     return 0;
 }
@@ -120,7 +121,8 @@ std::filesystem::path WriteModuleToFile(const BytecodeModule& module, const std:
             case ConstTag::kBool:
                 out.put(std::get<bool>(c.value) ? 1 : 0);
                 break;
-            case ConstTag::kString: {
+            case ConstTag::kString:
+            case ConstTag::kBigInt: {
                 const auto& s = std::get<std::string>(c.value);
                 WriteU32(out, static_cast<std::uint32_t>(s.size()));
                 out.write(s.data(), static_cast<std::streamsize>(s.size()));
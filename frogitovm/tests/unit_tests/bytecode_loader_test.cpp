@@ -52,6 +52,13 @@ EncodedModule EncodeModule(const BytecodeModule& module, std::uint16_t version =
     AppendU32(out, static_cast<std::uint32_t>(module.const_pool.size()));
     AppendU32(out, static_cast<std::uint32_t>(module.functions.size()));
     AppendU32(out, static_cast<std::uint32_t>(module.code.size()));
+    if (version >= 3) {
+        AppendU32(out, static_cast<std::uint32_t>(module.globals.size()));
+        for (const GlobalInfo& g : module.globals) {
+            AppendString(out, g.name);
+            out.push_back(static_cast<std::uint8_t>(g.type));
+        }
+    }
 
     encoded.const_offset = out.size();
     for (const Constant& c : module.const_pool) {
@@ -67,6 +74,7 @@ EncodedModule EncodeModule(const BytecodeModule& module, std::uint16_t version =
                 out.push_back(static_cast<std::uint8_t>(std::get<bool>(c.value) ? 1 : 0));
                 break;
             case ConstTag::kString:
+            case ConstTag::kBigInt:
                 AppendString(out, std::get<std::string>(c.value));
                 break;
         }
@@ -82,6 +90,10 @@ EncodedModule EncodeModule(const BytecodeModule& module, std::uint16_t version =
         for (TypeTag pt : f.param_types) {
             out.push_back(static_cast<std::uint8_t>(pt));
         }
+        if (version >= 4) {
+            AppendU16(out, f.max_stack);
+            out.push_back(f.flags);
+        }
     }
 
     encoded.code_offset = out.size();
@@ -247,12 +259,126 @@ TEST(BytecodeLoaderTest, ThrowsOnBadMagic) {
 }
 
 TEST(BytecodeLoaderTest, ThrowsOnUnsupportedVersion) {
-    auto encoded = EncodeModule(MakeMinimalModule(), 2);
+    auto encoded = EncodeModule(MakeMinimalModule(), kFrogcVersion + 1);
     auto path = WriteModuleToTemp(encoded, "bad_version.frogc");
     EXPECT_THROW(load_frogc(path), std::runtime_error);
     RemovePath(path);
 }
 
+TEST(BytecodeLoaderTest, TypedOpcodesRequireVersion2) {
+    BytecodeModule module = MakeMinimalModule();
+    module.code = {MakeInstruction(OpCode::kAddInt)};
+
+    auto v1 = WriteModuleToTemp(EncodeModule(module, 1), "typed_v1.frogc");
+    EXPECT_THROW(load_frogc(v1), std::runtime_error);
+    RemovePath(v1);
+
+    auto v2 = WriteModuleToTemp(EncodeModule(module, 2), "typed_v2.frogc");
+    BytecodeModule loaded = load_frogc(v2);
+    ASSERT_EQ(loaded.code.size(), 1u);
+    EXPECT_EQ(loaded.code[0].op, OpCode::kAddInt);
+    RemovePath(v2);
+}
+
+TEST(BytecodeLoaderTest, LegacyGlobalNamesBecomeSlots) {
+    auto path = WriteModuleToTemp(EncodeModule(MakeBaselineModule(), 2), "legacy_globals.frogc");
+    BytecodeModule loaded = load_frogc(path);
+
+    ASSERT_EQ(loaded.globals.size(), 1u);
+    EXPECT_EQ(loaded.globals[0].name, "msg");
+    EXPECT_EQ(loaded.code[1].a, 0u);
+    EXPECT_EQ(loaded.code[4].a, 0u);
+    RemovePath(path);
+}
+
+TEST(BytecodeLoaderTest, LegacyGlobalNameMustBeString) {
+    BytecodeModule module = MakeBaselineModule();
+    module.code[1].a = 3u;
+    auto path = WriteModuleToTemp(EncodeModule(module, 2), "legacy_global_int.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+}
+
+TEST(BytecodeLoaderTest, ReadsGlobalTable) {
+    BytecodeModule module = MakeBaselineModule();
+    module.globals = {GlobalInfo{"count", TypeTag::kInt}, GlobalInfo{"msg", TypeTag::kString}};
+    module.code[1].a = 1u;
+    module.code[4].a = 1u;
+
+    auto path = WriteModuleToTemp(EncodeModule(module, 3), "globals_v3.frogc");
+    BytecodeModule loaded = load_frogc(path);
+    ASSERT_EQ(loaded.globals.size(), 2u);
+    EXPECT_EQ(loaded.globals[0].name, "count");
+    EXPECT_EQ(loaded.globals[1].type, TypeTag::kString);
+    EXPECT_EQ(loaded.code[1].a, 1u);
+    EXPECT_EQ(std::get<std::string>(loaded.const_pool[2].value), "msg");
+    RemovePath(path);
+
+    module.code[4].a = 2u;
+    path = WriteModuleToTemp(EncodeModule(module, 3), "globals_v3_bad_slot.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+}
+
+TEST(BytecodeLoaderTest, ReadsFunctionMetadata) {
+    BytecodeModule module = MakeBaselineModule();
+    module.globals = {GlobalInfo{"msg", TypeTag::kString}};
+    module.code[1].a = 0u;
+    module.code[4].a = 0u;
+    module.functions[0].max_stack = 3;
+    auto path = WriteModuleToTemp(EncodeModule(module, 4), "metadata_v4.frogc");
+    BytecodeModule loaded = load_frogc(path);
+    EXPECT_EQ(loaded.functions[0].max_stack, 3u);
+    EXPECT_EQ(loaded.functions[0].flags, 0u);
+    EXPECT_EQ(loaded.functions[1].return_type, TypeTag::kVoid);
+    RemovePath(path);
+
+    path = WriteModuleToTemp(EncodeModule(module, 3), "metadata_v3.frogc");
+    loaded = load_frogc(path);
+    EXPECT_EQ(loaded.functions[0].max_stack, 0u);
+    EXPECT_EQ(loaded.functions[0].flags, 0u);
+    RemovePath(path);
+
+    module.functions[1].flags = 0x02;
+    path = WriteModuleToTemp(EncodeModule(module, 4), "metadata_bad_flags.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+}
+
+TEST(BytecodeLoaderTest, RegisterOpsRequireVersion5AndRegisterFunction) {
+    BytecodeModule module = MakeMinimalModule();
+    module.functions[0].local_count = 2;
+    module.functions[0].return_type = TypeTag::kString;
+    module.functions[0].flags = kFuncRegisters;
+    module.code = {
+        MakeInstruction(OpCode::kRLoadK, 0u, static_cast<std::uint16_t>(1)),
+        MakeInstruction(OpCode::kRRet, std::nullopt, static_cast<std::uint16_t>(1)),
+    };
+
+    auto path = WriteModuleToTemp(EncodeModule(module, 5), "registers_v5.frogc");
+    BytecodeModule loaded = load_frogc(path);
+    EXPECT_EQ(loaded.code[0].op, OpCode::kRLoadK);
+    EXPECT_EQ(loaded.functions[0].flags, kFuncRegisters);
+    RemovePath(path);
+
+    path = WriteModuleToTemp(EncodeModule(module, 4), "registers_v4.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+
+    // регистр за пределами кадра
+    module.code[1].b = 2;
+    path = WriteModuleToTemp(EncodeModule(module, 5), "registers_out_of_range.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+
+    // регистровая операция в стековой функции
+    module.code[1].b = 1;
+    module.functions[0].flags = 0;
+    path = WriteModuleToTemp(EncodeModule(module, 5), "registers_stack_function.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+}
+
 TEST(BytecodeLoaderTest, ThrowsOnInvalidConstTag) {
     auto encoded = EncodeModule(MakeMinimalModule());
     encoded.bytes[encoded.const_offset] = 99;
@@ -261,6 +387,14 @@ TEST(BytecodeLoaderTest, ThrowsOnInvalidConstTag) {
     RemovePath(path);
 }
 
+TEST(BytecodeLoaderTest, ThrowsOnMalformedBigIntConst) {
+    BytecodeModule module = MakeMinimalModule();
+    module.const_pool.push_back(Constant{ConstTag::kBigInt, std::string("12x4")});
+    auto path = WriteModuleToTemp(EncodeModule(module), "bad_bigint.frogc");
+    EXPECT_THROW(load_frogc(path), std::runtime_error);
+    RemovePath(path);
+}
+
 TEST(BytecodeLoaderTest, ThrowsOnInvalidTypeTag) {
     auto encoded = EncodeModule(MakeMinimalModule());
     encoded.bytes[ReturnTypeOffset(encoded)] = 99;
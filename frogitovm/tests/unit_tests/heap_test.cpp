@@ -94,3 +94,18 @@ TEST(HeapTest, GarbageCollectorTraversesArrays) {
     ASSERT_EQ(arr->elements.size(), 1u);
     EXPECT_EQ(arr->elements[0].AsString(), nested);
 }
+
+TEST(HeapTest, ReleaseDropsArrayElementsImmediately) {
+    Heap heap;
+    std::vector<Value> roots;
+    auto roots_enum = MakeRoots(roots);
+
+    ArrayObject* arr = heap.AllocateArray(1000, false, roots_enum);
+    std::size_t before = heap.heap_bytes_for_testing();
+    heap.Release(arr);
+
+    EXPECT_TRUE(arr->elements.empty());
+    EXPECT_EQ(heap.heap_bytes_for_testing(), before - sizeof(Value) * 1000);
+    EXPECT_EQ(heap.released_count_for_testing(), 1u);
+    EXPECT_EQ(heap.object_count_for_testing(), 1u);
+}
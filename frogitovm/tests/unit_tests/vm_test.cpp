@@ -1,6 +1,9 @@
 #include <gtest/gtest.h>
 
+#include <filesystem>
+#include <fstream>
 #include <optional>
+#include <sstream>
 #include <string>
 #include <limits>
 
@@ -88,6 +91,7 @@ TEST(VmTest, StoresAndLoadsGlobal) {
         MakeStringConst("x"),
         MakeIntConst(7),
     };
+    module.globals = {GlobalInfo{"x", TypeTag::kInt}};
     module.code = {
         MakeIns(OpCode::kPushConst, 1u),
         MakeIns(OpCode::kStoreGlobal, 0u),
@@ -111,6 +115,7 @@ TEST(VmTest, LoadGlobalMissingThrows) {
     module.const_pool = {
         MakeStringConst("missing"),
     };
+    module.globals = {GlobalInfo{"missing", TypeTag::kInt}};
     module.code = {
         MakeIns(OpCode::kLoadGlobal, 0u),
     };
@@ -119,33 +124,20 @@ TEST(VmTest, LoadGlobalMissingThrows) {
     ExpectRuntimeError(vm, "unknown global");
 }
 
-TEST(VmTest, StoreGlobalRequiresStringName) {
-    BytecodeModule module;
-    module.const_pool = {
-        MakeIntConst(42),
-    };
-    module.code = {
-        MakeIns(OpCode::kPushConst, 0u),
-        MakeIns(OpCode::kStoreGlobal, 0u),
-    };
-
-    Vm vm(module, {});
-    ExpectRuntimeError(vm, "const is not string");
-}
-
-TEST(VmTest, GlobalNameConstIndexOutOfRange) {
+TEST(VmTest, GlobalSlotOutOfRange) {
     BytecodeModule module;
     module.const_pool = {
         MakeStringConst("x"),
         MakeIntConst(5),
     };
+    module.globals = {GlobalInfo{"x", TypeTag::kInt}};
     module.code = {
         MakeIns(OpCode::kPushConst, 1u),
         MakeIns(OpCode::kStoreGlobal, 5u),
     };
 
     Vm vm(module, {});
-    ExpectRuntimeError(vm, "const index out of range");
+    ExpectRuntimeError(vm, "slot out of range");
 }
 
 TEST(VmTest, PushConstInvalidIndexThrows) {
@@ -193,6 +185,25 @@ TEST(VmTest, PushConstSupportsFloatAndBool) {
     EXPECT_TRUE(vm.stack()[1].AsBool());
 }
 
+TEST(VmTest, PushConstSupportsBigInt) {
+    BytecodeModule module;
+    module.const_pool = {
+        Constant{ConstTag::kBigInt, std::string("2432902008176640000")},
+        Constant{ConstTag::kBigInt, std::string("-1000000000000000000000")},
+    };
+    module.code = {
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kPushConst, 1u),
+    };
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+
+    ASSERT_EQ(vm.stack().size(), 2u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 2432902008176640000LL);
+    EXPECT_EQ(vm.stack()[1].AsInt().ToString(), "-1000000000000000000000");
+}
+
 TEST(VmTest, CallsUserFunctionAndHandlesLocals) {
     BytecodeModule module;
     module.const_pool = {
@@ -223,6 +234,40 @@ TEST(VmTest, CallsUserFunctionAndHandlesLocals) {
     EXPECT_EQ(AsInt64(vm.stack()[0]), 12);
 }
 
+TEST(VmTest, ReusedFrameStartsWithNullLocals) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("swap_in"),
+        MakeIntConst(5),
+        MakeIntConst(7),
+    };
+    module.code = {
+        MakeIns(OpCode::kJump, 0u),
+    };
+    const std::uint32_t func_entry = static_cast<std::uint32_t>(module.code.size());
+    module.code.push_back(MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(1)));
+    module.code.push_back(MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kStoreLocal, std::nullopt, static_cast<std::uint16_t>(1)));
+    module.code.push_back(MakeIns(OpCode::kRet));
+    const std::uint32_t global_start = static_cast<std::uint32_t>(module.code.size());
+    module.code[0].a = global_start;
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(1)));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 2u));
+    module.code.push_back(MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(1)));
+
+    FunctionInfo fn = MakeFunctionInfo(0u, 1, 2, func_entry, TypeTag::kInt);
+    fn.max_stack = 2;
+    module.functions.push_back(fn);
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    // второй вызов получает буфер первого, но слот 1 снова пуст
+    ASSERT_EQ(vm.stack().size(), 2u);
+    EXPECT_EQ(vm.stack()[0].tag, ValueTag::kNull);
+    EXPECT_EQ(vm.stack()[1].tag, ValueTag::kNull);
+}
+
 TEST(VmTest, CallMissingOperandsThrows) {
     BytecodeModule module;
     module.code = {
@@ -436,6 +481,7 @@ TEST(VmTest, StoreGlobalMissingOperandThrows) {
         MakeStringConst("x"),
         MakeIntConst(1),
     };
+    module.globals = {GlobalInfo{"x", TypeTag::kInt}};
     Instruction store = MakeIns(OpCode::kStoreGlobal, 0u);
     store.has_a = false;
     module.code = {
@@ -452,6 +498,7 @@ TEST(VmTest, LoadGlobalMissingOperandThrows) {
     module.const_pool = {
         MakeStringConst("x"),
     };
+    module.globals = {GlobalInfo{"x", TypeTag::kInt}};
     Instruction load = MakeIns(OpCode::kLoadGlobal, 0u);
     load.has_a = false;
     module.code = {load};
@@ -515,6 +562,264 @@ TEST(VmTest, JumpFalseDoesNotBranchOnTrue) {
     EXPECT_EQ(AsInt64(vm.stack()[0]), 1);
 }
 
+TEST(VmTest, DupAndJumpTrueShortCircuitOr) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeBoolConst(true),
+        MakeBoolConst(false),
+    };
+    module.code = {
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kDup),
+        MakeIns(OpCode::kJumpTrue, 5u),
+        MakeIns(OpCode::kPop),            // skipped
+        MakeIns(OpCode::kPushConst, 1u),  // skipped
+        MakeIns(OpCode::kPushConst, 1u),
+    };
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 2u);
+    EXPECT_TRUE(vm.stack()[0].AsBool());
+    EXPECT_FALSE(vm.stack()[1].AsBool());
+}
+
+TEST(VmTest, ConcatNJoinsStrings) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("ab"),
+        MakeStringConst("c"),
+    };
+    module.code = {
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kConcatN, std::nullopt, static_cast<std::uint16_t>(3)),
+    };
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 1u);
+    EXPECT_EQ(vm.stack()[0].AsString()->value, "abcab");
+}
+
+TEST(VmTest, StrAppendDoesNotTouchSharedConstant) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("s"),
+        MakeStringConst("x"),
+    };
+    module.code.push_back(MakeIns(OpCode::kJump, 0u));
+    const std::uint32_t func_entry = static_cast<std::uint32_t>(module.code.size());
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kStoreLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kStrBuilder, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kStrAppend, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kStrAppend, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kRet));
+    const std::uint32_t global_start = static_cast<std::uint32_t>(module.code.size());
+    module.code[0].a = global_start;
+    module.code.push_back(MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+
+    module.functions.push_back(MakeFunctionInfo(0u, 0, 1, func_entry, TypeTag::kString));
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 2u);
+    EXPECT_EQ(vm.stack()[0].AsString()->value, "xxx");
+    EXPECT_EQ(vm.stack()[1].AsString()->value, "x");
+}
+
+TEST(VmTest, I64OpsComputeInPlace) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("f"),
+        MakeIntConst(5),
+        MakeIntConst(7),
+    };
+    module.code = {
+        MakeIns(OpCode::kJump, 4u),
+        MakeIns(OpCode::kIncLocalI64, static_cast<std::uint32_t>(-3), static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kRet),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kAddI64),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(1)),
+        MakeIns(OpCode::kSubI64),
+        MakeIns(OpCode::kDup),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kLtI64),
+    };
+    module.functions.push_back(MakeFunctionInfo(0u, 1, 1, 1u, TypeTag::kInt));
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 2u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 10);
+    EXPECT_FALSE(vm.stack()[1].AsBool());
+}
+
+TEST(VmTest, SuperinstructionsMatchUnfusedSequences) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("f"),
+        MakeIntConst(1),
+        MakeIntConst(2),
+        MakeIntConst(3),
+    };
+    // f(i): a = [1, 2, 3]; while (i < 3) i = i + 1; i = i - 1; if (i != i) {} return a[i]
+    module.code = {
+        MakeIns(OpCode::kJump, 17u),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kNewArray, std::nullopt, static_cast<std::uint16_t>(3)),
+        MakeIns(OpCode::kStoreLocal, std::nullopt, static_cast<std::uint16_t>(1)),
+        MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kLtJumpFalse, 11u),
+        MakeIns(OpCode::kIncLocal, 1u, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kJump, 6u),
+        MakeIns(OpCode::kIncLocal, static_cast<std::uint32_t>(-1), static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kLoadLocalIndex, 1u, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kLoad2Local, 0u, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kNeqJumpFalse, 16u),
+        MakeIns(OpCode::kPop),
+        MakeIns(OpCode::kRet),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(1)),
+    };
+    module.functions.push_back(MakeFunctionInfo(0u, 1, 2, 1u, TypeTag::kInt));
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 1u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 3);
+}
+
+TEST(VmTest, TypedOpsSkipTagDispatch) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeIntConst(6),
+        MakeIntConst(4),
+        MakeFloatConst(1.5),
+        MakeStringConst("ab"),
+        MakeStringConst("cd"),
+    };
+    module.code = {
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kMulInt),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kSubInt),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kDivFloat),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kPushConst, 4u),
+        MakeIns(OpCode::kConcatStr),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kNeqStr),
+        MakeIns(OpCode::kPushConst, 0u),
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kGeInt),
+    };
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 4u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 20);
+    EXPECT_DOUBLE_EQ(vm.stack()[1].AsFloat(), 1.0);
+    EXPECT_TRUE(vm.stack()[2].AsBool());
+    EXPECT_TRUE(vm.stack()[3].AsBool());
+}
+
+TEST(VmTest, RegisterFunctionRunsWithoutOperandStack) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("f"),
+        MakeIntConst(0),
+        MakeIntConst(2),
+        MakeIntConst(5),
+        MakeStringConst("len"),
+        MakeStringConst("g"),
+    };
+    auto regs = [](std::uint32_t d, std::uint32_t s1, std::uint32_t s2 = 0) { return d | s1 << 8 | s2 << 16; };
+    // f(n): s = 0; i = 0; while (i < n) { s = s + i * 2; i = i + 1; } return s + g(len([s, i]))
+    // регистры: r0 = n, r1 = s, r2 = i, r3 — временный, r4 = 2
+    module.code = {
+        MakeIns(OpCode::kJump, 16u),
+        MakeIns(OpCode::kRLoadK, 1u, static_cast<std::uint16_t>(1)),
+        MakeIns(OpCode::kRLoadK, 1u, static_cast<std::uint16_t>(2)),
+        MakeIns(OpCode::kRLoadK, 2u, static_cast<std::uint16_t>(4)),
+        MakeIns(OpCode::kRLtJumpFalse, 9u, static_cast<std::uint16_t>(2 | 0 << 8)),
+        MakeIns(OpCode::kRMul, regs(3, 2, 4)),
+        MakeIns(OpCode::kRAdd, regs(1, 1, 3)),
+        MakeIns(OpCode::kRAddI, regs(2, 2, 1)),
+        MakeIns(OpCode::kJump, 4u),
+        MakeIns(OpCode::kRNewArray, regs(3, 1, 2)),
+        MakeIns(OpCode::kRCall, 1u, static_cast<std::uint16_t>(3 | 1 << 8)),
+        MakeIns(OpCode::kRCall, 2u, static_cast<std::uint16_t>(3 | 1 << 8)),
+        MakeIns(OpCode::kRAdd, regs(1, 1, 3)),
+        MakeIns(OpCode::kRRet, std::nullopt, static_cast<std::uint16_t>(1)),
+        // g(x) — стековая функция
+        MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kRet),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(1)),
+    };
+    FunctionInfo f = MakeFunctionInfo(0u, 1, 5, 1u, TypeTag::kInt);
+    f.max_stack = 1;
+    f.flags = kFuncRegisters;
+    module.functions.push_back(f);
+    module.functions.push_back(MakeFunctionInfo(4u, 1, 0, kBuiltinEntryIp, TypeTag::kInt));
+    module.functions.push_back(MakeFunctionInfo(5u, 1, 1, 14u, TypeTag::kInt));
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 1u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 22);
+}
+
+TEST(VmTest, ProfileOutCountsCallsAndBranches) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("f"),
+        MakeBoolConst(true),
+        MakeBoolConst(false),
+    };
+    module.code = {
+        MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(0)),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kJumpFalse, 5u),
+        MakeIns(OpCode::kJump, 7u),
+        MakeIns(OpCode::kJump, 7u),
+        MakeIns(OpCode::kRet),  // f
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kJumpFalse, 7u),
+    };
+    module.functions.push_back(MakeFunctionInfo(0u, 0, 0, 6u, TypeTag::kVoid));
+
+    std::filesystem::path out = std::filesystem::temp_directory_path() / "frog_vm_profile_test.txt";
+    VmOptions opts;
+    opts.profile_out = out.string();
+    Vm vm(module, opts);
+    EXPECT_EQ(vm.run(), 0);
+
+    std::ifstream in(out);
+    std::stringstream text;
+    text << in.rdbuf();
+    std::filesystem::remove(out);
+    EXPECT_EQ(text.str(), "frogprof 1\ncall 0 2\njump 3 1 0\njump 8 0 1\n");
+}
+
 TEST(VmTest, NewArrayLoadAndStoreIndexWorks) {
     BytecodeModule module;
     module.const_pool = {
@@ -524,6 +829,7 @@ TEST(VmTest, NewArrayLoadAndStoreIndexWorks) {
         MakeIntConst(1),
         MakeIntConst(99),
     };
+    module.globals = {GlobalInfo{"arr", TypeTag::kArray}};
     module.code = {
         MakeIns(OpCode::kPushConst, 1u),
         MakeIns(OpCode::kPushConst, 2u),
@@ -548,6 +854,66 @@ TEST(VmTest, NewArrayLoadAndStoreIndexWorks) {
     EXPECT_EQ(AsInt64(vm.stack()[1]), 99);
 }
 
+TEST(VmTest, UncheckedIndexOpcodesWork) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("arr"),
+        MakeIntConst(10),
+        MakeIntConst(20),
+        MakeIntConst(1),
+        MakeIntConst(99),
+    };
+    module.globals = {GlobalInfo{"arr", TypeTag::kArray}};
+    module.code = {
+        MakeIns(OpCode::kPushConst, 1u),
+        MakeIns(OpCode::kPushConst, 2u),
+        MakeIns(OpCode::kNewArray, std::nullopt, static_cast<std::uint16_t>(2)),
+        MakeIns(OpCode::kStoreGlobal, 0u),
+        MakeIns(OpCode::kLoadGlobal, 0u),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kPushConst, 4u),
+        MakeIns(OpCode::kStoreIndexUnchecked),
+        MakeIns(OpCode::kLoadGlobal, 0u),
+        MakeIns(OpCode::kPushConst, 3u),
+        MakeIns(OpCode::kLoadIndexUnchecked),
+    };
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 1u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 99);
+}
+
+TEST(VmTest, FreeLocalClearsArraySlot) {
+    BytecodeModule module;
+    module.const_pool = {
+        MakeStringConst("scratch"),
+        MakeIntConst(7),
+    };
+    module.code.push_back(MakeIns(OpCode::kJump, 0u));
+    const std::uint32_t func_entry = static_cast<std::uint32_t>(module.code.size());
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kNewArray, std::nullopt, static_cast<std::uint16_t>(1)));
+    module.code.push_back(MakeIns(OpCode::kStoreLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kLoadLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kPop));
+    module.code.push_back(MakeIns(OpCode::kPop));
+    module.code.push_back(MakeIns(OpCode::kPushConst, 1u));
+    module.code.push_back(MakeIns(OpCode::kFreeLocal, std::nullopt, static_cast<std::uint16_t>(0)));
+    module.code.push_back(MakeIns(OpCode::kRet));
+    const std::uint32_t global_start = static_cast<std::uint32_t>(module.code.size());
+    module.code[0].a = global_start;
+    module.code.push_back(MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(0)));
+
+    module.functions.push_back(MakeFunctionInfo(0u, 0, 1, func_entry, TypeTag::kInt));
+
+    Vm vm(module, {});
+    EXPECT_EQ(vm.run(), 0);
+    ASSERT_EQ(vm.stack().size(), 1u);
+    EXPECT_EQ(AsInt64(vm.stack()[0]), 7);
+}
+
 TEST(VmTest, NewArrayMissingOperandThrows) {
     BytecodeModule module;
     module.code = {
@@ -582,6 +948,7 @@ TEST(VmTest, StoreIndexOutOfBoundsThrows) {
         MakeIntConst(0),
         MakeIntConst(1),
     };
+    module.globals = {GlobalInfo{"arr", TypeTag::kArray}};
     module.code = {
         MakeIns(OpCode::kPushConst, 1u),
         MakeIns(OpCode::kNewArray, std::nullopt, static_cast<std::uint16_t>(1)),
@@ -645,21 +1012,22 @@ TEST(VmTest, BuiltinNewArrayBoolAndPushInt) {
         MakeIntConst(5),
         MakeIntConst(2),
     };
+    module.globals = {GlobalInfo{"arr", TypeTag::kArray}};
     module.functions.push_back(MakeBuiltinFunction(0u, 2, TypeTag::kArray));
     module.functions.push_back(MakeBuiltinFunction(1u, 2, TypeTag::kArray));
     module.code = {
         MakeIns(OpCode::kPushConst, 3u),
         MakeIns(OpCode::kPushConst, 4u),
         MakeIns(OpCode::kCall, 0u, static_cast<std::uint16_t>(2)),
-        MakeIns(OpCode::kStoreGlobal, 2u),
-        MakeIns(OpCode::kLoadGlobal, 2u),
+        MakeIns(OpCode::kStoreGlobal, 0u),
+        MakeIns(OpCode::kLoadGlobal, 0u),
         MakeIns(OpCode::kPushConst, 5u),
         MakeIns(OpCode::kLoadIndex),
-        MakeIns(OpCode::kLoadGlobal, 2u),
+        MakeIns(OpCode::kLoadGlobal, 0u),
         MakeIns(OpCode::kPushConst, 6u),
         MakeIns(OpCode::kCall, 1u, static_cast<std::uint16_t>(2)),
-        MakeIns(OpCode::kStoreGlobal, 2u),
-        MakeIns(OpCode::kLoadGlobal, 2u),
+        MakeIns(OpCode::kStoreGlobal, 0u),
+        MakeIns(OpCode::kLoadGlobal, 0u),
         MakeIns(OpCode::kPushConst, 7u),
         MakeIns(OpCode::kLoadIndex),
     };
@@ -0,0 +1,73 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+
+/**
+ * Старый адрес → новый для прохода, который удаляет, сливает или переставляет инструкции.
+ * <p>
+ * Длина на единицу больше исходного кода: последний элемент — адрес конца. Проход назначает
+ * адреса оставшимся инструкциям через {@link #set}, а {@link #finish} отдаёт каждой
+ * удалённой адрес следующей оставшейся.
+ * </p>
+ */
+final class AddressMap {
+
+    private final int[] map;
+
+    /** Пустое отображение кода длины {@code size}: адреса ещё не назначены. */
+    AddressMap(int size) {
+        map = new int[size + 1];
+        Arrays.fill(map, -1);
+    }
+
+    static AddressMap identity(int size) {
+        AddressMap m = new AddressMap(size);
+        for (int i = 0; i <= size; i++) m.map[i] = i;
+        return m;
+    }
+
+    void set(int oldIp, int newIp) {
+        map[oldIp] = newIp;
+    }
+
+    /** Новый адрес инструкции с адресом {@code oldIp}. */
+    int get(int oldIp) {
+        return map[oldIp];
+    }
+
+    /** Назначает адрес конца {@code newSize} и заполняет пропуски адресами следующих инструкций. */
+    void finish(int newSize) {
+        map[map.length - 1] = newSize;
+        for (int i = map.length - 2; i >= 0; i--) {
+            if (map[i] < 0) map[i] = map[i + 1];
+        }
+    }
+
+    /** Дописывает следующий проход: теперь отображает исходный код сразу в код после {@code next}. */
+    void then(AddressMap next) {
+        for (int i = 0; i < map.length; i++) map[i] = next.map[map[i]];
+    }
+
+    /** Переводит цели переходов в {@code code} из старых адресов в новые. */
+    void relocate(List<Instruction> code) {
+        for (Instruction ins : code) {
+            if (ins.op.isJump()) ins.a = map[ins.a];
+        }
+    }
+
+    /** Функции с новыми адресами входа. */
+    List<FunctionInfo> relocateEntries(List<FunctionInfo> functions) {
+        List<FunctionInfo> out = new ArrayList<>(functions.size());
+        for (FunctionInfo f : functions) {
+            out.add(f.entryIp < 0 || map[f.entryIp] == f.entryIp ? f
+                    : new FunctionInfo(f.nameConstIndex, f.paramCount, f.localCount, map[f.entryIp], f.returnType,
+                            f.paramTypes, f.maxStack, f.flags));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,480 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.Instruction;
+import lang.semantic.bytecode.OpCode;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Ветвления на графе базовых блоков.
+ * <p>
+ * Переход на блок из одного {@code JUMP} ведёт сразу в конец цепочки, {@code JUMP} на блок
+ * из одного {@code RET} заменяется самим {@code RET}, а {@code NOT} перед условным переходом
+ * снимается обращением перехода (см. {@link #foldNot}). Затем блоки каждой функции переставляются так, чтобы
+ * вероятный путь шёл без переходов. Вероятности оцениваются статически: остаться в цикле
+ * вероятнее, чем выйти из него, а ветка, которая по прямому пути приходит к {@code return},
+ * маловероятна. Цепочки собираются жадно по весу рёбер, ничьи решает исходный порядок,
+ * поэтому без подсказок код не меняется.
+ * </p>
+ * <p>
+ * Обратить переход можно, если он не теряет слияния со сравнением: {@code LT_INT; JUMP_FALSE}
+ * становится {@code GE_INT; JUMP_FALSE}, а {@code LT; JUMP_FALSE} (возможно, над {@code float})
+ * остаётся как есть. Обращённый переход срабатывает на противоположном исходе, это учитывает
+ * {@link #remap(BranchSite)}; переходы условия, кроме последнего, не обращаются вовсе — у них
+ * профиль считает только срабатывания.
+ * </p>
+ */
+final class BranchOptimizer {
+
+    /** Вероятность остаться в цикле и обойти {@code return} (оценки Ball и Larus). */
+    private static final double LOOP_STAY = 0.88;
+    private static final double RETURN_AVOIDED = 0.72;
+    /** Во сколько раз заголовок цикла исполняется чаще входа в цикл. */
+    private static final double LOOP_WEIGHT = 8;
+    /** Сколько блоков прямого пути просматривается в поисках {@code return} или выхода из цикла. */
+    private static final int LOOKAHEAD = 8;
+
+    private static final class Block {
+        final int start;
+        final List<Instruction> body = new ArrayList<>();
+        final List<Integer> ips = new ArrayList<>();
+        /** Переход, {@code RET} или {@code KVA} в конце блока; {@code null} — блок проваливается дальше. */
+        Instruction term;
+        int termIp = -1;
+        /** Адрес снятого {@code NOT} перед условным переходом. */
+        int notIp = -1;
+        int target = -1;
+        int fall = -1;
+        int region;
+        boolean pinned;
+
+        Block(int start) {
+            this.start = start;
+        }
+    }
+
+    private record Edge(int from, int to, double weight, boolean natural) {}
+
+    private final boolean layout;
+    private final Set<Integer> inverted = new HashSet<>();
+    private final List<Block> blocks = new ArrayList<>();
+    private AddressMap ipMap;
+
+    /** @param layout переставлять блоки по статическим вероятностям; без него — только переходы */
+    BranchOptimizer(boolean layout) {
+        this.layout = layout;
+    }
+
+    /** Новый адрес инструкции с адресом {@code oldIp} в коде, переданном в {@link #optimize}. */
+    int remap(int oldIp) {
+        return ipMap.get(oldIp);
+    }
+
+    /** Место ветвления в новом коде: обращённые переходы переходят в противоположный список. */
+    BranchSite remap(BranchSite s) {
+        List<Integer> whenTrue = new ArrayList<>();
+        List<Integer> whenFalse = new ArrayList<>();
+        for (int ip : s.trueJumps()) (inverted.contains(ip) ? whenFalse : whenTrue).add(ipMap.get(ip));
+        for (int ip : s.falseJumps()) (inverted.contains(ip) ? whenTrue : whenFalse).add(ipMap.get(ip));
+        return new BranchSite(s.kind(), s.location(), whenTrue, whenFalse, ipMap.get(s.lastJump()),
+                s.fallthroughTrue() != inverted.contains(s.lastJump()));
+    }
+
+    BytecodeModule optimize(BytecodeModule m, List<BranchSite> sites) {
+        int[] entries = new int[m.functions.size()];
+        for (int i = 0; i < entries.length; i++) entries[i] = m.functions.get(i).entryIp;
+
+        Set<Integer> pinned = new HashSet<>();
+        for (BranchSite s : sites) {
+            pinned.addAll(s.trueJumps());
+            pinned.addAll(s.falseJumps());
+        }
+        for (BranchSite s : sites) pinned.remove(s.lastJump());
+
+        split(m.code, entries);
+        for (Block b : blocks) {
+            b.pinned = pinned.contains(b.termIp);
+            foldNot(b);
+        }
+        for (Block b : blocks) threadJumps(b);
+
+        List<Integer> order = new ArrayList<>(blocks.size());
+        for (int from = 0; from < blocks.size(); ) {
+            int to = from + 1;
+            while (to < blocks.size() && blocks.get(to).region == blocks.get(from).region) to++;
+            if (layout && closed(from, to)) {
+                order.addAll(layout(from, to));
+            } else {
+                for (int b = from; b < to; b++) order.add(b);
+            }
+            from = to;
+        }
+
+        for (int i = 0; i < order.size(); i++) {
+            Block b = blocks.get(order.get(i));
+            int next = i + 1 < order.size() ? order.get(i + 1) : -1;
+            if (isCond(b) && b.target == next && b.fall != next && invertible(b)) {
+                invert(b);
+                b.target = thread(b.target);
+            }
+        }
+
+        boolean[] live = live(entries);
+        order.removeIf(b -> !live[b]);
+        List<Instruction> code = emit(order, m.code.size());
+
+        return new BytecodeModule(m.constPool, ipMap.relocateEntries(m.functions), code, m.globals);
+    }
+
+    /** Делит код на блоки; область блока — функция или код верхнего уровня, в которых он лежит. */
+    private void split(List<Instruction> code, int[] entries) {
+        int n = code.size();
+        boolean[] leader = new boolean[n + 1];
+        TreeSet<Integer> regions = new TreeSet<>();
+        leader[0] = true;
+        regions.add(0);
+        for (int e : entries) {
+            if (e < 0) continue;
+            leader[e] = true;
+            regions.add(e);
+        }
+        for (int ip = 0; ip < n; ip++) {
+            Instruction ins = code.get(ip);
+            if (ins.op.isJump()) leader[ins.a] = true;
+            if (endsBlock(ins.op)) leader[ip + 1] = true;
+        }
+
+        int[] blockAt = new int[n + 1];
+        for (int ip = 0; ip < n; ip++) {
+            if (leader[ip]) {
+                Block b = new Block(ip);
+                b.region = regions.headSet(ip, true).size();
+                blocks.add(b);
+            }
+            Block b = blocks.get(blocks.size() - 1);
+            blockAt[ip] = blocks.size() - 1;
+            Instruction ins = code.get(ip);
+            if (endsBlock(ins.op)) {
+                b.term = ins;
+                b.termIp = ip;
+            } else {
+                b.body.add(ins);
+                b.ips.add(ip);
+            }
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            Block b = blocks.get(i);
+            boolean jump = b.term != null && b.term.op.isJump();
+            if (jump) b.target = blockAt[b.term.a];
+            if ((b.term == null || (jump && b.term.op != JUMP)) && i + 1 < blocks.size()) b.fall = i + 1;
+        }
+    }
+
+    /**
+     * {@code NOT; JUMP_FALSE L} → {@code JUMP_TRUE L}, а {@code LT_INT; JUMP_TRUE L} →
+     * {@code GE_INT; JUMP_FALSE L}, чтобы сравнение слилось с переходом. Переход срабатывает
+     * на том же исходе, что и раньше, меняется только код.
+     */
+    private void foldNot(Block b) {
+        if (!isCond(b)) return;
+        int last = b.body.size() - 1;
+        if (last >= 0 && b.body.get(last).op == NOT) {
+            b.notIp = b.ips.remove(last);
+            b.body.remove(last);
+            b.term = Instruction.a(flip(b.term.op), b.term.a);
+            last--;
+        }
+        OpCode cmp = last >= 0 ? flipCompare(b.body.get(last).op) : null;
+        if (b.term.op == JUMP_TRUE && cmp != null) {
+            b.body.set(last, Instruction.of(cmp));
+            b.term = Instruction.a(JUMP_FALSE, b.term.a);
+        }
+    }
+
+    private void threadJumps(Block b) {
+        if (b.target < 0) return;
+        b.target = thread(b.target);
+        Block t = blocks.get(b.target);
+        if (b.term.op == JUMP && t.region == b.region && t.body.isEmpty() && t.term != null && t.term.op == RET) {
+            b.term = Instruction.of(RET);
+            b.target = -1;
+        }
+    }
+
+    private int thread(int t) {
+        // длина цепочки ограничена числом блоков: пустой бесконечный цикл не зациклит проход
+        for (int steps = 0; steps < blocks.size() && jumpOnly(blocks.get(t)) && blocks.get(t).target != t; steps++) {
+            t = blocks.get(t).target;
+        }
+        return t;
+    }
+
+    /** Область можно переставлять, только если из неё нельзя провалиться в соседнюю. */
+    private boolean closed(int from, int to) {
+        for (int b = from; b < to; b++) {
+            int f = blocks.get(b).fall;
+            if (f >= 0 && (f < from || f >= to)) return false;
+        }
+        return true;
+    }
+
+    /** Порядок блоков {@code [from, to)}: цепочки по убыванию веса рёбер, первой — цепочка входа. */
+    private List<Integer> layout(int from, int to) {
+        int size = to - from;
+        int[] loopHead = new int[size];
+        int[] loopEnd = new int[size];
+        boolean[] header = new boolean[size];
+        Arrays.fill(loopHead, -1);
+        for (int b = from; b < to; b++) {
+            for (int s : successors(blocks.get(b))) {
+                if (s < from || s > b) continue;
+                header[s - from] = true;
+                for (int k = s; k <= b; k++) {
+                    int i = k - from;
+                    if (loopHead[i] < 0 || b - s < loopEnd[i] - loopHead[i]) {
+                        loopHead[i] = s;
+                        loopEnd[i] = b;
+                    }
+                }
+            }
+        }
+
+        double[] freq = new double[size];
+        freq[0] = 1;
+        List<Edge> edges = new ArrayList<>();
+        for (int b = from; b < to; b++) {
+            Block blk = blocks.get(b);
+            if (header[b - from]) freq[b - from] *= LOOP_WEIGHT;
+            double w = freq[b - from];
+            if (isCond(blk) && blk.target != blk.fall) {
+                // необращаемый переход оставляет за собой свой исходный блок
+                boolean free = invertible(blk);
+                double p = takenProbability(blk, loopHead[b - from], loopEnd[b - from]);
+                addEdge(edges, freq, from, to, b, blk.target, w * p, free ? w * p : -1);
+                addEdge(edges, freq, from, to, b, blk.fall, w * (1 - p), free ? w * (1 - p) : Double.POSITIVE_INFINITY);
+            } else {
+                for (int s : successors(blk)) addEdge(edges, freq, from, to, b, s, w, w);
+            }
+        }
+        edges.sort(Comparator.comparingDouble(Edge::weight).reversed()
+                .thenComparing(e -> !e.natural())
+                .thenComparingInt(Edge::from));
+
+        int[] next = new int[size];
+        int[] prev = new int[size];
+        Arrays.fill(next, -1);
+        Arrays.fill(prev, -1);
+        for (Edge e : edges) {
+            int u = e.from() - from;
+            int v = e.to() - from;
+            if (next[u] >= 0 || prev[v] >= 0) continue;
+            int head = u;
+            while (prev[head] >= 0) head = prev[head];
+            if (head == v) continue;
+            next[u] = v;
+            prev[v] = u;
+        }
+
+        List<Integer> order = new ArrayList<>(size);
+        for (int b = 0; b < size; b++) {
+            if (prev[b] >= 0) continue;
+            for (int k = b; k >= 0; k = next[k]) order.add(from + k);
+        }
+        return order;
+    }
+
+    /**
+     * Частота {@code flow} уходит дальше по прямому ребру {@code b → s}, вес {@code weight} решает
+     * порядок склейки цепочек; ребро с отрицательным весом в цепочку не склеивается. Обратные
+     * рёбра не склеиваются тоже: заголовок цикла остаётся перед телом.
+     */
+    private void addEdge(List<Edge> edges, double[] freq, int from, int to, int b, int s, double flow, double weight) {
+        if (s <= b || s >= to) return;
+        freq[s - from] += flow;
+        if (weight >= 0) edges.add(new Edge(b, s, weight, s == b + 1 && s == blocks.get(b).fall));
+    }
+
+    /** Вероятность, что условный переход блока сработает; {@code lo..hi} — ближайший цикл вокруг него. */
+    private double takenProbability(Block b, int lo, int hi) {
+        if (lo >= 0) {
+            boolean targetLeaves = leaves(b.target, lo, hi);
+            boolean fallLeaves = leaves(b.fall, lo, hi);
+            if (!targetLeaves && fallLeaves) return LOOP_STAY;
+            if (targetLeaves && !fallLeaves) return 1 - LOOP_STAY;
+        }
+        boolean targetReturns = returns(b.target);
+        boolean fallReturns = returns(b.fall);
+        if (fallReturns && !targetReturns) return RETURN_AVOIDED;
+        if (targetReturns && !fallReturns) return 1 - RETURN_AVOIDED;
+        return 0.5;
+    }
+
+    /** Прямой путь от блока {@code b} выходит за блоки цикла {@code lo..hi}. */
+    private boolean leaves(int b, int lo, int hi) {
+        for (int steps = 0; steps < LOOKAHEAD && b >= 0; steps++) {
+            if (b < lo || b > hi) return true;
+            Block blk = blocks.get(b);
+            if (blk.term != null && blk.term.op != JUMP) return false;
+            b = blk.term == null ? blk.fall : blk.target;
+        }
+        return false;
+    }
+
+    /** Прямой путь от блока {@code b} без ветвлений заканчивается {@code RET}. */
+    private boolean returns(int b) {
+        for (int steps = 0; steps < LOOKAHEAD && b >= 0; steps++) {
+            Block blk = blocks.get(b);
+            if (blk.term != null && blk.term.op == RET) return true;
+            if (blk.term != null && blk.term.op != JUMP) return false;
+            b = blk.term == null ? blk.fall : blk.target;
+        }
+        return false;
+    }
+
+    private boolean invertible(Block b) {
+        if (!isCond(b) || b.pinned) return false;
+        if (b.term.op == JUMP_TRUE || b.body.isEmpty()) return true;
+        OpCode cmp = b.body.get(b.body.size() - 1).op;
+        return flipCompare(cmp) != null || !fusedCompare(cmp);
+    }
+
+    /** Меняет исходы перехода местами: обращает сравнение перед ним или сам переход. */
+    private void invert(Block b) {
+        int last = b.body.size() - 1;
+        OpCode cmp = b.term.op == JUMP_FALSE && last >= 0 ? flipCompare(b.body.get(last).op) : null;
+        if (cmp != null) {
+            b.body.set(last, Instruction.of(cmp));
+        } else {
+            b.term = Instruction.a(flip(b.term.op), b.term.a);
+        }
+        int t = b.target;
+        b.target = b.fall;
+        b.fall = t;
+        inverted.add(b.termIp);
+    }
+
+    /** Блоки, на которые остались пути; лишними бывают только блоки из одного {@code JUMP}. */
+    private boolean[] live(int[] entries) {
+        boolean[] live = new boolean[blocks.size()];
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(0);
+        for (int i = 0; i < blocks.size(); i++) {
+            if (!jumpOnly(blocks.get(i))) work.push(i);
+        }
+        for (int e : entries) {
+            if (e < 0) continue;
+            for (int i = 0; i < blocks.size(); i++) {
+                if (blocks.get(i).start == e) work.push(i);
+            }
+        }
+        while (!work.isEmpty()) {
+            int b = work.pop();
+            if (live[b]) continue;
+            live[b] = true;
+            for (int s : successors(blocks.get(b))) work.push(s);
+        }
+        return live;
+    }
+
+    private List<Instruction> emit(List<Integer> order, int oldSize) {
+        ipMap = new AddressMap(oldSize);
+        int[] newStart = new int[blocks.size()];
+        Arrays.fill(newStart, -1);
+        List<Instruction> out = new ArrayList<>(oldSize);
+        List<Instruction> jumps = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+
+        for (int i = 0; i < order.size(); i++) {
+            int idx = order.get(i);
+            Block b = blocks.get(idx);
+            int next = i + 1 < order.size() ? order.get(i + 1) : -1;
+            newStart[idx] = out.size();
+            for (int k = 0; k < b.body.size(); k++) {
+                ipMap.set(b.ips.get(k), out.size());
+                out.add(b.body.get(k));
+            }
+            if (b.notIp >= 0) ipMap.set(b.notIp, out.size());
+            if (b.term != null) {
+                ipMap.set(b.termIp, out.size());
+                if (b.target < 0) {
+                    out.add(b.term);
+                } else if (b.term.op != JUMP || b.target != next) {
+                    Instruction j = Instruction.a(b.term.op, 0);
+                    out.add(j);
+                    jumps.add(j);
+                    targets.add(b.target);
+                }
+            }
+            if (b.fall >= 0 && b.fall != next) {
+                Instruction j = Instruction.a(JUMP, 0);
+                out.add(j);
+                jumps.add(j);
+                targets.add(b.fall);
+            }
+        }
+        for (int k = 0; k < jumps.size(); k++) jumps.get(k).a = newStart[targets.get(k)];
+        // адрес удалённого блока уходит к следующему оставшемуся
+        ipMap.finish(out.size());
+        return out;
+    }
+
+    private static List<Integer> successors(Block b) {
+        List<Integer> s = new ArrayList<>(2);
+        if (b.target >= 0) s.add(b.target);
+        if (b.fall >= 0 && b.fall != b.target) s.add(b.fall);
+        return s;
+    }
+
+    private static boolean jumpOnly(Block b) {
+        return b.body.isEmpty() && b.term != null && b.term.op == JUMP;
+    }
+
+    private static boolean isCond(Block b) {
+        return b.term != null && (b.term.op == JUMP_FALSE || b.term.op == JUMP_TRUE);
+    }
+
+    private static boolean endsBlock(OpCode op) {
+        return op.isJump() || op == RET || op == KVA;
+    }
+
+    private static OpCode flip(OpCode jump) {
+        return jump == JUMP_FALSE ? JUMP_TRUE : JUMP_FALSE;
+    }
+
+    /** Противоположное сравнение, которое сольётся с {@code JUMP_FALSE} так же, как исходное. */
+    private static OpCode flipCompare(OpCode op) {
+        return switch (op) {
+            case EQ -> NEQ;
+            case NEQ -> EQ;
+            case EQ_INT -> NEQ_INT;
+            case NEQ_INT -> EQ_INT;
+            case EQ_STR -> NEQ_STR;
+            case NEQ_STR -> EQ_STR;
+            case LT_INT -> GE_INT;
+            case GE_INT -> LT_INT;
+            case LE_INT -> GT_INT;
+            case GT_INT -> LE_INT;
+            default -> null;
+        };
+    }
+
+    /** Сравнения, которые сливаются с {@code JUMP_FALSE}, но не обращаются: {@code float} бывает {@code NaN}. */
+    private static boolean fusedCompare(OpCode op) {
+        return switch (op) {
+            case LT, LE, GT, GE, LT_FLOAT, LE_FLOAT, GT_FLOAT, GE_FLOAT -> true;
+            default -> false;
+        };
+    }
+}
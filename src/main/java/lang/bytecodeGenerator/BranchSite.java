@@ -0,0 +1,27 @@
+package lang.bytecodeGenerator;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import lang.semantic.symbols.SourceLocation;
+
+/**
+ * Условие {@code if}/{@code while}/{@code for} в сгенерированном коде.
+ * <p>
+ * Переход из {@code trueJumps} срабатывает, когда условие истинно, из {@code falseJumps} —
+ * когда ложно. Если не сработал и последний переход условия {@code lastJump}, исход
+ * определяет {@code fallthroughTrue}. Адреса указывают на сами инструкции перехода,
+ * поэтому смысл не меняется, когда последующие проходы перенаправляют их цели.
+ * </p>
+ */
+public record BranchSite(String kind, SourceLocation location,
+                         List<Integer> trueJumps, List<Integer> falseJumps,
+                         int lastJump, boolean fallthroughTrue) {
+
+    BranchSite remap(IntUnaryOperator ip) {
+        return new BranchSite(kind, location,
+                trueJumps.stream().map(ip::applyAsInt).toList(),
+                falseJumps.stream().map(ip::applyAsInt).toList(),
+                ip.applyAsInt(lastJump), fallthroughTrue);
+    }
+}
@@ -1,5 +1,6 @@
 package lang.bytecodeGenerator;
 
+import java.math.BigInteger;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -9,6 +10,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import lang.optimizer.OptimizerOptions;
+import lang.optimizer.Profile;
 import lang.semantic.ast.node.Expression;
 import lang.semantic.ast.node.Program;
 import lang.semantic.ast.node.Statement;
@@ -20,6 +23,7 @@ import lang.semantic.ast.node.expression.IndexExpr;
 import lang.semantic.ast.node.expression.LiteralExpr;
 import lang.semantic.ast.node.expression.UnaryExpr;
 import lang.semantic.ast.node.expression.VarExpr;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
 import lang.semantic.ast.node.statement.BlockStmt;
 import lang.semantic.ast.node.statement.BreakStmt;
 import lang.semantic.ast.node.statement.ContinueStmt;
@@ -34,6 +38,7 @@ import lang.semantic.ast.node.statement.WhileStmt;
 import lang.semantic.bytecode.BytecodeModule;
 import lang.semantic.bytecode.ConstantPool;
 import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.GlobalInfo;
 import lang.semantic.bytecode.Instruction;
 import lang.semantic.bytecode.OpCode;
 import lang.semantic.symbols.FrogType;
@@ -42,16 +47,23 @@ import static lang.semantic.bytecode.OpCode.*;
 
 public final class BytecodeGenerator {
 
+    private final boolean freeLocalArrays;
+    private final boolean stringBuilders;
+    private final Profile profile;
+
     private final ConstantPool consts = new ConstantPool();
     private final List<Instruction> code = new ArrayList<>();
 
     private final Map<String, Integer> funcIndex = new HashMap<>();
     private final List<FunctionInfo> functions = new ArrayList<>();
 
-    private final Set<String> globals = new HashSet<>();
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private final List<GlobalInfo> globals = new ArrayList<>();
 
     private Map<String, Integer> locals = null;
     private int nextLocalSlot = 0;
+    private Set<String> dyingArrays = Set.of();
+    private final Set<String> builders = new HashSet<>();
 
     private static final class LoopCtx {
         int startIp;
@@ -61,6 +73,50 @@ public final class BytecodeGenerator {
 
     private final Deque<LoopCtx> loopStack = new ArrayDeque<>();
 
+    /** Маловероятная ветка {@code if} без {@code else}, которая генерируется после тела функции. */
+    private record ColdBlock(IfStmt stmt, int condEnd, List<Integer> entryJumps,
+                             Map<String, Integer> scope) {}
+
+    private static final int COLD_RATIO = 8;
+
+    private final List<ColdBlock> coldBlocks = new ArrayList<>();
+    private List<BranchSite> branchSites = new ArrayList<>();
+    private final boolean peephole;
+    private final boolean branches;
+    private final boolean rotateLoops;
+    private final boolean superinstructions;
+    private final boolean typedOps;
+    private final boolean reuseLocals;
+    private final boolean registers;
+    private Map<PeepholeOptimizer.Pattern, Integer> peepholeRemoved = Map.of();
+
+    public BytecodeGenerator() {
+        this(OptimizerOptions.defaults());
+    }
+
+    public BytecodeGenerator(OptimizerOptions options) {
+        this.freeLocalArrays = options.freeLocalArrays;
+        this.stringBuilders = options.stringBuilders;
+        this.profile = options.profile;
+        this.peephole = options.peephole;
+        this.branches = options.branches;
+        this.rotateLoops = options.rotateLoops;
+        this.superinstructions = options.superinstructions;
+        this.typedOps = options.typedOps;
+        this.reuseLocals = options.reuseLocals;
+        this.registers = options.registers;
+    }
+
+    /** Места ветвлений последнего {@link #generate}; по ним сырые счётчики VM переводятся в профиль. */
+    public List<BranchSite> getBranchSites() {
+        return branchSites;
+    }
+
+    /** Статистика {@link PeepholeOptimizer} по последнему {@link #generate}; пусто, если проход выключен. */
+    public Map<PeepholeOptimizer.Pattern, Integer> getPeepholeRemoved() {
+        return peepholeRemoved;
+    }
+
     public BytecodeModule generate(Program program) {
         registerBuiltin("print", 1, FrogType.VOID);
         registerBuiltin("len", 1, FrogType.INT);
@@ -109,10 +165,15 @@ public final class BytecodeGenerator {
             genBlock(f.getBody());
 
             if (f.getReturnType().equals(FrogType.VOID)) {
+                emitFreeLocals();
                 code.add(Instruction.of(RET));
             }
+            emitColdBlocks();
 
             int localCount = nextLocalSlot;
+            if (reuseLocals) {
+                localCount = LocalSlotAllocator.allocate(code, entry, code.size(), f.getParams().size(), localCount);
+            }
             exitFunctionScope();
 
             FunctionInfo old = functions.get(funcIdx);
@@ -133,7 +194,31 @@ public final class BytecodeGenerator {
         }
         code.add(Instruction.of(KVA));
 
-        return new BytecodeModule(consts, functions, code);
+        BytecodeModule module = new BytecodeModule(consts, functions, code, globals);
+        if (peephole) {
+            PeepholeOptimizer opt = new PeepholeOptimizer();
+            module = opt.optimize(module);
+            branchSites = branchSites.stream().map(s -> s.remap(opt::remap)).toList();
+            peepholeRemoved = opt.getRemoved();
+        }
+        if (branches) {
+            // с профилем блоки уже расставлены по нему, статические оценки их не переставляют
+            BranchOptimizer br = new BranchOptimizer(profile == null);
+            module = br.optimize(module, branchSites);
+            branchSites = branchSites.stream().map(br::remap).toList();
+        }
+        if (superinstructions) {
+            SuperinstructionSelector sel = new SuperinstructionSelector();
+            module = sel.select(module);
+            branchSites = branchSites.stream().map(s -> s.remap(sel::remap)).toList();
+        }
+        module = FunctionMetadata.annotate(module);
+        if (registers) {
+            RegisterGenerator regs = new RegisterGenerator();
+            module = regs.generate(module);
+            branchSites = branchSites.stream().map(s -> s.remap(regs::remap)).toList();
+        }
+        return module;
     }
 
     private void enterFunctionScope(FunctionDeclStmt f) {
@@ -142,11 +227,36 @@ public final class BytecodeGenerator {
         for (FunctionDeclStmt.Param p : f.getParams()) {
             locals.put(p.getName(), nextLocalSlot++);
         }
+        dyingArrays = freeLocalArrays ? LocalArrayLifetimes.dyingAtReturn(f) : Set.of();
     }
 
     private void exitFunctionScope() {
         locals = null;
         nextLocalSlot = 0;
+        dyingArrays = Set.of();
+    }
+
+    private void emitFreeLocals() {
+        for (String name : dyingArrays) {
+            Integer slot = locals.get(name);
+            if (slot != null) code.add(Instruction.b(FREE_LOCAL, slot));
+        }
+    }
+
+    /** Слот глобальной переменной; повторное объявление того же имени занимает прежний слот. */
+    private int declareGlobal(VarDeclStmt v) {
+        return globalSlots.computeIfAbsent(v.getName(), name -> {
+            globals.add(new GlobalInfo(name, v.getType()));
+            return globals.size() - 1;
+        });
+    }
+
+    private int globalSlot(String name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            throw new IllegalStateException("Global slot not found for " + name);
+        }
+        return slot;
     }
 
     private void genStmtGlobal(Statement st) {
@@ -155,7 +265,7 @@ public final class BytecodeGenerator {
             return;
         }
         if (st instanceof VarDeclStmt v) {
-            globals.add(v.getName());
+            int slot = declareGlobal(v);
 
             if (v.getArraySize() != null) {
                 int size = v.getArraySizeLiteral();
@@ -165,8 +275,7 @@ public final class BytecodeGenerator {
             } else {
                 pushDefault(v.getType());
             }
-            int nameIdx = consts.addString(v.getName());
-            code.add(Instruction.a(STORE_GLOBAL, nameIdx));
+            code.add(Instruction.a(STORE_GLOBAL, slot));
             return;
         }
         genStmt(st);
@@ -175,7 +284,7 @@ public final class BytecodeGenerator {
     private void genStmt(Statement st) {
         if (st instanceof VarDeclStmt v) {
             if (locals == null) {
-                globals.add(v.getName());
+                int gslot = declareGlobal(v);
 
                 if (v.getArraySize() != null) {
                     int size = v.getArraySizeLiteral();
@@ -185,8 +294,7 @@ public final class BytecodeGenerator {
                 } else {
                     pushDefault(v.getType());
                 }
-                int nameIdx = consts.addString(v.getName());
-                code.add(Instruction.a(STORE_GLOBAL, nameIdx));
+                code.add(Instruction.a(STORE_GLOBAL, gslot));
                 return;
             }
             int slot = declareLocal(v.getName());
@@ -200,10 +308,15 @@ public final class BytecodeGenerator {
             }
             code.add(Instruction.b(STORE_LOCAL, slot));
         }
+        else if (st instanceof ExprStmt e && builders.contains(StringAccumulators.target(st))) {
+            genAppend((AssignExpr) e.getExpression());
+        }
         else if (st instanceof ExprStmt e) {
-            genExpr(e.getExpression());
-            if (!e.getExpression().getType().equals(FrogType.VOID)) {
-                code.add(Instruction.of(POP));
+            if (!genIncLocal(e.getExpression())) {
+                genExpr(e.getExpression());
+                if (!e.getExpression().getType().equals(FrogType.VOID)) {
+                    code.add(Instruction.of(POP));
+                }
             }
         }
         else if (st instanceof IndexAssignStmt ia) {
@@ -255,13 +368,38 @@ public final class BytecodeGenerator {
     }
 
     private void genIf(IfStmt i) {
-        genExpr(i.getCondition());
-        int jFalse = emitJump(JUMP_FALSE);
+        Profile.Branch b = profile == null ? null : profile.branch("if", i.getLocation());
+        int condStart = code.size();
+
+        if (b != null && i.getElseBranch() == null && b.whenTrue() * COLD_RATIO < b.whenFalse()
+                && locals != null && builders.isEmpty() && !hasLoopExit(i.getThenBranch())) {
+            List<Integer> jTrue = genJumpIf(i.getCondition(), true);
+            recordSite("if", i, condStart, jTrue, true);
+            coldBlocks.add(new ColdBlock(i, code.size(), jTrue, new HashMap<>(locals)));
+            return;
+        }
+
+        if (b != null && i.getElseBranch() != null && b.whenFalse() > b.whenTrue()) {
+            // else вероятнее: условие инвертируется, и else идёт сразу за ним
+            List<Integer> jTrue = genJumpIf(i.getCondition(), true);
+            recordSite("if", i, condStart, jTrue, true);
+            genStmt(i.getElseBranch());
+            int jEnd = emitJump(JUMP);
+            int thenIp = code.size();
+            for (int j : jTrue) patchJump(j, thenIp);
+            genStmt(i.getThenBranch());
+            patchJump(jEnd, code.size());
+            return;
+        }
+
+        List<Integer> jFalse = genJumpIf(i.getCondition(), false);
+        recordSite("if", i, condStart, jFalse, false);
 
         genStmt(i.getThenBranch());
         int jEnd = emitJump(JUMP);
 
-        patchJump(jFalse, code.size());
+        int elseIp = code.size();
+        for (int j : jFalse) patchJump(j, elseIp);
 
         if (i.getElseBranch() != null) {
             genStmt(i.getElseBranch());
@@ -270,24 +408,105 @@ public final class BytecodeGenerator {
         patchJump(jEnd, code.size());
     }
 
+    /**
+     * Запоминает переходы только что сгенерированного условия. {@code jumps} ведут на ветку
+     * исхода {@code when}; внутренние переходы {@code &&}/{@code ||} на первую инструкцию
+     * после условия относятся к противоположному исходу.
+     */
+    private void recordSite(String kind, Statement st, int condStart, List<Integer> jumps, boolean when) {
+        int condEnd = code.size();
+        if (condEnd == condStart || !isCondJump(code.get(condEnd - 1).op)) return;
+        List<Integer> fallthrough = new ArrayList<>();
+        for (int ip = condStart; ip < condEnd; ip++) {
+            Instruction ins = code.get(ip);
+            if (isCondJump(ins.op) && ins.a == condEnd) fallthrough.add(ip);
+        }
+        List<Integer> out = List.copyOf(jumps);
+        branchSites.add(when
+                ? new BranchSite(kind, st.getLocation(), out, fallthrough, condEnd - 1, false)
+                : new BranchSite(kind, st.getLocation(), fallthrough, out, condEnd - 1, true));
+    }
+
+    private static boolean isCondJump(OpCode op) {
+        return op == JUMP_FALSE || op == JUMP_TRUE;
+    }
+
+    /**
+     * Холодные ветки ставятся после тела функции и возвращаются переходом за условие,
+     * поэтому горячий путь проходит через {@code if} без перехода.
+     */
+    private void emitColdBlocks() {
+        Map<String, Integer> scope = locals;
+        for (int k = 0; k < coldBlocks.size(); k++) {
+            ColdBlock c = coldBlocks.get(k);
+            locals = c.scope();
+            int start = code.size();
+            for (int j : c.entryJumps()) patchJump(j, start);
+            genStmt(c.stmt().getThenBranch());
+            code.add(Instruction.a(JUMP, c.condEnd()));
+        }
+        coldBlocks.clear();
+        locals = scope;
+    }
+
+    private static boolean hasLoopExit(Statement st) {
+        if (st instanceof BreakStmt || st instanceof ContinueStmt) return true;
+        if (st instanceof BlockStmt b) return b.getStatements().stream().anyMatch(BytecodeGenerator::hasLoopExit);
+        if (st instanceof IfStmt i) {
+            return hasLoopExit(i.getThenBranch()) || (i.getElseBranch() != null && hasLoopExit(i.getElseBranch()));
+        }
+        if (st instanceof WhileStmt w) return hasLoopExit(w.getBody());
+        if (st instanceof ForStmt f) return hasLoopExit(f.getBody());
+        return false;
+    }
+
     private void genWhile(WhileStmt w) {
+        List<String> started = startBuilders(w.getCondition(), null, w.getBody());
         LoopCtx ctx = new LoopCtx();
         ctx.startIp = code.size();
         loopStack.push(ctx);
 
-        genExpr(w.getCondition());
-        int jFalse = emitJump(JUMP_FALSE);
+        Expression cond = isTrueLiteral(w.getCondition()) ? null : w.getCondition();
+        List<Integer> jFalse = List.of();
+        if (cond != null) {
+            jFalse = genJumpIf(cond, false);
+            recordSite("while", w, ctx.startIp, jFalse, false);
+        }
 
+        int bodyIp = code.size();
         genStmt(w.getBody());
-        code.add(Instruction.a(JUMP, ctx.startIp));
+        int continueIp = code.size();
+        if (rotateLoops && cond != null) {
+            genLoopTest("while", w, cond, bodyIp);
+        } else {
+            code.add(Instruction.a(JUMP, ctx.startIp));
+            continueIp = ctx.startIp;
+        }
 
         int endIp = code.size();
-        patchJump(jFalse, endIp);
+        for (int j : jFalse) patchJump(j, endIp);
 
         for (int br : ctx.breakJumps) patchJump(br, endIp);
-        for (int cont : ctx.continueJumps) patchJump(cont, ctx.startIp);
+        for (int cont : ctx.continueJumps) patchJump(cont, continueIp);
 
         loopStack.pop();
+        builders.removeAll(started);
+    }
+
+    /**
+     * Проверка условия внизу повёрнутого цикла: истинное условие возвращает на начало тела.
+     * Первая проверка стоит перед телом, поэтому за итерацию исполняется один переход, а не
+     * условный и {@code JUMP} назад. Обе проверки — одно место профиля, их счётчики складываются.
+     */
+    private void genLoopTest(String kind, Statement loop, Expression cond, int bodyIp) {
+        int condStart = code.size();
+        List<Integer> jTrue = genJumpIf(cond, true);
+        recordSite(kind, loop, condStart, jTrue, true);
+        for (int j : jTrue) patchJump(j, bodyIp);
+    }
+
+    private static boolean isTrueLiteral(Expression e) {
+        return e instanceof LiteralExpr lit && Boolean.TRUE.equals(lit.getValue());
     }
 
     private void genFor(ForStmt f) {
@@ -295,35 +514,66 @@ public final class BytecodeGenerator {
         loopStack.push(ctx);
 
         if (f.getInitializer() != null) genStmt(f.getInitializer());
+        List<String> started = startBuilders(f.getCondition(), f.getIncrement(), f.getBody());
 
         ctx.startIp = code.size();
 
-        int jFalse = -1;
+        List<Integer> jFalse = List.of();
         if (f.getCondition() != null) {
-            genExpr(f.getCondition());
-            jFalse = emitJump(JUMP_FALSE);
+            jFalse = genJumpIf(f.getCondition(), false);
+            recordSite("for", f, ctx.startIp, jFalse, false);
         }
 
+        int bodyIp = code.size();
         genStmt(f.getBody());
 
         int continueIp = code.size();
-        if (f.getIncrement() != null) {
+        if (f.getIncrement() != null && !genIncLocal(f.getIncrement())) {
             genExpr(f.getIncrement());
             code.add(Instruction.of(POP));
         }
-        code.add(Instruction.a(JUMP, ctx.startIp));
+        if (rotateLoops && f.getCondition() != null) {
+            genLoopTest("for", f, f.getCondition(), bodyIp);
+        } else {
+            code.add(Instruction.a(JUMP, ctx.startIp));
+        }
 
         int endIp = code.size();
-        if (jFalse != -1) patchJump(jFalse, endIp);
+        for (int j : jFalse) patchJump(j, endIp);
 
         for (int br : ctx.breakJumps) patchJump(br, endIp);
         for (int cont : ctx.continueJumps) patchJump(cont, continueIp);
 
         loopStack.pop();
+        builders.removeAll(started);
+    }
+
+    /**
+     * Локальные строки, которые цикл только дописывает, переводятся в буфер: {@code STR_BUILDER}
+     * делает слоту собственную копию строки, и {@code s = s + ...} дописывает её на месте.
+     */
+    private List<String> startBuilders(Expression cond, Expression inc, Statement body) {
+        List<String> started = new ArrayList<>();
+        if (!stringBuilders || locals == null) return started;
+        for (String name : StringAccumulators.find(cond, inc, body)) {
+            Integer slot = locals.get(name);
+            if (slot == null || !builders.add(name)) continue;
+            code.add(Instruction.b(STR_BUILDER, slot));
+            started.add(name);
+        }
+        return started;
+    }
+
+    private void genAppend(AssignExpr a) {
+        List<Expression> parts = StringAccumulators.concatParts(a.getValue());
+        for (Expression p : parts.subList(1, parts.size())) genExpr(p);
+        if (parts.size() > 2) code.add(Instruction.b(CONCAT_N, parts.size() - 1));
+        code.add(Instruction.b(STR_APPEND, locals.get(a.getName())));
     }
 
     private void genReturn(ReturnStmt r) {
         if (r.getValue() != null) genExpr(r.getValue());
+        if (locals != null) emitFreeLocals();
         code.add(Instruction.of(RET));
     }
 
@@ -331,7 +581,7 @@ public final class BytecodeGenerator {
         genExpr(ia.getTarget().getArray());
         genExpr(ia.getTarget().getIndex());
         genExpr(ia.getValue());
-        code.add(Instruction.of(STORE_INDEX));
+        code.add(Instruction.of(ia.getTarget().isBoundsChecked() ? STORE_INDEX : STORE_INDEX_UNCHECKED));
     }
 
 
@@ -385,6 +635,7 @@ public final class BytecodeGenerator {
         if (v instanceof Integer i) idx = consts.addInt(i);
         else if (v instanceof Double d) idx = consts.addFloat(d);
         else if (v instanceof Boolean b) idx = consts.addBool(b);
+        else if (v instanceof BigInteger bi) idx = consts.addBigInt(bi);
         else idx = consts.addString(v.toString());
         code.add(Instruction.a(PUSH_CONST, idx));
     }
@@ -394,8 +645,7 @@ public final class BytecodeGenerator {
         if (slot != null) {
             code.add(Instruction.b(LOAD_LOCAL, slot));
         } else {
-            int nameIdx = consts.addString(v.getName());
-            code.add(Instruction.a(LOAD_GLOBAL, nameIdx));
+            code.add(Instruction.a(LOAD_GLOBAL, globalSlot(v.getName())));
         }
     }
 
@@ -406,10 +656,36 @@ public final class BytecodeGenerator {
             code.add(Instruction.b(STORE_LOCAL, slot));
             code.add(Instruction.b(LOAD_LOCAL, slot));
         } else {
-            int nameIdx = consts.addString(a.getName());
-            code.add(Instruction.a(STORE_GLOBAL, nameIdx));
-            code.add(Instruction.a(LOAD_GLOBAL, nameIdx));
+            int gslot = globalSlot(a.getName());
+            code.add(Instruction.a(STORE_GLOBAL, gslot));
+            code.add(Instruction.a(LOAD_GLOBAL, gslot));
+        }
+    }
+
+    /**
+     * {@code x = x + c} и {@code x = x - c} над локальной переменной, для которых доказано,
+     * что значение помещается в 64 бита, становятся одной инструкцией {@code INC_LOCAL_I64}.
+     * Годится только там, где значение присваивания не нужно.
+     */
+    private boolean genIncLocal(Expression e) {
+        if (locals == null || !(e instanceof AssignExpr a) || !(a.getValue() instanceof BinaryExpr b)) return false;
+        if (!b.fitsInt64() || (b.getOp() != BinaryOp.PLUS && b.getOp() != BinaryOp.MINUS)) return false;
+        Integer slot = resolveLocal(a.getName());
+        if (slot == null) return false;
+
+        Expression other;
+        if (b.getLeft() instanceof VarExpr v && v.getName().equals(a.getName())) {
+            other = b.getRight();
+        } else if (b.getOp() == BinaryOp.PLUS && b.getRight() instanceof VarExpr v && v.getName().equals(a.getName())) {
+            other = b.getLeft();
+        } else {
+            return false;
         }
+        if (!(other instanceof LiteralExpr lit) || !(lit.getValue() instanceof Integer c)) return false;
+        if (b.getOp() == BinaryOp.MINUS && c == Integer.MIN_VALUE) return false;
+
+        code.add(Instruction.ab(INC_LOCAL_I64, b.getOp() == BinaryOp.PLUS ? c : -c, slot));
+        return true;
     }
 
     private void genUnary(UnaryExpr u) {
@@ -421,10 +697,75 @@ public final class BytecodeGenerator {
         }
     }
 
+    /**
+     * Переход, если условие равно {@code when}; иначе управление проходит дальше.
+     * {@code &&} и {@code ||} разворачиваются в цепочку переходов без вычисления bool.
+     * Возвращает переходы, которые нужно направить на цель.
+     */
+    private List<Integer> genJumpIf(Expression cond, boolean when) {
+        List<Integer> jumps = new ArrayList<>();
+        if (cond instanceof BinaryExpr b && (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR)) {
+            // для && при when=false обе части ведут на цель, для || — при when=true
+            boolean direct = (b.getOp() == BinaryOp.OR) == when;
+            if (direct) {
+                jumps.addAll(genJumpIf(b.getLeft(), when));
+                jumps.addAll(genJumpIf(b.getRight(), when));
+            } else {
+                List<Integer> skip = genJumpIf(b.getLeft(), !when);
+                jumps.addAll(genJumpIf(b.getRight(), when));
+                for (int j : skip) patchJump(j, code.size());
+            }
+            return jumps;
+        }
+        genExpr(cond);
+        jumps.add(emitJump(when ? JUMP_TRUE : JUMP_FALSE));
+        return jumps;
+    }
+
+    private void genShortCircuit(BinaryExpr b) {
+        genExpr(b.getLeft());
+        code.add(Instruction.of(DUP));
+        int jEnd = emitJump(b.getOp() == BinaryOp.AND ? JUMP_FALSE : JUMP_TRUE);
+        code.add(Instruction.of(POP));
+        genExpr(b.getRight());
+        patchJump(jEnd, code.size());
+    }
+
     private void genBinary(BinaryExpr b) {
+        if (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR) {
+            genShortCircuit(b);
+            return;
+        }
+        List<Expression> parts = StringAccumulators.concatParts(b);
+        if (parts.size() > 2) {
+            for (Expression p : parts) genExpr(p);
+            code.add(Instruction.b(CONCAT_N, parts.size()));
+            return;
+        }
         genExpr(b.getLeft());
         genExpr(b.getRight());
 
+        if (b.fitsInt64()) {
+            switch (b.getOp()) {
+                case PLUS -> code.add(Instruction.of(ADD_I64));
+                case MINUS -> code.add(Instruction.of(SUB_I64));
+                case LT -> code.add(Instruction.of(LT_I64));
+                case LE -> code.add(Instruction.of(LE_I64));
+                case GT -> code.add(Instruction.of(GT_I64));
+                case GE -> code.add(Instruction.of(GE_I64));
+                default -> throw new AssertionError();
+            }
+            return;
+        }
+
+        FrogType operands = b.getLeft().getType();
+        OpCode typed = typedOps && operands != null && operands.equals(b.getRight().getType())
+                ? typedOp(b.getOp(), operands) : null;
+        if (typed != null) {
+            code.add(Instruction.of(typed));
+            return;
+        }
+
         switch (b.getOp()) {
             case PLUS -> code.add(Instruction.of(ADD));
             case MINUS -> code.add(Instruction.of(SUB));
@@ -439,12 +780,50 @@ public final class BytecodeGenerator {
             case GT -> code.add(Instruction.of(GT));
             case GE -> code.add(Instruction.of(GE));
 
-            case AND -> code.add(Instruction.of(AND));
-            case OR -> code.add(Instruction.of(OR));
             default -> throw new AssertionError();
         }
     }
 
+    /** Операция для операндов статического типа {@code t}; {@code null}, если остаётся общая. */
+    private static OpCode typedOp(BinaryOp op, FrogType t) {
+        if (FrogType.INT.equals(t)) {
+            return switch (op) {
+                case PLUS -> ADD_INT;
+                case MINUS -> SUB_INT;
+                case MUL -> MUL_INT;
+                case LT -> LT_INT;
+                case LE -> LE_INT;
+                case GT -> GT_INT;
+                case GE -> GE_INT;
+                case EQ -> EQ_INT;
+                case NEQ -> NEQ_INT;
+                default -> null;
+            };
+        }
+        if (FrogType.FLOAT.equals(t)) {
+            return switch (op) {
+                case PLUS -> ADD_FLOAT;
+                case MINUS -> SUB_FLOAT;
+                case MUL -> MUL_FLOAT;
+                case DIV -> DIV_FLOAT;
+                case LT -> LT_FLOAT;
+                case LE -> LE_FLOAT;
+                case GT -> GT_FLOAT;
+                case GE -> GE_FLOAT;
+                default -> null;
+            };
+        }
+        if (FrogType.STRING.equals(t)) {
+            return switch (op) {
+                case PLUS -> CONCAT_STR;
+                case EQ -> EQ_STR;
+                case NEQ -> NEQ_STR;
+                default -> null;
+            };
+        }
+        return null;
+    }
+
     private void genCall(CallExpr c) {
         for (Expression arg : c.getArgs()) genExpr(arg);
 
@@ -457,7 +836,7 @@ public final class BytecodeGenerator {
     private void genIndex(IndexExpr idx) {
         genExpr(idx.getArray());
         genExpr(idx.getIndex());
-        code.add(Instruction.of(LOAD_INDEX));
+        code.add(Instruction.of(idx.isBoundsChecked() ? LOAD_INDEX : LOAD_INDEX_UNCHECKED));
     }
 
     private void genArrayLiteral(ArrayLiteralExpr arr) {
@@ -17,7 +17,7 @@ public final class Disassembler {
 
         for (int ip = 0; ip < m.code.size(); ip++) {
             Instruction ins = m.code.get(ip);
-            if ((ins.op == OpCode.JUMP || ins.op == OpCode.JUMP_FALSE) && ins.hasA) {
+            if (ins.op.isJump() && ins.hasA) {
                 int target = ins.a;
                 labels.computeIfAbsent(target, k -> "L" + (counter.getAndIncrement()));
             }
@@ -38,12 +38,17 @@ public final class Disassembler {
                 continue;
             }
 
+            String regs = registerOperands(m, ins, labels);
+            if (regs != null) {
+                System.out.println(" " + regs);
+                continue;
+            }
+
             if (ins.hasA || ins.hasB) System.out.print(" ");
 
             if (ins.hasA) {
                 if (ins.op == OpCode.LOAD_GLOBAL || ins.op == OpCode.STORE_GLOBAL) {
-                    var c = pool.get(ins.a);
-                    System.out.print("\"" + c.value + "\"");
+                    System.out.print("\"" + m.globals.get(ins.a).name + "\"");
                 } else if (ins.op == OpCode.PUSH_CONST) {
                     var c = pool.get(ins.a);
                     System.out.print(c.tag + "(" + c.value + ")");
@@ -51,7 +56,7 @@ public final class Disassembler {
                     FunctionInfo f = m.functions.get(ins.a);
                     String name = (String) pool.get(f.nameConstIndex).value;
                     System.out.print(name + "@" + ins.a);
-                } else if (ins.op == OpCode.JUMP || ins.op == OpCode.JUMP_FALSE) {
+                } else if (ins.op.isJump()) {
                     System.out.print(labels.getOrDefault(ins.a, String.valueOf(ins.a)));
                 } else {
                     System.out.print(ins.a);
@@ -67,5 +72,37 @@ public final class Disassembler {
         }
     }
 
+    /** Операнды регистровой операции в виде {@code r3, r1, r2}; {@code null} для стековых. */
+    private static String registerOperands(BytecodeModule m, Instruction ins, Map<Integer, String> labels) {
+        int a = ins.a;
+        int b = ins.b & 0xFFFF;
+        var pool = m.constPool.getPool();
+        return switch (ins.op) {
+            case R_MOVE, R_NEG, R_NOT, R_STR_APPEND -> r(a) + ", " + r(a >>> 8);
+            case R_LOADK -> r(b) + ", " + pool.get(a).tag + "(" + pool.get(a).value + ")";
+            case R_LOAD_GLOBAL -> r(b) + ", \"" + m.globals.get(a).name + "\"";
+            case R_STORE_GLOBAL -> "\"" + m.globals.get(a).name + "\", " + r(b);
+            case R_NEW_ARRAY_SIZED -> r(b) + ", " + a;
+            case R_ADDI -> r(a) + ", " + r(a >>> 8) + ", " + (short) (a >>> 16);
+            case R_JUMP_FALSE, R_JUMP_TRUE -> r(b) + ", " + labels.getOrDefault(a, String.valueOf(a));
+            case R_LT_JUMP_FALSE, R_LE_JUMP_FALSE, R_GT_JUMP_FALSE, R_GE_JUMP_FALSE, R_EQ_JUMP_FALSE,
+                 R_NEQ_JUMP_FALSE -> r(b) + ", " + r(b >>> 8) + ", " + labels.getOrDefault(a, String.valueOf(a));
+            case R_CALL -> {
+                String name = (String) pool.get(m.functions.get(a).nameConstIndex).value;
+                yield name + "@" + a + ", " + r(b) + ", " + (b >>> 8);
+            }
+            case R_RET -> r(b);
+            case R_NEW_ARRAY, R_CONCAT_N -> r(a) + ", " + r(a >>> 8) + ", " + (a >>> 16);
+            case R_ADD, R_SUB, R_MUL, R_DIV, R_MOD, R_EQ, R_NEQ, R_LT, R_LE, R_GT, R_GE, R_AND, R_OR,
+                 R_LOAD_INDEX, R_LOAD_INDEX_UNCHECKED, R_STORE_INDEX, R_STORE_INDEX_UNCHECKED ->
+                    r(a) + ", " + r(a >>> 8) + ", " + r(a >>> 16);
+            default -> null;
+        };
+    }
+
+    private static String r(int packed) {
+        return "r" + (packed & 0xFF);
+    }
+
     private Disassembler() {}
 }
\ No newline at end of file
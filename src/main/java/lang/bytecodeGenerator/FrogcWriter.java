@@ -5,23 +5,64 @@ import lang.semantic.symbols.FrogType;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 public final class FrogcWriter {
 
+    /**
+     * Последняя версия формата: v2 добавила операции по статическим типам, v3 — таблицу
+     * глобальных переменных, после которой операнд {@code LOAD_GLOBAL}/{@code STORE_GLOBAL}
+     * стал номером слота, а не индексом имени в пуле констант, v4 — глубину стека и байт флагов
+     * в таблице функций, v5 — регистровые операции для функций с флагом
+     * {@link FunctionInfo#REGISTERS}.
+     * <p>
+     * Пишется наименьшая версия, которой достаточно коду: см. {@link #version}.
+     * </p>
+     */
+    public static final int VERSION = 5;
+    /** Первая операция, которой нет в v1. */
+    public static final OpCode FIRST_V2_OP = OpCode.ADD_INT;
+    /** Первая операция, которой нет до v5. */
+    public static final OpCode FIRST_V5_OP = OpCode.R_MOVE;
+
     public static void write(BytecodeModule m, OutputStream out) throws IOException {
         DataOutputStream d = new DataOutputStream(out);
+        int version = version(m);
+
+        // до v3 глобальные адресуются индексом имени в пуле: недостающие имена дописываются в конец
+        List<ConstantPool.Const> pool = m.constPool.getPool();
+        int[] globalNames = null;
+        if (version < 3) {
+            pool = new ArrayList<>(pool);
+            globalNames = new int[m.globals.size()];
+            for (int slot = 0; slot < globalNames.length; slot++) {
+                globalNames[slot] = nameIndex(pool, m.globals.get(slot).name);
+            }
+        }
 
         // ---- Header ----
         d.writeBytes("FROG");          // magic 4 bytes
-        d.writeShort(1);               // version u16
+        d.writeShort(version);         // version u16
 
-        d.writeInt(m.constPool.getPool().size());  // constCount u32
+        d.writeInt(pool.size());                   // constCount u32
         d.writeInt(m.functions.size());            // funcCount u32
         d.writeInt(m.code.size());                 // codeSize u32 (instructions)
 
+        if (version >= 3) {
+            d.writeInt(m.globals.size());          // globalCount u32
+
+            // ---- GlobalTable: запись i описывает слот i; имена нужны только для отладки ----
+            for (GlobalInfo g : m.globals) {
+                byte[] bytes = g.name.getBytes(StandardCharsets.UTF_8);
+                d.writeInt(bytes.length);
+                d.write(bytes);
+                d.writeByte(typeToByte(g.type));
+            }
+        }
+
         // ---- ConstantPool ----
-        for (ConstantPool.Const c : m.constPool.getPool()) {
+        for (ConstantPool.Const c : pool) {
             d.writeByte(tagToByte(c.tag));
             switch (c.tag) {
                 case INT -> d.writeInt((Integer) c.value);
@@ -32,6 +73,11 @@ public final class FrogcWriter {
                     d.writeInt(bytes.length);
                     d.write(bytes);
                 }
+                case BIGINT -> {
+                    byte[] bytes = c.value.toString().getBytes(StandardCharsets.US_ASCII);
+                    d.writeInt(bytes.length);
+                    d.write(bytes);
+                }
             }
         }
 
@@ -47,6 +93,10 @@ public final class FrogcWriter {
             for (FrogType pt : ptypes) {
                 d.writeByte(typeToByte(pt));
             }
+            if (version >= 4) {
+                d.writeShort(f.maxStack);  // maxStack u16
+                d.writeByte(f.flags);      // flags u8: FunctionInfo.REGISTERS
+            }
         }
 
         // ---- CodeSection ----
@@ -58,18 +108,44 @@ public final class FrogcWriter {
             if (ins.hasB) flags |= 2;
             d.writeByte(flags);
 
-            if (ins.hasA) d.writeInt(ins.a);
+            boolean global = ins.op == OpCode.LOAD_GLOBAL || ins.op == OpCode.STORE_GLOBAL;
+            if (ins.hasA) d.writeInt(global && globalNames != null ? globalNames[ins.a] : ins.a);
             if (ins.hasB) d.writeShort(ins.b);
         }
         d.flush();
     }
 
+    /**
+     * Наименьшая версия, которой достаточно коду модуля. Код без типизированных и регистровых
+     * операций пишется в v1 и читается VM любой версии; глубина стека и флаги функций — только
+     * подсказки, и в v1 они опускаются. Иначе пишется полный формат: v4, а с регистровыми
+     * операциями — v5. Версии 2 и 3 читаются, но не пишутся.
+     */
+    public static int version(BytecodeModule m) {
+        int version = 1;
+        for (Instruction ins : m.code) {
+            if (ins.op.ordinal() >= FIRST_V5_OP.ordinal()) return 5;
+            if (ins.op.ordinal() >= FIRST_V2_OP.ordinal()) version = 4;
+        }
+        return version;
+    }
+
+    private static int nameIndex(List<ConstantPool.Const> pool, String name) {
+        for (int i = 0; i < pool.size(); i++) {
+            ConstantPool.Const c = pool.get(i);
+            if (c.tag == ConstantPool.Tag.STRING && c.value.equals(name)) return i;
+        }
+        pool.add(new ConstantPool.Const(ConstantPool.Tag.STRING, name));
+        return pool.size() - 1;
+    }
+
     private static byte tagToByte(ConstantPool.Tag t) {
         return switch (t) {
             case INT -> 1;
             case FLOAT -> 2;
             case BOOL -> 3;
             case STRING -> 4;
+            case BIGINT -> 5;
         };
     }
 
@@ -0,0 +1,119 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+import lang.semantic.symbols.FrogType;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Наибольшая глубина стека операндов каждой функции для таблицы функций {@code .frogc}.
+ * <p>
+ * Считается абстрактным исполнением готового кода от входа функции: у каждой инструкции
+ * известно, сколько она снимает и кладёт, а в каждую точку код должен приходить с одной
+ * и той же глубиной.
+ * </p>
+ */
+final class FunctionMetadata {
+
+    private final BytecodeModule m;
+    private boolean returnsValue;
+    private int[] depth;
+
+    private FunctionMetadata(BytecodeModule m) {
+        this.m = m;
+    }
+
+    static BytecodeModule annotate(BytecodeModule m) {
+        return new FunctionMetadata(m).run();
+    }
+
+    /** Глубина стека перед каждой инструкцией функции {@code func}; {@code -1} — инструкция недостижима. */
+    static int[] stackDepths(BytecodeModule m, int func) {
+        FunctionMetadata md = new FunctionMetadata(m);
+        FunctionInfo f = m.functions.get(func);
+        md.returnsValue = !f.returnType.equals(FrogType.VOID);
+        md.scan(f.entryIp);
+        return md.depth;
+    }
+
+    private BytecodeModule run() {
+        List<FunctionInfo> functions = new ArrayList<>(m.functions.size());
+        for (FunctionInfo f : m.functions) {
+            if (f.entryIp < 0) {
+                functions.add(f);
+                continue;
+            }
+            returnsValue = !f.returnType.equals(FrogType.VOID);
+            functions.add(new FunctionInfo(f.nameConstIndex, f.paramCount, f.localCount, f.entryIp, f.returnType,
+                    f.paramTypes, scan(f.entryIp), f.flags));
+        }
+        return new BytecodeModule(m.constPool, functions, m.code, m.globals);
+    }
+
+    /** Обходит код функции от {@code entry} и возвращает наибольшую глубину стека. */
+    private int scan(int entry) {
+        depth = new int[m.code.size()];
+        Arrays.fill(depth, -1);
+        Deque<Integer> work = new ArrayDeque<>();
+        depth[entry] = 0;
+        work.push(entry);
+
+        int max = 0;
+        while (!work.isEmpty()) {
+            int ip = work.pop();
+            Instruction ins = m.code.get(ip);
+            int before = depth[ip];
+            int after = before - pops(ins) + pushes(ins);
+            if (after < 0) throw new IllegalStateException("stack underflow at ip " + ip);
+            max = Math.max(max, Math.max(before, after));
+
+            for (int next : successors(ins, ip)) {
+                if (depth[next] < 0) {
+                    depth[next] = after;
+                    work.push(next);
+                } else if (depth[next] != after) {
+                    throw new IllegalStateException("inconsistent stack depth at ip " + next);
+                }
+            }
+        }
+        return max;
+    }
+
+    private static List<Integer> successors(Instruction ins, int ip) {
+        if (ins.op == RET || ins.op == KVA) return List.of();
+        if (ins.op == JUMP) return List.of(ins.a);
+        if (ins.op.isJump()) return List.of(ins.a, ip + 1);
+        return List.of(ip + 1);
+    }
+
+    private int pops(Instruction ins) {
+        return switch (ins.op) {
+            case PUSH_CONST, LOAD_LOCAL, LOAD_GLOBAL, JUMP, NEW_ARRAY_SIZED, FREE_LOCAL, STR_BUILDER,
+                 INC_LOCAL_I64, INC_LOCAL, LOAD2_LOCAL, LOAD_LOCAL_INDEX, LOAD_LOCAL_INDEX_UNCHECKED, KVA -> 0;
+            case STORE_LOCAL, STORE_GLOBAL, NEG, NOT, JUMP_FALSE, JUMP_TRUE, POP, STR_APPEND, DUP -> 1;
+            case RET -> returnsValue ? 1 : 0;
+            case STORE_INDEX, STORE_INDEX_UNCHECKED -> 3;
+            case CALL, NEW_ARRAY, CONCAT_N -> ins.b & 0xFFFF;
+            default -> 2;
+        };
+    }
+
+    private int pushes(Instruction ins) {
+        return switch (ins.op) {
+            case STORE_LOCAL, STORE_GLOBAL, JUMP, JUMP_FALSE, JUMP_TRUE, RET, STORE_INDEX, POP, KVA,
+                 STORE_INDEX_UNCHECKED, FREE_LOCAL, STR_BUILDER, STR_APPEND, INC_LOCAL_I64, INC_LOCAL,
+                 LT_JUMP_FALSE, LE_JUMP_FALSE, GT_JUMP_FALSE, GE_JUMP_FALSE, EQ_JUMP_FALSE, NEQ_JUMP_FALSE -> 0;
+            case DUP, LOAD2_LOCAL -> 2;
+            case CALL -> m.functions.get(ins.a).returnType.equals(FrogType.VOID) ? 0 : 1;
+            default -> 1;
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package lang.bytecodeGenerator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.ArrayLiteralExpr;
+import lang.semantic.ast.node.expression.AssignExpr;
+import lang.semantic.ast.node.expression.BinaryExpr;
+import lang.semantic.ast.node.expression.CallExpr;
+import lang.semantic.ast.node.expression.IndexExpr;
+import lang.semantic.ast.node.expression.UnaryExpr;
+import lang.semantic.ast.node.expression.VarExpr;
+import lang.semantic.ast.node.statement.BlockStmt;
+import lang.semantic.ast.node.statement.ExprStmt;
+import lang.semantic.ast.node.statement.ForStmt;
+import lang.semantic.ast.node.statement.FunctionDeclStmt;
+import lang.semantic.ast.node.statement.IfStmt;
+import lang.semantic.ast.node.statement.IndexAssignStmt;
+import lang.semantic.ast.node.statement.ReturnStmt;
+import lang.semantic.ast.node.statement.VarDeclStmt;
+import lang.semantic.ast.node.statement.WhileStmt;
+import lang.semantic.symbols.FrogType;
+
+/**
+ * Анализ времени жизни локальных массивов функции.
+ * <p>
+ * Массив умирает на {@code RET}, если локальная переменная объявлена один раз, получает
+ * только свежие массивы (литерал, {@code a[n]}, {@code new_array_*}, {@code push_int}),
+ * а читается лишь как {@code a[i]}, {@code len(a)} или первый аргумент {@code push_int},
+ * который копирует массив. Для таких переменных генератор ставит {@code FREE_LOCAL}
+ * перед каждым {@code RET}.
+ * </p>
+ */
+final class LocalArrayLifetimes {
+
+    private final Map<String, Integer> decls = new HashMap<>();
+    private final Set<String> arrays = new LinkedHashSet<>();
+    private final Set<String> escaped = new HashSet<>();
+
+    static Set<String> dyingAtReturn(FunctionDeclStmt f) {
+        LocalArrayLifetimes a = new LocalArrayLifetimes();
+        for (FunctionDeclStmt.Param p : f.getParams()) a.decls.merge(p.getName(), 2, Integer::sum);
+        a.visit(f.getBody());
+
+        Set<String> out = new LinkedHashSet<>();
+        for (String name : a.arrays) {
+            if (a.decls.get(name) == 1 && !a.escaped.contains(name)) out.add(name);
+        }
+        return out;
+    }
+
+    private void visit(Statement st) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            decls.merge(v.getName(), 1, Integer::sum);
+            if (v.getType().getKind() == FrogType.Kind.ARRAY) {
+                arrays.add(v.getName());
+                if (v.getInitializer() != null && !isFresh(v.getInitializer())) escaped.add(v.getName());
+            }
+            visit(v.getInitializer());
+        } else if (st instanceof ExprStmt e) {
+            visit(e.getExpression());
+        } else if (st instanceof IndexAssignStmt ia) {
+            visit(ia.getTarget());
+            visit(ia.getValue());
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) visit(s);
+        } else if (st instanceof IfStmt i) {
+            visit(i.getCondition());
+            visit(i.getThenBranch());
+            visit(i.getElseBranch());
+        } else if (st instanceof WhileStmt w) {
+            visit(w.getCondition());
+            visit(w.getBody());
+        } else if (st instanceof ForStmt f) {
+            visit(f.getInitializer());
+            visit(f.getCondition());
+            visit(f.getIncrement());
+            visit(f.getBody());
+        } else if (st instanceof ReturnStmt r) {
+            visit(r.getValue());
+        }
+    }
+
+    private void visit(Expression e) {
+        if (e == null) return;
+        if (e instanceof VarExpr v) {
+            escaped.add(v.getName());
+        } else if (e instanceof AssignExpr a) {
+            if (!isFresh(a.getValue())) escaped.add(a.getName());
+            visit(a.getValue());
+        } else if (e instanceof IndexExpr idx) {
+            if (!(idx.getArray() instanceof VarExpr)) visit(idx.getArray());
+            visit(idx.getIndex());
+        } else if (e instanceof CallExpr c) {
+            boolean borrows = c.getCallee().equals("len") || c.getCallee().equals("push_int");
+            for (int k = 0; k < c.getArgs().size(); k++) {
+                Expression arg = c.getArgs().get(k);
+                if (k == 0 && borrows && arg instanceof VarExpr) continue;
+                visit(arg);
+            }
+        } else if (e instanceof UnaryExpr u) {
+            visit(u.getExpr());
+        } else if (e instanceof BinaryExpr b) {
+            visit(b.getLeft());
+            visit(b.getRight());
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) visit(el);
+        }
+    }
+
+    private static boolean isFresh(Expression e) {
+        if (e instanceof ArrayLiteralExpr) return true;
+        if (!(e instanceof CallExpr c)) return false;
+        return c.getCallee().equals("new_array_bool") || c.getCallee().equals("new_array_int")
+                || c.getCallee().equals("push_int");
+    }
+}
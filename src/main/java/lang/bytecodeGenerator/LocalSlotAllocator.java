@@ -0,0 +1,158 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import lang.semantic.bytecode.Instruction;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Переиспользование слотов локальных переменных по их времени жизни.
+ * <p>
+ * Генератор даёт каждому объявлению свой слот, и временные переменные блоков раздувают
+ * {@code localCount}. Здесь по коду функции считается живость слотов, строится граф
+ * пересечений (запись в слот пересекается со всеми слотами, живыми после неё), и слоты
+ * жадно раскрашиваются в порядке номеров: каждый получает наименьший номер, не занятый
+ * пересекающимися с ним. Параметры остаются на своих местах. Запись в мёртвый слот
+ * становится {@code POP}, и пару {@code PUSH_CONST; POP} затем убирает {@link PeepholeOptimizer}.
+ * </p>
+ * <p>
+ * Слот, живой на входе в функцию (например, массив под {@code FREE_LOCAL}, объявленный
+ * в невыполненной ветке), читает начальный {@code null} кадра, поэтому пересекается со
+ * всеми параметрами и с другими такими слотами.
+ * </p>
+ */
+final class LocalSlotAllocator {
+
+    private LocalSlotAllocator() {}
+
+    /**
+     * Перенумеровывает слоты в инструкциях {@code [from, to)} одной функции.
+     *
+     * @return новое число локальных слотов
+     */
+    static int allocate(List<Instruction> code, int from, int to, int paramCount, int localCount) {
+        int n = to - from;
+        if (n <= 0 || localCount <= paramCount) return localCount;
+
+        BitSet[] liveIn = new BitSet[n];
+        BitSet[] liveOut = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            liveIn[i] = new BitSet(localCount);
+            liveOut[i] = new BitSet(localCount);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = n - 1; i >= 0; i--) {
+                Instruction ins = code.get(from + i);
+                BitSet out = new BitSet(localCount);
+                for (int s : successors(ins, from + i, from, to)) out.or(liveIn[s - from]);
+
+                BitSet in = (BitSet) out.clone();
+                if (defines(ins)) in.clear(slot(ins));
+                if (uses(ins)) in.set(slot(ins));
+
+                if (!out.equals(liveOut[i]) || !in.equals(liveIn[i])) {
+                    liveOut[i] = out;
+                    liveIn[i] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        // запись в слот, который дальше не читается, только снимает значение со стека
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(from + i);
+            if (ins.op == STORE_LOCAL && !liveOut[i].get(slot(ins))) code.set(from + i, Instruction.of(POP));
+        }
+
+        BitSet[] conflicts = new BitSet[localCount];
+        for (int v = 0; v < localCount; v++) conflicts[v] = new BitSet(localCount);
+        for (int i = 0; i < n; i++) {
+            Instruction ins = code.get(from + i);
+            if (!defines(ins)) continue;
+            int d = slot(ins);
+            for (int v = liveOut[i].nextSetBit(0); v >= 0; v = liveOut[i].nextSetBit(v + 1)) {
+                if (v != d) addConflict(conflicts, d, v);
+            }
+        }
+        BitSet atEntry = (BitSet) liveIn[0].clone();
+        atEntry.set(0, paramCount);
+        for (int u = atEntry.nextSetBit(0); u >= 0; u = atEntry.nextSetBit(u + 1)) {
+            for (int v = atEntry.nextSetBit(u + 1); v >= 0; v = atEntry.nextSetBit(v + 1)) {
+                addConflict(conflicts, u, v);
+            }
+        }
+
+        BitSet referenced = new BitSet(localCount);
+        for (int i = from; i < to; i++) {
+            Instruction ins = code.get(i);
+            if (uses(ins) || defines(ins)) referenced.set(slot(ins));
+        }
+
+        int[] color = new int[localCount];
+        int count = paramCount;
+        for (int v = 0; v < localCount; v++) {
+            if (v < paramCount) {
+                color[v] = v;
+                continue;
+            }
+            color[v] = -1;
+            if (!referenced.get(v)) continue;
+            BitSet taken = new BitSet();
+            for (int u = conflicts[v].nextSetBit(0); u >= 0; u = conflicts[v].nextSetBit(u + 1)) {
+                if (u < v && color[u] >= 0) taken.set(color[u]);
+            }
+            color[v] = taken.nextClearBit(0);
+            count = Math.max(count, color[v] + 1);
+        }
+
+        for (int i = from; i < to; i++) {
+            Instruction ins = code.get(i);
+            if (uses(ins) || defines(ins)) ins.b = (short) color[slot(ins)];
+        }
+        return count;
+    }
+
+    private static void addConflict(BitSet[] conflicts, int u, int v) {
+        conflicts[u].set(v);
+        conflicts[v].set(u);
+    }
+
+    private static List<Integer> successors(Instruction ins, int ip, int from, int to) {
+        List<Integer> out = new ArrayList<>(2);
+        switch (ins.op) {
+            case RET, KVA -> {}
+            case JUMP -> out.add(ins.a);
+            case JUMP_FALSE, JUMP_TRUE -> {
+                out.add(ins.a);
+                out.add(ip + 1);
+            }
+            default -> out.add(ip + 1);
+        }
+        out.removeIf(s -> s < from || s >= to);
+        return out;
+    }
+
+    private static int slot(Instruction ins) {
+        return ins.b & 0xFFFF;
+    }
+
+    private static boolean uses(Instruction ins) {
+        return switch (ins.op) {
+            case LOAD_LOCAL, FREE_LOCAL, INC_LOCAL_I64, STR_BUILDER, STR_APPEND -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean defines(Instruction ins) {
+        return switch (ins.op) {
+            case STORE_LOCAL, FREE_LOCAL, INC_LOCAL_I64, STR_BUILDER, STR_APPEND -> true;
+            default -> false;
+        };
+    }
+}
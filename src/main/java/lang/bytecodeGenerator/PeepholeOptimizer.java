@@ -0,0 +1,171 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Оконные упрощения готового байткода.
+ * <p>
+ * Образцы применяются по кругу, пока код меняется. После каждого удаления цели переходов
+ * и {@link FunctionInfo#entryIp} пересчитываются: адрес удалённой инструкции переходит
+ * к следующей оставшейся. Образец из нескольких инструкций не трогается, если внутрь него
+ * ведёт переход или с его середины начинается функция.
+ * </p>
+ */
+public final class PeepholeOptimizer {
+
+    public enum Pattern {
+        /** {@code STORE x; LOAD x; POP} → {@code STORE x}: значение присваивания не нужно. */
+        STORE_LOAD_POP,
+        /** Переход на безусловный {@code JUMP} ведёт сразу в конец цепочки. */
+        JUMP_TO_JUMP,
+        /** {@code PUSH_CONST c; POP} и {@code LOAD_LOCAL x; POP} удаляются целиком. */
+        PUSH_POP,
+        /** {@code JUMP} на следующую инструкцию. */
+        JUMP_TO_NEXT,
+        /** {@code LOAD_LOCAL x; STORE_LOCAL x}: копия между переменными, которые делят слот. */
+        SELF_MOVE
+    }
+
+    private final Set<Pattern> patterns;
+    private final Map<Pattern, Integer> removed = new EnumMap<>(Pattern.class);
+    private AddressMap ipMap;
+
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Pattern.class));
+    }
+
+    public PeepholeOptimizer(Set<Pattern> patterns) {
+        this.patterns = EnumSet.noneOf(Pattern.class);
+        this.patterns.addAll(patterns);
+        for (Pattern p : Pattern.values()) removed.put(p, 0);
+    }
+
+    /**
+     * Сколько инструкций удалил каждый образец. Для {@link Pattern#JUMP_TO_JUMP} —
+     * сколько переходов перенаправлено: сам он ничего не удаляет.
+     */
+    public Map<Pattern, Integer> getRemoved() {
+        return removed;
+    }
+
+    /** Новый адрес инструкции с адресом {@code oldIp} в коде, переданном в {@link #optimize}. */
+    public int remap(int oldIp) {
+        return ipMap.get(oldIp);
+    }
+
+    public BytecodeModule optimize(BytecodeModule m) {
+        List<Instruction> code = new ArrayList<>(m.code);
+        ipMap = AddressMap.identity(code.size());
+
+        boolean changed = true;
+        while (changed) {
+            changed = patterns.contains(Pattern.JUMP_TO_JUMP) && threadJumps(code);
+
+            Set<Integer> targets = new HashSet<>();
+            for (Instruction ins : code) {
+                if (ins.op.isJump()) targets.add(ins.a);
+            }
+            for (FunctionInfo f : m.functions) {
+                if (f.entryIp >= 0) targets.add(ipMap.get(f.entryIp));
+            }
+
+            boolean[] dead = new boolean[code.size()];
+            boolean any = false;
+            for (int ip = 0; ip < code.size(); ip++) {
+                Pattern p = match(code, ip, targets);
+                if (p == null) continue;
+                int n = width(p);
+                int from = p == Pattern.STORE_LOAD_POP ? ip + 1 : ip;
+                for (int k = from; k < ip + n; k++) dead[k] = true;
+                removed.merge(p, ip + n - from, Integer::sum);
+                any = true;
+                ip += n - 1;
+            }
+            if (any) {
+                compact(code, dead);
+                changed = true;
+            }
+        }
+
+        return new BytecodeModule(m.constPool, ipMap.relocateEntries(m.functions), code, m.globals);
+    }
+
+    private Pattern match(List<Instruction> code, int ip, Set<Integer> targets) {
+        Instruction x = code.get(ip);
+        Instruction y = ip + 1 < code.size() ? code.get(ip + 1) : null;
+        Instruction z = ip + 2 < code.size() ? code.get(ip + 2) : null;
+
+        if (patterns.contains(Pattern.JUMP_TO_NEXT) && x.op == JUMP && x.a == ip + 1) {
+            return Pattern.JUMP_TO_NEXT;
+        }
+        if (y == null || targets.contains(ip + 1)) return null;
+
+        if (patterns.contains(Pattern.STORE_LOAD_POP) && z != null && z.op == POP && !targets.contains(ip + 2)
+                && ((x.op == STORE_LOCAL && y.op == LOAD_LOCAL && x.b == y.b)
+                    || (x.op == STORE_GLOBAL && y.op == LOAD_GLOBAL && x.a == y.a))) {
+            return Pattern.STORE_LOAD_POP;
+        }
+        if (patterns.contains(Pattern.SELF_MOVE) && x.op == LOAD_LOCAL && y.op == STORE_LOCAL && x.b == y.b) {
+            return Pattern.SELF_MOVE;
+        }
+        if (patterns.contains(Pattern.PUSH_POP) && y.op == POP && (x.op == PUSH_CONST || x.op == LOAD_LOCAL)) {
+            return Pattern.PUSH_POP;
+        }
+        return null;
+    }
+
+    private static int width(Pattern p) {
+        return switch (p) {
+            case STORE_LOAD_POP -> 3;
+            case PUSH_POP, SELF_MOVE -> 2;
+            case JUMP_TO_NEXT, JUMP_TO_JUMP -> 1;
+        };
+    }
+
+    private boolean threadJumps(List<Instruction> code) {
+        boolean changed = false;
+        for (Instruction ins : code) {
+            if (!ins.op.isJump()) continue;
+            int t = ins.a;
+            // длина цепочки ограничена размером кода: пустой бесконечный цикл не зациклит проход
+            for (int steps = 0; steps < code.size() && t < code.size() && code.get(t).op == JUMP && code.get(t).a != t; steps++) {
+                t = code.get(t).a;
+            }
+            if (t != ins.a) {
+                ins.a = t;
+                removed.merge(Pattern.JUMP_TO_JUMP, 1, Integer::sum);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void compact(List<Instruction> code, boolean[] dead) {
+        AddressMap step = new AddressMap(code.size());
+        List<Instruction> kept = new ArrayList<>(code.size());
+        for (int ip = 0; ip < code.size(); ip++) {
+            if (dead[ip]) continue;
+            step.set(ip, kept.size());
+            kept.add(code.get(ip));
+        }
+        step.finish(kept.size());
+
+        step.relocate(kept);
+        ipMap.then(step);
+
+        code.clear();
+        code.addAll(kept);
+    }
+}
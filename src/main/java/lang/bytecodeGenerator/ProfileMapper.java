@@ -0,0 +1,57 @@
+package lang.bytecodeGenerator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lang.optimizer.Profile;
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.FunctionInfo;
+
+/**
+ * Перевод сырых счётчиков VM ({@code frogvm run --profile-out}) в {@link Profile}.
+ * <p>
+ * VM считает вызовы по индексу функции и срабатывания каждого {@code JUMP_FALSE}/{@code JUMP_TRUE}
+ * по адресу. Для каждого места ветвления исход условия собирается из его переходов:
+ * сработавший переход даёт свой исход, проход последнего перехода — исход ветки,
+ * которая идёт сразу за условием.
+ * </p>
+ */
+public final class ProfileMapper {
+
+    private ProfileMapper() {
+    }
+
+    public static Profile fromVm(List<String> raw, BytecodeModule module, List<BranchSite> sites) {
+        Map<Integer, long[]> jumps = new HashMap<>();
+        Map<Integer, Long> calls = new HashMap<>();
+        for (String line : raw) {
+            String[] f = line.strip().split("\\s+");
+            if (f[0].equals("call") && f.length == 3) {
+                calls.put(Integer.parseInt(f[1]), Long.parseLong(f[2]));
+            } else if (f[0].equals("jump") && f.length == 4) {
+                jumps.put(Integer.parseInt(f[1]), new long[] {Long.parseLong(f[2]), Long.parseLong(f[3])});
+            }
+        }
+
+        Profile p = new Profile();
+        for (int i = 0; i < module.functions.size(); i++) {
+            FunctionInfo fn = module.functions.get(i);
+            if (fn.entryIp < 0) continue;
+            String name = (String) module.constPool.getPool().get(fn.nameConstIndex).value;
+            p.addCalls(name, calls.getOrDefault(i, 0L));
+        }
+
+        for (BranchSite s : sites) {
+            long whenTrue = 0;
+            long whenFalse = 0;
+            for (int ip : s.trueJumps()) whenTrue += jumps.getOrDefault(ip, new long[2])[0];
+            for (int ip : s.falseJumps()) whenFalse += jumps.getOrDefault(ip, new long[2])[0];
+            long fallthrough = jumps.getOrDefault(s.lastJump(), new long[2])[1];
+            if (s.fallthroughTrue()) whenTrue += fallthrough;
+            else whenFalse += fallthrough;
+            p.addBranch(s.kind(), s.location(), whenTrue, whenFalse);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,677 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.ConstantPool;
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+import lang.semantic.bytecode.OpCode;
+import lang.semantic.symbols.FrogType;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Регистровый код функций: трёхадресные операции {@code R_*} вместо стековых.
+ * <p>
+ * Готовый стековый код функции исполняется абстрактно: на виртуальном стеке лежат не значения,
+ * а места, где они находятся, — локальная переменная, константа или временный регистр
+ * {@code t_d} позиции стека {@code d}. {@code LOAD_LOCAL} и {@code PUSH_CONST} кода не дают,
+ * операция читает операнды прямо из их мест, а следующий за ней {@code STORE_LOCAL} заменяет
+ * регистр результата переменной. На границах блоков и перед записью в переменную, которая
+ * ещё лежит на стеке, значения переносятся в свои {@code t_d}. Сравнение перед
+ * {@code JUMP_FALSE} сливается с переходом.
+ * </p>
+ * <p>
+ * Переменные, временные регистры и константы, читаемые в циклах, затем распределяются по
+ * регистрам линейным сканированием интервалов жизни. Параметры остаются в регистрах
+ * {@code 0..n-1}. Аргументы вызова и элементы {@code R_NEW_ARRAY}/{@code R_CONCAT_N} должны
+ * лежать подряд, поэтому их временные регистры стоят на своих местах над распределёнными.
+ * Функция, которой не хватает {@link #MAX_REGISTERS} регистров, остаётся стековой.
+ * </p>
+ */
+final class RegisterGenerator {
+
+    /** Номер регистра в операнде занимает байт. */
+    static final int MAX_REGISTERS = 256;
+
+    /** Инструкция до распределения регистров: операнды — виртуальные регистры. */
+    private static final class RInstr {
+        final OpCode op;
+        /** Константа, слот глобальной, цель перехода, функция, размер или непосредственное значение. */
+        int wide;
+        int dst = -1;
+        int[] srcs = {};
+        /** Первый регистр окна {@code R_CALL}/{@code R_NEW_ARRAY}/{@code R_CONCAT_N}. */
+        int first = -1;
+
+        RInstr(OpCode op) {
+            this.op = op;
+        }
+    }
+
+    private record Translated(List<Instruction> code, int[] pos, int end, int registers) {}
+
+    private BytecodeModule m;
+    private AddressMap ipMap;
+
+    // состояние перевода одной функции
+    private int locals;
+    private int temps;
+    private final Map<Integer, Integer> constRegs = new LinkedHashMap<>();
+    private List<RInstr> body;
+    private int[] stack;
+    private int sp;
+    private int lastDef;
+    private boolean hoist;
+
+    /** Новый адрес инструкции с адресом {@code oldIp} в коде, переданном в {@link #generate}. */
+    int remap(int oldIp) {
+        return ipMap.get(oldIp);
+    }
+
+    BytecodeModule generate(BytecodeModule module) {
+        this.m = module;
+        int n = m.code.size();
+        int[] entries = m.functions.stream().mapToInt(f -> f.entryIp).filter(e -> e >= 0).sorted().toArray();
+
+        Translated[] done = new Translated[m.functions.size()];
+        Map<Integer, Integer> translatedAt = new HashMap<>();
+        for (int i = 0; i < m.functions.size(); i++) {
+            int entry = m.functions.get(i).entryIp;
+            if (entry < 0) continue;
+            int limit = n;
+            for (int e : entries) {
+                if (e > entry) {
+                    limit = e;
+                    break;
+                }
+            }
+            done[i] = translate(i, limit);
+            if (done[i] != null) translatedAt.put(entry, i);
+        }
+
+        ipMap = new AddressMap(n);
+        List<Instruction> out = new ArrayList<>(n);
+        List<Instruction> stackJumps = new ArrayList<>();
+        int[] newEntry = new int[m.functions.size()];
+        int ip = 0;
+        while (ip < n) {
+            Integer func = translatedAt.get(ip);
+            if (func == null) {
+                ipMap.set(ip, out.size());
+                Instruction ins = copy(m.code.get(ip));
+                if (ins.op.isJump()) stackJumps.add(ins);
+                out.add(ins);
+                ip++;
+                continue;
+            }
+            Translated t = done[func];
+            int base = out.size();
+            newEntry[func] = base;
+            for (Instruction ins : t.code) {
+                if (ins.op.isJump()) ins.a += base;
+                out.add(ins);
+            }
+            for (int i = ip; i < t.end; i++) {
+                if (t.pos[i - ip] >= 0) ipMap.set(i, base + t.pos[i - ip]);
+            }
+            ip = t.end;
+        }
+        ipMap.finish(out.size());
+        ipMap.relocate(stackJumps);
+
+        List<FunctionInfo> functions = new ArrayList<>(m.functions.size());
+        for (int i = 0; i < m.functions.size(); i++) {
+            FunctionInfo f = m.functions.get(i);
+            if (f.entryIp < 0) {
+                functions.add(f);
+            } else if (done[i] != null) {
+                int maxStack = f.returnType.equals(FrogType.VOID) ? 0 : 1;
+                functions.add(new FunctionInfo(f.nameConstIndex, f.paramCount, done[i].registers, newEntry[i],
+                        f.returnType, f.paramTypes, maxStack, f.flags | FunctionInfo.REGISTERS));
+            } else {
+                functions.add(new FunctionInfo(f.nameConstIndex, f.paramCount, f.localCount, ipMap.get(f.entryIp),
+                        f.returnType, f.paramTypes, f.maxStack, f.flags));
+            }
+        }
+        return new BytecodeModule(m.constPool, functions, out, m.globals);
+    }
+
+    // ---- перевод стекового кода ----
+
+    /** Регистровый код функции {@code func}; {@code null}, если она остаётся стековой. */
+    private Translated translate(int func, int limit) {
+        FunctionInfo f = m.functions.get(func);
+        int[] depth = FunctionMetadata.stackDepths(m, func);
+        int entry = f.entryIp;
+        int end = entry;
+        for (int ip = 0; ip < depth.length; ip++) {
+            if (depth[ip] < 0) continue;
+            if (ip < entry || ip >= limit) return null;
+            end = ip + 1;
+        }
+
+        boolean[] leader = new boolean[end - entry];
+        boolean[] inLoop = new boolean[end - entry];
+        for (int ip = entry; ip < end; ip++) {
+            Instruction ins = m.code.get(ip);
+            if (depth[ip] < 0 || !ins.op.isJump()) continue;
+            leader[ins.a - entry] = true;
+            if (ins.a <= ip) Arrays.fill(inLoop, ins.a - entry, ip - entry + 1, true);
+        }
+
+        locals = f.localCount;
+        temps = f.maxStack;
+        constRegs.clear();
+        body = new ArrayList<>();
+        stack = new int[temps + 1];
+        sp = 0;
+        lastDef = -1;
+        int[] pos = new int[limit - entry];
+        Arrays.fill(pos, -1);
+        boolean returnsValue = !f.returnType.equals(FrogType.VOID);
+        boolean fallsThrough = true;
+
+        for (int ip = entry; ip < end; ip++) {
+            if (depth[ip] < 0) continue;
+            Instruction ins = m.code.get(ip);
+            if (leader[ip - entry]) {
+                if (fallsThrough) flush();
+                sp = depth[ip];
+                for (int d = 0; d < sp; d++) stack[d] = temp(d);
+                lastDef = -1;
+            } else if (sp != depth[ip]) {
+                throw new IllegalStateException("stack depth mismatch at ip " + ip);
+            }
+            pos[ip - entry] = body.size();
+            hoist = inLoop[ip - entry];
+            fallsThrough = true;
+
+            OpCode rop = registerOp(ins.op);
+            if (rop != null) {
+                Instruction next = ip + 1 < end ? m.code.get(ip + 1) : null;
+                OpCode fused = compareJump(rop);
+                if (fused != null && next != null && next.op == JUMP_FALSE && !leader[ip + 1 - entry]) {
+                    jumpIf(fused, next.a, 2);
+                    pos[ip + 1 - entry] = body.size() - 1;
+                    ip++;
+                } else {
+                    binary(rop);
+                }
+                continue;
+            }
+
+            switch (ins.op) {
+                case PUSH_CONST -> push(-ins.a - 1);
+                case LOAD_LOCAL -> push(slot(ins));
+                case LOAD2_LOCAL -> {
+                    push(ins.a);
+                    push(slot(ins));
+                }
+                case STORE_LOCAL -> store(slot(ins), pop());
+                case DUP -> push(stack[sp - 1]);
+                case POP -> sp--;
+                case LOAD_GLOBAL -> {
+                    RInstr i = emit(R_LOAD_GLOBAL);
+                    i.wide = ins.a;
+                    result(i, sp);
+                }
+                case STORE_GLOBAL -> {
+                    int v = pop();
+                    RInstr i = emit(R_STORE_GLOBAL, operand(v, sp));
+                    i.wide = ins.a;
+                }
+                case NEG, NOT -> {
+                    int v = pop();
+                    result(emit(ins.op == NEG ? R_NEG : R_NOT, operand(v, sp)), sp);
+                }
+                case JUMP -> {
+                    flush();
+                    emit(JUMP).wide = ins.a;
+                    fallsThrough = false;
+                }
+                case JUMP_FALSE, JUMP_TRUE -> jumpIf(ins.op == JUMP_FALSE ? R_JUMP_FALSE : R_JUMP_TRUE, ins.a, 1);
+                case LT_JUMP_FALSE, LE_JUMP_FALSE, GT_JUMP_FALSE, GE_JUMP_FALSE, EQ_JUMP_FALSE, NEQ_JUMP_FALSE ->
+                        jumpIf(registerJump(ins.op), ins.a, 2);
+                case CALL -> {
+                    int argc = slot(ins);
+                    int first = window(argc);
+                    RInstr i = emit(R_CALL, range(first, argc));
+                    i.wide = ins.a;
+                    i.first = temp(first);
+                    if (!m.functions.get(ins.a).returnType.equals(FrogType.VOID)) {
+                        i.dst = temp(first);
+                        push(temp(first));
+                    }
+                }
+                case RET -> {
+                    if (returnsValue) {
+                        int v = pop();
+                        emit(R_RET, operand(v, sp));
+                    } else {
+                        emit(RET);
+                    }
+                    fallsThrough = false;
+                }
+                case KVA -> {
+                    emit(KVA);
+                    fallsThrough = false;
+                }
+                case NEW_ARRAY, CONCAT_N -> {
+                    int count = slot(ins);
+                    int first = window(count);
+                    RInstr i = emit(ins.op == NEW_ARRAY ? R_NEW_ARRAY : R_CONCAT_N, range(first, count));
+                    i.first = temp(first);
+                    result(i, first);
+                }
+                case NEW_ARRAY_SIZED -> {
+                    RInstr i = emit(R_NEW_ARRAY_SIZED);
+                    i.wide = ins.a;
+                    result(i, sp);
+                }
+                case LOAD_INDEX, LOAD_INDEX_UNCHECKED -> {
+                    int idx = pop();
+                    int arr = pop();
+                    int a = operand(arr, sp);
+                    int b = operand(idx, sp + 1);
+                    result(emit(ins.op == LOAD_INDEX ? R_LOAD_INDEX : R_LOAD_INDEX_UNCHECKED, a, b), sp);
+                }
+                case LOAD_LOCAL_INDEX, LOAD_LOCAL_INDEX_UNCHECKED -> {
+                    OpCode op = ins.op == LOAD_LOCAL_INDEX ? R_LOAD_INDEX : R_LOAD_INDEX_UNCHECKED;
+                    result(emit(op, ins.a, slot(ins)), sp);
+                }
+                case STORE_INDEX, STORE_INDEX_UNCHECKED -> {
+                    int val = pop();
+                    int idx = pop();
+                    int arr = pop();
+                    int a = operand(arr, sp);
+                    int b = operand(idx, sp + 1);
+                    int c = operand(val, sp + 2);
+                    emit(ins.op == STORE_INDEX ? R_STORE_INDEX : R_STORE_INDEX_UNCHECKED, a, b, c);
+                }
+                case STR_APPEND -> {
+                    int x = slot(ins);
+                    int v = operand(pop(), sp);
+                    spill(x);
+                    emit(R_STR_APPEND, x, v).dst = x;
+                }
+                case STR_BUILDER, FREE_LOCAL, INC_LOCAL, INC_LOCAL_I64 -> {
+                    int x = slot(ins);
+                    spill(x);
+                    RInstr i = emit(ins.op, x);
+                    i.dst = x;
+                    i.wide = ins.a;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+
+        // константы из циклов загружаются один раз при входе
+        List<RInstr> code = new ArrayList<>();
+        constRegs.forEach((k, reg) -> {
+            RInstr i = new RInstr(R_LOADK);
+            i.wide = k;
+            i.dst = reg;
+            code.add(i);
+        });
+        int shift = code.size();
+        for (int i = 0; i < pos.length; i++) {
+            if (pos[i] >= 0) pos[i] += shift;
+        }
+        for (RInstr i : body) {
+            if (i.op.isJump()) i.wide = pos[i.wide - entry];
+        }
+        code.addAll(body);
+
+        int[] color = new int[locals + temps + constRegs.size()];
+        int registers = allocate(code, f.paramCount, color);
+        if (registers > MAX_REGISTERS) return null;
+
+        List<Instruction> encoded = new ArrayList<>(code.size());
+        for (RInstr i : code) encoded.add(encode(i, color));
+        return new Translated(encoded, pos, tail(entry, end, limit), registers);
+    }
+
+    /**
+     * Конец заменяемого диапазона: недостижимый хвост функции уходит вместе с ней, кроме кода,
+     * на который переходят снаружи (выход из программы после последней функции).
+     */
+    private int tail(int entry, int end, int limit) {
+        int cut = limit;
+        for (int ip = 0; ip < m.code.size(); ip++) {
+            if (ip >= entry && ip < limit) continue;
+            Instruction ins = m.code.get(ip);
+            if (ins.op.isJump() && ins.a >= end && ins.a < cut) cut = ins.a;
+        }
+        return cut;
+    }
+
+    private int temp(int d) {
+        return locals + d;
+    }
+
+    private void push(int place) {
+        stack[sp++] = place;
+    }
+
+    private int pop() {
+        return stack[--sp];
+    }
+
+    private static boolean isConst(int place) {
+        return place < 0;
+    }
+
+    private RInstr emit(OpCode op, int... srcs) {
+        RInstr i = new RInstr(op);
+        i.srcs = srcs;
+        body.add(i);
+        lastDef = -1;
+        return i;
+    }
+
+    /** Результат {@code i} кладётся в позицию {@code d}; следующий {@code STORE_LOCAL} может его перенаправить. */
+    private void result(RInstr i, int d) {
+        i.dst = temp(d);
+        push(temp(d));
+        lastDef = body.size() - 1;
+    }
+
+    /** Регистр операнда, лежащего в позиции {@code d}; константа загружается в {@code t_d} или в свой регистр. */
+    private int operand(int place, int d) {
+        if (!isConst(place)) return place;
+        if (hoist) return constRegs.computeIfAbsent(-place - 1, k -> locals + temps + constRegs.size());
+        load(temp(d), place);
+        return temp(d);
+    }
+
+    private void load(int dst, int place) {
+        if (isConst(place)) {
+            RInstr i = emit(R_LOADK);
+            i.wide = -place - 1;
+            i.dst = dst;
+        } else if (place != dst) {
+            emit(R_MOVE, place).dst = dst;
+        }
+    }
+
+    private void materialize(int d) {
+        if (stack[d] == temp(d)) return;
+        load(temp(d), stack[d]);
+        stack[d] = temp(d);
+    }
+
+    /** Переносит весь стек в регистры его позиций: так его ждут на входе в блок. */
+    private void flush() {
+        for (int d = 0; d < sp; d++) materialize(d);
+    }
+
+    /** Перед записью в {@code x} значения, взятые из неё и лежащие на стеке, переносятся в свои позиции. */
+    private void spill(int x) {
+        for (int d = 0; d < sp; d++) {
+            if (stack[d] == x) materialize(d);
+        }
+    }
+
+    /** Верхние {@code count} значений переносятся в свои позиции подряд; возвращает позицию первого. */
+    private int window(int count) {
+        int first = sp - count;
+        for (int d = first; d < sp; d++) materialize(d);
+        sp = first;
+        return first;
+    }
+
+    private int[] range(int first, int count) {
+        int[] regs = new int[count];
+        for (int i = 0; i < count; i++) regs[i] = temp(first + i);
+        return regs;
+    }
+
+    private void store(int x, int place) {
+        if (place == x) return;
+        boolean aliased = false;
+        for (int d = 0; d < sp; d++) aliased |= stack[d] == x;
+        if (!aliased && place == temp(sp) && lastDef >= 0 && lastDef == body.size() - 1
+                && body.get(lastDef).dst == place) {
+            body.get(lastDef).dst = x;
+            lastDef = -1;
+            return;
+        }
+        spill(x);
+        load(x, place);
+    }
+
+    private void binary(OpCode rop) {
+        int r = pop();
+        int l = pop();
+        if (rop == R_ADD || rop == R_SUB) {
+            Integer imm = immediate(r, rop == R_SUB);
+            if (imm != null && !isConst(l)) {
+                RInstr i = emit(R_ADDI, l);
+                i.wide = imm;
+                result(i, sp);
+                return;
+            }
+            imm = rop == R_ADD ? immediate(l, false) : null;
+            if (imm != null && !isConst(r)) {
+                RInstr i = emit(R_ADDI, r);
+                i.wide = imm;
+                result(i, sp);
+                return;
+            }
+        }
+        int a = operand(l, sp);
+        int b = operand(r, sp + 1);
+        result(emit(rop, a, b), sp);
+    }
+
+    /** Условный переход по верхним {@code operands} значениям; остальной стек уходит в свои позиции. */
+    private void jumpIf(OpCode op, int target, int operands) {
+        int r = pop();
+        int l = operands == 2 ? pop() : r;
+        flush();
+        RInstr i;
+        if (operands == 2) {
+            int a = operand(l, sp);
+            i = emit(op, a, operand(r, sp + 1));
+        } else {
+            i = emit(op, operand(r, sp));
+        }
+        i.wide = target;
+    }
+
+    /** Целая константа, которая помещается в {@code R_ADDI}; {@code null}, если нет. */
+    private Integer immediate(int place, boolean negate) {
+        if (!isConst(place)) return null;
+        ConstantPool.Const c = m.constPool.getPool().get(-place - 1);
+        if (c.tag != ConstantPool.Tag.INT) return null;
+        int v = (Integer) c.value;
+        if (negate) v = -v;
+        return v >= Short.MIN_VALUE && v <= Short.MAX_VALUE ? v : null;
+    }
+
+    private static int slot(Instruction ins) {
+        return ins.b & 0xFFFF;
+    }
+
+    private static OpCode registerOp(OpCode op) {
+        return switch (op) {
+            case ADD, ADD_I64, ADD_INT, ADD_FLOAT, CONCAT_STR -> R_ADD;
+            case SUB, SUB_I64, SUB_INT, SUB_FLOAT -> R_SUB;
+            case MUL, MUL_INT, MUL_FLOAT -> R_MUL;
+            case DIV, DIV_FLOAT -> R_DIV;
+            case MOD -> R_MOD;
+            case EQ, EQ_INT, EQ_STR -> R_EQ;
+            case NEQ, NEQ_INT, NEQ_STR -> R_NEQ;
+            case LT, LT_I64, LT_INT, LT_FLOAT -> R_LT;
+            case LE, LE_I64, LE_INT, LE_FLOAT -> R_LE;
+            case GT, GT_I64, GT_INT, GT_FLOAT -> R_GT;
+            case GE, GE_I64, GE_INT, GE_FLOAT -> R_GE;
+            case AND -> R_AND;
+            case OR -> R_OR;
+            default -> null;
+        };
+    }
+
+    private static OpCode compareJump(OpCode rop) {
+        return switch (rop) {
+            case R_LT -> R_LT_JUMP_FALSE;
+            case R_LE -> R_LE_JUMP_FALSE;
+            case R_GT -> R_GT_JUMP_FALSE;
+            case R_GE -> R_GE_JUMP_FALSE;
+            case R_EQ -> R_EQ_JUMP_FALSE;
+            case R_NEQ -> R_NEQ_JUMP_FALSE;
+            default -> null;
+        };
+    }
+
+    private static OpCode registerJump(OpCode op) {
+        return switch (op) {
+            case LT_JUMP_FALSE -> R_LT_JUMP_FALSE;
+            case LE_JUMP_FALSE -> R_LE_JUMP_FALSE;
+            case GT_JUMP_FALSE -> R_GT_JUMP_FALSE;
+            case GE_JUMP_FALSE -> R_GE_JUMP_FALSE;
+            case EQ_JUMP_FALSE -> R_EQ_JUMP_FALSE;
+            default -> R_NEQ_JUMP_FALSE;
+        };
+    }
+
+    // ---- распределение регистров ----
+
+    /**
+     * Линейное сканирование: интервал виртуального регистра — от первой до последней точки,
+     * где он жив, читается или пишется. Заполняет {@code color} и возвращает число регистров.
+     */
+    private static int allocate(List<RInstr> code, int paramCount, int[] color) {
+        int vregs = color.length;
+        int n = code.size();
+        BitSet[] liveIn = new BitSet[n];
+        BitSet[] liveOut = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            liveIn[i] = new BitSet(vregs);
+            liveOut[i] = new BitSet(vregs);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = n - 1; i >= 0; i--) {
+                RInstr ins = code.get(i);
+                BitSet out = new BitSet(vregs);
+                for (int s : successors(ins, i, n)) out.or(liveIn[s]);
+                BitSet in = (BitSet) out.clone();
+                if (ins.dst >= 0) in.clear(ins.dst);
+                for (int s : ins.srcs) in.set(s);
+                if (!out.equals(liveOut[i]) || !in.equals(liveIn[i])) {
+                    liveOut[i] = out;
+                    liveIn[i] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        int[] start = new int[vregs];
+        int[] end = new int[vregs];
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        BitSet pinned = new BitSet(vregs);
+        for (int i = 0; i < n; i++) {
+            RInstr ins = code.get(i);
+            BitSet touched = (BitSet) liveIn[i].clone();
+            touched.or(liveOut[i]);
+            if (ins.dst >= 0) touched.set(ins.dst);
+            for (int s : ins.srcs) touched.set(s);
+            for (int v = touched.nextSetBit(0); v >= 0; v = touched.nextSetBit(v + 1)) {
+                start[v] = Math.min(start[v], i);
+                end[v] = Math.max(end[v], i);
+            }
+            if (ins.first >= 0 && ins.srcs.length > 1) {
+                for (int s : ins.srcs) pinned.set(s);
+            }
+        }
+        // параметры записаны вызовом ещё до первой инструкции
+        for (int p = 0; p < paramCount; p++) {
+            start[p] = 0;
+            end[p] = Math.max(end[p], 0);
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int v = 0; v < vregs; v++) {
+            if (end[v] >= 0 && !pinned.get(v)) order.add(v);
+        }
+        order.sort(Comparator.<Integer>comparingInt(v -> start[v]).thenComparingInt(v -> v < paramCount ? 0 : 1)
+                .thenComparingInt(v -> v));
+
+        BitSet busy = new BitSet();
+        PriorityQueue<Integer> active = new PriorityQueue<>(Comparator.comparingInt(v -> end[v]));
+        int count = paramCount;
+        for (int v : order) {
+            while (!active.isEmpty() && end[active.peek()] < start[v]) busy.clear(color[active.poll()]);
+            int c = v < paramCount ? v : busy.nextClearBit(0);
+            color[v] = c;
+            busy.set(c);
+            active.add(v);
+            count = Math.max(count, c + 1);
+        }
+
+        if (pinned.isEmpty()) return count;
+        int lo = pinned.nextSetBit(0);
+        for (int v = lo; v >= 0; v = pinned.nextSetBit(v + 1)) color[v] = count + v - lo;
+        return count + pinned.length() - lo;
+    }
+
+    private static List<Integer> successors(RInstr ins, int i, int n) {
+        List<Integer> out = new ArrayList<>(2);
+        switch (ins.op) {
+            case RET, R_RET, KVA -> {}
+            case JUMP -> out.add(ins.wide);
+            default -> {
+                if (ins.op.isJump()) out.add(ins.wide);
+                if (i + 1 < n) out.add(i + 1);
+            }
+        }
+        return out;
+    }
+
+    private static Instruction encode(RInstr i, int[] color) {
+        int[] s = new int[i.srcs.length];
+        for (int k = 0; k < s.length; k++) s[k] = color[i.srcs[k]];
+        int dst = i.dst >= 0 ? color[i.dst] : 0;
+        int first = i.first >= 0 ? color[i.first] : 0;
+        return switch (i.op) {
+            case R_MOVE, R_NEG, R_NOT -> Instruction.a(i.op, dst | s[0] << 8);
+            case R_LOADK, R_LOAD_GLOBAL, R_NEW_ARRAY_SIZED -> Instruction.ab(i.op, i.wide, dst);
+            case R_STORE_GLOBAL, R_JUMP_FALSE, R_JUMP_TRUE -> Instruction.ab(i.op, i.wide, s[0]);
+            case R_ADDI -> Instruction.a(i.op, dst | s[0] << 8 | (i.wide & 0xFFFF) << 16);
+            case R_LT_JUMP_FALSE, R_LE_JUMP_FALSE, R_GT_JUMP_FALSE, R_GE_JUMP_FALSE, R_EQ_JUMP_FALSE,
+                 R_NEQ_JUMP_FALSE -> Instruction.ab(i.op, i.wide, s[0] | s[1] << 8);
+            case R_CALL -> Instruction.ab(i.op, i.wide, first | s.length << 8);
+            case R_RET -> Instruction.b(i.op, s[0]);
+            case R_NEW_ARRAY, R_CONCAT_N -> Instruction.a(i.op, dst | first << 8 | s.length << 16);
+            case R_STORE_INDEX, R_STORE_INDEX_UNCHECKED -> Instruction.a(i.op, s[0] | s[1] << 8 | s[2] << 16);
+            case R_STR_APPEND -> Instruction.a(i.op, dst | s[1] << 8);
+            case JUMP -> Instruction.a(JUMP, i.wide);
+            case RET, KVA -> Instruction.of(i.op);
+            case FREE_LOCAL, STR_BUILDER -> Instruction.b(i.op, dst);
+            case INC_LOCAL, INC_LOCAL_I64 -> Instruction.ab(i.op, i.wide, dst);
+            default -> Instruction.a(i.op, dst | s[0] << 8 | s[1] << 16);
+        };
+    }
+
+    private static Instruction copy(Instruction ins) {
+        if (ins.hasA && ins.hasB) return Instruction.ab(ins.op, ins.a, ins.b);
+        if (ins.hasA) return Instruction.a(ins.op, ins.a);
+        if (ins.hasB) return Instruction.b(ins.op, ins.b);
+        return Instruction.of(ins.op);
+    }
+}
@@ -0,0 +1,132 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.ArrayLiteralExpr;
+import lang.semantic.ast.node.expression.AssignExpr;
+import lang.semantic.ast.node.expression.BinaryExpr;
+import lang.semantic.ast.node.expression.CallExpr;
+import lang.semantic.ast.node.expression.IndexExpr;
+import lang.semantic.ast.node.expression.UnaryExpr;
+import lang.semantic.ast.node.expression.VarExpr;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.BlockStmt;
+import lang.semantic.ast.node.statement.ExprStmt;
+import lang.semantic.ast.node.statement.ForStmt;
+import lang.semantic.ast.node.statement.IfStmt;
+import lang.semantic.ast.node.statement.IndexAssignStmt;
+import lang.semantic.ast.node.statement.ReturnStmt;
+import lang.semantic.ast.node.statement.VarDeclStmt;
+import lang.semantic.ast.node.statement.WhileStmt;
+import lang.semantic.symbols.FrogType;
+
+/**
+ * Поиск строк-аккумуляторов в цикле.
+ * <p>
+ * Переменная {@code s} — аккумулятор, если внутри цикла она встречается только в операторах
+ * {@code s = s + e1 + ... + en}, где {@code ei} не читают {@code s}. Такую переменную можно
+ * держать в изменяемом буфере: до выхода из цикла её значение никто не видит.
+ * </p>
+ */
+final class StringAccumulators {
+
+    private final Set<String> appended = new LinkedHashSet<>();
+    private final Set<String> other = new HashSet<>();
+
+    static Set<String> find(Expression cond, Expression inc, Statement body) {
+        StringAccumulators a = new StringAccumulators();
+        a.visit(cond);
+        a.visit(inc);
+        a.visit(body);
+        a.appended.removeAll(a.other);
+        return a.appended;
+    }
+
+    /** Имя аккумулятора, если оператор имеет вид {@code s = s + ...}, иначе {@code null}. */
+    static String target(Statement st) {
+        if (!(st instanceof ExprStmt es) || !(es.getExpression() instanceof AssignExpr a)) return null;
+        List<Expression> parts = concatParts(a.getValue());
+        if (parts.size() < 2 || !(parts.get(0) instanceof VarExpr v) || !v.getName().equals(a.getName())) return null;
+        return a.getName();
+    }
+
+    /** Операнды цепочки строковых {@code +}; для прочих выражений — само выражение. */
+    static List<Expression> concatParts(Expression e) {
+        List<Expression> out = new ArrayList<>();
+        flatten(e, out);
+        return out;
+    }
+
+    private static void flatten(Expression e, List<Expression> out) {
+        if (e instanceof BinaryExpr b && b.getOp() == BinaryOp.PLUS && FrogType.STRING.equals(b.getType())) {
+            flatten(b.getLeft(), out);
+            flatten(b.getRight(), out);
+        } else {
+            out.add(e);
+        }
+    }
+
+    private void visit(Statement st) {
+        if (st == null) return;
+        String acc = target(st);
+        if (acc != null) {
+            appended.add(acc);
+            List<Expression> parts = concatParts(((AssignExpr) ((ExprStmt) st).getExpression()).getValue());
+            for (Expression p : parts.subList(1, parts.size())) visit(p);
+            return;
+        }
+        if (st instanceof VarDeclStmt v) {
+            other.add(v.getName());
+            visit(v.getInitializer());
+        } else if (st instanceof ExprStmt e) {
+            visit(e.getExpression());
+        } else if (st instanceof IndexAssignStmt ia) {
+            visit(ia.getTarget());
+            visit(ia.getValue());
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) visit(s);
+        } else if (st instanceof IfStmt i) {
+            visit(i.getCondition());
+            visit(i.getThenBranch());
+            visit(i.getElseBranch());
+        } else if (st instanceof WhileStmt w) {
+            visit(w.getCondition());
+            visit(w.getBody());
+        } else if (st instanceof ForStmt f) {
+            visit(f.getInitializer());
+            visit(f.getCondition());
+            visit(f.getIncrement());
+            visit(f.getBody());
+        } else if (st instanceof ReturnStmt r) {
+            visit(r.getValue());
+        }
+    }
+
+    private void visit(Expression e) {
+        if (e == null) return;
+        if (e instanceof VarExpr v) {
+            other.add(v.getName());
+        } else if (e instanceof AssignExpr a) {
+            other.add(a.getName());
+            visit(a.getValue());
+        } else if (e instanceof UnaryExpr u) {
+            visit(u.getExpr());
+        } else if (e instanceof BinaryExpr b) {
+            visit(b.getLeft());
+            visit(b.getRight());
+        } else if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) visit(arg);
+        } else if (e instanceof IndexExpr idx) {
+            visit(idx.getArray());
+            visit(idx.getIndex());
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) visit(el);
+        }
+    }
+}
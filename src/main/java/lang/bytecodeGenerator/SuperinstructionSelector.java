@@ -0,0 +1,154 @@
+package lang.bytecodeGenerator;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.ConstantPool;
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+import lang.semantic.bytecode.OpCode;
+
+import static lang.semantic.bytecode.OpCode.*;
+
+/**
+ * Замена частых цепочек инструкций одной составной.
+ * <p>
+ * Выполняется последним проходом по готовому коду: составная инструкция встаёт на место
+ * первой инструкции цепочки, остальные удаляются, а их адреса переходят к ней. Цепочка
+ * не сливается, если в её середину ведёт переход или с середины начинается функция.
+ * </p>
+ */
+public final class SuperinstructionSelector {
+
+    private final Map<OpCode, Integer> fused = new EnumMap<>(OpCode.class);
+    private AddressMap ipMap;
+
+    /** Сколько составных инструкций каждого вида выбрано. */
+    public Map<OpCode, Integer> getFused() {
+        return fused;
+    }
+
+    /** Новый адрес инструкции с адресом {@code oldIp} в коде, переданном в {@link #select}. */
+    public int remap(int oldIp) {
+        return ipMap.get(oldIp);
+    }
+
+    public BytecodeModule select(BytecodeModule m) {
+        List<Instruction> code = m.code;
+        Set<Integer> targets = new HashSet<>();
+        for (Instruction ins : code) {
+            if (ins.op.isJump()) targets.add(ins.a);
+        }
+        for (FunctionInfo f : m.functions) targets.add(f.entryIp);
+
+        ipMap = new AddressMap(code.size());
+        List<Instruction> out = new ArrayList<>(code.size());
+        int ip = 0;
+        while (ip < code.size()) {
+            int n = 1;
+            Instruction ins = code.get(ip);
+            Instruction s = match(m.constPool, code, ip, targets);
+            if (s != null) {
+                ins = s;
+                n = width(s.op);
+                fused.merge(s.op, 1, Integer::sum);
+            }
+            for (int k = 0; k < n; k++) ipMap.set(ip + k, out.size());
+            out.add(ins);
+            ip += n;
+        }
+        ipMap.finish(out.size());
+
+        ipMap.relocate(out);
+        return new BytecodeModule(m.constPool, ipMap.relocateEntries(m.functions), out, m.globals);
+    }
+
+    private Instruction match(ConstantPool consts, List<Instruction> code, int ip, Set<Integer> targets) {
+        Instruction inc = incLocal(consts, code, ip, targets);
+        if (inc != null) return inc;
+        Instruction load = loadLocalIndex(code, ip, targets);
+        if (load != null) return load;
+
+        Instruction x = code.get(ip);
+        if (!free(code, ip, 2, targets)) return null;
+        Instruction y = code.get(ip + 1);
+
+        // пара LOAD_LOCAL не должна отнимать первую инструкцию у цепочки, которая начинается следом
+        if (x.op == LOAD_LOCAL && y.op == LOAD_LOCAL
+                && incLocal(consts, code, ip + 1, targets) == null && loadLocalIndex(code, ip + 1, targets) == null) {
+            return Instruction.ab(LOAD2_LOCAL, x.b & 0xFFFF, y.b);
+        }
+        OpCode cmp = compareJump(x.op);
+        if (cmp != null && y.op == JUMP_FALSE) {
+            return Instruction.a(cmp, y.a);
+        }
+        return null;
+    }
+
+    /** {@code LOAD_LOCAL x; PUSH_CONST k; ADD|SUB; STORE_LOCAL x} с целой константой. */
+    private static Instruction incLocal(ConstantPool consts, List<Instruction> code, int ip, Set<Integer> targets) {
+        if (!free(code, ip, 4, targets)) return null;
+        Instruction load = code.get(ip);
+        Instruction push = code.get(ip + 1);
+        Instruction op = code.get(ip + 2);
+        Instruction store = code.get(ip + 3);
+        boolean add = op.op == ADD || op.op == ADD_INT;
+        boolean sub = op.op == SUB || op.op == SUB_INT;
+        if (load.op != LOAD_LOCAL || push.op != PUSH_CONST || !(add || sub)
+                || store.op != STORE_LOCAL || load.b != store.b) {
+            return null;
+        }
+        ConstantPool.Const c = consts.getPool().get(push.a);
+        if (c.tag != ConstantPool.Tag.INT) return null;
+        int k = (Integer) c.value;
+        if (sub && k == Integer.MIN_VALUE) return null;
+        return Instruction.ab(INC_LOCAL, add ? k : -k, load.b);
+    }
+
+    /** {@code LOAD_LOCAL arr; LOAD_LOCAL i; LOAD_INDEX}. */
+    private static Instruction loadLocalIndex(List<Instruction> code, int ip, Set<Integer> targets) {
+        if (!free(code, ip, 3, targets)) return null;
+        Instruction arr = code.get(ip);
+        Instruction idx = code.get(ip + 1);
+        Instruction load = code.get(ip + 2);
+        if (arr.op != LOAD_LOCAL || idx.op != LOAD_LOCAL) return null;
+        if (load.op == LOAD_INDEX) return Instruction.ab(LOAD_LOCAL_INDEX, arr.b & 0xFFFF, idx.b);
+        if (load.op == LOAD_INDEX_UNCHECKED) return Instruction.ab(LOAD_LOCAL_INDEX_UNCHECKED, arr.b & 0xFFFF, idx.b);
+        return null;
+    }
+
+    /** Цепочка из {@code n} инструкций с адреса {@code ip} есть в коде и в её середину никто не входит. */
+    private static boolean free(List<Instruction> code, int ip, int n, Set<Integer> targets) {
+        if (ip + n > code.size()) return false;
+        for (int k = 1; k < n; k++) {
+            if (targets.contains(ip + k)) return false;
+        }
+        return true;
+    }
+
+    /** Типизированное сравнение тоже сливается: составная инструкция проверяет теги сама. */
+    private static OpCode compareJump(OpCode op) {
+        return switch (op) {
+            case LT, LT_INT, LT_FLOAT -> LT_JUMP_FALSE;
+            case LE, LE_INT, LE_FLOAT -> LE_JUMP_FALSE;
+            case GT, GT_INT, GT_FLOAT -> GT_JUMP_FALSE;
+            case GE, GE_INT, GE_FLOAT -> GE_JUMP_FALSE;
+            case EQ, EQ_INT, EQ_STR -> EQ_JUMP_FALSE;
+            case NEQ, NEQ_INT, NEQ_STR -> NEQ_JUMP_FALSE;
+            default -> null;
+        };
+    }
+
+    private static int width(OpCode op) {
+        return switch (op) {
+            case INC_LOCAL -> 4;
+            case LOAD_LOCAL_INDEX, LOAD_LOCAL_INDEX_UNCHECKED -> 3;
+            default -> 2;
+        };
+    }
+}
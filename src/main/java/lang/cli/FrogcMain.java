@@ -7,20 +7,28 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import lang.bytecodeGenerator.BranchSite;
 import lang.bytecodeGenerator.BytecodeGenerator;
 import lang.bytecodeGenerator.Disassembler;
 import lang.bytecodeGenerator.FrogcWriter;
+import lang.bytecodeGenerator.PeepholeOptimizer;
+import lang.bytecodeGenerator.ProfileMapper;
 import lang.lexer.Lexer;
 import lang.lexer.LexingException;
 import lang.lexer.token.Token;
 import lang.optimizer.AstOptimizer;
+import lang.optimizer.OptimizerOptions;
+import lang.optimizer.Profile;
 import lang.parser.ParseException;
 import lang.parser.Parser;
 import lang.semantic.ast.node.Program;
@@ -28,6 +36,7 @@ import lang.semantic.ast.printer.ASTPrinter;
 import lang.semantic.bytecode.BytecodeModule;
 import lang.semantic.bytecode.ConstantPool;
 import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.GlobalInfo;
 import lang.semantic.bytecode.Instruction;
 import lang.semantic.bytecode.OpCode;
 import lang.semantic.symbols.FrogType;
@@ -75,26 +84,37 @@ public final class FrogcMain {
     }
 
     private static void handleBuild(String[] args) throws IOException {
-        if (args.length < 2 || args.length > 4) {
+        if (args.length < 2) {
             printUsage();
             System.exit(2);
         }
 
         String inputPath = args[1];
-        String outputPath;
+        String outputPath = null;
+        OptimizerOptions options = OptimizerOptions.defaults();
+        boolean peepholeStats = false;
 
-        if (args.length == 2) {
-            outputPath = deriveOutputPath(inputPath);
-        } else if (args.length == 4 && "-o".equals(args[2])) {
-            outputPath = args[3];
-        } else {
-            printUsage();
-            System.exit(2);
-            return;
+        for (int i = 2; i < args.length; i++) {
+            String a = args[i];
+            if ("-o".equals(a) && i + 1 < args.length && outputPath == null) {
+                outputPath = args[++i];
+            } else if ("--peephole-stats".equals(a)) {
+                peepholeStats = true;
+            } else if ("--profile-use".equals(a) && i + 1 < args.length) {
+                options.profile = readProfile(Path.of(args[++i]));
+            } else if (!options.apply(a)) {
+                System.err.println("unknown flag: " + a);
+                printUsage();
+                System.exit(2);
+            }
         }
+        if (outputPath == null) outputPath = deriveOutputPath(inputPath);
 
         String source = readSource(Path.of(inputPath));
-        compileSourceStringToFile(source, outputPath);
+        Compiled compiled = compileSourceStringToFile(source, outputPath, options);
+        if (peepholeStats) {
+            compiled.peepholeRemoved().forEach((p, n) -> System.out.println("peephole " + p + ": " + n));
+        }
         System.out.println("OK: wrote " + outputPath);
     }
 
@@ -108,23 +128,56 @@ public final class FrogcMain {
         Path input = Path.of(inputPath);
 
         List<String> vmFlags = new ArrayList<>();
+        OptimizerOptions options = OptimizerOptions.defaults();
+        String profileOut = null;
         for (int i = 2; i < args.length; i++) {
             String a = args[i];
             switch (a) {
                 case "--trace", "--jit-log", "--gc-log" -> vmFlags.add(a);
+                case "--profile-out" -> {
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(2);
+                    }
+                    profileOut = args[++i];
+                }
+                case "--profile-use" -> {
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(2);
+                    }
+                    options.profile = readProfile(Path.of(args[++i]));
+                }
                 default -> {
-                    System.err.println("unknown flag: " + a);
-                    printUsage();
-                    System.exit(2);
+                    if (!options.apply(a)) {
+                        System.err.println("unknown flag: " + a);
+                        printUsage();
+                        System.exit(2);
+                    }
                 }
             }
         }
 
         String source = readSource(input);
         String outputPath = deriveOutputPath(inputPath);
-        compileSourceStringToFile(source, outputPath);
+        Compiled compiled = compileSourceStringToFile(source, outputPath, options);
+
+        Path raw = null;
+        if (profileOut != null) {
+            raw = Files.createTempFile("frogprof", ".raw");
+            vmFlags.add("--profile-out");
+            vmFlags.add(raw.toString());
+        }
 
         int code = runVm(outputPath, vmFlags);
+        if (raw != null) {
+            // VM пишет счётчики по адресам; в файл профиля они попадают по позициям в исходнике
+            if (code == 0) {
+                ProfileMapper.fromVm(Files.readAllLines(raw), compiled.module(), compiled.branchSites())
+                        .write(Path.of(profileOut));
+            }
+            Files.deleteIfExists(raw);
+        }
         System.exit(code);
     }
 
@@ -208,13 +261,21 @@ public final class FrogcMain {
     }
 
     private static void handleOptAst(String[] args) throws IOException {
-        if (args.length != 2) {
+        if (args.length < 2) {
             printUsage();
             System.exit(2);
         }
+        OptimizerOptions options = OptimizerOptions.defaults();
+        for (int i = 2; i < args.length; i++) {
+            if (!options.apply(args[i])) {
+                System.err.println("unknown flag: " + args[i]);
+                printUsage();
+                System.exit(2);
+            }
+        }
         String source = readSource(Path.of(args[1]));
         Program program = parseProgram(source);
-        Program optimized = new AstOptimizer().optimize(program);
+        Program optimized = new AstOptimizer(options).optimize(program);
         new ASTPrinter().printProgram(optimized);
     }
 
@@ -288,11 +349,21 @@ public final class FrogcMain {
 
     private record ScriptArgs(String sourceCode, String outputPath) {}
 
+    private record Compiled(BytecodeModule module, List<BranchSite> branchSites,
+                            Map<PeepholeOptimizer.Pattern, Integer> peepholeRemoved) {}
+
     private static void compileSourceStringToFile(String source, String outputPath) throws IOException {
+        compileSourceStringToFile(source, outputPath, OptimizerOptions.defaults());
+    }
+
+    private static Compiled compileSourceStringToFile(String source,
+                                                     String outputPath,
+                                                     OptimizerOptions options) throws IOException {
         Program program = parseProgram(source);
-        Program optimized = new AstOptimizer().optimize(program);
+        Program optimized = new AstOptimizer(options).optimize(program);
 
-        BytecodeModule module = new BytecodeGenerator().generate(optimized);
+        BytecodeGenerator generator = new BytecodeGenerator(options);
+        BytecodeModule module = generator.generate(optimized);
 
         Path out = Path.of(outputPath);
         Path parent = out.getParent();
@@ -304,6 +375,17 @@ public final class FrogcMain {
             System.err.println("io error: file not found: " + outputPath);
             System.exit(2);
         }
+        return new Compiled(module, generator.getBranchSites(), generator.getPeepholeRemoved());
+    }
+
+    private static Profile readProfile(Path path) throws IOException {
+        try {
+            return Profile.read(path);
+        } catch (NoSuchFileException e) {
+            System.err.println("io error: file not found: " + path);
+            System.exit(2);
+            return null;
+        }
     }
 
     private static String readSource(Path path) throws IOException {
@@ -334,14 +416,27 @@ public final class FrogcMain {
             }
 
             int version = d.readUnsignedShort();
-            if (version != 1) {
+            if (version < 1 || version > FrogcWriter.VERSION) {
                 throw new IOException("unsupported .frogc version: " + version);
             }
+            int opLimit = version == 1 ? FrogcWriter.FIRST_V2_OP.ordinal()
+                    : version < 5 ? FrogcWriter.FIRST_V5_OP.ordinal() : OpCode.values().length;
 
             int constCount = d.readInt();
             int funcCount = d.readInt();
             int codeSize = d.readInt();
 
+            List<GlobalInfo> globals = new ArrayList<>();
+            if (version >= 3) {
+                int globalCount = d.readInt();
+                for (int i = 0; i < globalCount; i++) {
+                    int len = d.readInt();
+                    byte[] bytes = new byte[len];
+                    d.readFully(bytes);
+                    globals.add(new GlobalInfo(new String(bytes, StandardCharsets.UTF_8), readType(d.readUnsignedByte())));
+                }
+            }
+
             ConstantPool consts = new ConstantPool();
 
             for (int i = 0; i < constCount; i++) {
@@ -356,6 +451,12 @@ public final class FrogcMain {
                         d.readFully(bytes);
                         consts.addString(new String(bytes, StandardCharsets.UTF_8));
                     }
+                    case 5 -> {
+                        int len = d.readInt();
+                        byte[] bytes = new byte[len];
+                        d.readFully(bytes);
+                        consts.addBigInt(new BigInteger(new String(bytes, StandardCharsets.US_ASCII)));
+                    }
                     default -> throw new IOException("unknown const tag: " + tag);
                 }
             }
@@ -372,6 +473,12 @@ public final class FrogcMain {
                 for (int p = 0; p < paramCount; p++) {
                     paramTypes.add(readType(d.readUnsignedByte()));
                 }
+                int maxStack = 0;
+                int flags = 0;
+                if (version >= 4) {
+                    maxStack = d.readUnsignedShort();
+                    flags = d.readUnsignedByte();
+                }
 
                 functions.add(new FunctionInfo(
                         nameIdx,
@@ -379,13 +486,18 @@ public final class FrogcMain {
                         localCount,
                         entryIp,
                         returnType,
-                        paramTypes
+                        paramTypes,
+                        maxStack,
+                        flags
                 ));
             }
 
             List<Instruction> code = new ArrayList<>();
             for (int i = 0; i < codeSize; i++) {
                 int opByte = d.readUnsignedByte();
+                if (opByte >= opLimit) {
+                    throw new IOException("unknown opcode " + opByte + " at ip " + i);
+                }
                 OpCode op = OpCode.values()[opByte];
 
                 int flags = d.readUnsignedByte();
@@ -406,7 +518,18 @@ public final class FrogcMain {
                 code.add(ins);
             }
 
-            return new BytecodeModule(consts, functions, code);
+            if (version < 3) assignGlobalSlots(consts, code, globals);
+            for (int i = 0; i < code.size(); i++) {
+                Instruction ins = code.get(i);
+                boolean global = switch (ins.op) {
+                    case LOAD_GLOBAL, STORE_GLOBAL, R_LOAD_GLOBAL, R_STORE_GLOBAL -> true;
+                    default -> false;
+                };
+                if (global && (ins.a < 0 || ins.a >= globals.size())) {
+                    throw new IOException("invalid global slot " + ins.a + " at ip " + i);
+                }
+            }
+            return new BytecodeModule(consts, functions, code, globals);
 
         } catch (FileNotFoundException e) {
             System.err.println("io error: file not found: " + path);
@@ -415,6 +538,24 @@ public final class FrogcMain {
         }
     }
 
+    /** До v3 операнд глобальной операции — индекс имени в пуле; слоты раздаются в порядке первого упоминания. */
+    private static void assignGlobalSlots(ConstantPool consts, List<Instruction> code, List<GlobalInfo> globals) throws IOException {
+        Map<Integer, Integer> slots = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            Instruction ins = code.get(i);
+            if (ins.op != OpCode.LOAD_GLOBAL && ins.op != OpCode.STORE_GLOBAL) continue;
+            if (ins.a < 0 || ins.a >= consts.getPool().size()
+                    || consts.getPool().get(ins.a).tag != ConstantPool.Tag.STRING) {
+                throw new IOException("invalid global name index " + ins.a + " at ip " + i);
+            }
+            String name = (String) consts.getPool().get(ins.a).value;
+            ins.a = slots.computeIfAbsent(ins.a, k -> {
+                globals.add(new GlobalInfo(name, FrogType.VOID));
+                return globals.size() - 1;
+            });
+        }
+    }
+
     private static FrogType readType(int code) {
         return switch (code) {
             case 1 -> FrogType.INT;
@@ -440,11 +581,13 @@ public final class FrogcMain {
     private static void printUsage() {
         System.err.println("Usage:");
         System.err.println("<code-string> <output.frogc>");
-        System.err.println("build <input.frog> [-o <output.frogc>]");
-        System.err.println("run <input.frog> [--trace] [--jit-log] [--gc-log]");
+        System.err.println("build <input.frog> [-o <output.frogc>] [--profile-use <profile>] [--peephole-stats] [opt-flags]");
+        System.err.println("run <input.frog> [opt-flags] [--trace] [--jit-log] [--gc-log] [--profile-out <profile>] [--profile-use <profile>]");
         System.err.println("disasm <input.frogc>");
         System.err.println("ast <input.frog>");
-        System.err.println("opt-ast <input.frog>");
+        System.err.println("opt-ast <input.frog> [opt-flags]");
+        System.err.println("opt-flags: -O0 | -O1 | -O2 | -f<pass> | -fno-<pass>");
+        System.err.println("passes: strength-reduce, tail-calls, cse, const-calls (-O2), memoize (off; @memo honoured at -O1), unroll (-O2), bounds-check-elim, int-ranges, loop-versioning, scalar-replace, free-local-arrays, string-builders, rotate-loops, peephole, branches, superinstructions, typed-ops, outline-main (-O2), cache-globals, reuse-locals, registers (off)");
     }
 
     private static void printLexingError(LexingException e) {
@@ -99,7 +99,8 @@ public interface TokenPattern {
             simple("[", TokenType.LBRACK),
             simple("]", TokenType.RBRACK),
             simple(";", TokenType.SEMICOLON),
-            simple(",", TokenType.COMMA)
+            simple(",", TokenType.COMMA),
+            simple("@", TokenType.AT)
     );
 
     /**
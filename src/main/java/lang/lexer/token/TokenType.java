@@ -112,6 +112,8 @@ public enum TokenType {
     SEMICOLON,
     /** Запятая {@code ,}. */
     COMMA,
+    /** Знак {@code @} — начало аннотации функции. */
+    AT,
 
     /** Однострочный комментарий, начинающийся с {@code //}. */
     LINE_COMMENT,
@@ -16,7 +16,55 @@ import java.util.List;
 
 public final class AstOptimizer {
 
+    private final OptimizerOptions options;
+
+    public AstOptimizer() {
+        this(OptimizerOptions.defaults());
+    }
+
+    public AstOptimizer(OptimizerOptions options) {
+        this.options = options;
+    }
+
     public Program optimize(Program program) {
+        Program folded = fold(program);
+        if (options.outlineMain) {
+            folded = new MainOutliner().optimize(folded);
+        }
+        if (options.tailCalls) {
+            folded = new TailRecursionEliminator().optimize(folded);
+        }
+        if (options.constCalls) {
+            folded = fold(new ConstantCallFolder().optimize(folded));
+        }
+        if (options.memoize || options.memoAnnotated) {
+            folded = new Memoizer(options.memoize, options.memoAnnotated).optimize(folded);
+        }
+        if (options.cacheGlobals) {
+            folded = new GlobalCacher().optimize(folded);
+        }
+        if (options.unroll) {
+            folded = fold(new LoopUnroller(options.profile).optimize(folded));
+        }
+        if (options.scalarReplace) {
+            folded = fold(new ScalarReplacer().optimize(folded));
+        }
+        if (options.strengthReduction) {
+            folded = new InductionVariableOptimizer().optimize(folded);
+        }
+        if (options.cse) {
+            folded = new CommonSubexpressionEliminator().optimize(folded);
+        }
+        if (options.boundsCheckElim || options.intRanges) {
+            folded = new BoundsCheckEliminator(options.boundsCheckElim, options.intRanges).optimize(folded);
+        }
+        if (options.loopVersioning) {
+            folded = new LoopVersioner().optimize(folded);
+        }
+        return folded;
+    }
+
+    private Program fold(Program program) {
         List<FunctionDeclStmt> newFuncs = new ArrayList<>();
         for (FunctionDeclStmt f : program.getFunctions()) {
             newFuncs.add(optimizeFunction(f));
@@ -33,13 +81,7 @@ public final class AstOptimizer {
 
     private FunctionDeclStmt optimizeFunction(FunctionDeclStmt f) {
         BlockStmt bodyOpt = (BlockStmt) optimizeStmt(f.getBody());
-        return new FunctionDeclStmt(
-                f.getName(),
-                f.getParams(),
-                f.getReturnType(),
-                bodyOpt,
-                f.getLocation()
-        );
+        return f.withBody(bodyOpt);
     }
 
     private Statement optimizeStmt(Statement st) {
@@ -55,6 +97,13 @@ public final class AstOptimizer {
             return new ExprStmt(exprOpt, e.getLocation());
         }
 
+        if (st instanceof IndexAssignStmt ia) {
+            IndexExpr target = (IndexExpr) optimizeExpr(ia.getTarget());
+            IndexAssignStmt n = new IndexAssignStmt(target, optimizeExpr(ia.getValue()), ia.getLocation());
+            n.setValueType(ia.getValueType());
+            return n;
+        }
+
         if (st instanceof BlockStmt b) {
             return optimizeBlock(b);
         }
@@ -209,7 +258,7 @@ public final class AstOptimizer {
             switch (op) {
                 case NEGATE -> {
                     if (v instanceof Integer i) {
-                        LiteralExpr e = new LiteralExpr(-i, loc);
+                        LiteralExpr e = new LiteralExpr(Math.negateExact(i), loc);
                         e.setType(type);
                         return e;
                     }
@@ -243,7 +292,7 @@ public final class AstOptimizer {
             switch (op) {
                 case PLUS -> {
                     if (lv instanceof Integer a && rv instanceof Integer b) {
-                        return litInt(a + b, loc, resultType);
+                        return litInt(Math.addExact(a, b), loc, resultType);
                     }
                     if (lv instanceof Double a && rv instanceof Double b) {
                         return litFloat(a + b, loc, resultType);
@@ -254,7 +303,7 @@ public final class AstOptimizer {
                 }
                 case MINUS -> {
                     if (lv instanceof Integer a && rv instanceof Integer b) {
-                        return litInt(a - b, loc, resultType);
+                        return litInt(Math.subtractExact(a, b), loc, resultType);
                     }
                     if (lv instanceof Double a && rv instanceof Double b) {
                         return litFloat(a - b, loc, resultType);
@@ -262,7 +311,7 @@ public final class AstOptimizer {
                 }
                 case MUL -> {
                     if (lv instanceof Integer a && rv instanceof Integer b) {
-                        return litInt(a * b, loc, resultType);
+                        return litInt(Math.multiplyExact(a, b), loc, resultType);
                     }
                     if (lv instanceof Double a && rv instanceof Double b) {
                         return litFloat(a * b, loc, resultType);
@@ -341,6 +390,14 @@ public final class AstOptimizer {
             case DIV -> {
                 if (R1) return L;
             }
+            case AND -> {
+                if (isBoolLiteral(L, true)) return R;
+                if (isBoolLiteral(L, false)) return L;
+            }
+            case OR -> {
+                if (isBoolLiteral(L, false)) return R;
+                if (isBoolLiteral(L, true)) return L;
+            }
         }
         return null;
     }
@@ -0,0 +1,126 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+abstract class AstRewriter {
+
+    Program rewriteProgram(Program program) {
+        List<FunctionDeclStmt> newFuncs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            newFuncs.add(rewriteFunction(f));
+        }
+
+        List<Statement> newStmts = new ArrayList<>();
+        for (Statement s : program.getStatements()) {
+            Statement r = rewriteStmt(s);
+            if (r != null) newStmts.add(r);
+        }
+
+        return new Program(newFuncs, newStmts, program.getLocation());
+    }
+
+    FunctionDeclStmt rewriteFunction(FunctionDeclStmt f) {
+        Statement body = rewriteStmt(f.getBody());
+        return f.withBody(AstUtils.asBlock(body, f.getBody().getLocation()));
+    }
+
+    Statement rewriteStmt(Statement st) {
+        if (st instanceof VarDeclStmt v) {
+            Expression init = v.getInitializer() == null ? null : rewriteExpr(v.getInitializer());
+            Expression size = v.getArraySize() == null ? null : rewriteExpr(v.getArraySize());
+            return new VarDeclStmt(v.getType(), v.getName(), init, v.getLocation(), size);
+        }
+
+        if (st instanceof ExprStmt e) {
+            return new ExprStmt(rewriteExpr(e.getExpression()), e.getLocation());
+        }
+
+        if (st instanceof IndexAssignStmt ia) {
+            IndexExpr target = (IndexExpr) rewriteExpr(ia.getTarget());
+            IndexAssignStmt n = new IndexAssignStmt(target, rewriteExpr(ia.getValue()), ia.getLocation());
+            n.setValueType(ia.getValueType());
+            return n;
+        }
+
+        if (st instanceof BlockStmt b) {
+            List<Statement> out = new ArrayList<>();
+            for (Statement s : b.getStatements()) {
+                Statement r = rewriteStmt(s);
+                if (r != null) out.add(r);
+            }
+            return new BlockStmt(out, b.getLocation());
+        }
+
+        if (st instanceof IfStmt i) {
+            Expression cond = rewriteExpr(i.getCondition());
+            Statement thenS = rewriteStmt(i.getThenBranch());
+            Statement elseS = i.getElseBranch() == null ? null : rewriteStmt(i.getElseBranch());
+            if (thenS == null) thenS = new BlockStmt(List.of(), i.getThenBranch().getLocation());
+            return new IfStmt(cond, thenS, elseS, i.getLocation());
+        }
+
+        if (st instanceof WhileStmt w) {
+            Expression cond = rewriteExpr(w.getCondition());
+            Statement body = rewriteStmt(w.getBody());
+            return new WhileStmt(cond, AstUtils.asBlock(body, w.getBody().getLocation()), w.getLocation());
+        }
+
+        if (st instanceof ForStmt f) {
+            Statement init = f.getInitializer() == null ? null : rewriteStmt(f.getInitializer());
+            Expression cond = f.getCondition() == null ? null : rewriteExpr(f.getCondition());
+            Expression inc = f.getIncrement() == null ? null : rewriteExpr(f.getIncrement());
+            Statement body = rewriteStmt(f.getBody());
+            return new ForStmt(init, cond, inc, AstUtils.asBlock(body, f.getBody().getLocation()), f.getLocation());
+        }
+
+        if (st instanceof ReturnStmt r) {
+            ReturnStmt n = new ReturnStmt(r.getValue() == null ? null : rewriteExpr(r.getValue()), r.getLocation());
+            n.setExpectedType(r.getExpectedType());
+            return n;
+        }
+
+        return st;
+    }
+
+    Expression rewriteExpr(Expression e) {
+        Expression out;
+
+        if (e instanceof AssignExpr a) {
+            out = new AssignExpr(a.getName(), rewriteExpr(a.getValue()), a.getLocation());
+        } else if (e instanceof UnaryExpr u) {
+            out = new UnaryExpr(u.getOp(), rewriteExpr(u.getExpr()), u.getLocation());
+        } else if (e instanceof BinaryExpr b) {
+            Expression l = rewriteExpr(b.getLeft());
+            Expression r = rewriteExpr(b.getRight());
+            BinaryExpr n = new BinaryExpr(l, b.getOp(), r, b.getLocation());
+            n.setFitsInt64(b.fitsInt64());
+            out = n;
+        } else if (e instanceof CallExpr c) {
+            List<Expression> args = new ArrayList<>();
+            for (Expression arg : c.getArgs()) args.add(rewriteExpr(arg));
+            out = new CallExpr(c.getCallee(), args, c.getLocation());
+        } else if (e instanceof IndexExpr idx) {
+            Expression arr = rewriteExpr(idx.getArray());
+            Expression ind = rewriteExpr(idx.getIndex());
+            IndexExpr n = new IndexExpr(arr, ind, idx.getLocation());
+            n.setBoundsChecked(idx.isBoundsChecked());
+            out = n;
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            List<Expression> elems = new ArrayList<>();
+            for (Expression el : arr.getElements()) elems.add(rewriteExpr(el));
+            out = new ArrayLiteralExpr(elems, arr.getLocation());
+        } else {
+            return e;
+        }
+
+        out.setType(e.getType());
+        return out;
+    }
+}
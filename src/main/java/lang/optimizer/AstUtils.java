@@ -0,0 +1,204 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+final class AstUtils {
+
+    static BlockStmt asBlock(Statement st, SourceLocation loc) {
+        if (st instanceof BlockStmt b) return b;
+        if (st == null) return new BlockStmt(List.of(), loc);
+        return new BlockStmt(List.of(st), st.getLocation());
+    }
+
+    static List<Statement> statementsOf(Statement st) {
+        if (st instanceof BlockStmt b) return b.getStatements();
+        return st == null ? List.of() : List.of(st);
+    }
+
+    static LiteralExpr intLit(int value, SourceLocation loc) {
+        LiteralExpr e = new LiteralExpr(value, loc);
+        e.setType(FrogType.INT);
+        return e;
+    }
+
+    static VarExpr var(String name, FrogType type, SourceLocation loc) {
+        VarExpr e = new VarExpr(name, loc);
+        e.setType(type);
+        return e;
+    }
+
+    static BinaryExpr binary(Expression l, BinaryOp op, Expression r, FrogType type) {
+        BinaryExpr e = new BinaryExpr(l, op, r, l.getLocation());
+        e.setType(type);
+        return e;
+    }
+
+    static ExprStmt assign(String name, Expression value) {
+        AssignExpr a = new AssignExpr(name, value, value.getLocation());
+        a.setType(value.getType());
+        return new ExprStmt(a, value.getLocation());
+    }
+
+    static Integer intValue(Expression e) {
+        if (e instanceof LiteralExpr lit && lit.getValue() instanceof Integer i) return i;
+        return null;
+    }
+
+    static boolean isVar(Expression e, String name) {
+        return e instanceof VarExpr v && v.getName().equals(name);
+    }
+
+    /**
+     * Шаг обновления {@code i = i + c}, {@code i = c + i} или {@code i = i - k} индуктивной
+     * переменной {@code iv}; для вычитания — литерал {@code -k}, иначе {@code null}.
+     */
+    static Expression stepOf(Expression update, String iv) {
+        if (!(update instanceof AssignExpr a) || !a.getName().equals(iv)) return null;
+        if (!(a.getValue() instanceof BinaryExpr b)) return null;
+        if (b.getOp() == BinaryOp.PLUS && isVar(b.getLeft(), iv)) return b.getRight();
+        if (b.getOp() == BinaryOp.PLUS && isVar(b.getRight(), iv)) return b.getLeft();
+        if (b.getOp() == BinaryOp.MINUS && isVar(b.getLeft(), iv)) {
+            Integer c = intValue(b.getRight());
+            if (c == null || c == Integer.MIN_VALUE) return null;
+            return intLit(-c, b.getLocation());
+        }
+        return null;
+    }
+
+    static void collectAssigned(Statement st, Collection<String> out) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            out.add(v.getName());
+            collectAssigned(v.getInitializer(), out);
+        } else if (st instanceof ExprStmt e) {
+            collectAssigned(e.getExpression(), out);
+        } else if (st instanceof IndexAssignStmt ia) {
+            collectAssigned(ia.getTarget(), out);
+            collectAssigned(ia.getValue(), out);
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) collectAssigned(s, out);
+        } else if (st instanceof IfStmt i) {
+            collectAssigned(i.getCondition(), out);
+            collectAssigned(i.getThenBranch(), out);
+            collectAssigned(i.getElseBranch(), out);
+        } else if (st instanceof WhileStmt w) {
+            collectAssigned(w.getCondition(), out);
+            collectAssigned(w.getBody(), out);
+        } else if (st instanceof ForStmt f) {
+            collectAssigned(f.getInitializer(), out);
+            collectAssigned(f.getCondition(), out);
+            collectAssigned(f.getIncrement(), out);
+            collectAssigned(f.getBody(), out);
+        } else if (st instanceof ReturnStmt r) {
+            collectAssigned(r.getValue(), out);
+        }
+    }
+
+    static void collectAssigned(Expression e, Collection<String> out) {
+        if (e == null) return;
+        if (e instanceof AssignExpr a) {
+            out.add(a.getName());
+            collectAssigned(a.getValue(), out);
+        } else if (e instanceof UnaryExpr u) {
+            collectAssigned(u.getExpr(), out);
+        } else if (e instanceof BinaryExpr b) {
+            collectAssigned(b.getLeft(), out);
+            collectAssigned(b.getRight(), out);
+        } else if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) collectAssigned(arg, out);
+        } else if (e instanceof IndexExpr idx) {
+            collectAssigned(idx.getArray(), out);
+            collectAssigned(idx.getIndex(), out);
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) collectAssigned(el, out);
+        }
+    }
+
+    /**
+     * Выражение не меняется в цикле, где присваиваются {@code assigned}, и вычисляется без
+     * побочных эффектов и ошибок: литералы, локальные переменные, {@code len} и {@code + - *}.
+     */
+    static boolean isInvariant(Expression e, Set<String> locals, Collection<String> assigned) {
+        if (e instanceof LiteralExpr) return intValue(e) != null;
+        if (e instanceof VarExpr v) return locals.contains(v.getName()) && !assigned.contains(v.getName());
+        if (e instanceof CallExpr c && c.getCallee().equals("len") && c.getArgs().size() == 1) {
+            return c.getArgs().get(0) instanceof VarExpr && isInvariant(c.getArgs().get(0), locals, assigned);
+        }
+        if (e instanceof BinaryExpr b) {
+            boolean arith = b.getOp() == BinaryOp.PLUS || b.getOp() == BinaryOp.MINUS || b.getOp() == BinaryOp.MUL;
+            return arith && isInvariant(b.getLeft(), locals, assigned) && isInvariant(b.getRight(), locals, assigned);
+        }
+        return false;
+    }
+
+    static boolean hasContinue(Statement st) {
+        if (st instanceof ContinueStmt) return true;
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                if (hasContinue(s)) return true;
+            }
+            return false;
+        }
+        if (st instanceof IfStmt i) {
+            return hasContinue(i.getThenBranch()) || hasContinue(i.getElseBranch());
+        }
+        return false;
+    }
+
+    static <T> T copy(T node) {
+        return copy(node, Set.of());
+    }
+
+    /** Копия с новыми узлами; обращения из {@code unchecked} в копии идут без проверки границ. */
+    static <T> T copy(T node, Set<IndexExpr> unchecked) {
+        if (node == null) return null;
+        AstRewriter rewriter = new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof VarExpr v) return var(v.getName(), v.getType(), v.getLocation());
+                if (e instanceof LiteralExpr lit) {
+                    LiteralExpr out = new LiteralExpr(lit.getValue(), lit.getLocation());
+                    out.setType(lit.getType());
+                    return out;
+                }
+                Expression out = super.rewriteExpr(e);
+                if (e instanceof IndexExpr idx && unchecked.contains(idx)) ((IndexExpr) out).setBoundsChecked(false);
+                return out;
+            }
+        };
+        @SuppressWarnings("unchecked")
+        T out = node instanceof Statement s ? (T) rewriter.rewriteStmt(s) : (T) rewriter.rewriteExpr((Expression) node);
+        return out;
+    }
+
+    /** Число узлов поддерева — грубая оценка размера кода. */
+    static int size(Statement st) {
+        int[] count = {0};
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement s) {
+                count[0]++;
+                return super.rewriteStmt(s);
+            }
+
+            @Override
+            Expression rewriteExpr(Expression e) {
+                count[0]++;
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+        return count[0];
+    }
+
+    private AstUtils() {}
+}
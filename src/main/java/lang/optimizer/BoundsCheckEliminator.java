@@ -0,0 +1,558 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.expression.operations.UnaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Удаление проверок границ массивов, доказуемо лишних по интервальному анализу.
+ * <p>
+ * Для каждой целой переменной отслеживается интервал значений, для каждого массива —
+ * интервал длины (из {@code var array<T> a[N]}, литерала массива, {@code new_array_*}).
+ * Условия {@code if}/{@code while}/{@code for} сужают интервалы в ветках, циклы
+ * анализируются до неподвижной точки с расширением. Обращение {@code a[i]}, для которого
+ * {@code 0 <= i < len(a)} на всех путях, помечается как не требующее проверки, и генератор
+ * выдаёт для него {@code LOAD_INDEX_UNCHECKED}/{@code STORE_INDEX_UNCHECKED}.
+ * </p>
+ * <p>
+ * Те же интервалы показывают, какие целые {@code +}, {@code -} и сравнения работают только
+ * с 64-битными значениями: если интервалы операндов и результата конечны на всех путях,
+ * узел помечается {@link BinaryExpr#setFitsInt64}, и генератор выдаёт {@code ADD_I64},
+ * {@code LT_I64}, {@code INC_LOCAL_I64} и т. п.
+ * </p>
+ * <p>
+ * Отслеживаются только переменные с единственным объявлением. В функциях это локальные
+ * переменные и параметры; на верхнем уровне — глобальные, и их значения забываются после
+ * вызова функции, которая может писать в глобальные переменные.
+ * </p>
+ * <p>
+ * Пометки ставятся на узлы AST, поэтому проход выполняется последним.
+ * </p>
+ */
+final class BoundsCheckEliminator {
+
+    private static final long NEG_INF = Long.MIN_VALUE;
+    private static final long POS_INF = Long.MAX_VALUE;
+    private static final Set<String> BUILTINS = Set.of("len", "new_array_bool", "new_array_int", "push_int", "print");
+
+    private record Range(long lo, long hi) {
+        static final Range TOP = new Range(NEG_INF, POS_INF);
+
+        static Range of(long v) {
+            return new Range(v, v);
+        }
+
+        Range union(Range o) {
+            return new Range(Math.min(lo, o.lo), Math.max(hi, o.hi));
+        }
+    }
+
+    private static final class LoopCtx {
+        final List<Map<String, Range>> breaks = new ArrayList<>();
+        final List<Map<String, Range>> continues = new ArrayList<>();
+    }
+
+    private PurityAnalysis purity;
+    private boolean topLevel;
+    private Set<String> tracked = new HashSet<>();
+    private final Set<Expression> localRefs = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<IndexExpr, Boolean> verdicts = new IdentityHashMap<>();
+    private final Map<BinaryExpr, Boolean> smallInts = new IdentityHashMap<>();
+    private final boolean boundsChecks;
+    private final boolean intRanges;
+    private final Deque<LoopCtx> loops = new ArrayDeque<>();
+
+    BoundsCheckEliminator(boolean boundsChecks, boolean intRanges) {
+        this.boundsChecks = boundsChecks;
+        this.intRanges = intRanges;
+    }
+
+    Program optimize(Program program) {
+        purity = new PurityAnalysis(program);
+
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            topLevel = false;
+            Map<String, Integer> decls = new HashMap<>();
+            Map<String, FrogType> types = new HashMap<>();
+            Set<String> declared = new HashSet<>();
+            for (FunctionDeclStmt.Param p : f.getParams()) {
+                decls.merge(p.getName(), 1, Integer::sum);
+                types.put(p.getName(), p.getType());
+                declared.add(p.getName());
+            }
+            countDecls(f.getBody(), decls, types);
+            resolve(f.getBody(), declared);
+            tracked = trackable(decls, types);
+            exec(f.getBody(), new HashMap<>());
+        }
+
+        topLevel = true;
+        Map<String, Integer> decls = new HashMap<>();
+        Map<String, FrogType> types = new HashMap<>();
+        for (Statement s : program.getStatements()) countDecls(s, decls, types);
+        tracked = trackable(decls, types);
+        Map<String, Range> env = new HashMap<>();
+        for (Statement s : program.getStatements()) {
+            if (env == null) break;
+            env = exec(s, env);
+        }
+
+        if (boundsChecks) {
+            verdicts.forEach((node, safe) -> {
+                if (safe) node.setBoundsChecked(false);
+            });
+        }
+        if (intRanges) {
+            smallInts.forEach((node, fits) -> {
+                if (fits) node.setFitsInt64(true);
+            });
+        }
+        return program;
+    }
+
+    private static Set<String> trackable(Map<String, Integer> decls, Map<String, FrogType> types) {
+        Set<String> out = new HashSet<>();
+        for (Map.Entry<String, Integer> e : decls.entrySet()) {
+            FrogType t = types.get(e.getKey());
+            boolean kind = t.equals(FrogType.INT) || t.getKind() == FrogType.Kind.ARRAY;
+            if (e.getValue() == 1 && kind) out.add(e.getKey());
+        }
+        return out;
+    }
+
+    private static void countDecls(Statement st, Map<String, Integer> decls, Map<String, FrogType> types) {
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement s) {
+                if (s instanceof VarDeclStmt v) {
+                    decls.merge(v.getName(), 1, Integer::sum);
+                    types.put(v.getName(), v.getType());
+                }
+                return super.rewriteStmt(s);
+            }
+        }.rewriteStmt(st);
+    }
+
+    /** Разрешение имён в порядке генерации кода: локальной переменная становится с момента объявления. */
+    private void resolve(Statement st, Set<String> declared) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            declared.add(v.getName());
+            resolve(v.getInitializer(), declared);
+        } else if (st instanceof ExprStmt e) {
+            resolve(e.getExpression(), declared);
+        } else if (st instanceof IndexAssignStmt ia) {
+            resolve(ia.getTarget(), declared);
+            resolve(ia.getValue(), declared);
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) resolve(s, declared);
+        } else if (st instanceof IfStmt i) {
+            resolve(i.getCondition(), declared);
+            resolve(i.getThenBranch(), declared);
+            resolve(i.getElseBranch(), declared);
+        } else if (st instanceof WhileStmt w) {
+            resolve(w.getCondition(), declared);
+            resolve(w.getBody(), declared);
+        } else if (st instanceof ForStmt f) {
+            resolve(f.getInitializer(), declared);
+            resolve(f.getCondition(), declared);
+            resolve(f.getBody(), declared);
+            resolve(f.getIncrement(), declared);
+        } else if (st instanceof ReturnStmt r) {
+            resolve(r.getValue(), declared);
+        }
+    }
+
+    private void resolve(Expression e, Set<String> declared) {
+        if (e == null) return;
+        new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression x) {
+                if (x instanceof VarExpr v && declared.contains(v.getName())) localRefs.add(x);
+                if (x instanceof AssignExpr a && declared.contains(a.getName())) localRefs.add(x);
+                return super.rewriteExpr(x);
+            }
+        }.rewriteExpr(e);
+    }
+
+    private boolean isTracked(Expression ref, String name) {
+        return tracked.contains(name) && (topLevel || localRefs.contains(ref));
+    }
+
+    // ---- statements ----
+
+    private Map<String, Range> exec(Statement st, Map<String, Range> env) {
+        if (env == null || st == null) return env;
+
+        if (st instanceof VarDeclStmt v) {
+            Range r;
+            Integer size = v.getArraySize() == null ? null : AstUtils.intValue(v.getArraySize());
+            if (size != null) r = Range.of(size);
+            else if (v.getInitializer() != null) r = eval(v.getInitializer(), env);
+            else r = Range.of(0);
+            if (tracked.contains(v.getName())) env.put(v.getName(), r);
+            return env;
+        }
+        if (st instanceof ExprStmt e) {
+            eval(e.getExpression(), env);
+            return env;
+        }
+        if (st instanceof IndexAssignStmt ia) {
+            eval(ia.getTarget(), env);
+            eval(ia.getValue(), env);
+            return env;
+        }
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                env = exec(s, env);
+                if (env == null) return null;
+            }
+            return env;
+        }
+        if (st instanceof IfStmt i) {
+            eval(i.getCondition(), env);
+            Map<String, Range> thenEnv = exec(i.getThenBranch(), refine(new HashMap<>(env), i.getCondition(), true));
+            Map<String, Range> elseEnv = refine(new HashMap<>(env), i.getCondition(), false);
+            if (i.getElseBranch() != null) elseEnv = exec(i.getElseBranch(), elseEnv);
+            return join(thenEnv, elseEnv);
+        }
+        if (st instanceof WhileStmt w) {
+            return loop(w.getCondition(), w.getBody(), null, env);
+        }
+        if (st instanceof ForStmt f) {
+            env = exec(f.getInitializer(), env);
+            return env == null ? null : loop(f.getCondition(), f.getBody(), f.getIncrement(), env);
+        }
+        if (st instanceof ReturnStmt r) {
+            if (r.getValue() != null) eval(r.getValue(), env);
+            return null;
+        }
+        if (st instanceof BreakStmt) {
+            if (!loops.isEmpty()) loops.peek().breaks.add(env);
+            return null;
+        }
+        if (st instanceof ContinueStmt) {
+            if (!loops.isEmpty()) loops.peek().continues.add(env);
+            return null;
+        }
+        return env;
+    }
+
+    private record Pass(Map<String, Range> atCond, Map<String, Range> out) {}
+
+    private Map<String, Range> loop(Expression cond, Statement body, Expression inc, Map<String, Range> entry) {
+        LoopCtx ctx = new LoopCtx();
+        loops.push(ctx);
+        Map<IndexExpr, Boolean> verdictsBefore = new IdentityHashMap<>(verdicts);
+        Map<BinaryExpr, Boolean> smallIntsBefore = new IdentityHashMap<>(smallInts);
+
+        Map<String, Range> head = entry;
+        Pass pass;
+        while (true) {
+            pass = pass(ctx, cond, body, inc, head, verdictsBefore, smallIntsBefore);
+            Map<String, Range> next = join(head, pass.out);
+            if (next.equals(head)) break;
+            head = widen(head, next);
+        }
+
+        // сужение: расширение теряет границы вроде i < N, один нисходящий шаг их возвращает
+        Map<String, Range> narrowed = join(entry, pass.out);
+        if (!narrowed.equals(head)) {
+            Pass retry = pass(ctx, cond, body, inc, narrowed, verdictsBefore, smallIntsBefore);
+            if (within(join(entry, retry.out), narrowed)) {
+                pass = retry;
+            } else {
+                pass = pass(ctx, cond, body, inc, head, verdictsBefore, smallIntsBefore);
+            }
+        }
+
+        loops.pop();
+        Map<String, Range> exit = cond == null ? null : refine(pass.atCond, cond, false);
+        for (Map<String, Range> b : ctx.breaks) exit = join(exit, b);
+        return exit;
+    }
+
+    /**
+     * Один проход тела от состояния {@code head}. Пометки предыдущих проходов отбрасываются:
+     * каждый следующий проход начинается с состояния, покрывающего все прежние.
+     */
+    private Pass pass(LoopCtx ctx, Expression cond, Statement body, Expression inc, Map<String, Range> head,
+                      Map<IndexExpr, Boolean> verdictsBefore, Map<BinaryExpr, Boolean> smallIntsBefore) {
+        verdicts.clear();
+        verdicts.putAll(verdictsBefore);
+        smallInts.clear();
+        smallInts.putAll(smallIntsBefore);
+        ctx.breaks.clear();
+        ctx.continues.clear();
+
+        Map<String, Range> atCond = new HashMap<>(head);
+        if (cond != null) eval(cond, atCond);
+        Map<String, Range> out = exec(body, cond == null ? new HashMap<>(atCond) : refine(new HashMap<>(atCond), cond, true));
+        for (Map<String, Range> c : ctx.continues) out = join(out, c);
+        if (out != null && inc != null) eval(inc, out);
+        return new Pass(atCond, out);
+    }
+
+    /** {@code a} не шире {@code b}: переменная без интервала считается неограниченной. */
+    private static boolean within(Map<String, Range> a, Map<String, Range> b) {
+        for (Map.Entry<String, Range> e : b.entrySet()) {
+            Range r = a.get(e.getKey());
+            if (r == null || r.lo < e.getValue().lo || r.hi > e.getValue().hi) return false;
+        }
+        return true;
+    }
+
+    private static Map<String, Range> join(Map<String, Range> a, Map<String, Range> b) {
+        if (a == null) return b == null ? null : new HashMap<>(b);
+        if (b == null) return new HashMap<>(a);
+        Map<String, Range> out = new HashMap<>();
+        for (Map.Entry<String, Range> e : a.entrySet()) {
+            Range other = b.get(e.getKey());
+            if (other != null) out.put(e.getKey(), e.getValue().union(other));
+        }
+        return out;
+    }
+
+    private static Map<String, Range> widen(Map<String, Range> old, Map<String, Range> next) {
+        Map<String, Range> out = new HashMap<>();
+        for (Map.Entry<String, Range> e : next.entrySet()) {
+            Range was = old.get(e.getKey());
+            Range now = e.getValue();
+            if (was == null) continue;
+            out.put(e.getKey(), new Range(now.lo < was.lo ? NEG_INF : was.lo, now.hi > was.hi ? POS_INF : was.hi));
+        }
+        return out;
+    }
+
+    // ---- conditions ----
+
+    private Map<String, Range> refine(Map<String, Range> env, Expression cond, boolean truth) {
+        if (env == null) return null;
+        if (cond instanceof UnaryExpr u && u.getOp() == UnaryOp.NOT) {
+            return refine(env, u.getExpr(), !truth);
+        }
+        if (!(cond instanceof BinaryExpr b) || hasEffects(cond)) return env;
+
+        if (b.getOp() == BinaryOp.AND) {
+            return truth ? refine(refine(env, b.getLeft(), true), b.getRight(), true) : env;
+        }
+        if (b.getOp() == BinaryOp.OR) {
+            return truth ? env : refine(refine(env, b.getLeft(), false), b.getRight(), false);
+        }
+
+        BinaryOp op = truth ? b.getOp() : negate(b.getOp());
+        if (op == null) return env;
+        env = narrow(env, b.getLeft(), op, eval(b.getRight(), new HashMap<>(env)));
+        if (env == null) return null;
+        return narrow(env, b.getRight(), flip(op), eval(b.getLeft(), new HashMap<>(env)));
+    }
+
+    /** Присваивания и вызовы функций в условии делают сужение по значениям операндов неверным. */
+    private static boolean hasEffects(Expression cond) {
+        boolean[] found = {false};
+        new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof AssignExpr || e instanceof CallExpr c && !BUILTINS.contains(c.getCallee())) found[0] = true;
+                return super.rewriteExpr(e);
+            }
+        }.rewriteExpr(cond);
+        return found[0];
+    }
+
+    private Map<String, Range> narrow(Map<String, Range> env, Expression e, BinaryOp op, Range other) {
+        if (!(e instanceof VarExpr v) || !isTracked(v, v.getName()) || !FrogType.INT.equals(v.getType())) return env;
+        Range cur = env.getOrDefault(v.getName(), Range.TOP);
+        long lo = cur.lo;
+        long hi = cur.hi;
+        switch (op) {
+            case LT -> hi = Math.min(hi, add(other.hi, -1));
+            case LE -> hi = Math.min(hi, other.hi);
+            case GT -> lo = Math.max(lo, add(other.lo, 1));
+            case GE -> lo = Math.max(lo, other.lo);
+            case EQ -> {
+                lo = Math.max(lo, other.lo);
+                hi = Math.min(hi, other.hi);
+            }
+            default -> {
+                return env;
+            }
+        }
+        if (lo > hi) return null;
+        env.put(v.getName(), new Range(lo, hi));
+        return env;
+    }
+
+    private static BinaryOp negate(BinaryOp op) {
+        return switch (op) {
+            case LT -> BinaryOp.GE;
+            case LE -> BinaryOp.GT;
+            case GT -> BinaryOp.LE;
+            case GE -> BinaryOp.LT;
+            case EQ -> BinaryOp.NEQ;
+            case NEQ -> BinaryOp.EQ;
+            default -> null;
+        };
+    }
+
+    private static BinaryOp flip(BinaryOp op) {
+        return switch (op) {
+            case LT -> BinaryOp.GT;
+            case LE -> BinaryOp.GE;
+            case GT -> BinaryOp.LT;
+            case GE -> BinaryOp.LE;
+            default -> op;
+        };
+    }
+
+    // ---- expressions ----
+
+    /** Интервал значения целого выражения или длины массива; побочные эффекты применяются к {@code env}. */
+    private Range eval(Expression e, Map<String, Range> env) {
+        if (e instanceof LiteralExpr lit) {
+            if (lit.getValue() instanceof Integer i) return Range.of(i);
+            if (lit.getValue() instanceof BigInteger i) return i.signum() < 0 ? new Range(NEG_INF, NEG_INF) : new Range(POS_INF, POS_INF);
+            return Range.TOP;
+        }
+        if (e instanceof VarExpr v) {
+            return isTracked(v, v.getName()) ? env.getOrDefault(v.getName(), Range.TOP) : Range.TOP;
+        }
+        if (e instanceof AssignExpr a) {
+            Range r = eval(a.getValue(), env);
+            if (isTracked(a, a.getName())) env.put(a.getName(), r);
+            return r;
+        }
+        if (e instanceof UnaryExpr u) {
+            Range r = eval(u.getExpr(), env);
+            if (u.getOp() == UnaryOp.NEGATE && isInt(e)) {
+                return new Range(neg(r.hi), neg(r.lo));
+            }
+            return Range.TOP;
+        }
+        if (e instanceof BinaryExpr b && (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR)) {
+            eval(b.getLeft(), env);
+            Map<String, Range> right = refine(new HashMap<>(env), b.getLeft(), b.getOp() == BinaryOp.AND);
+            if (right != null) {
+                eval(b.getRight(), right);
+                Map<String, Range> merged = join(env, right);
+                env.clear();
+                env.putAll(merged);
+            }
+            return Range.TOP;
+        }
+        if (e instanceof BinaryExpr b) {
+            Range l = eval(b.getLeft(), env);
+            Range r = eval(b.getRight(), env);
+            if (!isInt(b.getLeft()) || !isInt(b.getRight())) return Range.TOP;
+            Range out = isInt(e) ? arithmetic(b.getOp(), l, r) : Range.TOP;
+            switch (b.getOp()) {
+                case PLUS, MINUS -> smallInts.merge(b, finite(l) && finite(r) && finite(out), Boolean::logicalAnd);
+                case LT, LE, GT, GE -> smallInts.merge(b, finite(l) && finite(r), Boolean::logicalAnd);
+                default -> {
+                }
+            }
+            return out;
+        }
+        if (e instanceof CallExpr c) {
+            List<Range> args = new ArrayList<>();
+            for (Expression arg : c.getArgs()) args.add(eval(arg, env));
+            switch (c.getCallee()) {
+                case "len" -> {
+                    return nonNegative(args.get(0));
+                }
+                case "new_array_bool", "new_array_int" -> {
+                    return nonNegative(args.get(0));
+                }
+                case "push_int" -> {
+                    Range r = nonNegative(args.get(0));
+                    return new Range(add(r.lo, 1), add(r.hi, 1));
+                }
+                default -> {
+                    if (topLevel && purity.writesGlobals(c.getCallee())) env.clear();
+                    return Range.TOP;
+                }
+            }
+        }
+        if (e instanceof IndexExpr idx) {
+            Range len = eval(idx.getArray(), env);
+            Range i = eval(idx.getIndex(), env);
+            boolean safe = i.lo >= 0 && i.hi != POS_INF && i.hi < len.lo;
+            verdicts.merge(idx, safe, Boolean::logicalAnd);
+            return Range.TOP;
+        }
+        if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) eval(el, env);
+            return Range.of(arr.getElements().size());
+        }
+        return Range.TOP;
+    }
+
+    private static boolean isInt(Expression e) {
+        return FrogType.INT.equals(e.getType());
+    }
+
+    private static boolean finite(Range r) {
+        return r.lo != NEG_INF && r.hi != POS_INF;
+    }
+
+    private static Range nonNegative(Range r) {
+        return new Range(Math.max(0, r.lo), Math.max(0, r.hi));
+    }
+
+    private static Range arithmetic(BinaryOp op, Range l, Range r) {
+        switch (op) {
+            case PLUS:
+                return new Range(add(l.lo, r.lo), add(l.hi, r.hi));
+            case MINUS:
+                return new Range(add(l.lo, neg(r.hi)), add(l.hi, neg(r.lo)));
+            case MUL: {
+                long a = mul(l.lo, r.lo), b = mul(l.lo, r.hi), c = mul(l.hi, r.lo), d = mul(l.hi, r.hi);
+                return new Range(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+            }
+            case DIV:
+                if (l.lo >= 0 && r.lo >= 1) {
+                    return new Range(r.hi == POS_INF ? 0 : l.lo / r.hi, l.hi == POS_INF ? POS_INF : l.hi / r.lo);
+                }
+                return Range.TOP;
+            case MOD:
+                if (r.lo >= 1 && r.hi != POS_INF) {
+                    return new Range(l.lo >= 0 ? 0 : -(r.hi - 1), l.hi <= 0 ? 0 : r.hi - 1);
+                }
+                return Range.TOP;
+            default:
+                return Range.TOP;
+        }
+    }
+
+    private static long add(long a, long b) {
+        if (a == NEG_INF || b == NEG_INF) return NEG_INF;
+        if (a == POS_INF || b == POS_INF) return POS_INF;
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) return a < 0 ? NEG_INF : POS_INF;
+        return r;
+    }
+
+    private static long neg(long a) {
+        if (a == NEG_INF) return POS_INF;
+        if (a == POS_INF) return NEG_INF;
+        return -a;
+    }
+
+    private static long mul(long a, long b) {
+        if (a == 0 || b == 0) return 0;
+        boolean negative = (a < 0) != (b < 0);
+        if (a == NEG_INF || a == POS_INF || b == NEG_INF || b == POS_INF) return negative ? NEG_INF : POS_INF;
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) return lo;
+        return negative ? NEG_INF : POS_INF;
+    }
+}
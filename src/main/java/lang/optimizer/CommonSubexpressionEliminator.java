@@ -0,0 +1,326 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.util.*;
+
+/**
+ * Нумерация значений и устранение общих подвыражений внутри функции.
+ * <p>
+ * Чистые выражения над локальными переменными и литералами хешируются по оператору
+ * и номерам значений операндов. Номер локальной переменной меняется при каждом присваивании,
+ * номер памяти массивов с данным типом элементов — при {@link IndexAssignStmt} и при любом вызове.
+ * Первое вычисление сохраняется во временную локальную переменную ({@code (cse$N = e)}),
+ * повторные заменяются чтением этой переменной.
+ * </p>
+ */
+final class CommonSubexpressionEliminator {
+
+    private static final String TEMP_PREFIX = "cse$";
+
+    private int nextTemp = 0;
+
+    private Set<String> declared;
+    private Map<String, Integer> versions;
+    private Map<String, Integer> epochs;
+    private int versionCounter;
+
+    private final Map<Expression, Integer> defs = new IdentityHashMap<>();
+    private final Map<Expression, Integer> uses = new IdentityHashMap<>();
+    private final Map<Integer, Integer> useCounts = new HashMap<>();
+    private final Map<Integer, FrogType> defTypes = new HashMap<>();
+    private final Map<Integer, Integer> defWeights = new HashMap<>();
+    private int nextDef = 0;
+
+    Program optimize(Program program) {
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            funcs.add(transform(f));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    private FunctionDeclStmt transform(FunctionDeclStmt f) {
+        declared = new HashSet<>();
+        versions = new HashMap<>();
+        epochs = new HashMap<>();
+        versionCounter = 0;
+        defs.clear();
+        uses.clear();
+        useCounts.clear();
+        defTypes.clear();
+        defWeights.clear();
+
+        for (FunctionDeclStmt.Param p : f.getParams()) declared.add(p.getName());
+        analyzeStmt(f.getBody(), new HashMap<>());
+        Map<Integer, String> temps = new HashMap<>();
+        List<Statement> body = new ArrayList<>();
+        for (Integer id : new TreeSet<>(useCounts.keySet())) {
+            int n = useCounts.get(id);
+            if (defWeights.get(id) * n < n + 3) continue;
+            String name = TEMP_PREFIX + nextTemp++;
+            temps.put(id, name);
+            body.add(new VarDeclStmt(defTypes.get(id), name, null, f.getBody().getLocation(), null));
+        }
+        if (temps.isEmpty()) return f;
+
+        Statement rewritten = new Rewriter(temps).rewriteStmt(f.getBody());
+        body.addAll(AstUtils.statementsOf(rewritten));
+        return f.withBody(new BlockStmt(body, f.getBody().getLocation()));
+    }
+
+    private void analyzeStmt(Statement st, Map<String, Integer> avail) {
+        if (st instanceof VarDeclStmt v) {
+            analyzeExpr(v.getInitializer(), avail);
+            analyzeExpr(v.getArraySize(), avail);
+            declared.add(v.getName());
+            kill(v.getName());
+        } else if (st instanceof ExprStmt e) {
+            analyzeExpr(e.getExpression(), avail);
+        } else if (st instanceof IndexAssignStmt ia) {
+            analyzeExpr(ia.getTarget().getArray(), avail);
+            analyzeExpr(ia.getTarget().getIndex(), avail);
+            analyzeExpr(ia.getValue(), avail);
+            killMemory(ia.getTarget().getType());
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) analyzeStmt(s, avail);
+        } else if (st instanceof IfStmt i) {
+            analyzeExpr(i.getCondition(), avail);
+            Set<String> declaredBefore = new HashSet<>(declared);
+            analyzeStmt(i.getThenBranch(), new HashMap<>(avail));
+            if (i.getElseBranch() != null) analyzeStmt(i.getElseBranch(), new HashMap<>(avail));
+            declared = declaredBefore;
+            killAll(i);
+        } else if (st instanceof WhileStmt w) {
+            killAll(w);
+            Set<String> declaredBefore = new HashSet<>(declared);
+            Map<String, Integer> inner = new HashMap<>(avail);
+            analyzeExpr(w.getCondition(), inner);
+            analyzeStmt(w.getBody(), inner);
+            declared = declaredBefore;
+            killAll(w);
+        } else if (st instanceof ForStmt f) {
+            Set<String> declaredBefore = new HashSet<>(declared);
+            if (f.getInitializer() != null) analyzeStmt(f.getInitializer(), avail);
+            ForStmt loopOnly = new ForStmt(null, f.getCondition(), f.getIncrement(), f.getBody(), f.getLocation());
+            killAll(loopOnly);
+            Map<String, Integer> head = new HashMap<>(avail);
+            analyzeExpr(f.getCondition(), head);
+            analyzeStmt(f.getBody(), new HashMap<>(head));
+            analyzeExpr(f.getIncrement(), new HashMap<>(head));
+            declared = declaredBefore;
+            killAll(loopOnly);
+        } else if (st instanceof ReturnStmt r) {
+            analyzeExpr(r.getValue(), avail);
+        }
+    }
+
+    private void analyzeExpr(Expression e, Map<String, Integer> avail) {
+        if (e == null) return;
+
+        String key = candidateKey(e);
+        if (key != null) {
+            Integer id = avail.get(key);
+            if (id != null) {
+                uses.put(e, id);
+                useCounts.merge(id, 1, Integer::sum);
+                return;
+            }
+        }
+
+        if (e instanceof AssignExpr a) {
+            analyzeExpr(a.getValue(), avail);
+            kill(a.getName());
+        } else if (e instanceof UnaryExpr u) {
+            analyzeExpr(u.getExpr(), avail);
+        } else if (e instanceof BinaryExpr b) {
+            analyzeExpr(b.getLeft(), avail);
+            if (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR) {
+                analyzeExpr(b.getRight(), new HashMap<>(avail));
+            } else {
+                analyzeExpr(b.getRight(), avail);
+            }
+        } else if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) analyzeExpr(arg, avail);
+            epochs.replaceAll((t, v) -> ++versionCounter);
+        } else if (e instanceof IndexExpr idx) {
+            analyzeExpr(idx.getArray(), avail);
+            analyzeExpr(idx.getIndex(), avail);
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) analyzeExpr(el, avail);
+        }
+
+        if (key != null) {
+            int id = nextDef++;
+            defs.put(e, id);
+            defTypes.put(id, e.getType());
+            defWeights.put(id, weight(e));
+            avail.put(key, id);
+        }
+    }
+
+    private String candidateKey(Expression e) {
+        if (e instanceof LiteralExpr || e instanceof VarExpr) return null;
+        if (!isScalar(e.getType())) return null;
+        return key(e);
+    }
+
+    private String key(Expression e) {
+        if (e instanceof LiteralExpr lit) {
+            return "L" + e.getType() + ":" + lit.getValue();
+        }
+        if (e instanceof VarExpr v) {
+            if (!declared.contains(v.getName())) return null;
+            return v.getName() + "#" + versions.getOrDefault(v.getName(), 0);
+        }
+        if (e instanceof UnaryExpr u) {
+            String inner = key(u.getExpr());
+            return inner == null ? null : "(" + u.getOp() + " " + inner + ")";
+        }
+        if (e instanceof BinaryExpr b) {
+            if (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR) return null;
+            String l = key(b.getLeft());
+            String r = key(b.getRight());
+            if (l == null || r == null) return null;
+            if (isCommutative(b) && l.compareTo(r) > 0) {
+                String t = l;
+                l = r;
+                r = t;
+            }
+            return "(" + b.getOp() + " " + l + " " + r + ")";
+        }
+        if (e instanceof IndexExpr idx) {
+            String a = key(idx.getArray());
+            String i = key(idx.getIndex());
+            if (a == null || i == null || e.getType() == null) return null;
+            return "[" + a + " " + i + "]@" + epochs.computeIfAbsent(e.getType().toString(), t -> ++versionCounter);
+        }
+        return null;
+    }
+
+    private static boolean isCommutative(BinaryExpr b) {
+        return switch (b.getOp()) {
+            case MUL, EQ, NEQ -> true;
+            case PLUS -> b.getType() != null && b.getType().isNumeric();
+            default -> false;
+        };
+    }
+
+    private static boolean isScalar(FrogType t) {
+        if (t == null) return false;
+        return switch (t.getKind()) {
+            case INT, FLOAT, BOOL, STRING -> true;
+            default -> false;
+        };
+    }
+
+    private static int weight(Expression e) {
+        if (e instanceof UnaryExpr u) return 1 + weight(u.getExpr());
+        if (e instanceof BinaryExpr b) {
+            int op = switch (b.getOp()) {
+                case MUL, DIV, MOD -> 2;
+                default -> 1;
+            };
+            return op + weight(b.getLeft()) + weight(b.getRight());
+        }
+        if (e instanceof IndexExpr idx) return 2 + weight(idx.getArray()) + weight(idx.getIndex());
+        return 1;
+    }
+
+    private void kill(String name) {
+        versions.put(name, ++versionCounter);
+    }
+
+    private void killMemory(FrogType elementType) {
+        if (elementType == null) {
+            epochs.replaceAll((t, v) -> ++versionCounter);
+            return;
+        }
+        epochs.put(elementType.toString(), ++versionCounter);
+    }
+
+    private void killAll(Statement st) {
+        List<String> assigned = new ArrayList<>();
+        AstUtils.collectAssigned(st, assigned);
+        for (String name : assigned) kill(name);
+
+        Set<FrogType> stored = new HashSet<>();
+        if (collectStores(st, stored)) {
+            epochs.replaceAll((t, v) -> ++versionCounter);
+        } else {
+            for (FrogType t : stored) killMemory(t);
+        }
+    }
+
+    private static boolean collectStores(Statement st, Set<FrogType> out) {
+        if (st == null) return false;
+        if (st instanceof IndexAssignStmt ia) {
+            out.add(ia.getTarget().getType());
+            return hasCall(ia.getTarget()) || hasCall(ia.getValue());
+        }
+        if (st instanceof VarDeclStmt v) return hasCall(v.getInitializer());
+        if (st instanceof ExprStmt e) return hasCall(e.getExpression());
+        if (st instanceof ReturnStmt r) return hasCall(r.getValue());
+        boolean calls = false;
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) calls |= collectStores(s, out);
+        } else if (st instanceof IfStmt i) {
+            calls = hasCall(i.getCondition());
+            calls |= collectStores(i.getThenBranch(), out);
+            calls |= collectStores(i.getElseBranch(), out);
+        } else if (st instanceof WhileStmt w) {
+            calls = hasCall(w.getCondition());
+            calls |= collectStores(w.getBody(), out);
+        } else if (st instanceof ForStmt f) {
+            calls = hasCall(f.getCondition()) || hasCall(f.getIncrement());
+            calls |= collectStores(f.getInitializer(), out);
+            calls |= collectStores(f.getBody(), out);
+        }
+        return calls;
+    }
+
+    private static boolean hasCall(Expression e) {
+        if (e == null) return false;
+        if (e instanceof CallExpr) return true;
+        if (e instanceof AssignExpr a) return hasCall(a.getValue());
+        if (e instanceof UnaryExpr u) return hasCall(u.getExpr());
+        if (e instanceof BinaryExpr b) return hasCall(b.getLeft()) || hasCall(b.getRight());
+        if (e instanceof IndexExpr idx) return hasCall(idx.getArray()) || hasCall(idx.getIndex());
+        if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) {
+                if (hasCall(el)) return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Rewriter extends AstRewriter {
+        private final Map<Integer, String> temps;
+
+        Rewriter(Map<Integer, String> temps) {
+            this.temps = temps;
+        }
+
+        @Override
+        Expression rewriteExpr(Expression e) {
+            Integer use = uses.get(e);
+            if (use != null && temps.containsKey(use)) {
+                return AstUtils.var(temps.get(use), e.getType(), e.getLocation());
+            }
+            Expression r = super.rewriteExpr(e);
+            Integer def = defs.get(e);
+            if (def != null && temps.containsKey(def)) {
+                AssignExpr a = new AssignExpr(temps.get(def), r, e.getLocation());
+                a.setType(e.getType());
+                return a;
+            }
+            return r;
+        }
+    }
+}
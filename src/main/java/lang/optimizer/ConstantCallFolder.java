@@ -0,0 +1,86 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.CallExpr;
+import lang.semantic.ast.node.expression.LiteralExpr;
+import lang.semantic.ast.node.statement.ExprStmt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Вычисление на этапе компиляции вызовов чистых функций с литеральными аргументами.
+ * <p>
+ * Вызов заменяется литералом результата (целые, не влезающие в 32 бита, становятся
+ * {@link BigInteger}-литералами), а вызов-инструкция без результата просто удаляется.
+ * Если вычисление не уложилось в топливо или упало, вызов остаётся как был.
+ * </p>
+ */
+final class ConstantCallFolder extends AstRewriter {
+
+    private static final long FUEL_PER_CALL = 2_000_000;
+    private static final long FUEL_TOTAL = 20_000_000;
+
+    private PurityAnalysis purity;
+    private ConstantEvaluator evaluator;
+    private long budget;
+
+    Program optimize(Program program) {
+        purity = new PurityAnalysis(program);
+        evaluator = new ConstantEvaluator(program);
+        budget = FUEL_TOTAL;
+        return rewriteProgram(program);
+    }
+
+    @Override
+    Statement rewriteStmt(Statement st) {
+        if (st instanceof ExprStmt es && es.getExpression() instanceof CallExpr c) {
+            CallExpr call = rewriteArgs(c);
+            if (evaluate(call) != null) return null;
+            return new ExprStmt(call, es.getLocation());
+        }
+        return super.rewriteStmt(st);
+    }
+
+    @Override
+    Expression rewriteExpr(Expression e) {
+        Expression out = super.rewriteExpr(e);
+        if (!(out instanceof CallExpr c)) return out;
+
+        Object value = evaluate(c);
+        if (value instanceof BigInteger i) {
+            value = i.bitLength() < 32 ? (Object) i.intValue() : i;
+        } else if (!(value instanceof Double || value instanceof Boolean || value instanceof String)) {
+            return out;
+        }
+        LiteralExpr lit = new LiteralExpr(value, c.getLocation());
+        lit.setType(c.getType());
+        return lit;
+    }
+
+    private CallExpr rewriteArgs(CallExpr c) {
+        List<Expression> args = new ArrayList<>();
+        for (Expression arg : c.getArgs()) args.add(rewriteExpr(arg));
+        CallExpr out = new CallExpr(c.getCallee(), args, c.getLocation());
+        out.setType(c.getType());
+        return out;
+    }
+
+    private Object evaluate(CallExpr c) {
+        if (!purity.dependsOnlyOnArgs(c.getCallee()) || budget <= 0) return null;
+
+        List<Object> args = new ArrayList<>();
+        for (Expression arg : c.getArgs()) {
+            if (!(arg instanceof LiteralExpr lit)) return null;
+            args.add(lit.getValue() instanceof Integer i ? BigInteger.valueOf(i) : lit.getValue());
+        }
+
+        long fuel = Math.min(FUEL_PER_CALL, budget);
+        Object result = evaluator.call(c.getCallee(), args, fuel);
+        budget -= fuel - Math.max(0, evaluator.fuelLeft());
+        return result;
+    }
+}
@@ -0,0 +1,434 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Интерпретатор AST для вычисления вызовов на этапе компиляции.
+ * <p>
+ * Повторяет семантику VM: целые — {@link BigInteger}, массивы — {@code Object[]}
+ * со ссылочным равенством. Любая ситуация, в которой VM выдала бы ошибку, а также
+ * исчерпание топлива или чтение глобальной переменной прерывают вычисление —
+ * такой вызов остаётся до рантайма.
+ * </p>
+ */
+final class ConstantEvaluator {
+
+    /** Результат успешного вызова void-функции. */
+    static final Object NO_VALUE = new Object();
+
+    /** Запас до предела BigInt в VM (20 цифр по основанию 1e9), чтобы не расходиться на границе. */
+    private static final BigInteger INT_LIMIT = BigInteger.TEN.pow(171);
+    private static final int MAX_DEPTH = 256;
+
+    private static final int NORMAL = 0;
+    private static final int BREAK = 1;
+    private static final int CONTINUE = 2;
+    private static final int RETURN = 3;
+
+    /** Отказ от вычисления; без стека, один на все случаи: бросается на каждом исчерпании топлива. */
+    private static final class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abort() { super(null, null, false, false); }
+    }
+
+    private static final Abort ABORT = new Abort();
+
+    private static final class Layout {
+        final Map<Object, Integer> slots = new IdentityHashMap<>();
+        int slotCount;
+        boolean ambiguous;
+    }
+
+    private final Map<String, FunctionDeclStmt> functions = new HashMap<>();
+    private final Map<String, Layout> layouts = new HashMap<>();
+
+    private long fuel;
+    private int depth;
+    private Object returned;
+
+    ConstantEvaluator(Program program) {
+        for (FunctionDeclStmt f : program.getFunctions()) functions.put(f.getName(), f);
+    }
+
+    /** Возвращает результат вызова или {@code null}, если вычислить его не удалось. */
+    Object call(String name, List<Object> args, long fuelLimit) {
+        fuel = fuelLimit;
+        depth = 0;
+        returned = null;
+        try {
+            Object result = invoke(name, args.toArray());
+            return result == null ? NO_VALUE : result;
+        } catch (RuntimeException | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    long fuelLeft() {
+        return fuel;
+    }
+
+    private Object invoke(String name, Object[] args) {
+        FunctionDeclStmt f = functions.get(name);
+        if (f == null) return builtin(name, args);
+        if (++depth > MAX_DEPTH) throw ABORT;
+
+        Layout layout = layout(f);
+        Object[] frame = new Object[layout.slotCount];
+        System.arraycopy(args, 0, frame, 0, args.length);
+
+        Object result = null;
+        if (exec(f.getBody(), frame, layout) == RETURN) result = returned;
+        returned = null;
+        depth--;
+
+        if (!f.getReturnType().equals(FrogType.VOID) && result == null) throw ABORT;
+        return result;
+    }
+
+    private Object builtin(String name, Object[] args) {
+        switch (name) {
+            case "len" -> {
+                return BigInteger.valueOf(array(args[0]).length);
+            }
+            case "new_array_int", "new_array_bool" -> {
+                int n = smallInt(args[0]);
+                Object fill = name.equals("new_array_int") ? integer(args[1]) : bool(args[1]);
+                spend(n);
+                Object[] out = new Object[n];
+                Arrays.fill(out, fill);
+                return out;
+            }
+            case "push_int" -> {
+                Object[] old = array(args[0]);
+                spend(old.length);
+                Object[] out = Arrays.copyOf(old, old.length + 1);
+                out[old.length] = integer(args[1]);
+                return out;
+            }
+            default -> throw ABORT;
+        }
+    }
+
+    private int exec(Statement st, Object[] frame, Layout layout) {
+        spend(1);
+        if (st instanceof VarDeclStmt v) {
+            Object value;
+            if (v.getArraySize() != null) {
+                int n = v.getArraySizeLiteral();
+                spend(n);
+                value = new Object[n];
+                Arrays.fill((Object[]) value, BigInteger.ZERO);
+            } else if (v.getInitializer() != null) {
+                value = eval(v.getInitializer(), frame, layout);
+            } else {
+                value = defaultValue(v.getType());
+            }
+            frame[slot(v, layout)] = value;
+            return NORMAL;
+        }
+        if (st instanceof ExprStmt e) {
+            eval(e.getExpression(), frame, layout);
+            return NORMAL;
+        }
+        if (st instanceof IndexAssignStmt ia) {
+            Object[] arr = array(eval(ia.getTarget().getArray(), frame, layout));
+            int i = index(arr, eval(ia.getTarget().getIndex(), frame, layout));
+            arr[i] = eval(ia.getValue(), frame, layout);
+            return NORMAL;
+        }
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                int signal = exec(s, frame, layout);
+                if (signal != NORMAL) return signal;
+            }
+            return NORMAL;
+        }
+        if (st instanceof IfStmt i) {
+            if (bool(eval(i.getCondition(), frame, layout))) return exec(i.getThenBranch(), frame, layout);
+            return i.getElseBranch() == null ? NORMAL : exec(i.getElseBranch(), frame, layout);
+        }
+        if (st instanceof WhileStmt w) {
+            while (bool(eval(w.getCondition(), frame, layout))) {
+                int signal = exec(w.getBody(), frame, layout);
+                if (signal == BREAK) break;
+                if (signal == RETURN) return RETURN;
+            }
+            return NORMAL;
+        }
+        if (st instanceof ForStmt f) {
+            if (f.getInitializer() != null) exec(f.getInitializer(), frame, layout);
+            while (f.getCondition() == null || bool(eval(f.getCondition(), frame, layout))) {
+                int signal = exec(f.getBody(), frame, layout);
+                if (signal == BREAK) break;
+                if (signal == RETURN) return RETURN;
+                if (f.getIncrement() != null) eval(f.getIncrement(), frame, layout);
+            }
+            return NORMAL;
+        }
+        if (st instanceof ReturnStmt r) {
+            returned = r.getValue() == null ? null : eval(r.getValue(), frame, layout);
+            return RETURN;
+        }
+        if (st instanceof BreakStmt) return BREAK;
+        if (st instanceof ContinueStmt) return CONTINUE;
+        throw ABORT;
+    }
+
+    private Object eval(Expression e, Object[] frame, Layout layout) {
+        spend(1);
+        if (e instanceof LiteralExpr lit) {
+            Object v = lit.getValue();
+            if (v instanceof Integer i) return BigInteger.valueOf(i);
+            return v;
+        }
+        if (e instanceof VarExpr v) {
+            Object value = frame[slot(v, layout)];
+            if (value == null) throw ABORT;
+            return value;
+        }
+        if (e instanceof AssignExpr a) {
+            Object value = eval(a.getValue(), frame, layout);
+            frame[slot(a, layout)] = value;
+            return value;
+        }
+        if (e instanceof UnaryExpr u) {
+            Object v = eval(u.getExpr(), frame, layout);
+            return switch (u.getOp()) {
+                case NEGATE -> v instanceof Double d ? (Object) (-d) : integer(v).negate();
+                case NOT -> !bool(v);
+            };
+        }
+        if (e instanceof BinaryExpr b && (b.getOp() == BinaryOp.AND || b.getOp() == BinaryOp.OR)) {
+            boolean l = bool(eval(b.getLeft(), frame, layout));
+            if (l == (b.getOp() == BinaryOp.OR)) return l;
+            return bool(eval(b.getRight(), frame, layout));
+        }
+        if (e instanceof BinaryExpr b) {
+            Object l = eval(b.getLeft(), frame, layout);
+            Object r = eval(b.getRight(), frame, layout);
+            return binary(b, l, r);
+        }
+        if (e instanceof CallExpr c) {
+            List<Expression> argExprs = c.getArgs();
+            Object[] args = new Object[argExprs.size()];
+            for (int i = 0; i < args.length; i++) args[i] = eval(argExprs.get(i), frame, layout);
+            return invoke(c.getCallee(), args);
+        }
+        if (e instanceof IndexExpr idx) {
+            Object[] arr = array(eval(idx.getArray(), frame, layout));
+            Object v = arr[index(arr, eval(idx.getIndex(), frame, layout))];
+            if (v == null) throw ABORT;
+            return v;
+        }
+        if (e instanceof ArrayLiteralExpr arr) {
+            Object[] out = new Object[arr.getElements().size()];
+            for (int i = 0; i < out.length; i++) out[i] = eval(arr.getElements().get(i), frame, layout);
+            return out;
+        }
+        throw ABORT;
+    }
+
+    private Object binary(BinaryExpr b, Object l, Object r) {
+        switch (b.getOp()) {
+            case PLUS -> {
+                if (l instanceof String a && r instanceof String c) {
+                    spend(a.length() + c.length());
+                    return a + c;
+                }
+                if (l instanceof Double a && r instanceof Double c) return a + c;
+                return checked(integer(l).add(integer(r)));
+            }
+            case MINUS -> {
+                if (l instanceof Double a && r instanceof Double c) return a - c;
+                return checked(integer(l).subtract(integer(r)));
+            }
+            case MUL -> {
+                if (l instanceof Double a && r instanceof Double c) return a * c;
+                return checked(integer(l).multiply(integer(r)));
+            }
+            case DIV -> {
+                if (l instanceof Double a && r instanceof Double c) {
+                    if (c == 0.0) throw ABORT;
+                    return a / c;
+                }
+                BigInteger d = integer(r);
+                if (d.signum() == 0) throw ABORT;
+                return integer(l).divide(d);
+            }
+            case MOD -> {
+                BigInteger d = integer(r);
+                if (d.signum() == 0) throw ABORT;
+                return integer(l).remainder(d);
+            }
+            case EQ -> { return same(l, r); }
+            case NEQ -> { return !same(l, r); }
+            case LT -> { return compare(l, r) < 0; }
+            case LE -> { return compare(l, r) <= 0; }
+            case GT -> { return compare(l, r) > 0; }
+            case GE -> { return compare(l, r) >= 0; }
+            case AND -> { return bool(l) & bool(r); }
+            case OR -> { return bool(l) | bool(r); }
+        }
+        throw ABORT;
+    }
+
+    private static boolean same(Object l, Object r) {
+        if (l.getClass() != r.getClass()) throw ABORT;
+        if (l instanceof Object[]) return l == r;
+        if (l instanceof Double a) return a.doubleValue() == (Double) r;
+        return l.equals(r);
+    }
+
+    private static int compare(Object l, Object r) {
+        if (l instanceof BigInteger a && r instanceof BigInteger b) return a.compareTo(b);
+        if (l instanceof Double a && r instanceof Double b) {
+            double x = a, y = b;
+            if (Double.isNaN(x) || Double.isNaN(y)) throw ABORT;
+            return x < y ? -1 : (x > y ? 1 : 0);
+        }
+        throw ABORT;
+    }
+
+    private static BigInteger checked(BigInteger v) {
+        if (v.abs().compareTo(INT_LIMIT) >= 0) throw ABORT;
+        return v;
+    }
+
+    private static BigInteger integer(Object v) {
+        if (v instanceof BigInteger i) return i;
+        throw ABORT;
+    }
+
+    private static boolean bool(Object v) {
+        if (v instanceof Boolean b) return b;
+        throw ABORT;
+    }
+
+    private static Object[] array(Object v) {
+        if (v instanceof Object[] a) return a;
+        throw ABORT;
+    }
+
+    private static int smallInt(Object v) {
+        BigInteger i = integer(v);
+        if (i.signum() < 0 || i.bitLength() > 24) throw ABORT;
+        return i.intValue();
+    }
+
+    private static int index(Object[] arr, Object v) {
+        BigInteger i = integer(v);
+        if (i.signum() < 0 || i.compareTo(BigInteger.valueOf(arr.length)) >= 0) throw ABORT;
+        return i.intValue();
+    }
+
+    private static Object defaultValue(FrogType t) {
+        return switch (t.getKind()) {
+            case INT -> BigInteger.ZERO;
+            case FLOAT -> 0.0;
+            case BOOL -> false;
+            case STRING -> "";
+            case ARRAY -> new Object[0];
+            case VOID -> throw ABORT;
+        };
+    }
+
+    private void spend(long amount) {
+        fuel -= amount;
+        if (fuel < 0) throw ABORT;
+    }
+
+    private static int slot(Object node, Layout layout) {
+        Integer slot = layout.slots.get(node);
+        if (slot == null) throw ABORT;
+        return slot;
+    }
+
+    private Layout layout(FunctionDeclStmt f) {
+        Layout layout = layouts.get(f.getName());
+        if (layout != null) {
+            if (layout.ambiguous) throw ABORT;
+            return layout;
+        }
+        layout = new Layout();
+        Map<String, Integer> scope = new HashMap<>();
+        for (FunctionDeclStmt.Param p : f.getParams()) scope.put(p.getName(), layout.slotCount++);
+        resolve(f.getBody(), scope, layout);
+        layouts.put(f.getName(), layout);
+        if (layout.ambiguous) throw ABORT;
+        return layout;
+    }
+
+    private void resolve(Statement st, Map<String, Integer> scope, Layout layout) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            resolve(v.getInitializer(), scope, layout);
+            int slot = layout.slotCount++;
+            scope.put(v.getName(), slot);
+            bind(v, slot, layout);
+        } else if (st instanceof ExprStmt e) {
+            resolve(e.getExpression(), scope, layout);
+        } else if (st instanceof IndexAssignStmt ia) {
+            resolve(ia.getTarget(), scope, layout);
+            resolve(ia.getValue(), scope, layout);
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) resolve(s, scope, layout);
+        } else if (st instanceof IfStmt i) {
+            resolve(i.getCondition(), scope, layout);
+            resolve(i.getThenBranch(), scope, layout);
+            resolve(i.getElseBranch(), scope, layout);
+        } else if (st instanceof WhileStmt w) {
+            resolve(w.getCondition(), scope, layout);
+            resolve(w.getBody(), scope, layout);
+        } else if (st instanceof ForStmt f) {
+            resolve(f.getInitializer(), scope, layout);
+            resolve(f.getCondition(), scope, layout);
+            resolve(f.getIncrement(), scope, layout);
+            resolve(f.getBody(), scope, layout);
+        } else if (st instanceof ReturnStmt r) {
+            resolve(r.getValue(), scope, layout);
+        }
+    }
+
+    private void resolve(Expression e, Map<String, Integer> scope, Layout layout) {
+        if (e == null) return;
+        if (e instanceof VarExpr v) {
+            Integer slot = scope.get(v.getName());
+            if (slot != null) bind(v, slot, layout);
+        } else if (e instanceof AssignExpr a) {
+            resolve(a.getValue(), scope, layout);
+            Integer slot = scope.get(a.getName());
+            if (slot != null) bind(a, slot, layout);
+        } else if (e instanceof UnaryExpr u) {
+            resolve(u.getExpr(), scope, layout);
+        } else if (e instanceof BinaryExpr b) {
+            resolve(b.getLeft(), scope, layout);
+            resolve(b.getRight(), scope, layout);
+        } else if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) resolve(arg, scope, layout);
+        } else if (e instanceof IndexExpr idx) {
+            resolve(idx.getArray(), scope, layout);
+            resolve(idx.getIndex(), scope, layout);
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) resolve(el, scope, layout);
+        }
+    }
+
+    private static void bind(Object node, int slot, Layout layout) {
+        Integer prev = layout.slots.put(node, slot);
+        if (prev != null && prev != slot) layout.ambiguous = true;
+    }
+}
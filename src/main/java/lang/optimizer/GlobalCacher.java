@@ -0,0 +1,264 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.*;
+
+/**
+ * Кэширование глобальных переменных в локальных слотах функции.
+ * <p>
+ * Глобальная переменная, к которой функция обращается внутри цикла, читается в локальную
+ * {@code global$x} в начале тела, и все обращения идут к ней. Для этого ни одна вызываемая
+ * функция (с учётом транзитивных вызовов) не должна присваивать этой переменной.
+ * </p>
+ * <p>
+ * Если функция сама присваивает переменной, значение записывается обратно перед каждым
+ * {@code return}, в конце тела {@code void}-функции и перед оператором, где вызывается
+ * функция, которая может её прочитать. Переменная не кэшируется, если такой вызов стоит
+ * в условии или шаге цикла или в одном выражении с присваиванием ей.
+ * </p>
+ */
+final class GlobalCacher {
+
+    static final String PREFIX = "global$";
+
+    private final Map<String, FrogType> globals = new HashMap<>();
+    private PurityAnalysis purity;
+
+    private Map<String, FrogType> cached;
+    private Set<String> written;
+
+    Program optimize(Program program) {
+        for (Statement s : program.getStatements()) collectDecls(s, globals);
+        if (globals.isEmpty()) return program;
+        purity = new PurityAnalysis(program);
+
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            funcs.add(cache(f));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    private FunctionDeclStmt cache(FunctionDeclStmt f) {
+        Map<String, FrogType> locals = new HashMap<>();
+        for (FunctionDeclStmt.Param p : f.getParams()) locals.put(p.getName(), p.getType());
+        collectDecls(f.getBody(), locals);
+
+        Set<String> inLoops = new TreeSet<>();
+        collectLoopRefs(f.getBody(), inLoops);
+        Set<String> assigned = new HashSet<>();
+        AstUtils.collectAssigned(f.getBody(), assigned);
+        Set<String> calleeWrites = new HashSet<>();
+        for (String callee : callees(f.getBody())) calleeWrites.addAll(purity.globalsWritten(callee));
+
+        cached = new LinkedHashMap<>();
+        written = new LinkedHashSet<>();
+        for (String name : inLoops) {
+            if (!globals.containsKey(name) || locals.containsKey(name) || calleeWrites.contains(name)) continue;
+            if (assigned.contains(name)) {
+                if (!writeBackSafe(f.getBody(), name)) continue;
+                written.add(name);
+            }
+            cached.put(name, globals.get(name));
+        }
+        if (cached.isEmpty()) return f;
+
+        SourceLocation loc = f.getBody().getLocation();
+        BlockStmt renamed = (BlockStmt) new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof VarExpr v && cached.containsKey(v.getName())) {
+                    return AstUtils.var(PREFIX + v.getName(), e.getType(), v.getLocation());
+                }
+                if (e instanceof AssignExpr a && cached.containsKey(a.getName())) {
+                    AssignExpr n = new AssignExpr(PREFIX + a.getName(), rewriteExpr(a.getValue()), a.getLocation());
+                    n.setType(e.getType());
+                    return n;
+                }
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(f.getBody());
+
+        List<Statement> body = new ArrayList<>();
+        cached.forEach((name, type) ->
+                body.add(new VarDeclStmt(type, PREFIX + name, AstUtils.var(name, type, loc), loc, null)));
+        body.addAll(((BlockStmt) place(renamed)).getStatements());
+        if (f.getReturnType().equals(FrogType.VOID)) body.addAll(writeBacks(loc));
+        return f.withBody(new BlockStmt(body, loc));
+    }
+
+    // ---- write-back ----
+
+    private Statement place(Statement st) {
+        if (st instanceof BlockStmt b) {
+            List<Statement> out = new ArrayList<>();
+            for (Statement s : b.getStatements()) {
+                if (needsWriteBack(s)) out.addAll(writeBacks(s.getLocation()));
+                out.add(place(s));
+            }
+            return new BlockStmt(out, b.getLocation());
+        }
+        if (st instanceof IfStmt i) {
+            Statement elseS = i.getElseBranch() == null ? null : branch(i.getElseBranch());
+            return new IfStmt(i.getCondition(), branch(i.getThenBranch()), elseS, i.getLocation());
+        }
+        if (st instanceof WhileStmt w) {
+            return new WhileStmt(w.getCondition(), branch(w.getBody()), w.getLocation());
+        }
+        if (st instanceof ForStmt f) {
+            return new ForStmt(f.getInitializer(), f.getCondition(), f.getIncrement(), branch(f.getBody()), f.getLocation());
+        }
+        return st;
+    }
+
+    private Statement branch(Statement st) {
+        Statement placed = place(st);
+        if (st instanceof BlockStmt || !needsWriteBack(st)) return placed;
+        List<Statement> out = new ArrayList<>(writeBacks(st.getLocation()));
+        out.add(placed);
+        return new BlockStmt(out, st.getLocation());
+    }
+
+    private List<Statement> writeBacks(SourceLocation loc) {
+        List<Statement> out = new ArrayList<>();
+        for (String name : written) {
+            out.add(AstUtils.assign(name, AstUtils.var(PREFIX + name, cached.get(name), loc)));
+        }
+        return out;
+    }
+
+    private boolean needsWriteBack(Statement st) {
+        if (written.isEmpty()) return false;
+        if (st instanceof ReturnStmt) return true;
+        for (Expression e : ownExprs(st)) {
+            for (String callee : callees(e)) {
+                Set<String> reads = purity.globalsRead(callee);
+                for (String name : written) {
+                    if (reads.contains(name)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Вызовы, читающие {@code name}, стоят там, где перед ними можно вставить запись. */
+    private boolean writeBackSafe(Statement st, String name) {
+        if (st == null) return true;
+        if (st instanceof WhileStmt w) {
+            return !readsViaCall(w.getCondition(), name) && writeBackSafe(w.getBody(), name);
+        }
+        if (st instanceof ForStmt f) {
+            if (readsViaCall(f.getCondition(), name) || readsViaCall(f.getIncrement(), name)) return false;
+            return writeBackSafe(f.getInitializer(), name) && writeBackSafe(f.getBody(), name);
+        }
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                if (!writeBackSafe(s, name)) return false;
+            }
+            return true;
+        }
+        if (st instanceof IfStmt i) {
+            if (!exprSafe(i.getCondition(), name, false)) return false;
+            return writeBackSafe(i.getThenBranch(), name) && writeBackSafe(i.getElseBranch(), name);
+        }
+        for (Expression e : ownExprs(st)) {
+            if (!exprSafe(e, name, st instanceof ReturnStmt)) return false;
+        }
+        return true;
+    }
+
+    private boolean exprSafe(Expression e, String name, boolean exits) {
+        Set<String> assigned = new HashSet<>();
+        AstUtils.collectAssigned(new ExprStmt(e, e.getLocation()), assigned);
+        return !assigned.contains(name) || (!exits && !readsViaCall(e, name));
+    }
+
+    private boolean readsViaCall(Expression e, String name) {
+        if (e == null) return false;
+        for (String callee : callees(e)) {
+            if (purity.globalsRead(callee).contains(name)) return true;
+        }
+        return false;
+    }
+
+    /** Выражения самого оператора без вложенных операторов. */
+    private static List<Expression> ownExprs(Statement st) {
+        List<Expression> out = new ArrayList<>();
+        if (st instanceof VarDeclStmt v) {
+            if (v.getInitializer() != null) out.add(v.getInitializer());
+        } else if (st instanceof ExprStmt e) {
+            out.add(e.getExpression());
+        } else if (st instanceof IndexAssignStmt ia) {
+            out.add(ia.getTarget());
+            out.add(ia.getValue());
+        } else if (st instanceof ReturnStmt r) {
+            if (r.getValue() != null) out.add(r.getValue());
+        } else if (st instanceof IfStmt i) {
+            out.add(i.getCondition());
+        } else if (st instanceof WhileStmt w) {
+            out.add(w.getCondition());
+        } else if (st instanceof ForStmt f) {
+            out.addAll(ownExprs(f.getInitializer()));
+            if (f.getCondition() != null) out.add(f.getCondition());
+            if (f.getIncrement() != null) out.add(f.getIncrement());
+        }
+        return out;
+    }
+
+    // ---- сбор имён ----
+
+    private static void collectDecls(Statement st, Map<String, FrogType> out) {
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement s) {
+                if (s instanceof VarDeclStmt v) out.putIfAbsent(v.getName(), v.getType());
+                return super.rewriteStmt(s);
+            }
+        }.rewriteStmt(st);
+    }
+
+    private static void collectLoopRefs(Statement st, Set<String> out) {
+        new AstRewriter() {
+            private boolean loop;
+
+            @Override
+            Statement rewriteStmt(Statement s) {
+                if (!(s instanceof WhileStmt || s instanceof ForStmt) || loop) return super.rewriteStmt(s);
+                loop = true;
+                Statement r = super.rewriteStmt(s);
+                loop = false;
+                return r;
+            }
+
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (loop && e instanceof VarExpr v) out.add(v.getName());
+                if (loop && e instanceof AssignExpr a) out.add(a.getName());
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+    }
+
+    private static Set<String> callees(Statement st) {
+        Set<String> out = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof CallExpr c) out.add(c.getCallee());
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+        return out;
+    }
+
+    private static Set<String> callees(Expression e) {
+        return callees(new ExprStmt(e, e.getLocation()));
+    }
+}
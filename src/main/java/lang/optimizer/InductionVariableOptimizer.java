@@ -0,0 +1,337 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.util.*;
+
+/**
+ * Снижение стоимости индуктивных переменных в циклах функций.
+ * <p>
+ * Базовая индуктивная переменная — локальная {@code int}, которая меняется в цикле
+ * ровно одним присваиванием {@code i = i ± c} на верхнем уровне тела (или в инкременте {@code for}).
+ * Производные выражения {@code i * k} заменяются временной переменной, которая
+ * инициализируется перед циклом и увеличивается на {@code c * k} сразу после обновления {@code i}.
+ * Выражения {@code i + c}, встречающиеся в цикле несколько раз, обрабатываются так же.
+ * </p>
+ */
+final class InductionVariableOptimizer extends AstRewriter {
+
+    private static final String TEMP_PREFIX = "iv$";
+
+    private int nextTemp = 0;
+    private Map<String, FrogType> locals = new HashMap<>();
+    private Map.Entry<String, Integer> lastConstant = null;
+
+    Program optimize(Program program) {
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            funcs.add(new MulByTwoLowering().rewriteFunction(rewriteFunction(f)));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    @Override
+    FunctionDeclStmt rewriteFunction(FunctionDeclStmt f) {
+        locals = new HashMap<>();
+        for (FunctionDeclStmt.Param p : f.getParams()) locals.put(p.getName(), p.getType());
+        return super.rewriteFunction(f);
+    }
+
+    @Override
+    Statement rewriteStmt(Statement st) {
+        Map.Entry<String, Integer> entry = lastConstant;
+        lastConstant = null;
+
+        Statement r;
+        if (st instanceof VarDeclStmt v) {
+            r = super.rewriteStmt(st);
+            locals.put(v.getName(), v.getType());
+        } else if (st instanceof WhileStmt || st instanceof ForStmt) {
+            if (st instanceof ForStmt f) entry = constantAssignment(f.getInitializer());
+            Map<String, FrogType> outer = new HashMap<>(locals);
+            Statement loop = super.rewriteStmt(st);
+            r = reduceLoop(loop, entry);
+            locals = outer;
+        } else {
+            r = super.rewriteStmt(st);
+        }
+
+        lastConstant = constantAssignment(st);
+        return r;
+    }
+
+    private static Map.Entry<String, Integer> constantAssignment(Statement st) {
+        if (st instanceof VarDeclStmt v && AstUtils.intValue(v.getInitializer()) != null) {
+            return Map.entry(v.getName(), AstUtils.intValue(v.getInitializer()));
+        }
+        if (st instanceof ExprStmt es && es.getExpression() instanceof AssignExpr a
+                && AstUtils.intValue(a.getValue()) != null) {
+            return Map.entry(a.getName(), AstUtils.intValue(a.getValue()));
+        }
+        return null;
+    }
+
+    private record BasicIv(String name, int step, AssignExpr update) {}
+
+    private static final class Derived {
+        final BasicIv iv;
+        final boolean additive;
+        final int constant;
+        int uses;
+        String temp;
+
+        Derived(BasicIv iv, boolean additive, int constant) {
+            this.iv = iv;
+            this.additive = additive;
+            this.constant = constant;
+        }
+    }
+
+    private Statement reduceLoop(Statement loop, Map.Entry<String, Integer> entry) {
+        Expression cond;
+        Statement init = null;
+        Expression inc = null;
+        List<Statement> body;
+
+        if (loop instanceof WhileStmt w) {
+            cond = w.getCondition();
+            body = AstUtils.statementsOf(w.getBody());
+        } else {
+            ForStmt f = (ForStmt) loop;
+            if (AstUtils.hasContinue(f.getBody())) return loop;
+            init = f.getInitializer();
+            cond = f.getCondition();
+            inc = f.getIncrement();
+            body = AstUtils.statementsOf(f.getBody());
+        }
+
+        List<String> assigned = new ArrayList<>();
+        AstUtils.collectAssigned(cond, assigned);
+        AstUtils.collectAssigned(inc, assigned);
+        for (Statement s : body) AstUtils.collectAssigned(s, assigned);
+
+        Map<String, BasicIv> ivs = new LinkedHashMap<>();
+        List<Expression> updates = new ArrayList<>();
+        for (Statement s : body) {
+            if (s instanceof ExprStmt es) updates.add(es.getExpression());
+        }
+        if (inc != null) updates.add(inc);
+
+        for (Expression u : updates) {
+            BasicIv iv = matchUpdate(u);
+            if (iv == null) continue;
+            if (!FrogType.INT.equals(locals.get(iv.name))) continue;
+            if (Collections.frequency(assigned, iv.name) != 1) continue;
+            ivs.put(iv.name, iv);
+        }
+        if (ivs.isEmpty()) return loop;
+
+        Map<String, Derived> derived = new LinkedHashMap<>();
+        Set<AssignExpr> updateNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BasicIv iv : ivs.values()) updateNodes.add(iv.update);
+
+        DerivedCollector collector = new DerivedCollector(ivs, derived, updateNodes);
+        if (cond != null) collector.rewriteExpr(cond);
+        for (Statement s : body) collector.rewriteStmt(s);
+
+        List<Statement> prologue = new ArrayList<>();
+        Map<AssignExpr, List<Statement>> bumps = new IdentityHashMap<>();
+        for (Map.Entry<String, Derived> en : derived.entrySet()) {
+            Derived d = en.getValue();
+            if (d.uses == 0 || (d.additive && d.uses < 2)) continue;
+
+            int delta;
+            Integer seedValue = null;
+            try {
+                delta = d.additive ? d.iv.step : Math.multiplyExact(d.iv.step, d.constant);
+                if (entry != null && entry.getKey().equals(d.iv.name)) {
+                    seedValue = d.additive
+                            ? Math.addExact(entry.getValue(), d.constant)
+                            : Math.multiplyExact(entry.getValue(), d.constant);
+                }
+            } catch (ArithmeticException overflow) {
+                continue;
+            }
+
+            d.temp = TEMP_PREFIX + nextTemp++;
+            Expression seed;
+            if (seedValue != null) {
+                seed = AstUtils.intLit(seedValue, loop.getLocation());
+            } else {
+                Expression ivRef = AstUtils.var(d.iv.name, FrogType.INT, loop.getLocation());
+                seed = AstUtils.binary(ivRef, d.additive ? BinaryOp.PLUS : BinaryOp.MUL,
+                        AstUtils.intLit(d.constant, loop.getLocation()), FrogType.INT);
+            }
+            prologue.add(new VarDeclStmt(FrogType.INT, d.temp, seed, loop.getLocation(), null));
+
+            Expression tempRef = AstUtils.var(d.temp, FrogType.INT, loop.getLocation());
+            Expression next = AstUtils.binary(tempRef, BinaryOp.PLUS,
+                    AstUtils.intLit(delta, loop.getLocation()), FrogType.INT);
+            bumps.computeIfAbsent(d.iv.update, k -> new ArrayList<>()).add(AstUtils.assign(d.temp, next));
+        }
+        if (prologue.isEmpty()) return loop;
+
+        DerivedReplacer replacer = new DerivedReplacer(ivs, derived, updateNodes);
+        Expression newCond = cond == null ? null : replacer.rewriteExpr(cond);
+
+        List<Statement> newBody = new ArrayList<>();
+        for (Statement s : body) {
+            newBody.add(replacer.rewriteStmt(s));
+            if (s instanceof ExprStmt es && bumps.containsKey(es.getExpression())) {
+                newBody.addAll(bumps.get(es.getExpression()));
+            }
+        }
+
+        List<Statement> out = new ArrayList<>();
+        Statement newLoop;
+        if (loop instanceof WhileStmt w) {
+            newLoop = new WhileStmt(newCond, new BlockStmt(newBody, w.getBody().getLocation()), w.getLocation());
+        } else {
+            ForStmt f = (ForStmt) loop;
+            if (init != null) out.add(init);
+            if (inc != null) {
+                newBody.add(new ExprStmt(inc, inc.getLocation()));
+                if (bumps.containsKey(inc)) newBody.addAll(bumps.get(inc));
+            }
+            newLoop = new ForStmt(null, newCond, null, new BlockStmt(newBody, f.getBody().getLocation()), f.getLocation());
+        }
+        out.addAll(prologue);
+        out.add(newLoop);
+        return new BlockStmt(out, loop.getLocation());
+    }
+
+    private static BasicIv matchUpdate(Expression e) {
+        if (!(e instanceof AssignExpr a)) return null;
+        if (!(a.getValue() instanceof BinaryExpr b)) return null;
+        String name = a.getName();
+
+        if (b.getOp() == BinaryOp.PLUS) {
+            if (AstUtils.isVar(b.getLeft(), name) && AstUtils.intValue(b.getRight()) != null) {
+                return new BasicIv(name, AstUtils.intValue(b.getRight()), a);
+            }
+            if (AstUtils.isVar(b.getRight(), name) && AstUtils.intValue(b.getLeft()) != null) {
+                return new BasicIv(name, AstUtils.intValue(b.getLeft()), a);
+            }
+        }
+        if (b.getOp() == BinaryOp.MINUS && AstUtils.isVar(b.getLeft(), name)) {
+            Integer c = AstUtils.intValue(b.getRight());
+            if (c != null && c != Integer.MIN_VALUE) return new BasicIv(name, -c, a);
+        }
+        return null;
+    }
+
+    private static String derivedKey(Map<String, BasicIv> ivs, BinaryExpr b) {
+        String name = null;
+        Integer c = null;
+        if (b.getLeft() instanceof VarExpr v && ivs.containsKey(v.getName())) {
+            name = v.getName();
+            c = AstUtils.intValue(b.getRight());
+        } else if (b.getRight() instanceof VarExpr v && ivs.containsKey(v.getName()) && b.getOp() != BinaryOp.MINUS) {
+            name = v.getName();
+            c = AstUtils.intValue(b.getLeft());
+        }
+        if (name == null || c == null) return null;
+
+        return switch (b.getOp()) {
+            case MUL -> c == 0 || c == 1 ? null : name + "*" + c;
+            case PLUS -> c == 0 ? null : name + "+" + c;
+            case MINUS -> c == 0 || c == Integer.MIN_VALUE ? null : name + "+" + (-c);
+            default -> null;
+        };
+    }
+
+    private static final class DerivedCollector extends AstRewriter {
+        private final Map<String, BasicIv> ivs;
+        private final Map<String, Derived> derived;
+        private final Set<AssignExpr> updates;
+
+        DerivedCollector(Map<String, BasicIv> ivs, Map<String, Derived> derived, Set<AssignExpr> updates) {
+            this.ivs = ivs;
+            this.derived = derived;
+            this.updates = updates;
+        }
+
+        @Override
+        Expression rewriteExpr(Expression e) {
+            if (updates.contains(e)) return e;
+            if (e instanceof BinaryExpr b) {
+                String key = derivedKey(ivs, b);
+                if (key != null) {
+                    Derived d = derived.get(key);
+                    if (d == null) {
+                        boolean additive = b.getOp() != BinaryOp.MUL;
+                        String name = key.substring(0, key.indexOf(additive ? '+' : '*'));
+                        int c = Integer.parseInt(key.substring(name.length() + 1));
+                        d = new Derived(ivs.get(name), additive, c);
+                        derived.put(key, d);
+                    }
+                    d.uses++;
+                    return e;
+                }
+            }
+            return super.rewriteExpr(e);
+        }
+    }
+
+    private static final class DerivedReplacer extends AstRewriter {
+        private final Map<String, BasicIv> ivs;
+        private final Map<String, Derived> derived;
+        private final Set<AssignExpr> updates;
+
+        DerivedReplacer(Map<String, BasicIv> ivs, Map<String, Derived> derived, Set<AssignExpr> updates) {
+            this.ivs = ivs;
+            this.derived = derived;
+            this.updates = updates;
+        }
+
+        @Override
+        Statement rewriteStmt(Statement st) {
+            if (st instanceof ExprStmt es && updates.contains(es.getExpression())) return st;
+            return super.rewriteStmt(st);
+        }
+
+        @Override
+        Expression rewriteExpr(Expression e) {
+            if (e instanceof BinaryExpr b) {
+                String key = derivedKey(ivs, b);
+                Derived d = key == null ? null : derived.get(key);
+                if (d != null && d.temp != null) {
+                    return AstUtils.var(d.temp, FrogType.INT, e.getLocation());
+                }
+            }
+            return super.rewriteExpr(e);
+        }
+    }
+
+    /**
+     * {@code x * 2} → {@code x + x} для переменных: сложение в ВМ дешевле умножения.
+     * Деление и остаток по степени двойки не трогаются — в ВМ нет сдвигов,
+     * а целые хранятся в десятичной системе, так что битовые формы не дешевле.
+     */
+    private static final class MulByTwoLowering extends AstRewriter {
+        @Override
+        Expression rewriteExpr(Expression e) {
+            Expression r = super.rewriteExpr(e);
+            if (r instanceof BinaryExpr b && b.getOp() == BinaryOp.MUL && r.getType() != null && r.getType().isNumeric()) {
+                if (b.getLeft() instanceof VarExpr && isTwo(b.getRight())) {
+                    return AstUtils.binary(b.getLeft(), BinaryOp.PLUS, AstUtils.copy(b.getLeft()), r.getType());
+                }
+                if (b.getRight() instanceof VarExpr && isTwo(b.getLeft())) {
+                    return AstUtils.binary(b.getRight(), BinaryOp.PLUS, AstUtils.copy(b.getRight()), r.getType());
+                }
+            }
+            return r;
+        }
+
+        private static boolean isTwo(Expression e) {
+            if (!(e instanceof LiteralExpr lit)) return false;
+            return lit.getValue() instanceof Integer i ? i == 2 : lit.getValue() instanceof Double d && d == 2.0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Обход тел функций для проходов над циклами.
+ * <p>
+ * Вложенные блоки переписываются изнутри наружу, а каждый цикл после этого отдаётся
+ * {@link #rewriteLoop} вместе с уже переписанными операторами того же блока перед ним.
+ * В {@link #locals} — типы параметров и локальных переменных, видимых в текущей точке.
+ * </p>
+ */
+abstract class LoopRewriter {
+
+    Map<String, FrogType> locals = new HashMap<>();
+
+    Program optimize(Program program) {
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            if (!accepts(f)) {
+                funcs.add(f);
+                continue;
+            }
+            locals = new HashMap<>();
+            for (FunctionDeclStmt.Param p : f.getParams()) locals.put(p.getName(), p.getType());
+            BlockStmt body = f.getBody();
+            funcs.add(f.withBody(new BlockStmt(rewriteList(body.getStatements()), body.getLocation())));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    boolean accepts(FunctionDeclStmt f) {
+        return true;
+    }
+
+    /** Замена цикла {@code loop}; {@code before} — предыдущие операторы его блока. */
+    abstract List<Statement> rewriteLoop(Statement loop, List<Statement> before);
+
+    private List<Statement> rewriteList(List<Statement> stmts) {
+        Map<String, FrogType> outer = new HashMap<>(locals);
+        List<Statement> out = new ArrayList<>();
+        for (Statement s : stmts) {
+            Statement r = rewriteNested(s);
+            if (r instanceof WhileStmt || r instanceof ForStmt) out.addAll(rewriteLoop(r, out));
+            else out.add(r);
+        }
+        locals = outer;
+        return out;
+    }
+
+    private Statement rewriteNested(Statement st) {
+        if (st instanceof VarDeclStmt v) {
+            locals.put(v.getName(), v.getType());
+            return st;
+        }
+        if (st instanceof BlockStmt b) {
+            return new BlockStmt(rewriteList(b.getStatements()), b.getLocation());
+        }
+        if (st instanceof IfStmt i) {
+            Statement elseS = i.getElseBranch() == null ? null : rewriteBranch(i.getElseBranch());
+            return new IfStmt(i.getCondition(), rewriteBranch(i.getThenBranch()), elseS, i.getLocation());
+        }
+        if (st instanceof WhileStmt w) {
+            return new WhileStmt(w.getCondition(), rewriteBranch(w.getBody()), w.getLocation());
+        }
+        if (st instanceof ForStmt f) {
+            if (f.getInitializer() instanceof VarDeclStmt v) locals.put(v.getName(), v.getType());
+            return new ForStmt(f.getInitializer(), f.getCondition(), f.getIncrement(),
+                    rewriteBranch(f.getBody()), f.getLocation());
+        }
+        return st;
+    }
+
+    private BlockStmt rewriteBranch(Statement st) {
+        BlockStmt b = AstUtils.asBlock(st, st.getLocation());
+        return new BlockStmt(rewriteList(b.getStatements()), b.getLocation());
+    }
+}
@@ -0,0 +1,236 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Развёртка счётных циклов в функциях.
+ * <p>
+ * Счётный цикл — {@code for (init; i < N; i = i + c)} или {@code while (i < N) { ...; i = i + c; }},
+ * где {@code i} — локальная {@code int}, которая больше нигде в теле не меняется, {@code N} не
+ * зависит от итерации, а в теле нет {@code break}/{@code continue} этого цикла.
+ * </p>
+ * <p>
+ * Если начальное значение и граница — литералы, а тело, повторённое нужное число раз,
+ * укладывается в бюджет, цикл разворачивается полностью: в каждой копии {@code i} заменяется
+ * своим значением. Иначе небольшое тело повторяется 2, 4 или 8 раз в основном цикле
+ * с одним обновлением {@code i}, а оставшиеся итерации выполняет исходный цикл.
+ * </p>
+ * <p>
+ * С профилем не разворачиваются циклы, которые ни разу не выполнялись, и циклы функций
+ * без вызовов, а коэффициент частичной развёртки ограничен средним числом итераций.
+ * </p>
+ */
+final class LoopUnroller extends LoopRewriter {
+
+    private static final int MAX_FULL_TRIPS = 16;
+    private static final int FULL_BUDGET = 192;
+    /** Пары (коэффициент развёртки, максимальный размер тела). */
+    private static final int[][] PARTIAL = {{8, 6}, {4, 16}, {2, 40}};
+
+    private record Counted(String iv, BinaryOp cmp, Expression bound, int step,
+                           Statement init, List<Statement> body, Statement loop) {}
+
+    private final Profile profile;
+
+    LoopUnroller(Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    boolean accepts(FunctionDeclStmt f) {
+        return profile == null || profile.calls(f.getName()) != 0;
+    }
+
+    @Override
+    List<Statement> rewriteLoop(Statement loop, List<Statement> before) {
+        return unroll(loop, before);
+    }
+
+    private List<Statement> unroll(Statement loop, List<Statement> before) {
+        Counted c = match(loop);
+        if (c == null) return List.of(loop);
+        Profile.Branch seen = profile == null ? null
+                : profile.branch(loop instanceof ForStmt ? "for" : "while", loop.getLocation());
+        if (seen != null && seen.total() == 0) return List.of(loop);
+
+        Integer start = c.init != null ? constantOf(c.init, c.iv) : entryValue(before, c.iv);
+        Integer limit = AstUtils.intValue(c.bound);
+        int size = 0;
+        for (Statement s : c.body) size += AstUtils.size(s);
+
+        if (start != null && limit != null) {
+            long trips = trips(c.cmp, start, limit, c.step);
+            long last = start + trips * c.step;
+            if (trips <= MAX_FULL_TRIPS && trips * size <= FULL_BUDGET && last == (int) last) {
+                return fullyUnrolled(c, start, (int) trips);
+            }
+            if (trips < 4) return List.of(loop);
+        }
+
+        for (int[] option : PARTIAL) {
+            int factor = option[0];
+            long stride = (long) factor * c.step;
+            if (size > option[1] || stride != (int) stride) continue;
+            if (start != null && limit != null && trips(c.cmp, start, limit, c.step) < 2L * factor) continue;
+            if (seen != null && seen.tripCount() < 2.0 * factor) continue;
+            return partiallyUnrolled(c, factor);
+        }
+        return List.of(loop);
+    }
+
+    private List<Statement> fullyUnrolled(Counted c, int start, int trips) {
+        SourceLocation loc = c.loop.getLocation();
+        List<Statement> out = new ArrayList<>();
+        for (int k = 0; k < trips; k++) {
+            int value = start + k * c.step;
+            out.add(new BlockStmt(substitute(c.body, c.iv, () -> AstUtils.intLit(value, loc)), loc));
+        }
+        LiteralExpr last = AstUtils.intLit(start + trips * c.step, loc);
+        if (c.init instanceof VarDeclStmt) {
+            out.add(new VarDeclStmt(FrogType.INT, c.iv, last, loc, null));
+        } else {
+            out.add(AstUtils.assign(c.iv, last));
+        }
+        return out;
+    }
+
+    private List<Statement> partiallyUnrolled(Counted c, int factor) {
+        SourceLocation loc = c.loop.getLocation();
+        List<Statement> out = new ArrayList<>();
+        if (c.init != null) out.add(c.init);
+
+        List<Statement> body = new ArrayList<>();
+        for (int k = 0; k < factor; k++) {
+            int offset = k * c.step;
+            body.add(new BlockStmt(substitute(c.body, c.iv, () -> offset(c.iv, offset, loc)), loc));
+        }
+        body.add(AstUtils.assign(c.iv, offset(c.iv, factor * c.step, loc)));
+
+        Expression guard = AstUtils.binary(offset(c.iv, (factor - 1) * c.step, loc), c.cmp,
+                AstUtils.copy(c.bound), FrogType.BOOL);
+        out.add(new WhileStmt(guard, new BlockStmt(body, loc), loc));
+
+        if (c.loop instanceof ForStmt f) {
+            out.add(new ForStmt(null, f.getCondition(), f.getIncrement(), f.getBody(), f.getLocation()));
+        } else {
+            out.add(c.loop);
+        }
+        return out;
+    }
+
+    private Counted match(Statement loop) {
+        Statement init = null;
+        Expression cond;
+        Expression inc;
+        List<Statement> body;
+
+        if (loop instanceof ForStmt f) {
+            init = f.getInitializer();
+            cond = f.getCondition();
+            inc = f.getIncrement();
+            body = AstUtils.statementsOf(f.getBody());
+        } else {
+            WhileStmt w = (WhileStmt) loop;
+            List<Statement> all = AstUtils.statementsOf(w.getBody());
+            if (all.isEmpty() || !(all.get(all.size() - 1) instanceof ExprStmt last)) return null;
+            cond = w.getCondition();
+            inc = last.getExpression();
+            body = all.subList(0, all.size() - 1);
+        }
+
+        if (!(cond instanceof BinaryExpr b) || !(b.getLeft() instanceof VarExpr v)) return null;
+        String iv = v.getName();
+        if (!FrogType.INT.equals(locals.get(iv)) || !FrogType.INT.equals(b.getRight().getType())) return null;
+
+        Integer step = AstUtils.intValue(AstUtils.stepOf(inc, iv));
+        if (step == null || step == 0 || step == Integer.MIN_VALUE) return null;
+        boolean up = b.getOp() == BinaryOp.LT || b.getOp() == BinaryOp.LE;
+        boolean down = b.getOp() == BinaryOp.GT || b.getOp() == BinaryOp.GE;
+        if (!(up && step > 0) && !(down && step < 0)) return null;
+
+        List<String> assigned = new ArrayList<>();
+        for (Statement s : body) {
+            if (exitsLoop(s)) return null;
+            AstUtils.collectAssigned(s, assigned);
+        }
+        if (assigned.contains(iv)) return null;
+        assigned.add(iv);
+        if (!AstUtils.isInvariant(b.getRight(), locals.keySet(), assigned)) return null;
+
+        return new Counted(iv, b.getOp(), b.getRight(), step, init, body, loop);
+    }
+
+    private static boolean exitsLoop(Statement st) {
+        if (st instanceof BreakStmt || st instanceof ContinueStmt) return true;
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                if (exitsLoop(s)) return true;
+            }
+            return false;
+        }
+        if (st instanceof IfStmt i) {
+            return exitsLoop(i.getThenBranch()) || (i.getElseBranch() != null && exitsLoop(i.getElseBranch()));
+        }
+        return false;
+    }
+
+    private static Integer constantOf(Statement st, String iv) {
+        if (st instanceof VarDeclStmt v && v.getName().equals(iv)) return AstUtils.intValue(v.getInitializer());
+        if (st instanceof ExprStmt es && es.getExpression() instanceof AssignExpr a && a.getName().equals(iv)) {
+            return AstUtils.intValue(a.getValue());
+        }
+        return null;
+    }
+
+    /** Значение {@code i} перед циклом: последнее присваивание в том же блоке должно быть литералом. */
+    private static Integer entryValue(List<Statement> before, String iv) {
+        for (int k = before.size() - 1; k >= 0; k--) {
+            Statement s = before.get(k);
+            List<String> assigned = new ArrayList<>();
+            AstUtils.collectAssigned(s, assigned);
+            if (assigned.contains(iv)) return constantOf(s, iv);
+        }
+        return null;
+    }
+
+    private static long trips(BinaryOp cmp, long start, long limit, long step) {
+        long span = step > 0 ? limit - start : start - limit;
+        long stride = Math.abs(step);
+        return switch (cmp) {
+            case LT, GT -> span > 0 ? (span + stride - 1) / stride : 0;
+            case LE, GE -> span >= 0 ? span / stride + 1 : 0;
+            default -> throw new IllegalArgumentException(cmp.toString());
+        };
+    }
+
+    private static Expression offset(String iv, int offset, SourceLocation loc) {
+        VarExpr v = AstUtils.var(iv, FrogType.INT, loc);
+        if (offset == 0) return v;
+        if (offset < 0) return AstUtils.binary(v, BinaryOp.MINUS, AstUtils.intLit(-offset, loc), FrogType.INT);
+        return AstUtils.binary(v, BinaryOp.PLUS, AstUtils.intLit(offset, loc), FrogType.INT);
+    }
+
+    /** Копия тела с подстановкой; каждая копия состоит из новых узлов. */
+    private static List<Statement> substitute(List<Statement> body, String iv, Supplier<Expression> value) {
+        AstRewriter rewriter = new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (AstUtils.isVar(e, iv)) return value.get();
+                if (e instanceof VarExpr || e instanceof LiteralExpr) return AstUtils.copy(e);
+                return super.rewriteExpr(e);
+            }
+        };
+        List<Statement> out = new ArrayList<>();
+        for (Statement s : body) out.add(rewriter.rewriteStmt(s));
+        return out;
+    }
+}
@@ -0,0 +1,196 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.*;
+
+/**
+ * Версионирование циклов по границам массивов.
+ * <p>
+ * Для счётного цикла {@code while (i < N)} с единственным обновлением {@code i = i + c}
+ * собираются обращения {@code a[i + k]} к массивам, которые в цикле не переприсваиваются.
+ * Перед циклом ставится одна проверка всего диапазона индуктивной переменной против
+ * {@code len(a)}; если она прошла, выполняется копия цикла с обращениями без проверки
+ * границ, иначе — исходный цикл.
+ * </p>
+ * <p>
+ * Проход выполняется после {@link BoundsCheckEliminator} и сохраняет его пометки;
+ * циклы с вложенными циклами не версионируются, чтобы не умножать копии.
+ * </p>
+ */
+final class LoopVersioner extends LoopRewriter {
+
+    private static final int MAX_BODY = 200;
+
+    private record Access(int minOffset, int maxOffset) {
+        Access with(int k) {
+            return new Access(Math.min(minOffset, k), Math.max(maxOffset, k));
+        }
+    }
+
+    @Override
+    List<Statement> rewriteLoop(Statement loop, List<Statement> before) {
+        return version(loop);
+    }
+
+    private List<Statement> version(Statement loop) {
+        Statement init = null;
+        Expression cond;
+        Expression inc = null;
+        List<Statement> body;
+        if (loop instanceof ForStmt f) {
+            init = f.getInitializer();
+            cond = f.getCondition();
+            inc = f.getIncrement();
+            body = AstUtils.statementsOf(f.getBody());
+        } else {
+            cond = ((WhileStmt) loop).getCondition();
+            body = AstUtils.statementsOf(((WhileStmt) loop).getBody());
+        }
+
+        if (!(cond instanceof BinaryExpr c) || !(c.getLeft() instanceof VarExpr v)) return List.of(loop);
+        String iv = v.getName();
+        if (!FrogType.INT.equals(locals.get(iv))) return List.of(loop);
+
+        int updateAt = body.size();
+        Expression step = AstUtils.stepOf(inc, iv);
+        if (step == null) {
+            for (int k = 0; k < body.size() && step == null; k++) {
+                if (body.get(k) instanceof ExprStmt es && (step = AstUtils.stepOf(es.getExpression(), iv)) != null) updateAt = k;
+            }
+        }
+        if (step == null) return List.of(loop);
+
+        List<String> assigned = new ArrayList<>();
+        AstUtils.collectAssigned(cond, assigned);
+        AstUtils.collectAssigned(inc, assigned);
+        int size = 0;
+        for (Statement s : body) {
+            if (hasLoop(s)) return List.of(loop);
+            AstUtils.collectAssigned(s, assigned);
+            size += AstUtils.size(s);
+        }
+        if (size > MAX_BODY || Collections.frequency(assigned, iv) != 1) return List.of(loop);
+        if (!AstUtils.isInvariant(c.getRight(), locals.keySet(), assigned)) return List.of(loop);
+
+        Integer literalStep = AstUtils.intValue(step);
+        if (literalStep == null) return List.of(loop);
+        boolean up = c.getOp() == BinaryOp.LT || c.getOp() == BinaryOp.LE;
+        boolean down = c.getOp() == BinaryOp.GT || c.getOp() == BinaryOp.GE;
+        if (!up && !down) return List.of(loop);
+        if (up ? literalStep <= 0 : literalStep >= 0) return List.of(loop);
+
+        Map<String, Access> ranges = new LinkedHashMap<>();
+        Set<IndexExpr> unchecked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int k = 0; k < updateAt; k++) collect(body.get(k), iv, assigned, ranges, unchecked);
+        if (unchecked.isEmpty()) return List.of(loop);
+
+        SourceLocation loc = loop.getLocation();
+        List<Expression> checks = new ArrayList<>();
+        for (Map.Entry<String, Access> e : ranges.entrySet()) {
+            Access a = e.getValue();
+            Expression len = len(e.getKey(), loc);
+            if (up) {
+                checks.add(AstUtils.binary(offset(AstUtils.var(iv, FrogType.INT, loc), a.minOffset), BinaryOp.GE,
+                        AstUtils.intLit(0, loc), FrogType.BOOL));
+                BinaryOp op = c.getOp() == BinaryOp.LT ? BinaryOp.LE : BinaryOp.LT;
+                checks.add(AstUtils.binary(offset(AstUtils.copy(c.getRight()), a.maxOffset), op, len, FrogType.BOOL));
+            } else {
+                int low = c.getOp() == BinaryOp.GT ? a.minOffset + 1 : a.minOffset;
+                checks.add(AstUtils.binary(offset(AstUtils.copy(c.getRight()), low), BinaryOp.GE,
+                        AstUtils.intLit(0, loc), FrogType.BOOL));
+                checks.add(AstUtils.binary(offset(AstUtils.var(iv, FrogType.INT, loc), a.maxOffset), BinaryOp.LT,
+                        len, FrogType.BOOL));
+            }
+        }
+        Expression guard = checks.get(0);
+        for (int k = 1; k < checks.size(); k++) {
+            guard = AstUtils.binary(guard, BinaryOp.AND, checks.get(k), FrogType.BOOL);
+        }
+
+        Statement slow;
+        Statement fast;
+        if (loop instanceof ForStmt f) {
+            slow = new ForStmt(null, cond, inc, f.getBody(), f.getLocation());
+            fast = new ForStmt(null, AstUtils.copy(cond, unchecked), AstUtils.copy(inc, unchecked),
+                    AstUtils.copy(f.getBody(), unchecked), f.getLocation());
+        } else {
+            slow = loop;
+            fast = new WhileStmt(AstUtils.copy(cond, unchecked),
+                    AstUtils.copy(((WhileStmt) loop).getBody(), unchecked), loc);
+        }
+
+        List<Statement> out = new ArrayList<>();
+        if (init != null) out.add(init);
+        out.add(new IfStmt(guard, new BlockStmt(List.of(fast), loc), new BlockStmt(List.of(slow), loc), loc));
+        return out;
+    }
+
+    private static boolean hasLoop(Statement st) {
+        if (st instanceof WhileStmt || st instanceof ForStmt) return true;
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                if (hasLoop(s)) return true;
+            }
+            return false;
+        }
+        if (st instanceof IfStmt i) {
+            return hasLoop(i.getThenBranch()) || (i.getElseBranch() != null && hasLoop(i.getElseBranch()));
+        }
+        return false;
+    }
+
+    /** Обращения {@code a[i + k]} к локальным массивам, которые цикл не переприсваивает. */
+    private void collect(Statement st, String iv, List<String> assigned,
+                         Map<String, Access> ranges, Set<IndexExpr> unchecked) {
+        new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof IndexExpr idx && idx.isBoundsChecked()
+                        && idx.getArray() instanceof VarExpr arr
+                        && locals.containsKey(arr.getName()) && !assigned.contains(arr.getName())) {
+                    Integer k = offsetOf(idx.getIndex(), iv);
+                    if (k != null) {
+                        ranges.merge(arr.getName(), new Access(k, k), (a, b) -> a.with(k));
+                        unchecked.add(idx);
+                    }
+                }
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+    }
+
+    private static Integer offsetOf(Expression e, String iv) {
+        if (AstUtils.isVar(e, iv)) return 0;
+        if (!(e instanceof BinaryExpr b)) return null;
+        if (b.getOp() == BinaryOp.PLUS && AstUtils.isVar(b.getLeft(), iv)) return small(AstUtils.intValue(b.getRight()));
+        if (b.getOp() == BinaryOp.PLUS && AstUtils.isVar(b.getRight(), iv)) return small(AstUtils.intValue(b.getLeft()));
+        if (b.getOp() == BinaryOp.MINUS && AstUtils.isVar(b.getLeft(), iv)) {
+            Integer k = small(AstUtils.intValue(b.getRight()));
+            return k == null ? null : -k;
+        }
+        return null;
+    }
+
+    private static Integer small(Integer k) {
+        return k != null && Math.abs((long) k) <= 1_000_000 ? k : null;
+    }
+
+    private static Expression offset(Expression e, int k) {
+        if (k == 0) return e;
+        BinaryOp op = k > 0 ? BinaryOp.PLUS : BinaryOp.MINUS;
+        return AstUtils.binary(e, op, AstUtils.intLit(Math.abs(k), e.getLocation()), FrogType.INT);
+    }
+
+    private Expression len(String array, SourceLocation loc) {
+        CallExpr call = new CallExpr("len", List.of(AstUtils.var(array, locals.get(array), loc)), loc);
+        call.setType(FrogType.INT);
+        return call;
+    }
+}
@@ -0,0 +1,100 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Вынос кода верхнего уровня в синтетическую функцию {@link #MAIN}.
+ * <p>
+ * На верхнем уровне остаются только объявления глобальных переменных, которые упоминаются
+ * в пользовательских функциях, и вызов {@code __main__()}. Остальные переменные верхнего
+ * уровня становятся локальными переменными {@code __main__}: доступ к ним идёт через
+ * {@code LOAD_LOCAL}/{@code STORE_LOCAL}, а циклы верхнего уровня проходят через те же
+ * оптимизации функций и JIT VM, что и код функций.
+ * </p>
+ * <p>
+ * Общая глобальная переменная объявляется на верхнем уровне без инициализатора, а её
+ * инициализатор становится присваиванием на прежнем месте в {@code __main__}. Если такая
+ * переменная объявлена не прямо на верхнем уровне или объявлена дважды, программа
+ * остаётся как есть.
+ * </p>
+ */
+final class MainOutliner {
+
+    static final String MAIN = "__main__";
+
+    Program optimize(Program program) {
+        if (program.getStatements().isEmpty()) return program;
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            if (f.getName().equals(MAIN)) return program;
+        }
+
+        Set<String> shared = new HashSet<>();
+        for (FunctionDeclStmt f : program.getFunctions()) collectNames(f.getBody(), shared);
+
+        List<Statement> globals = new ArrayList<>();
+        List<Statement> body = new ArrayList<>();
+        Set<String> hoisted = new HashSet<>();
+        for (Statement s : program.getStatements()) {
+            if (s instanceof VarDeclStmt v && shared.contains(v.getName())) {
+                if (!hoisted.add(v.getName())) return program;
+                globals.add(new VarDeclStmt(v.getType(), v.getName(), null, v.getLocation(), v.getArraySize()));
+                if (v.getInitializer() != null) body.add(AstUtils.assign(v.getName(), v.getInitializer()));
+                continue;
+            }
+            if (declaresAny(s, shared)) return program;
+            body.add(s);
+        }
+
+        SourceLocation loc = program.getLocation();
+        FunctionDeclStmt main = new FunctionDeclStmt(MAIN, List.of(), FrogType.VOID, new BlockStmt(body, loc), loc);
+        CallExpr call = new CallExpr(MAIN, List.of(), loc);
+        call.setType(FrogType.VOID);
+        globals.add(new ExprStmt(call, loc));
+
+        List<FunctionDeclStmt> funcs = new ArrayList<>(program.getFunctions());
+        funcs.add(main);
+        return new Program(funcs, globals, program.getLocation());
+    }
+
+    /** Все имена переменных, встречающиеся в теле; локальные тоже — так проще и не ошибиться. */
+    private static void collectNames(Statement st, Set<String> out) {
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement s) {
+                if (s instanceof VarDeclStmt v) out.add(v.getName());
+                return super.rewriteStmt(s);
+            }
+
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof VarExpr v) out.add(v.getName());
+                if (e instanceof AssignExpr a) out.add(a.getName());
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+    }
+
+    private static boolean declaresAny(Statement st, Set<String> names) {
+        Set<String> declared = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement s) {
+                if (s instanceof VarDeclStmt v) declared.add(v.getName());
+                return super.rewriteStmt(s);
+            }
+        }.rewriteStmt(st);
+        declared.retainAll(names);
+        return !declared.isEmpty();
+    }
+}
@@ -0,0 +1,219 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Мемоизация чистых рекурсивных функций над {@code int}/{@code bool}.
+ * <p>
+ * Для функции заводятся глобальные массивы фиксированного размера {@link #TABLE_SIZE}:
+ * признак заполненности, ключи по каждому параметру и значение. Это кэш прямого
+ * отображения: слот выбирается по хешу целых параметров, при коллизии старая запись
+ * вытесняется. В начале тела добавляется поиск в таблице, каждый {@code return}
+ * сохраняет результат.
+ * </p>
+ * <p>
+ * В автоматическом режиме мемоизируются функции, вызывающие себя более одного раза;
+ * аннотация {@code @memo} включает мемоизацию для конкретной функции.
+ * </p>
+ */
+final class Memoizer {
+
+    static final int TABLE_SIZE = 4096;
+    static final String ANNOTATION = "memo";
+
+    private static final String SLOT = "memo$slot";
+    private static final String RESULT = "memo$r";
+
+    private final boolean automatic;
+    private final boolean annotated;
+
+    private String prefix;
+    private List<String> keys;
+    private FrogType returnType;
+
+    Memoizer(boolean automatic, boolean annotated) {
+        this.automatic = automatic;
+        this.annotated = annotated;
+    }
+
+    Program optimize(Program program) {
+        PurityAnalysis purity = new PurityAnalysis(program);
+        List<Statement> tables = new ArrayList<>();
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            boolean wanted = (automatic && countSelfCalls(f.getName(), f.getBody()) > 1)
+                    || (annotated && f.hasAnnotation(ANNOTATION));
+            funcs.add(wanted && isEligible(f, purity) ? memoize(f, tables) : f);
+        }
+        if (tables.isEmpty()) return program;
+
+        List<Statement> stmts = new ArrayList<>(tables);
+        stmts.addAll(program.getStatements());
+        return new Program(funcs, stmts, program.getLocation());
+    }
+
+    private static boolean isEligible(FunctionDeclStmt f, PurityAnalysis purity) {
+        if (!purity.dependsOnlyOnArgs(f.getName())) return false;
+        if (!isScalar(f.getReturnType())) return false;
+        boolean hasInt = false;
+        for (FunctionDeclStmt.Param p : f.getParams()) {
+            if (!isScalar(p.getType())) return false;
+            hasInt |= p.getType().equals(FrogType.INT);
+        }
+        return hasInt;
+    }
+
+    private static boolean isScalar(FrogType t) {
+        return t.equals(FrogType.INT) || t.equals(FrogType.BOOL);
+    }
+
+    private FunctionDeclStmt memoize(FunctionDeclStmt f, List<Statement> tables) {
+        SourceLocation loc = f.getLocation();
+        prefix = "memo$" + f.getName() + "$";
+        returnType = f.getReturnType();
+
+        tables.add(table(prefix + "set", FrogType.INT, loc));
+        tables.add(table(prefix + "val", returnType, loc));
+
+        Set<String> assigned = new HashSet<>();
+        AstUtils.collectAssigned(f.getBody(), assigned);
+
+        List<Statement> body = new ArrayList<>();
+        body.add(new VarDeclStmt(FrogType.INT, SLOT, slotHash(f, loc), loc, null));
+        body.add(new IfStmt(
+                AstUtils.binary(slotVar(loc), BinaryOp.LT, AstUtils.intLit(0, loc), FrogType.BOOL),
+                new BlockStmt(List.of(AstUtils.assign(SLOT, AstUtils.binary(slotVar(loc), BinaryOp.PLUS,
+                        AstUtils.intLit(TABLE_SIZE, loc), FrogType.INT))), loc),
+                null, loc));
+
+        keys = new ArrayList<>();
+        Expression hit = AstUtils.binary(load("set", FrogType.INT, loc), BinaryOp.EQ, AstUtils.intLit(1, loc), FrogType.BOOL);
+        List<Statement> captures = new ArrayList<>();
+        for (int i = 0; i < f.getParams().size(); i++) {
+            FunctionDeclStmt.Param p = f.getParams().get(i);
+            tables.add(table(prefix + "k" + i, p.getType(), loc));
+
+            String key = p.getName();
+            if (assigned.contains(key)) {
+                key = "memo$k" + i;
+                captures.add(new VarDeclStmt(p.getType(), key, AstUtils.var(p.getName(), p.getType(), loc), loc, null));
+            }
+            keys.add(key);
+            Expression same = AstUtils.binary(load("k" + i, p.getType(), loc), BinaryOp.EQ,
+                    AstUtils.var(p.getName(), p.getType(), loc), FrogType.BOOL);
+            hit = AstUtils.binary(hit, BinaryOp.AND, same, FrogType.BOOL);
+        }
+        body.add(new IfStmt(hit, new BlockStmt(List.of(ret(load("val", returnType, loc), loc)), loc), null, loc));
+        body.addAll(captures);
+        body.add(new VarDeclStmt(returnType, RESULT, null, loc, null));
+        body.addAll(AstUtils.statementsOf(rewriteReturns(f.getBody(), f)));
+
+        return f.withBody(new BlockStmt(body, f.getBody().getLocation()));
+    }
+
+    private Statement rewriteReturns(Statement st, FunctionDeclStmt f) {
+        if (st instanceof ReturnStmt r) {
+            SourceLocation loc = r.getLocation();
+            List<Statement> out = new ArrayList<>();
+            out.add(AstUtils.assign(RESULT, r.getValue()));
+            for (int i = 0; i < keys.size(); i++) {
+                FrogType t = f.getParams().get(i).getType();
+                out.add(store("k" + i, AstUtils.var(keys.get(i), t, loc), t, loc));
+            }
+            out.add(store("val", AstUtils.var(RESULT, returnType, loc), returnType, loc));
+            out.add(store("set", AstUtils.intLit(1, loc), FrogType.INT, loc));
+            out.add(ret(AstUtils.var(RESULT, returnType, loc), loc));
+            return new BlockStmt(out, loc);
+        }
+        if (st instanceof BlockStmt b) {
+            List<Statement> out = new ArrayList<>();
+            for (Statement s : b.getStatements()) out.add(rewriteReturns(s, f));
+            return new BlockStmt(out, b.getLocation());
+        }
+        if (st instanceof IfStmt i) {
+            return new IfStmt(i.getCondition(), rewriteReturns(i.getThenBranch(), f),
+                    i.getElseBranch() == null ? null : rewriteReturns(i.getElseBranch(), f), i.getLocation());
+        }
+        if (st instanceof WhileStmt w) {
+            return new WhileStmt(w.getCondition(), rewriteReturns(w.getBody(), f), w.getLocation());
+        }
+        if (st instanceof ForStmt fs) {
+            return new ForStmt(fs.getInitializer(), fs.getCondition(), fs.getIncrement(),
+                    rewriteReturns(fs.getBody(), f), fs.getLocation());
+        }
+        return st;
+    }
+
+    private Expression slotHash(FunctionDeclStmt f, SourceLocation loc) {
+        Expression h = null;
+        for (FunctionDeclStmt.Param p : f.getParams()) {
+            if (!p.getType().equals(FrogType.INT)) continue;
+            Expression v = AstUtils.var(p.getName(), FrogType.INT, loc);
+            h = h == null ? v : AstUtils.binary(
+                    AstUtils.binary(h, BinaryOp.MUL, AstUtils.intLit(31, loc), FrogType.INT),
+                    BinaryOp.PLUS, v, FrogType.INT);
+        }
+        return AstUtils.binary(h, BinaryOp.MOD, AstUtils.intLit(TABLE_SIZE, loc), FrogType.INT);
+    }
+
+    private static VarDeclStmt table(String name, FrogType elem, SourceLocation loc) {
+        FrogType type = FrogType.arrayOf(elem);
+        if (elem.equals(FrogType.BOOL)) {
+            LiteralExpr f = new LiteralExpr(false, loc);
+            f.setType(FrogType.BOOL);
+            CallExpr init = new CallExpr("new_array_bool", List.of(AstUtils.intLit(TABLE_SIZE, loc), f), loc);
+            init.setType(type);
+            return new VarDeclStmt(type, name, init, loc, null);
+        }
+        return new VarDeclStmt(type, name, null, loc, AstUtils.intLit(TABLE_SIZE, loc));
+    }
+
+    private Expression load(String table, FrogType elem, SourceLocation loc) {
+        IndexExpr e = new IndexExpr(AstUtils.var(prefix + table, FrogType.arrayOf(elem), loc), slotVar(loc), loc);
+        e.setType(elem);
+        return e;
+    }
+
+    private Statement store(String table, Expression value, FrogType elem, SourceLocation loc) {
+        IndexExpr target = new IndexExpr(AstUtils.var(prefix + table, FrogType.arrayOf(elem), loc), slotVar(loc), loc);
+        target.setType(elem);
+        IndexAssignStmt st = new IndexAssignStmt(target, value, loc);
+        st.setValueType(elem);
+        return st;
+    }
+
+    private ReturnStmt ret(Expression value, SourceLocation loc) {
+        ReturnStmt r = new ReturnStmt(value, loc);
+        r.setExpectedType(returnType);
+        return r;
+    }
+
+    private static VarExpr slotVar(SourceLocation loc) {
+        return AstUtils.var(SLOT, FrogType.INT, loc);
+    }
+
+    private static int countSelfCalls(String name, Statement st) {
+        List<CallExpr> calls = new ArrayList<>();
+        new AstRewriter() {
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof CallExpr c && c.getCallee().equals(name)) calls.add(c);
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(st);
+        return calls.size();
+    }
+}
@@ -0,0 +1,114 @@
+package lang.optimizer;
+
+public final class OptimizerOptions {
+
+    public boolean strengthReduction;
+    public boolean tailCalls;
+    public boolean cse;
+    public boolean constCalls;
+    public boolean memoize;
+    public boolean memoAnnotated;
+    public boolean unroll;
+    public boolean boundsCheckElim;
+    public boolean intRanges;
+    public boolean loopVersioning;
+    public boolean scalarReplace;
+    public boolean freeLocalArrays;
+    public boolean stringBuilders;
+    public boolean peephole;
+    /** Циклы в виде {@code if (c) do { ... } while (c)}: условие проверяется внизу. */
+    public boolean rotateLoops;
+    /** Сквозные переходы, обращение условий и раскладка блоков по статическим вероятностям. */
+    public boolean branches;
+    public boolean superinstructions;
+    /** Операции по статическим типам операндов: {@code ADD_INT}, {@code LT_FLOAT} и т. п. */
+    public boolean typedOps;
+    /** Код верхнего уровня выносится в функцию {@code __main__}, его переменные становятся локальными. */
+    public boolean outlineMain;
+    public boolean cacheGlobals;
+    /** Локальные переменные с непересекающимися временами жизни делят один слот. */
+    public boolean reuseLocals;
+    /** Функции переводятся в регистровый код {@code R_*}; по умолчанию выключено на всех уровнях. */
+    public boolean registers;
+    /** Профиль предыдущего запуска ({@code --profile-use}); {@code null}, если его нет. */
+    public Profile profile;
+
+    public OptimizerOptions() {
+        level(1);
+    }
+
+    public static OptimizerOptions defaults() {
+        return new OptimizerOptions();
+    }
+
+    public void level(int level) {
+        strengthReduction = level >= 1;
+        tailCalls = level >= 1;
+        cse = level >= 1;
+        constCalls = level >= 2;
+        memoize = false;
+        memoAnnotated = level >= 1;
+        unroll = level >= 2;
+        boundsCheckElim = level >= 1;
+        intRanges = level >= 1;
+        loopVersioning = level >= 1;
+        scalarReplace = level >= 1;
+        freeLocalArrays = level >= 1;
+        stringBuilders = level >= 1;
+        peephole = level >= 1;
+        rotateLoops = level >= 1;
+        branches = level >= 1;
+        superinstructions = level >= 1;
+        typedOps = level >= 1;
+        outlineMain = level >= 2;
+        cacheGlobals = level >= 1;
+        reuseLocals = level >= 1;
+    }
+
+    public boolean apply(String flag) {
+        switch (flag) {
+            case "-O0" -> level(0);
+            case "-O1" -> level(1);
+            case "-O2" -> level(2);
+            default -> {
+                if (flag.startsWith("-fno-")) return set(flag.substring(5), false);
+                if (flag.startsWith("-f")) return set(flag.substring(2), true);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean set(String name, boolean value) {
+        switch (name) {
+            case "strength-reduce" -> strengthReduction = value;
+            case "tail-calls" -> tailCalls = value;
+            case "cse" -> cse = value;
+            case "const-calls" -> constCalls = value;
+            case "memoize" -> {
+                memoize = value;
+                memoAnnotated = value;
+            }
+            case "unroll" -> unroll = value;
+            case "bounds-check-elim" -> boundsCheckElim = value;
+            case "int-ranges" -> intRanges = value;
+            case "loop-versioning" -> loopVersioning = value;
+            case "scalar-replace" -> scalarReplace = value;
+            case "free-local-arrays" -> freeLocalArrays = value;
+            case "string-builders" -> stringBuilders = value;
+            case "peephole" -> peephole = value;
+            case "rotate-loops" -> rotateLoops = value;
+            case "branches" -> branches = value;
+            case "superinstructions" -> superinstructions = value;
+            case "typed-ops" -> typedOps = value;
+            case "outline-main" -> outlineMain = value;
+            case "cache-globals" -> cacheGlobals = value;
+            case "reuse-locals" -> reuseLocals = value;
+            case "registers" -> registers = value;
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package lang.optimizer;
+
+import lang.semantic.symbols.SourceLocation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Профиль выполнения программы для оптимизаций по профилю.
+ * <p>
+ * Текстовый формат, по записи на строку:
+ * <pre>
+ * # frog profile v1
+ * call &lt;function&gt; &lt;calls&gt;
+ * &lt;if|while|for&gt; &lt;line:col&gt; &lt;true&gt; &lt;false&gt;
+ * </pre>
+ * Ветвления и циклы адресуются позицией в исходнике, поэтому профиль, снятый с одной
+ * сборки, применим к другой сборке того же файла. Для цикла {@code true} — число
+ * итераций тела, {@code false} — число выходов по условию.
+ * </p>
+ */
+public final class Profile {
+
+    public static final String HEADER = "# frog profile v1";
+
+    public record Branch(long whenTrue, long whenFalse) {
+        public long total() {
+            return whenTrue + whenFalse;
+        }
+
+        /** Среднее число итераций цикла на один вход. */
+        public double tripCount() {
+            return whenFalse == 0 ? whenTrue : (double) whenTrue / whenFalse;
+        }
+    }
+
+    private final Map<String, Long> calls = new TreeMap<>();
+    private final Map<String, Branch> sites = new TreeMap<>();
+
+    public void addCalls(String function, long count) {
+        calls.merge(function, count, Long::sum);
+    }
+
+    public void addBranch(String kind, SourceLocation loc, long whenTrue, long whenFalse) {
+        sites.merge(key(kind, loc), new Branch(whenTrue, whenFalse),
+                (a, b) -> new Branch(a.whenTrue + b.whenTrue, a.whenFalse + b.whenFalse));
+    }
+
+    /** Число вызовов функции; {@code -1}, если функция в профиле не встречалась. */
+    public long calls(String function) {
+        return calls.getOrDefault(function, -1L);
+    }
+
+    /** Счётчики ветвления или цикла; {@code null}, если место не выполнялось или не профилировалось. */
+    public Branch branch(String kind, SourceLocation loc) {
+        return sites.get(key(kind, loc));
+    }
+
+    private static String key(String kind, SourceLocation loc) {
+        return kind + " " + loc.getLine() + ":" + loc.getColumn();
+    }
+
+    public static Profile read(Path path) throws IOException {
+        Profile p = new Profile();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.split("\\s+");
+            try {
+                if (f[0].equals("call") && f.length == 3) {
+                    p.addCalls(f[1], Long.parseLong(f[2]));
+                } else if (f.length == 4 && (f[0].equals("if") || f[0].equals("while") || f[0].equals("for"))) {
+                    String[] pos = f[1].split(":");
+                    SourceLocation loc = new SourceLocation(Integer.parseInt(pos[0]), Integer.parseInt(pos[1]));
+                    p.addBranch(f[0], loc, Long.parseLong(f[2]), Long.parseLong(f[3]));
+                } else {
+                    throw new IOException("bad profile line " + lineNo + ": " + line);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("bad profile line " + lineNo + ": " + line);
+            }
+        }
+        return p;
+    }
+
+    public void write(Path path) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            w.write(HEADER);
+            w.newLine();
+            for (Map.Entry<String, Long> e : calls.entrySet()) {
+                w.write("call " + e.getKey() + " " + e.getValue());
+                w.newLine();
+            }
+            for (Map.Entry<String, Branch> e : sites.entrySet()) {
+                w.write(e.getKey() + " " + e.getValue().whenTrue + " " + e.getValue().whenFalse);
+                w.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Анализ чистоты пользовательских функций.
+ * <p>
+ * Функция чистая, если она не пишет в глобальные переменные, не вызывает {@code print},
+ * не изменяет элементы массивов, пришедших извне, и вызывает только чистые функции.
+ * Имена разрешаются так же, как в генераторе байткода: локальной считается переменная,
+ * объявленная в функции текстуально раньше места использования.
+ * </p>
+ */
+final class PurityAnalysis {
+
+    private static final Set<String> PURE_BUILTINS = Set.of("len", "new_array_bool", "new_array_int", "push_int");
+
+    private static final class Facts {
+        boolean writesGlobals;
+        boolean readsGlobals;
+        boolean prints;
+        boolean mutatesArrays;
+        final Set<String> callees = new HashSet<>();
+        final Set<String> reads = new HashSet<>();
+        final Set<String> writes = new HashSet<>();
+    }
+
+    private final Map<String, Facts> facts = new HashMap<>();
+    private final Set<String> pure = new HashSet<>();
+    private final Set<String> closed = new HashSet<>();
+    private final Set<String> globalWriters = new HashSet<>();
+
+    PurityAnalysis(Program program) {
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            facts.put(f.getName(), analyze(f));
+        }
+
+        pure.addAll(facts.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Facts> e : facts.entrySet()) {
+                if (pure.contains(e.getKey()) && !locallyPure(e.getValue())) {
+                    pure.remove(e.getKey());
+                    changed = true;
+                }
+            }
+        }
+
+        for (Map.Entry<String, Facts> e : facts.entrySet()) {
+            if (e.getValue().writesGlobals) globalWriters.add(e.getKey());
+        }
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Facts> e : facts.entrySet()) {
+                if (globalWriters.contains(e.getKey())) continue;
+                for (String callee : e.getValue().callees) {
+                    if (globalWriters.contains(callee)) {
+                        globalWriters.add(e.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (String name : pure) {
+            if (!facts.get(name).readsGlobals) closed.add(name);
+        }
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (String name : new HashSet<>(closed)) {
+                for (String callee : facts.get(name).callees) {
+                    if (facts.containsKey(callee) && !closed.contains(callee)) {
+                        closed.remove(name);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Функция не имеет наблюдаемых побочных эффектов. */
+    boolean isPure(String name) {
+        return pure.contains(name);
+    }
+
+    /** Функция чистая и не читает глобальных переменных — её результат зависит только от аргументов. */
+    boolean dependsOnlyOnArgs(String name) {
+        return closed.contains(name);
+    }
+
+    /** Функция (сама или через вызываемые) может присвоить глобальной переменной. */
+    boolean writesGlobals(String name) {
+        return globalWriters.contains(name);
+    }
+
+    /** Глобальные переменные, которые функция может прочитать сама или через вызываемые функции. */
+    Set<String> globalsRead(String name) {
+        Set<String> out = new HashSet<>();
+        for (String fn : reachable(name)) out.addAll(facts.get(fn).reads);
+        return out;
+    }
+
+    /** Глобальные переменные, которым функция может присвоить сама или через вызываемые функции. */
+    Set<String> globalsWritten(String name) {
+        Set<String> out = new HashSet<>();
+        for (String fn : reachable(name)) out.addAll(facts.get(fn).writes);
+        return out;
+    }
+
+    private Set<String> reachable(String name) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>(List.of(name));
+        while (!work.isEmpty()) {
+            String fn = work.pop();
+            if (!facts.containsKey(fn) || !seen.add(fn)) continue;
+            work.addAll(facts.get(fn).callees);
+        }
+        return seen;
+    }
+
+    private boolean locallyPure(Facts f) {
+        if (f.writesGlobals || f.prints || f.mutatesArrays) return false;
+        for (String callee : f.callees) {
+            if (facts.containsKey(callee)) {
+                if (!pure.contains(callee)) return false;
+            } else if (!PURE_BUILTINS.contains(callee)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Facts analyze(FunctionDeclStmt f) {
+        Facts out = new Facts();
+        Set<String> declared = new HashSet<>();
+        Set<String> fresh = new HashSet<>();
+        for (FunctionDeclStmt.Param p : f.getParams()) declared.add(p.getName());
+
+        Set<String> tainted = new HashSet<>();
+        collectNonFresh(f.getBody(), tainted);
+        walk(f.getBody(), declared, fresh, tainted, out);
+        return out;
+    }
+
+    private void walk(Statement st, Set<String> declared, Set<String> fresh, Set<String> tainted, Facts out) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            walk(v.getInitializer(), declared, out);
+            declared.add(v.getName());
+            if (v.getType().getKind() == FrogType.Kind.ARRAY && !tainted.contains(v.getName())) {
+                fresh.add(v.getName());
+            }
+        } else if (st instanceof ExprStmt e) {
+            walk(e.getExpression(), declared, out);
+        } else if (st instanceof IndexAssignStmt ia) {
+            IndexExpr target = ia.getTarget();
+            if (!(target.getArray() instanceof VarExpr v && declared.contains(v.getName())
+                    && fresh.contains(v.getName()))) {
+                out.mutatesArrays = true;
+            }
+            walk(target.getArray(), declared, out);
+            walk(target.getIndex(), declared, out);
+            walk(ia.getValue(), declared, out);
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) walk(s, declared, fresh, tainted, out);
+        } else if (st instanceof IfStmt i) {
+            walk(i.getCondition(), declared, out);
+            walk(i.getThenBranch(), declared, fresh, tainted, out);
+            walk(i.getElseBranch(), declared, fresh, tainted, out);
+        } else if (st instanceof WhileStmt w) {
+            walk(w.getCondition(), declared, out);
+            walk(w.getBody(), declared, fresh, tainted, out);
+        } else if (st instanceof ForStmt f) {
+            walk(f.getInitializer(), declared, fresh, tainted, out);
+            walk(f.getCondition(), declared, out);
+            walk(f.getIncrement(), declared, out);
+            walk(f.getBody(), declared, fresh, tainted, out);
+        } else if (st instanceof ReturnStmt r) {
+            walk(r.getValue(), declared, out);
+        }
+    }
+
+    private void walk(Expression e, Set<String> declared, Facts out) {
+        if (e == null) return;
+        if (e instanceof VarExpr v) {
+            if (!declared.contains(v.getName())) {
+                out.readsGlobals = true;
+                out.reads.add(v.getName());
+            }
+        } else if (e instanceof AssignExpr a) {
+            walk(a.getValue(), declared, out);
+            if (!declared.contains(a.getName())) {
+                out.writesGlobals = true;
+                out.writes.add(a.getName());
+            }
+        } else if (e instanceof UnaryExpr u) {
+            walk(u.getExpr(), declared, out);
+        } else if (e instanceof BinaryExpr b) {
+            walk(b.getLeft(), declared, out);
+            walk(b.getRight(), declared, out);
+        } else if (e instanceof CallExpr c) {
+            if (c.getCallee().equals("print")) out.prints = true;
+            out.callees.add(c.getCallee());
+            for (Expression arg : c.getArgs()) walk(arg, declared, out);
+        } else if (e instanceof IndexExpr idx) {
+            walk(idx.getArray(), declared, out);
+            walk(idx.getIndex(), declared, out);
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) walk(el, declared, out);
+        }
+    }
+
+    /**
+     * Массив считается собственным, если каждое присваивание ему создаёт новый массив.
+     * Всё остальное (параметры, псевдонимы, результаты пользовательских функций) может
+     * разделять память с вызывающим кодом.
+     */
+    private static void collectNonFresh(Statement st, Set<String> out) {
+        if (st == null) return;
+        if (st instanceof VarDeclStmt v) {
+            if (v.getInitializer() != null && !allocates(v.getInitializer())) out.add(v.getName());
+            collectNonFresh(v.getInitializer(), out);
+        } else if (st instanceof ExprStmt e) {
+            collectNonFresh(e.getExpression(), out);
+        } else if (st instanceof IndexAssignStmt ia) {
+            collectNonFresh(ia.getTarget(), out);
+            collectNonFresh(ia.getValue(), out);
+        } else if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) collectNonFresh(s, out);
+        } else if (st instanceof IfStmt i) {
+            collectNonFresh(i.getCondition(), out);
+            collectNonFresh(i.getThenBranch(), out);
+            collectNonFresh(i.getElseBranch(), out);
+        } else if (st instanceof WhileStmt w) {
+            collectNonFresh(w.getCondition(), out);
+            collectNonFresh(w.getBody(), out);
+        } else if (st instanceof ForStmt f) {
+            collectNonFresh(f.getInitializer(), out);
+            collectNonFresh(f.getCondition(), out);
+            collectNonFresh(f.getIncrement(), out);
+            collectNonFresh(f.getBody(), out);
+        } else if (st instanceof ReturnStmt r) {
+            collectNonFresh(r.getValue(), out);
+        }
+    }
+
+    private static void collectNonFresh(Expression e, Set<String> out) {
+        if (e == null) return;
+        if (e instanceof AssignExpr a) {
+            if (!allocates(a.getValue())) out.add(a.getName());
+            collectNonFresh(a.getValue(), out);
+        } else if (e instanceof UnaryExpr u) {
+            collectNonFresh(u.getExpr(), out);
+        } else if (e instanceof BinaryExpr b) {
+            collectNonFresh(b.getLeft(), out);
+            collectNonFresh(b.getRight(), out);
+        } else if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) collectNonFresh(arg, out);
+        } else if (e instanceof IndexExpr idx) {
+            collectNonFresh(idx.getArray(), out);
+            collectNonFresh(idx.getIndex(), out);
+        } else if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) collectNonFresh(el, out);
+        }
+    }
+
+    private static boolean allocates(Expression e) {
+        if (e instanceof ArrayLiteralExpr) return true;
+        if (e instanceof AssignExpr a) return allocates(a.getValue());
+        return e instanceof CallExpr c && PURE_BUILTINS.contains(c.getCallee()) && !c.getCallee().equals("len");
+    }
+}
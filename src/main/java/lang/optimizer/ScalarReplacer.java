@@ -0,0 +1,180 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.*;
+
+/**
+ * Скалярная замена небольших локальных массивов, не покидающих функцию.
+ * <p>
+ * Массив, объявленный литералом {@code {e1, ..., en}} или как {@code array<int> a[n]},
+ * заменяется отдельными локальными переменными {@code a$0 ... a$(n-1)}, если к нему
+ * обращаются только по литеральному индексу внутри границ и через {@code len(a)}.
+ * Любое другое использование — возврат, передача в вызов, запись в глобальную
+ * переменную или другой массив, присваивание — считается побегом, и массив остаётся в куче.
+ * </p>
+ */
+final class ScalarReplacer {
+
+    static final int MAX_ELEMENTS = 8;
+
+    private final Map<String, Integer> sizes = new HashMap<>();
+    private final Map<String, FrogType> elementTypes = new HashMap<>();
+
+    Program optimize(Program program) {
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            funcs.add(replace(f));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    private FunctionDeclStmt replace(FunctionDeclStmt f) {
+        sizes.clear();
+        elementTypes.clear();
+
+        Map<String, Integer> decls = new HashMap<>();
+        List<String> all = new ArrayList<>();
+        AstUtils.collectAssigned(f.getBody(), all);
+        for (String name : all) decls.merge(name, 1, Integer::sum);
+        for (FunctionDeclStmt.Param p : f.getParams()) decls.merge(p.getName(), 2, Integer::sum);
+
+        collectCandidates(f.getBody(), decls);
+        if (sizes.isEmpty()) return f;
+
+        Set<String> escaped = findEscapes(f.getBody());
+        sizes.keySet().removeAll(escaped);
+        if (sizes.isEmpty()) return f;
+
+        return new Rewriter().rewriteFunction(f);
+    }
+
+    /** Кандидаты: единственное объявление имени, литерал или {@code array<int>} фиксированного размера. */
+    private void collectCandidates(Statement body, Map<String, Integer> decls) {
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement st) {
+                if (st instanceof ForStmt f) {
+                    rewriteStmt(f.getBody());
+                    return st;
+                }
+                if (st instanceof VarDeclStmt v && v.getType().getKind() == FrogType.Kind.ARRAY
+                        && decls.getOrDefault(v.getName(), 0) == 1) {
+                    FrogType elem = v.getType().getElementType();
+                    if (v.getInitializer() instanceof ArrayLiteralExpr lit && lit.getElements().size() <= MAX_ELEMENTS
+                            && lit.getElements().stream().allMatch(e -> elem.equals(e.getType()))) {
+                        sizes.put(v.getName(), lit.getElements().size());
+                        elementTypes.put(v.getName(), elem);
+                    } else if (v.getArraySize() != null && elem.equals(FrogType.INT)
+                            && v.getArraySizeLiteral() <= MAX_ELEMENTS) {
+                        sizes.put(v.getName(), v.getArraySizeLiteral());
+                        elementTypes.put(v.getName(), elem);
+                    }
+                }
+                return super.rewriteStmt(st);
+            }
+        }.rewriteStmt(body);
+    }
+
+    /** Имена, которые используются до объявления или иначе, чем {@code a[k]} и {@code len(a)}. */
+    private Set<String> findEscapes(Statement body) {
+        Set<String> escaped = new HashSet<>();
+        Set<String> declared = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            Statement rewriteStmt(Statement st) {
+                Statement out = super.rewriteStmt(st);
+                if (st instanceof VarDeclStmt v) declared.add(v.getName());
+                return out;
+            }
+
+            @Override
+            Expression rewriteExpr(Expression e) {
+                if (e instanceof IndexExpr idx && idx.getArray() instanceof VarExpr v && sizes.containsKey(v.getName())) {
+                    Integer k = AstUtils.intValue(idx.getIndex());
+                    if (!declared.contains(v.getName()) || k == null || k < 0 || k >= sizes.get(v.getName())) {
+                        escaped.add(v.getName());
+                    }
+                    rewriteExpr(idx.getIndex());
+                    return e;
+                }
+                if (e instanceof CallExpr c && c.getCallee().equals("len") && c.getArgs().size() == 1
+                        && c.getArgs().get(0) instanceof VarExpr v && sizes.containsKey(v.getName())) {
+                    if (!declared.contains(v.getName())) escaped.add(v.getName());
+                    return e;
+                }
+                if (e instanceof VarExpr v) escaped.add(v.getName());
+                if (e instanceof AssignExpr a) escaped.add(a.getName());
+                return super.rewriteExpr(e);
+            }
+        }.rewriteStmt(body);
+        return escaped;
+    }
+
+    private static String slotName(String array, int k) {
+        return array + "$" + k;
+    }
+
+    private final class Rewriter extends AstRewriter {
+
+        private final Set<Statement> spliced = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        @Override
+        Statement rewriteStmt(Statement st) {
+            if (st instanceof VarDeclStmt v && sizes.containsKey(v.getName())) {
+                return declareSlots(v);
+            }
+            if (st instanceof IndexAssignStmt ia && ia.getTarget().getArray() instanceof VarExpr v
+                    && sizes.containsKey(v.getName())) {
+                int k = AstUtils.intValue(ia.getTarget().getIndex());
+                AssignExpr assign = new AssignExpr(slotName(v.getName(), k), rewriteExpr(ia.getValue()), ia.getLocation());
+                assign.setType(elementTypes.get(v.getName()));
+                return new ExprStmt(assign, ia.getLocation());
+            }
+            if (st instanceof BlockStmt b) {
+                List<Statement> out = new ArrayList<>();
+                for (Statement s : b.getStatements()) {
+                    Statement r = rewriteStmt(s);
+                    if (spliced.contains(r)) out.addAll(((BlockStmt) r).getStatements());
+                    else if (r != null) out.add(r);
+                }
+                return new BlockStmt(out, b.getLocation());
+            }
+            return super.rewriteStmt(st);
+        }
+
+        @Override
+        Expression rewriteExpr(Expression e) {
+            if (e instanceof IndexExpr idx && idx.getArray() instanceof VarExpr v && sizes.containsKey(v.getName())) {
+                int k = AstUtils.intValue(idx.getIndex());
+                return AstUtils.var(slotName(v.getName(), k), elementTypes.get(v.getName()), idx.getLocation());
+            }
+            if (e instanceof CallExpr c && c.getCallee().equals("len") && c.getArgs().size() == 1
+                    && c.getArgs().get(0) instanceof VarExpr v && sizes.containsKey(v.getName())) {
+                return AstUtils.intLit(sizes.get(v.getName()), c.getLocation());
+            }
+            return super.rewriteExpr(e);
+        }
+
+        private Statement declareSlots(VarDeclStmt v) {
+            SourceLocation loc = v.getLocation();
+            FrogType elem = elementTypes.get(v.getName());
+            List<Statement> slots = new ArrayList<>();
+            for (int k = 0; k < sizes.get(v.getName()); k++) {
+                Expression init = v.getInitializer() instanceof ArrayLiteralExpr lit
+                        ? rewriteExpr(lit.getElements().get(k))
+                        : AstUtils.intLit(0, loc);
+                slots.add(new VarDeclStmt(elem, slotName(v.getName(), k), init, loc, null));
+            }
+            BlockStmt block = new BlockStmt(slots, loc);
+            spliced.add(block);
+            return block;
+        }
+    }
+}
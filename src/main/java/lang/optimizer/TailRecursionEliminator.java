@@ -0,0 +1,277 @@
+package lang.optimizer;
+
+import lang.semantic.ast.node.Expression;
+import lang.semantic.ast.node.Program;
+import lang.semantic.ast.node.Statement;
+import lang.semantic.ast.node.expression.*;
+import lang.semantic.ast.node.expression.operations.BinaryOp;
+import lang.semantic.ast.node.expression.operations.UnaryOp;
+import lang.semantic.ast.node.statement.*;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Устранение хвостовой и линейной рекурсии.
+ * <p>
+ * Тело функции оборачивается в {@code while (true)}, а хвостовой вызов самой себя
+ * превращается в переприсваивание параметров и {@code continue} — то есть в переход
+ * к началу функции без нового кадра. Возвраты вида {@code x * f(...)} и {@code f(...) + x}
+ * для {@code int} переводятся на аккумулятор: {@code acc = acc op x}, затем хвостовой переход;
+ * остальные возвраты становятся {@code return acc op e}.
+ * </p>
+ */
+final class TailRecursionEliminator {
+
+    private int nextTemp = 0;
+
+    private FunctionDeclStmt func;
+    private Set<String> params;
+    private Set<String> locals;
+    private BinaryOp accOp;
+    private String accName;
+    private boolean changed;
+
+    Program optimize(Program program) {
+        List<FunctionDeclStmt> funcs = new ArrayList<>();
+        for (FunctionDeclStmt f : program.getFunctions()) {
+            funcs.add(transform(f));
+        }
+        return new Program(funcs, program.getStatements(), program.getLocation());
+    }
+
+    private FunctionDeclStmt transform(FunctionDeclStmt f) {
+        func = f;
+        params = new HashSet<>();
+        for (FunctionDeclStmt.Param p : f.getParams()) params.add(p.getName());
+
+        List<String> declared = new ArrayList<>();
+        collectDeclared(f.getBody(), declared);
+        for (String n : declared) {
+            if (params.contains(n)) return f;
+        }
+        locals = new HashSet<>(params);
+        locals.addAll(declared);
+
+        accOp = FrogType.INT.equals(f.getReturnType()) ? findAccumulatorOp(f.getBody(), 0) : null;
+        accName = accOp == null ? null : "acc$" + nextTemp++;
+        changed = false;
+
+        SourceLocation loc = f.getBody().getLocation();
+        BlockStmt rewritten = (BlockStmt) rewrite(f.getBody(), 0, true);
+        if (!changed) return f;
+
+        List<Statement> loopBody = new ArrayList<>(rewritten.getStatements());
+
+        if (f.getReturnType().equals(FrogType.VOID)) {
+            loopBody.add(new ReturnStmt(null, loc));
+        } else if (!loopBody.isEmpty() && loopBody.get(loopBody.size() - 1) instanceof BlockStmt last) {
+            List<Statement> stmts = last.getStatements();
+            if (!stmts.isEmpty() && stmts.get(stmts.size() - 1) instanceof ContinueStmt) {
+                loopBody.set(loopBody.size() - 1,
+                        new BlockStmt(stmts.subList(0, stmts.size() - 1), last.getLocation()));
+            }
+        }
+
+        List<Statement> body = new ArrayList<>();
+        if (accName != null) {
+            body.add(new VarDeclStmt(FrogType.INT, accName, AstUtils.intLit(identity(accOp), loc), loc, null));
+        }
+        body.add(new WhileStmt(trueLiteral(loc), new BlockStmt(loopBody, loc), loc));
+
+        return f.withBody(new BlockStmt(body, loc));
+    }
+
+    private Statement rewrite(Statement st, int loopDepth, boolean tail) {
+        if (st instanceof ReturnStmt r) {
+            return rewriteReturn(r, loopDepth);
+        }
+        if (st instanceof ExprStmt es && tail && loopDepth == 0
+                && func.getReturnType().equals(FrogType.VOID)
+                && isSelfCall(es.getExpression()) && argsAreSafe((CallExpr) es.getExpression())) {
+            return tailJump((CallExpr) es.getExpression(), List.of(), st.getLocation());
+        }
+        if (st instanceof BlockStmt b) {
+            List<Statement> out = new ArrayList<>();
+            List<Statement> stmts = b.getStatements();
+            for (int i = 0; i < stmts.size(); i++) {
+                boolean nextIsReturn = i + 1 < stmts.size()
+                        && stmts.get(i + 1) instanceof ReturnStmt next && next.getValue() == null;
+                out.add(rewrite(stmts.get(i), loopDepth, (tail && i == stmts.size() - 1) || nextIsReturn));
+            }
+            return new BlockStmt(out, b.getLocation());
+        }
+        if (st instanceof IfStmt i) {
+            Statement thenS = rewrite(i.getThenBranch(), loopDepth, tail);
+            Statement elseS = i.getElseBranch() == null ? null : rewrite(i.getElseBranch(), loopDepth, tail);
+            return new IfStmt(i.getCondition(), thenS, elseS, i.getLocation());
+        }
+        if (st instanceof WhileStmt w) {
+            return new WhileStmt(w.getCondition(), rewrite(w.getBody(), loopDepth + 1, false), w.getLocation());
+        }
+        if (st instanceof ForStmt f) {
+            return new ForStmt(f.getInitializer(), f.getCondition(), f.getIncrement(),
+                    rewrite(f.getBody(), loopDepth + 1, false), f.getLocation());
+        }
+        return st;
+    }
+
+    private Statement rewriteReturn(ReturnStmt r, int loopDepth) {
+        Expression v = r.getValue();
+        if (v == null) return r;
+
+        if (loopDepth == 0 && isSelfCall(v) && argsAreSafe((CallExpr) v)) {
+            return tailJump((CallExpr) v, List.of(), r.getLocation());
+        }
+
+        if (accName != null && loopDepth == 0 && v instanceof BinaryExpr b && b.getOp() == accOp) {
+            Expression other = null;
+            CallExpr call = null;
+            if (isSelfCall(b.getRight()) && isLocalPure(b.getLeft())) {
+                call = (CallExpr) b.getRight();
+                other = b.getLeft();
+            } else if (isSelfCall(b.getLeft()) && isLocalPure(b.getRight())) {
+                call = (CallExpr) b.getLeft();
+                other = b.getRight();
+            }
+            if (call != null && argsAreSafe(call)) {
+                Expression acc = AstUtils.var(accName, FrogType.INT, r.getLocation());
+                Statement update = AstUtils.assign(accName, AstUtils.binary(acc, accOp, other, FrogType.INT));
+                return tailJump(call, List.of(update), r.getLocation());
+            }
+        }
+
+        if (accName != null) {
+            changed = true;
+            Expression acc = AstUtils.var(accName, FrogType.INT, r.getLocation());
+            Integer lit = AstUtils.intValue(v);
+            Expression combined = lit != null && lit == identity(accOp)
+                    ? acc
+                    : AstUtils.binary(acc, accOp, v, FrogType.INT);
+            ReturnStmt nr = new ReturnStmt(combined, r.getLocation());
+            nr.setExpectedType(r.getExpectedType());
+            return nr;
+        }
+        return r;
+    }
+
+    private Statement tailJump(CallExpr call, List<Statement> prefix, SourceLocation loc) {
+        changed = true;
+        List<Statement> out = new ArrayList<>(prefix);
+        List<FunctionDeclStmt.Param> ps = func.getParams();
+        List<Expression> args = call.getArgs();
+
+        List<Statement> deferred = new ArrayList<>();
+        for (int i = 0; i < ps.size(); i++) {
+            String p = ps.get(i).getName();
+            Expression arg = args.get(i);
+            if (AstUtils.isVar(arg, p)) continue;
+
+            boolean readLater = false;
+            for (int j = i + 1; j < args.size(); j++) {
+                if (reads(args.get(j), p)) readLater = true;
+            }
+            if (!readLater) {
+                out.add(AstUtils.assign(p, arg));
+            } else {
+                String tmp = "tc$" + nextTemp++;
+                out.add(new VarDeclStmt(ps.get(i).getType(), tmp, arg, loc, null));
+                deferred.add(AstUtils.assign(p, AstUtils.var(tmp, ps.get(i).getType(), loc)));
+            }
+        }
+        out.addAll(deferred);
+        out.add(new ContinueStmt(loc));
+        return new BlockStmt(out, loc);
+    }
+
+    private BinaryOp findAccumulatorOp(Statement st, int loopDepth) {
+        if (st instanceof ReturnStmt r && loopDepth == 0 && r.getValue() instanceof BinaryExpr b
+                && FrogType.INT.equals(b.getType())
+                && (b.getOp() == BinaryOp.PLUS || b.getOp() == BinaryOp.MUL)
+                && (isSelfCall(b.getLeft()) && isLocalPure(b.getRight())
+                    || isSelfCall(b.getRight()) && isLocalPure(b.getLeft()))) {
+            return b.getOp();
+        }
+        if (st instanceof BlockStmt b) {
+            for (Statement s : b.getStatements()) {
+                BinaryOp op = findAccumulatorOp(s, loopDepth);
+                if (op != null) return op;
+            }
+        }
+        if (st instanceof IfStmt i) {
+            BinaryOp op = findAccumulatorOp(i.getThenBranch(), loopDepth);
+            if (op == null && i.getElseBranch() != null) op = findAccumulatorOp(i.getElseBranch(), loopDepth);
+            return op;
+        }
+        return null;
+    }
+
+    private boolean isSelfCall(Expression e) {
+        return e instanceof CallExpr c && c.getCallee().equals(func.getName())
+                && c.getArgs().size() == func.getParams().size();
+    }
+
+    private boolean argsAreSafe(CallExpr c) {
+        List<String> assigned = new ArrayList<>();
+        for (Expression arg : c.getArgs()) AstUtils.collectAssigned(arg, assigned);
+        return assigned.isEmpty();
+    }
+
+    private boolean isLocalPure(Expression e) {
+        if (e instanceof LiteralExpr) return true;
+        if (e instanceof VarExpr v) return locals.contains(v.getName());
+        if (e instanceof UnaryExpr u) return u.getOp() == UnaryOp.NEGATE && isLocalPure(u.getExpr());
+        if (e instanceof BinaryExpr b) {
+            return (b.getOp() == BinaryOp.PLUS || b.getOp() == BinaryOp.MINUS || b.getOp() == BinaryOp.MUL)
+                    && isLocalPure(b.getLeft()) && isLocalPure(b.getRight());
+        }
+        return false;
+    }
+
+    private static boolean reads(Expression e, String name) {
+        if (e instanceof VarExpr v) return v.getName().equals(name);
+        if (e instanceof AssignExpr a) return reads(a.getValue(), name);
+        if (e instanceof UnaryExpr u) return reads(u.getExpr(), name);
+        if (e instanceof BinaryExpr b) return reads(b.getLeft(), name) || reads(b.getRight(), name);
+        if (e instanceof CallExpr c) {
+            for (Expression arg : c.getArgs()) {
+                if (reads(arg, name)) return true;
+            }
+            return false;
+        }
+        if (e instanceof IndexExpr idx) return reads(idx.getArray(), name) || reads(idx.getIndex(), name);
+        if (e instanceof ArrayLiteralExpr arr) {
+            for (Expression el : arr.getElements()) {
+                if (reads(el, name)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void collectDeclared(Statement st, List<String> out) {
+        if (st instanceof VarDeclStmt v) out.add(v.getName());
+        else if (st instanceof BlockStmt b) for (Statement s : b.getStatements()) collectDeclared(s, out);
+        else if (st instanceof IfStmt i) {
+            collectDeclared(i.getThenBranch(), out);
+            if (i.getElseBranch() != null) collectDeclared(i.getElseBranch(), out);
+        } else if (st instanceof WhileStmt w) collectDeclared(w.getBody(), out);
+        else if (st instanceof ForStmt f) {
+            if (f.getInitializer() != null) collectDeclared(f.getInitializer(), out);
+            collectDeclared(f.getBody(), out);
+        }
+    }
+
+    private static int identity(BinaryOp op) {
+        return op == BinaryOp.MUL ? 1 : 0;
+    }
+
+    private static LiteralExpr trueLiteral(SourceLocation loc) {
+        LiteralExpr e = new LiteralExpr(true, loc);
+        e.setType(FrogType.BOOL);
+        return e;
+    }
+}
@@ -13,11 +13,14 @@ import lang.semantic.ast.node.expression.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static lang.lexer.token.TokenType.*;
 
 public final class Parser {
 
+    private static final Set<String> KNOWN_ANNOTATIONS = Set.of("memo");
+
     private final List<Token> tokens;
     private int current = 0;
 
@@ -45,8 +48,12 @@ public final class Parser {
         SourceLocation loc = location(peek());
 
         while (!isAtEnd()) {
-            if (match(KW_FUNC)) {
-                functions.add(parseFunction());
+            if (check(AT)) {
+                List<String> annotations = parseAnnotations();
+                consume(KW_FUNC, "Аннотации допускаются только перед объявлением функции");
+                functions.add(parseFunction(annotations));
+            } else if (match(KW_FUNC)) {
+                functions.add(parseFunction(List.of()));
             } else if (match(KW_VAR)) {
                 statements.add(parseVarDecl(previous()));
             } else {
@@ -67,7 +74,19 @@ public final class Parser {
         return new Program(functions, statements, loc);
     }
 
-    private FunctionDeclStmt parseFunction() {
+    private List<String> parseAnnotations() {
+        List<String> annotations = new ArrayList<>();
+        while (match(AT)) {
+            Token nameTok = consume(IDENT, "Ожидалось имя аннотации после '@'");
+            if (!KNOWN_ANNOTATIONS.contains(nameTok.getLexeme())) {
+                throw error(nameTok, "Неизвестная аннотация '@" + nameTok.getLexeme() + "'");
+            }
+            annotations.add(nameTok.getLexeme());
+        }
+        return annotations;
+    }
+
+    private FunctionDeclStmt parseFunction(List<String> annotations) {
         FrogType returnType = parseType();
 
         Token nameTok = consume(IDENT, "Ожидалось имя функции");
@@ -113,7 +132,7 @@ public final class Parser {
         symbols.popScope();
         currentFunction = previousFunc;
 
-        return new FunctionDeclStmt(name, params, returnType, body, location(nameTok));
+        return new FunctionDeclStmt(name, params, returnType, body, location(nameTok), annotations);
     }
 
     private VarDeclStmt parseVarDecl(Token varToken) {
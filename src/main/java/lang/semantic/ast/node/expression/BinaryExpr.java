@@ -11,6 +11,8 @@ public final class BinaryExpr extends BaseExpr {
     private final BinaryOp op;
     private final Expression right;
 
+    private boolean fitsInt64;
+
     public BinaryExpr(Expression left, BinaryOp op,
                       Expression right, SourceLocation location) {
         super(location);
@@ -22,4 +24,8 @@ public final class BinaryExpr extends BaseExpr {
     public Expression getLeft() { return left; }
     public BinaryOp getOp() { return op; }
     public Expression getRight() { return right; }
+
+    /** {@code true}, если оптимизатор доказал, что целые операнды и результат помещаются в 64 бита. */
+    public boolean fitsInt64() { return fitsInt64; }
+    public void setFitsInt64(boolean fits) { this.fitsInt64 = fits; }
 }
@@ -9,6 +9,8 @@ public final class IndexExpr extends BaseExpr {
     private final Expression array;
     private final Expression index;
 
+    private boolean boundsChecked = true;
+
     public IndexExpr(Expression array, Expression index, SourceLocation location) {
         super(location);
         this.array = array;
@@ -17,4 +19,8 @@ public final class IndexExpr extends BaseExpr {
 
     public Expression getArray() { return array; }
     public Expression getIndex() { return index; }
+
+    /** {@code false}, если оптимизатор доказал, что индекс всегда в границах массива. */
+    public boolean isBoundsChecked() { return boundsChecked; }
+    public void setBoundsChecked(boolean checked) { this.boundsChecked = checked; }
 }
\ No newline at end of file
@@ -29,23 +29,43 @@ public final class FunctionDeclStmt implements Statement {
     private final FrogType returnType;
     private final BlockStmt body;
     private final SourceLocation location;
+    private final List<String> annotations;
 
     public FunctionDeclStmt(String name,
                             List<Param> params,
                             FrogType returnType,
                             BlockStmt body,
                             SourceLocation location) {
+        this(name, params, returnType, body, location, List.of());
+    }
+
+    public FunctionDeclStmt(String name,
+                            List<Param> params,
+                            FrogType returnType,
+                            BlockStmt body,
+                            SourceLocation location,
+                            List<String> annotations) {
         this.name = name;
         this.params = List.copyOf(params);
         this.returnType = returnType;
         this.body = body;
         this.location = location;
+        this.annotations = List.copyOf(annotations);
     }
 
     public String getName() { return name; }
     public List<Param> getParams() { return params; }
     public FrogType getReturnType() { return returnType; }
     public BlockStmt getBody() { return body; }
+    public List<String> getAnnotations() { return annotations; }
+
+    public boolean hasAnnotation(String name) {
+        return annotations.contains(name);
+    }
+
+    public FunctionDeclStmt withBody(BlockStmt newBody) {
+        return new FunctionDeclStmt(name, params, returnType, newBody, location, annotations);
+    }
 
     @Override
     public SourceLocation getLocation() { return location; }
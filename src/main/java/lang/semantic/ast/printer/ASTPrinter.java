@@ -51,6 +51,11 @@ public class ASTPrinter {
             System.out.println("Function " + f.getName() + " : " + f.getReturnType());
             indent++;
 
+            for (String a : f.getAnnotations()) {
+                pad();
+                System.out.println("Annotation @" + a);
+            }
+
             for (FunctionDeclStmt.Param p : f.getParams()) {
                 pad();
                 System.out.println("Param " + p.getName() + " : " + p.getType());
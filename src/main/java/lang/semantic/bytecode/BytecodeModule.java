@@ -6,12 +6,22 @@ public final class BytecodeModule {
     public final ConstantPool constPool;
     public final List<FunctionInfo> functions;
     public final List<Instruction> code;
+    /** Операнд {@code LOAD_GLOBAL}/{@code STORE_GLOBAL} — индекс в этом списке. */
+    public final List<GlobalInfo> globals;
 
     public BytecodeModule(ConstantPool constPool,
                           List<FunctionInfo> functions,
                           List<Instruction> code) {
+        this(constPool, functions, code, List.of());
+    }
+
+    public BytecodeModule(ConstantPool constPool,
+                          List<FunctionInfo> functions,
+                          List<Instruction> code,
+                          List<GlobalInfo> globals) {
         this.constPool = constPool;
         this.functions = functions;
         this.code = code;
+        this.globals = globals;
     }
 }
@@ -1,10 +1,11 @@
 package lang.semantic.bytecode;
 
+import java.math.BigInteger;
 import java.util.*;
 
 public final class ConstantPool {
 
-    public enum Tag { INT, FLOAT, BOOL, STRING }
+    public enum Tag { INT, FLOAT, BOOL, STRING, BIGINT }
 
     public static final class Const {
         public final Tag tag;
@@ -23,6 +24,7 @@ public final class ConstantPool {
     public int addFloat(double v) { return add(Tag.FLOAT, v); }
     public int addBool(boolean v) { return add(Tag.BOOL, v); }
     public int addString(String v) { return add(Tag.STRING, v); }
+    public int addBigInt(BigInteger v) { return add(Tag.BIGINT, v); }
 
     private int add(Tag tag, Object value) {
         ConstKey key = new ConstKey(tag, value);
@@ -5,12 +5,18 @@ import lang.semantic.symbols.FrogType;
 import java.util.List;
 
 public final class FunctionInfo {
+    /** Код функции переведён в регистровые операции {@code R_*}: регистры — её локальные слоты. */
+    public static final int REGISTERS = 1;
+
     public final int nameConstIndex;
     public final short paramCount;
     public final short localCount;
     public final int entryIp;
     public final FrogType returnType;
     public final List<FrogType> paramTypes;
+    /** Наибольшая глубина стека операндов в кадре функции; 0 — не посчитана. */
+    public final short maxStack;
+    public final byte flags;
 
     public FunctionInfo(int nameConstIndex,
                         int paramCount,
@@ -18,11 +24,28 @@ public final class FunctionInfo {
                         int entryIp,
                         FrogType returnType,
                         List<FrogType> paramTypes) {
+        this(nameConstIndex, paramCount, localCount, entryIp, returnType, paramTypes, 0, 0);
+    }
+
+    public FunctionInfo(int nameConstIndex,
+                        int paramCount,
+                        int localCount,
+                        int entryIp,
+                        FrogType returnType,
+                        List<FrogType> paramTypes,
+                        int maxStack,
+                        int flags) {
         this.nameConstIndex = nameConstIndex;
         this.paramCount = (short) paramCount;
         this.localCount = (short) localCount;
         this.entryIp = entryIp;
         this.returnType = returnType;
         this.paramTypes = List.copyOf(paramTypes);
+        this.maxStack = (short) maxStack;
+        this.flags = (byte) flags;
+    }
+
+    public boolean has(int flag) {
+        return (flags & flag) != 0;
     }
 }
@@ -0,0 +1,14 @@
+package lang.semantic.bytecode;
+
+import lang.semantic.symbols.FrogType;
+
+/** Запись таблицы глобальных переменных: номер слота — индекс записи в {@link BytecodeModule#globals}. */
+public final class GlobalInfo {
+    public final String name;
+    public final FrogType type;
+
+    public GlobalInfo(String name, FrogType type) {
+        this.name = name;
+        this.type = type;
+    }
+}
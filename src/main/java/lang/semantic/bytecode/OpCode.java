@@ -8,9 +8,9 @@ public enum OpCode {
     LOAD_LOCAL,   // u16 slot
     STORE_LOCAL,  // u16 slot
 
-    // globals
-    LOAD_GLOBAL,  // u32 nameConstIndex
-    STORE_GLOBAL, // u32 nameConstIndex
+    // globals; FrogcWriter turns the slot back into a name constIndex for v1/v2 files
+    LOAD_GLOBAL,  // u32 global slot (BytecodeModule.globals)
+    STORE_GLOBAL, // u32 global slot
 
     // arithmetic
     ADD, SUB, MUL, DIV, MOD, NEG,
@@ -35,5 +35,87 @@ public enum OpCode {
 
     // misc
     POP,           // pop top (например, ExprStmt или void call)
-    KVA
+    KVA,
+
+    // arrays, index proven in bounds by the compiler
+    LOAD_INDEX_UNCHECKED,   // pop index, pop array, push elem
+    STORE_INDEX_UNCHECKED,  // pop value, pop index, pop array (mutate)
+
+    // lifetime hints
+    FREE_LOCAL,             // u16 slot: array in the slot is dead, release it now
+
+    // short-circuit && / ||
+    JUMP_TRUE,              // u32 ip
+    DUP,                    // push copy of top
+
+    // strings
+    CONCAT_N,               // u16 n: pop n strings, push their concatenation
+    STR_BUILDER,            // u16 slot: give the local its own mutable copy of the string
+    STR_APPEND,             // u16 slot: pop string, append it in place to the local
+
+    // int arithmetic proven by the compiler to stay within 64 bits
+    ADD_I64, SUB_I64,
+    LT_I64, LE_I64, GT_I64, GE_I64,
+    INC_LOCAL_I64,          // u32 delta (signed), u16 slot: local += delta
+
+    // superinstructions: fused hot sequences
+    INC_LOCAL,              // u32 delta (signed), u16 slot: LOAD_LOCAL; PUSH_CONST; ADD; STORE_LOCAL
+    LOAD2_LOCAL,            // u32 slot, u16 slot: push both locals
+    LOAD_LOCAL_INDEX,       // u32 array slot, u16 index slot: push array[index]
+    LOAD_LOCAL_INDEX_UNCHECKED,
+    LT_JUMP_FALSE,          // u32 ip: pop r, pop l, jump unless l < r
+    LE_JUMP_FALSE,
+    GT_JUMP_FALSE,
+    GE_JUMP_FALSE,
+    EQ_JUMP_FALSE,
+    NEQ_JUMP_FALSE,
+
+    // operand types known statically (.frogc v2): no tag dispatch in the VM
+    ADD_INT, SUB_INT, MUL_INT,
+    ADD_FLOAT, SUB_FLOAT, MUL_FLOAT, DIV_FLOAT,
+    CONCAT_STR,
+    LT_INT, LE_INT, GT_INT, GE_INT, EQ_INT, NEQ_INT,
+    LT_FLOAT, LE_FLOAT, GT_FLOAT, GE_FLOAT,
+    EQ_STR, NEQ_STR,
+
+    // register code (.frogc v5): operands are frame registers (local slots), one byte each.
+    // Packed in a as dst | src1 << 8 | src2 << 16; with a wide operand in a, registers go to b.
+    R_MOVE,                 // a: dst | src << 8
+    R_LOADK,                // u32 constIndex, u16 dst
+    R_LOAD_GLOBAL,          // u32 slot, u16 dst
+    R_STORE_GLOBAL,         // u32 slot, u16 src
+    R_ADD, R_SUB, R_MUL, R_DIV, R_MOD,   // a: dst | l << 8 | r << 16
+    R_EQ, R_NEQ, R_LT, R_LE, R_GT, R_GE,
+    R_AND, R_OR,
+    R_NEG, R_NOT,           // a: dst | src << 8
+    R_ADDI,                 // a: dst | src << 8 | imm16 << 16
+    R_JUMP_FALSE,           // u32 ip, u16 cond
+    R_JUMP_TRUE,
+    R_LT_JUMP_FALSE,        // u32 ip, u16 l | r << 8
+    R_LE_JUMP_FALSE,
+    R_GT_JUMP_FALSE,
+    R_GE_JUMP_FALSE,
+    R_EQ_JUMP_FALSE,
+    R_NEQ_JUMP_FALSE,
+    R_CALL,                 // u32 funcIndex, u16 first | argc << 8: args in first.., result to first
+    R_RET,                  // u16 src
+    R_NEW_ARRAY,            // a: dst | first << 8 | count << 16
+    R_NEW_ARRAY_SIZED,      // u32 size, u16 dst
+    R_LOAD_INDEX,           // a: dst | array << 8 | index << 16
+    R_LOAD_INDEX_UNCHECKED,
+    R_STORE_INDEX,          // a: array | index << 8 | value << 16
+    R_STORE_INDEX_UNCHECKED,
+    R_CONCAT_N,             // a: dst | first << 8 | n << 16
+    R_STR_APPEND;           // a: dst | src << 8
+
+    /** Operand a is a jump target ip. */
+    public boolean isJump() {
+        return switch (this) {
+            case JUMP, JUMP_FALSE, JUMP_TRUE,
+                 LT_JUMP_FALSE, LE_JUMP_FALSE, GT_JUMP_FALSE, GE_JUMP_FALSE, EQ_JUMP_FALSE, NEQ_JUMP_FALSE,
+                 R_JUMP_FALSE, R_JUMP_TRUE, R_LT_JUMP_FALSE, R_LE_JUMP_FALSE, R_GT_JUMP_FALSE, R_GE_JUMP_FALSE,
+                 R_EQ_JUMP_FALSE, R_NEQ_JUMP_FALSE -> true;
+            default -> false;
+        };
+    }
 }
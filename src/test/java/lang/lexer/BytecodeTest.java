@@ -2,29 +2,48 @@ package lang.lexer;
 
 import lang.bytecodeGenerator.BytecodeGenerator;
 import lang.bytecodeGenerator.Disassembler;
+import lang.bytecodeGenerator.FrogcWriter;
+import lang.bytecodeGenerator.PeepholeOptimizer;
 import lang.lexer.token.Token;
 import lang.optimizer.AstOptimizer;
+import lang.optimizer.OptimizerOptions;
+import lang.optimizer.Profile;
 import lang.parser.Parser;
 import lang.semantic.ast.node.Program;
 import lang.semantic.bytecode.BytecodeModule;
+import lang.semantic.bytecode.ConstantPool;
+import lang.semantic.bytecode.FunctionInfo;
+import lang.semantic.bytecode.Instruction;
+import lang.semantic.bytecode.OpCode;
+import lang.semantic.symbols.FrogType;
+import lang.semantic.symbols.SourceLocation;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BytecodeTest {
 
     private BytecodeModule compileToBytecode(String source) {
+        return compileToBytecode(source, OptimizerOptions.defaults());
+    }
+
+    private BytecodeModule compileToBytecode(String source, OptimizerOptions options) {
         Lexer lexer = new Lexer(source);
         List<Token> tokens = lexer.tokenize();
         Parser parser = new Parser(tokens);
         Program ast = parser.parseProgram();
-        Program optAst = new AstOptimizer().optimize(ast);
-        return new BytecodeGenerator().generate(optAst);
+        Program optAst = new AstOptimizer(options).optimize(ast);
+        return new BytecodeGenerator(options).generate(optAst);
     }
 
     private String disasm(BytecodeModule module) {
@@ -52,7 +71,11 @@ public class BytecodeTest {
     }
 
     private void assertDisasmContains(String source, String... mustContain) {
-        String actual = normalize(disasm(compileToBytecode(source)));
+        assertDisasmContains(source, OptimizerOptions.defaults(), mustContain);
+    }
+
+    private void assertDisasmContains(String source, OptimizerOptions options, String... mustContain) {
+        String actual = normalize(disasm(compileToBytecode(source, options)));
         for (String piece : mustContain) {
             assertTrue(actual.contains(normalize(piece)),
                     "Expected disasm to contain:\n" + piece + "\n\nActual:\n" + actual);
@@ -338,7 +361,9 @@ public class BytecodeTest {
             var int r = fact(5);
             """;
 
-        assertDisasmContains(src,
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-O0");
+        assertDisasmContains(src, options,
                 "PUSH_CONST INT(5)",
                 "CALL fact@",
                 "STORE_GLOBAL \"r\"",
@@ -383,7 +408,9 @@ public class BytecodeTest {
             sort(nums);
             """;
 
-        assertDisasmContains(src,
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-O0");
+        assertDisasmContains(src, options,
                 "CALL len@",
                 "LOAD_INDEX",
                 "STORE_INDEX",
@@ -446,4 +473,662 @@ public class BytecodeTest {
                 "KVA"
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void testInductionVariableStrengthReduction() {
+        String src = """
+            func array<int> make() {
+                var array<int> arr[5];
+                var int i = 0;
+                while (i < 5) {
+                    arr[i] = i * 10;
+                    i = i + 1;
+                }
+                return arr;
+            }
+            var array<int> r = make();
+            """;
+
+        assertDisasmContains(src,
+                "INC_LOCAL 10",
+                "STORE_INDEX",
+                "CALL make@"
+        );
+        assertFalse(disasm(compileToBytecode(src)).contains("MUL"));
+    }
+
+    @Test
+    void testTailCallBecomesLoop() {
+        String src = """
+            func int gcd(int a, int b) {
+                if (b == 0) return a;
+                return gcd(b, a % b);
+            }
+            var int g = gcd(12, 18);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertEquals(1, actual.split("CALL gcd@", -1).length - 1, actual);
+        assertDisasmContains(src, "MOD", "STORE_LOCAL 0", "STORE_LOCAL 1", "JUMP");
+    }
+
+    @Test
+    void testCommonSubexpressionReusesArrayLoad() {
+        String src = """
+            func int pick(array<int> arr, int i, int pivot) {
+                var int c = (i + pivot) / 2;
+                if (arr[i] <= pivot) {
+                    c = arr[i] + (i + pivot) / 2;
+                }
+                return c;
+            }
+            var array<int> xs = {1, 2, 3};
+            var int r = pick(xs, 1, 5);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertEquals(1, actual.split("LOAD_LOCAL_INDEX", -1).length - 1, actual);
+        assertEquals(1, actual.split("DIV", -1).length - 1, actual);
+    }
+
+    @Test
+    void testPureCallEvaluatedAtCompileTime() {
+        String src = """
+            var int counter = 0;
+            func int factorial(int n) {
+                if (n <= 1) return 1;
+                return n * factorial(n - 1);
+            }
+            func int bump(int n) {
+                counter = counter + n;
+                return counter;
+            }
+            func int scale(int n) {
+                return n * counter;
+            }
+            var int a = factorial(20);
+            var int b = bump(1);
+            var int c = scale(3);
+            print(a);
+            """;
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-O2");
+        String actual = disasm(compileToBytecode(src, options));
+        assertTrue(actual.contains("PUSH_CONST BIGINT(2432902008176640000)"), actual);
+        assertFalse(actual.contains("CALL factorial@"), actual);
+        assertTrue(actual.contains("CALL bump@"), actual);
+        assertTrue(actual.contains("CALL scale@"), actual);
+    }
+
+    @Test
+    void testCountedLoopsUnrolled() {
+        String src = """
+            func array<int> make() {
+                var array<int> arr = {0, 0, 0, 0, 0};
+                var int i = 0;
+                while (i < 5) {
+                    arr[i] = i * 10;
+                    i = i + 1;
+                }
+                return arr;
+            }
+            func int sum(array<int> a) {
+                var int s = 0;
+                for (var int i = 0; i < len(a); i = i + 1) {
+                    s = s + a[i];
+                }
+                return s;
+            }
+            var array<int> r = make();
+            var int t = sum(r);
+            """;
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-O2");
+        options.apply("-fno-loop-versioning");
+        options.apply("-fno-superinstructions");
+        options.apply("-fno-rotate-loops");
+        String actual = disasm(compileToBytecode(src, options));
+        assertTrue(actual.contains("PUSH_CONST INT(40)"), actual);
+        assertEquals(5, actual.split("STORE_INDEX", -1).length - 1, actual);
+        assertEquals(2, actual.split("JUMP_FALSE", -1).length - 1, actual);
+        assertEquals(5, actual.split("LOAD_INDEX", -1).length - 1, actual);
+    }
+
+    @Test
+    void testProvenIndexUsesUncheckedOpcodes() {
+        String src = """
+            func int fill(array<int> other, int n) {
+                var array<int> data[100];
+                var int i = 0;
+                while (i < 100) {
+                    data[i] = i;
+                    i = i + 1;
+                }
+                return data[99] + other[n];
+            }
+            var array<int> xs = {1, 2, 3};
+            var int r = fill(xs, 1);
+            """;
+
+        OptimizerOptions unfused = OptimizerOptions.defaults();
+        unfused.apply("-fno-superinstructions");
+        String actual = disasm(compileToBytecode(src, unfused));
+        assertTrue(actual.contains("STORE_INDEX_UNCHECKED"), actual);
+        assertTrue(actual.contains("LOAD_INDEX_UNCHECKED"), actual);
+        assertEquals(1, actual.split("LOAD_INDEX\n", -1).length - 1, actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-bounds-check-elim");
+        options.apply("-fno-loop-versioning");
+        assertFalse(disasm(compileToBytecode(src, options)).contains("UNCHECKED"));
+    }
+
+    @Test
+    void testNonEscapingArrayLiteralScalarReplaced() {
+        String src = """
+            func int area(int w, int h) {
+                var array<int> box = {w, h, 0};
+                box[2] = box[0] * box[1];
+                return box[2] + len(box);
+            }
+            func array<int> pair(int x) {
+                var array<int> p = {x, x};
+                return p;
+            }
+            var int a = area(2, 3);
+            var array<int> q = pair(1);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertEquals(1, actual.split("NEW_ARRAY", -1).length - 1, actual);
+        assertFalse(actual.contains("LOAD_INDEX"), actual);
+        assertFalse(actual.contains("STORE_INDEX"), actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-scalar-replace");
+        assertEquals(2, disasm(compileToBytecode(src, options)).split("NEW_ARRAY", -1).length - 1);
+    }
+
+    @Test
+    void testDyingLocalArraysFreedBeforeReturn() {
+        String src = """
+            func int count_primes(int n) {
+                var array<bool> comp = new_array_bool(n + 1, false);
+                var int count = 0;
+                for (var int i = 2; i <= n; i = i + 1) {
+                    if (!comp[i]) {
+                        count = count + 1;
+                        for (var int j = i * i; j <= n; j = j + i) {
+                            comp[j] = true;
+                        }
+                    }
+                }
+                return count;
+            }
+            func array<int> keep(int n) {
+                var array<int> out = {n, n};
+                return out;
+            }
+            var int c = count_primes(30);
+            var array<int> k = keep(3);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertEquals(1, actual.split("FREE_LOCAL", -1).length - 1, actual);
+        assertTrue(actual.contains("FREE_LOCAL 1\n"), actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-free-local-arrays");
+        assertFalse(disasm(compileToBytecode(src, options)).contains("FREE_LOCAL"));
+    }
+
+    @Test
+    void testLogicalOperatorsShortCircuit() {
+        String src = """
+            var array<int> arr = {1, 2, 3};
+            var int i = 5;
+            if (i < len(arr) && arr[i] > 0) {
+                print(1);
+            }
+            var bool b = i > 10 || arr[0] == 1;
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertFalse(actual.contains(" AND\n"), actual);
+        assertFalse(actual.contains(" OR\n"), actual);
+        assertEquals(2, actual.split("JUMP_FALSE", -1).length - 1, actual);
+        assertTrue(actual.contains("DUP\n"), actual);
+        assertTrue(actual.contains("JUMP_TRUE"), actual);
+    }
+
+    @Test
+    void testStringConcatenationLowering() {
+        String src = """
+            func string join(string sep, int n) {
+                var string s = "";
+                for (var int i = 0; i < n; i = i + 1) {
+                    s = s + "x" + sep;
+                }
+                return s;
+            }
+            var string a = "a";
+            var string b = a + a + "b" + a;
+            var string j = join(",", 3);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertTrue(actual.contains("CONCAT_N 4"), actual);
+        assertTrue(actual.contains("STR_BUILDER 2"), actual);
+        assertTrue(actual.contains("CONCAT_N 2\n"), actual);
+        assertTrue(actual.contains("STR_APPEND 2"), actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-string-builders");
+        assertFalse(disasm(compileToBytecode(src, options)).contains("STR_APPEND"));
+    }
+
+    @Test
+    void testProfileGuidedBranchLayout() throws Exception {
+        String src = """
+            func int f(int x) {
+                if (x < 5) { x = x + 1; } else { x = x - 1; }
+                if (x == 0) { print(x); }
+                return x;
+            }
+            print(f(7));
+            """;
+        Profile profile = new Profile();
+        profile.addCalls("f", 100);
+        profile.addBranch("if", new SourceLocation(2, 5), 10, 90);
+        profile.addBranch("if", new SourceLocation(3, 5), 1, 99);
+
+        Path file = Files.createTempFile("frog", ".prof");
+        profile.write(file);
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.profile = Profile.read(file);
+        Files.delete(file);
+        assertEquals(90, options.profile.branch("if", new SourceLocation(2, 5)).whenFalse());
+
+        String plain = disasm(compileToBytecode(src));
+        assertFalse(plain.contains("JUMP_TRUE"), plain);
+
+        String actual = disasm(compileToBytecode(src, options));
+        // обращённые условия сливаются с переходом: x < 5 → GE, x == 0 → NEQ
+        assertTrue(actual.contains("GE_JUMP_FALSE"), actual);
+        assertTrue(actual.contains("NEQ_JUMP_FALSE"), actual);
+        assertTrue(actual.lastIndexOf("CALL print") > actual.indexOf("RET"), actual);
+    }
+
+    @Test
+    void testBranchOptimizerFoldsNotAndLaysOutLikelyPath() {
+        String src = """
+            func int sumpos(array<int> a) {
+                var int s = 0;
+                for (var int i = 0; i < len(a); i = i + 1) {
+                    if (a[i] >= 0) { s = s + a[i]; } else { return -1; }
+                }
+                return s;
+            }
+            func int nonpos(array<int> a) {
+                var int c = 0;
+                for (var int i = 0; i < len(a); i = i + 1) {
+                    var bool pos = a[i] > 0;
+                    if (!pos) { c = c + 1; }
+                    if (a[i] < 0 || a[i] == 0) { c = c + 1; }
+                }
+                return c;
+            }
+            print(sumpos({1, 2, 3}));
+            print(nonpos({1, 0, -1}));
+            """;
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-rotate-loops");
+        String actual = disasm(compileToBytecode(src, options));
+        options.apply("-fno-branches");
+        String plain = disasm(compileToBytecode(src, options));
+
+        assertTrue(plain.contains(" NOT\n"), plain);
+        assertFalse(actual.contains(" NOT\n"), actual);
+        assertTrue(actual.contains("JUMP_TRUE"), actual);
+        // LT_INT; JUMP_TRUE становится GE_INT; JUMP_FALSE и сливается в одну инструкцию
+        assertTrue(plain.contains("LT_INT\n"), plain);
+        assertFalse(actual.contains("LT_INT\n"), actual);
+        // return -1 уходит за цикл, и then в обеих версиях цикла sumpos идёт к приращению без JUMP;
+        // ещё два недостижимых JUMP (после return и после версии цикла) удаляются
+        assertEquals(countJumps(plain) - 4, countJumps(actual), actual);
+    }
+
+    @Test
+    void testBranchOptimizerInvertsEarlyExit() {
+        String src = """
+            func int fact(int n) {
+                if (n <= 1) return 1;
+                return n * fact(n - 1);
+            }
+            var int r = fact(5);
+            """;
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-branches");
+        String plain = disasm(compileToBytecode(src, options));
+        String actual = disasm(compileToBytecode(src));
+
+        // выход при n <= 1 уходит за цикл: условие обращено, тело цикла идёт без перехода
+        assertTrue(plain.contains("LE_JUMP_FALSE"), plain);
+        assertFalse(actual.contains("LE_JUMP_FALSE"), actual);
+        assertTrue(actual.contains("GT_JUMP_FALSE"), actual);
+    }
+
+    @Test
+    void testLoopRotationTestsConditionAtBottom() {
+        String src = """
+            func int odd(int n) {
+                var int s = 0;
+                var int i = 0;
+                while (i < n) {
+                    i = i + 1;
+                    if (i % 2 == 0) { continue; }
+                    s = s + i;
+                }
+                return s;
+            }
+            print(odd(10));
+            """;
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-rotate-loops");
+        String plain = disasm(compileToBytecode(src, options));
+        String actual = disasm(compileToBytecode(src));
+
+        // i < n перед входом и обращённое i >= n внизу цикла: JUMP назад больше не нужен
+        assertFalse(plain.contains("GE_JUMP_FALSE"), plain);
+        assertEquals(1, actual.split("LT_JUMP_FALSE", -1).length - 1, actual);
+        assertEquals(1, actual.split("GE_JUMP_FALSE", -1).length - 1, actual);
+        assertEquals(countJumps(plain) - 1, countJumps(actual), actual);
+    }
+
+    private static int countJumps(String disasm) {
+        return disasm.split("  JUMP ", -1).length - 1;
+    }
+
+    @Test
+    void testBoundedIntArithmeticUsesI64Opcodes() {
+        String src = """
+            func int count(int n) {
+                var int c = 0;
+                for (var int i = 0; i < 100; i = i + 1) {
+                    c = c + n;
+                }
+                var int k = 10;
+                while (k > 0) {
+                    k = k - 2;
+                }
+                return c;
+            }
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertTrue(actual.contains("LT_I64"), actual);
+        assertTrue(actual.contains("GT_I64"), actual);
+        assertTrue(actual.contains("INC_LOCAL_I64 1, 2"), actual);
+        assertTrue(actual.contains("INC_LOCAL_I64 -2, 0"), actual);
+        assertTrue(actual.contains("ADD_INT\n"), actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-int-ranges");
+        assertFalse(disasm(compileToBytecode(src, options)).contains("I64"));
+    }
+
+    @Test
+    void testPeepholeRemapsJumpsAndEntries() {
+        ConstantPool consts = new ConstantPool();
+        int zero = consts.addInt(0);
+        int name = consts.addString("f");
+        List<Instruction> code = new ArrayList<>(List.of(
+                Instruction.a(OpCode.PUSH_CONST, zero),
+                Instruction.of(OpCode.POP),
+                Instruction.a(OpCode.JUMP, 4),
+                Instruction.of(OpCode.RET),
+                Instruction.a(OpCode.JUMP, 5),
+                Instruction.b(OpCode.LOAD_LOCAL, 0),
+                Instruction.of(OpCode.RET),
+                Instruction.of(OpCode.KVA)
+        ));
+        FunctionInfo f = new FunctionInfo(name, 1, 1, 5, FrogType.INT, List.of(FrogType.INT));
+        PeepholeOptimizer opt = new PeepholeOptimizer();
+        BytecodeModule m = opt.optimize(new BytecodeModule(consts, List.of(f), code));
+
+        assertEquals(List.of("JUMP 2", "RET", "LOAD_LOCAL 0", "RET", "KVA"),
+                m.code.stream().map(Instruction::toString).toList());
+        assertEquals(2, m.functions.get(0).entryIp);
+        assertEquals(2, opt.remap(4));
+        assertEquals(Map.of(PeepholeOptimizer.Pattern.STORE_LOAD_POP, 0, PeepholeOptimizer.Pattern.JUMP_TO_JUMP, 1,
+                        PeepholeOptimizer.Pattern.PUSH_POP, 2, PeepholeOptimizer.Pattern.JUMP_TO_NEXT, 1,
+                        PeepholeOptimizer.Pattern.SELF_MOVE, 0),
+                opt.getRemoved());
+    }
+
+    @Test
+    void testStaticOperandTypesSelectTypedOpcodes() {
+        String src = """
+            func float scale(float x, float k) {
+                return x * k;
+            }
+            func int mix(int a, int b) {
+                return a * b - a;
+            }
+            func bool same(string a, string b) {
+                return a + b == b + a;
+            }
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        assertTrue(actual.contains("MUL_FLOAT"), actual);
+        assertTrue(actual.contains("MUL_INT"), actual);
+        assertTrue(actual.contains("SUB_INT"), actual);
+        assertTrue(actual.contains("CONCAT_STR"), actual);
+        assertTrue(actual.contains("EQ_STR"), actual);
+        assertEquals(4, FrogcWriter.version(compileToBytecode(src)));
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-typed-ops");
+        BytecodeModule compat = compileToBytecode(src, options);
+        assertFalse(disasm(compat).contains("_INT") || disasm(compat).contains("_FLOAT"), disasm(compat));
+        assertEquals(1, FrogcWriter.version(compat));
+    }
+
+    @Test
+    void testGlobalsAddressedByDenseSlots() throws Exception {
+        String src = """
+            var int count = 0;
+            var string label = "n";
+            func void bump() {
+                count = count + 1;
+            }
+            bump();
+            print(label);
+            print(count);
+            """;
+
+        BytecodeModule m = compileToBytecode(src);
+        assertEquals(List.of("count", "label"), m.globals.stream().map(g -> g.name).toList());
+        assertEquals(FrogType.STRING, m.globals.get(1).type);
+        for (Instruction ins : m.code) {
+            if (ins.op == OpCode.LOAD_GLOBAL || ins.op == OpCode.STORE_GLOBAL) {
+                assertTrue(ins.a == 0 || ins.a == 1, disasm(m));
+            }
+        }
+        assertTrue(m.constPool.getPool().stream().noneMatch(c -> "count".equals(c.value)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrogcWriter.write(m, out);
+        byte[] b = out.toByteArray();
+        assertEquals(4, ((b[4] & 0xFF) << 8) | (b[5] & 0xFF));
+        assertEquals(2, b[21]);
+
+        // без типизированных операций — v1: таблицы глобальных нет, имена снова в пуле констант
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-typed-ops");
+        ByteArrayOutputStream compat = new ByteArrayOutputStream();
+        FrogcWriter.write(compileToBytecode(src, options), compat);
+        assertEquals(1, compat.toByteArray()[5]);
+        assertTrue(compat.toString(StandardCharsets.UTF_8).contains("count"));
+    }
+
+    @Test
+    void testTopLevelCodeOutlinedIntoMain() {
+        String src = """
+            var int limit = 10;
+            func bool below(int x) {
+                return x < limit;
+            }
+            var int i = 0;
+            var int n = 0;
+            while (i < 100) {
+                if (below(i)) n = n + 1;
+                i = i + 1;
+            }
+            print(n);
+            """;
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-foutline-main");
+        BytecodeModule m = compileToBytecode(src, options);
+        String actual = disasm(m);
+        assertTrue(actual.contains("CALL __main__@"), actual);
+        assertEquals(List.of("limit"), m.globals.stream().map(g -> g.name).toList());
+        assertFalse(actual.contains("LOAD_GLOBAL \"i\""), actual);
+        assertTrue(actual.contains("INC_LOCAL 1"), actual);
+
+        String plain = disasm(compileToBytecode(src));
+        assertTrue(plain.contains("STORE_GLOBAL \"i\""), plain);
+    }
+
+    @Test
+    void testGlobalsCachedInLocalsAcrossLoops() {
+        String src = """
+            var int step = 3;
+            var int total = 0;
+            func int peek() {
+                return total;
+            }
+            func void run(int n) {
+                for (var int i = 0; i < n; i = i + 1) {
+                    total = total + step;
+                }
+                print(peek());
+            }
+            run(10);
+            """;
+
+        String actual = disasm(compileToBytecode(src));
+        String run = actual.substring(actual.indexOf("LOAD_GLOBAL \"step\""));
+        assertEquals(1, run.split("LOAD_GLOBAL \"step\"", -1).length - 1, actual);
+        assertEquals(1, run.split("LOAD_GLOBAL \"total\"", -1).length - 1, actual);
+        // запись обратно перед вызовом peek, который читает total, и в конце функции
+        assertEquals(2, run.split("STORE_GLOBAL \"total\"", -1).length - 1, actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-cache-globals");
+        String plain = disasm(compileToBytecode(src, options));
+        assertEquals(2, plain.split("STORE_GLOBAL \"total\"", -1).length - 1, plain);
+        assertFalse(plain.contains("LOAD2_LOCAL 2, 1"), plain);
+    }
+
+    @Test
+    void testLocalSlotsReusedAcrossDisjointLifetimes() {
+        String src = """
+            func int sort3(array<int> a) {
+                if (a[0] > a[1]) { var int temp = a[0]; a[0] = a[1]; a[1] = temp; }
+                if (a[1] > a[2]) { var int temp2 = a[1]; a[1] = a[2]; a[2] = temp2; }
+                if (a[0] > a[1]) { var int temp_swap = a[0]; a[0] = a[1]; a[1] = temp_swap; }
+                return a[0];
+            }
+            func int sum(int n) {
+                var int s = 0;
+                for (var int i = 0; i < n; i = i + 1) {
+                    s = s + i;
+                }
+                return s;
+            }
+            """;
+
+        BytecodeModule m = compileToBytecode(src);
+        String actual = disasm(m);
+        // a и по одному временному слоту на два сравниваемых элемента
+        assertEquals(3, function(m, "sort3").localCount, actual);
+        assertEquals(3, function(m, "sum").localCount, actual);
+        // копия между переменными, которые попали в один слот, удалена
+        assertFalse(Pattern.compile("LOAD_LOCAL (\\d+)\n\\d+  STORE_LOCAL \\1\n").matcher(actual).find(), actual);
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fno-reuse-locals");
+        BytecodeModule plain = compileToBytecode(src, options);
+        assertTrue(function(plain, "sort3").localCount > 3, disasm(plain));
+        assertEquals(3, function(plain, "sum").localCount);
+    }
+
+    @Test
+    void testFunctionTableCarriesStackDepth() {
+        String src = """
+            func int sq(int x) {
+                return x * x;
+            }
+            func int fib(int n) {
+                if (n < 2) return n;
+                return fib(n - 1) + fib(n - 2);
+            }
+            func void fill(array<int> a, int n) {
+                var array<int> b[3];
+                b[n] = 1;
+                a[0] = b[n];
+            }
+            """;
+
+        BytecodeModule m = compileToBytecode(src);
+        String actual = disasm(m);
+        FunctionInfo sq = function(m, "sq");
+        assertEquals(2, sq.maxStack, actual);
+        FunctionInfo fib = function(m, "fib");
+        assertEquals(3, fib.maxStack, actual);
+        assertEquals(3, function(m, "fill").maxStack, actual);
+        // без -fregisters флагов у функций нет
+        assertEquals(0, sq.flags | fib.flags, actual);
+    }
+
+    @Test
+    void testRegistersTranslateFunctionsToThreeAddressCode() {
+        String src = """
+            func int sum(array<int> a, int n) {
+                var int s = 0;
+                for (var int i = 0; i < n; i = i + 1) {
+                    s = s + a[i] * 3;
+                }
+                return s;
+            }
+            """;
+
+        OptimizerOptions options = OptimizerOptions.defaults();
+        options.apply("-fregisters");
+        BytecodeModule m = compileToBytecode(src, options);
+        String actual = disasm(m);
+        FunctionInfo sum = function(m, "sum");
+        assertTrue(sum.has(FunctionInfo.REGISTERS), actual);
+        assertEquals(1, sum.maxStack, actual);
+        // сравнение слито с переходом, константа 3 загружена один раз до цикла
+        assertTrue(Pattern.compile("R_LT_JUMP_FALSE r\\d+, r1, L").matcher(actual).find(), actual);
+        assertEquals(1, Pattern.compile("R_LOADK r\\d+, INT\\(3\\)").matcher(actual).results().count(), actual);
+        assertFalse(Pattern.compile("\\d+  (PUSH_CONST|LOAD_LOCAL|STORE_LOCAL)").matcher(actual).find(), actual);
+
+        BytecodeModule stack = compileToBytecode(src);
+        assertFalse(function(stack, "sum").has(FunctionInfo.REGISTERS));
+        assertTrue(m.code.size() < stack.code.size(), actual);
+    }
+
+    private static FunctionInfo function(BytecodeModule m, String name) {
+        for (FunctionInfo f : m.functions) {
+            if (m.constPool.getPool().get(f.nameConstIndex).value.equals(name)) return f;
+        }
+        throw new AssertionError("no function " + name);
+    }
+}
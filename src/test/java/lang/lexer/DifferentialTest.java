@@ -0,0 +1,415 @@
+package lang.lexer;
+
+import lang.bytecodeGenerator.BytecodeGenerator;
+import lang.bytecodeGenerator.Disassembler;
+import lang.bytecodeGenerator.FrogcWriter;
+import lang.lexer.token.Token;
+import lang.optimizer.AstOptimizer;
+import lang.optimizer.OptimizerOptions;
+import lang.parser.Parser;
+import lang.semantic.ast.node.Program;
+import lang.semantic.bytecode.BytecodeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Оптимизированная программа печатает то же, что и собранная с {@code -O0}.
+ * <p>
+ * Программы исполняются в VM из свойства {@code frogvm} (по умолчанию {@code frogitovm/build/frogvm},
+ * её собирает {@code build_frogito.sh}); без собранной VM пропускается только сравнение вывода.
+ * Каждый тест сначала проверяет, что проход действительно сработал, — иначе сравнение ничего не доказывает.
+ * </p>
+ */
+public class DifferentialTest {
+
+    private static final Path VM = Path.of(System.getProperty("frogvm", "frogitovm/build/frogvm"));
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private BytecodeModule compile(String source, String... flags) {
+        OptimizerOptions options = OptimizerOptions.defaults();
+        for (String flag : flags) options.apply(flag);
+        List<Token> tokens = new Lexer(source).tokenize();
+        Program ast = new AstOptimizer(options).optimize(new Parser(tokens).parseProgram());
+        return new BytecodeGenerator(options).generate(ast);
+    }
+
+    private String disasm(BytecodeModule module) {
+        PrintStream oldOut = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(baos, true, StandardCharsets.UTF_8));
+        try {
+            Disassembler.dump(module);
+        } finally {
+            System.setOut(oldOut);
+        }
+        return baos.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Вывод VM вместе с кодом выхода: ошибка времени исполнения тоже должна совпасть. */
+    private String run(BytecodeModule module) throws IOException, InterruptedException {
+        Path file = Files.createTempFile("frog", ".frogc");
+        Path log = Files.createTempFile("frog", ".out");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                FrogcWriter.write(module, out);
+            }
+            Process p = new ProcessBuilder(VM.toString(), "run", file.toString())
+                    .redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            if (!p.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                p.destroyForcibly();
+                fail("frogvm не завершился за " + TIMEOUT_SECONDS + " с");
+            }
+            return Files.readString(log, StandardCharsets.UTF_8) + "exit " + p.exitValue();
+        } finally {
+            Files.delete(file);
+            Files.delete(log);
+        }
+    }
+
+    /** Вывод {@code optimized} совпадает с выводом {@code source}, собранного с {@code -O0}. */
+    private void assertSameAsO0(String source, BytecodeModule optimized) throws Exception {
+        assumeTrue(Files.isExecutable(VM), "frogvm не собран");
+        String expected = run(compile(source, "-O0"));
+        assertTrue(expected.endsWith("exit 0"), expected);
+        assertEquals(expected, run(optimized), disasm(optimized));
+    }
+
+    /** В коде есть последовательность {@code marker}; адреса листинга не учитываются. */
+    private void assertUses(BytecodeModule module, String marker) {
+        String listing = disasm(module).replaceAll("(?m)^\\d{4}  ", "");
+        assertTrue(listing.contains(marker), listing);
+    }
+
+    @Test
+    void testStrengthReductionMatchesO0() throws Exception {
+        String src = """
+            func int weigh(int n) {
+                var array<int> arr[12];
+                var int i = 0;
+                var int s = 0;
+                while (i < n) {
+                    arr[i] = i * 7 - 3;
+                    s = s + i * 7;
+                    i = i + 1;
+                }
+                return s + arr[n - 1];
+            }
+            print(weigh(12));
+            print(weigh(1));
+            """;
+        BytecodeModule m = compile(src, "-O1");
+        assertUses(m, "INC_LOCAL 7");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testConstantCallsMatchO0() throws Exception {
+        String src = """
+            var int seen = 0;
+            func int power(int b, int e) {
+                var int r = 1;
+                for (var int i = 0; i < e; i = i + 1) { r = r * b; }
+                return r;
+            }
+            func int note(int x) {
+                seen = seen + x;
+                return seen;
+            }
+            func string shout(string s, int n) {
+                if (n == 0) return s;
+                return shout(s + "!", n - 1);
+            }
+            print(power(3, 13));
+            print(power(-2, 31));
+            print(note(2) + note(3));
+            print(shout("frog", 3));
+            """;
+        BytecodeModule m = compile(src, "-O2");
+        assertUses(m, "PUSH_CONST INT(1594323)");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testMemoizationMatchesO0() throws Exception {
+        String src = """
+            @memo
+            func int fib(int n) {
+                if (n <= 1) return n;
+                return fib(n - 1) + fib(n - 2);
+            }
+            @memo
+            func int paths(int r, int c) {
+                if (r == 0 || c == 0) return 1;
+                return paths(r - 1, c) + paths(r, c - 1);
+            }
+            print(fib(22));
+            print(fib(-3));
+            print(paths(12, 12));
+            // (r, c) и (r - 1, c + 31) попадают в один слот таблицы: записи вытесняют друг друга
+            print(paths(3, 40));
+            """;
+        BytecodeModule m = compile(src, "-O1");
+        assertUses(m, "memo$fib$val");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testUnrolledLoopsMatchO0() throws Exception {
+        String src = """
+            func int full() {
+                var int s = 0;
+                for (var int i = 0; i < 6; i = i + 1) { s = s * 3 + i; }
+                return s;
+            }
+            func int down(array<int> a) {
+                var int s = 0;
+                var int i = len(a) - 1;
+                while (i >= 0) {
+                    s = s * 2 + a[i];
+                    i = i - 1;
+                }
+                return s;
+            }
+            func int stride(int n) {
+                var int s = 0;
+                for (var int i = 1; i <= n; i = i + 3) { s = s + i; }
+                return s;
+            }
+            print(full());
+            print(down({1, 0, 1, 1, 0, 1, 1, 1, 0, 1, 1}));
+            print(down({5}));
+            for (var int n = 0; n < 30; n = n + 1) { print(stride(n)); }
+            """;
+        BytecodeModule m = compile(src, "-O2", "-fno-loop-versioning");
+        assertUses(m, "MUL_INT\nPUSH_CONST INT(5)\nADD");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testVersionedLoopsMatchO0() throws Exception {
+        String src = """
+            func int window(array<int> a, int from, int to) {
+                var int s = 0;
+                var int i = from;
+                while (i < to) {
+                    s = s + a[i] * a[i + 1];
+                    i = i + 1;
+                }
+                return s;
+            }
+            func int back(array<int> a, int n) {
+                var int s = 0;
+                for (var int i = n; i > 0; i = i - 1) { s = s + a[i - 1]; }
+                return s;
+            }
+            var array<int> xs = {4, 1, 5, 9, 2, 6};
+            print(window(xs, 0, 5));
+            print(window(xs, 2, 4));
+            print(window(xs, 3, 3));
+            print(back(xs, 6));
+            print(back(xs, 0));
+            """;
+        BytecodeModule m = compile(src, "-O1");
+        assertUses(m, "LOAD_LOCAL_INDEX_UNCHECKED");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testPeepholeMatchesO0() throws Exception {
+        String src = """
+            var int g = 0;
+            func int triple(int x) {
+                x = x * 3;
+                return x;
+            }
+            func int chain(int n) {
+                var int a = 0;
+                var int b = 0;
+                while (n > 0) {
+                    a = b = n;
+                    g = g + a;
+                    n = n - 1;
+                }
+                return a + b;
+            }
+            print(triple(14));
+            print(chain(5));
+            print(g);
+            """;
+        BytecodeModule m = compile(src, "-O0", "-fpeephole");
+        assertUses(m, "STORE_LOCAL 0\nLOAD_LOCAL 0\nRET");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testSuperinstructionsMatchO0() throws Exception {
+        String src = """
+            func int total(array<int> a, int n) {
+                var int s = 0;
+                var int i = 0;
+                while (i < n) {
+                    if (a[i] != 0 && a[i] <= 7) { s = s + a[i]; }
+                    i = i + 1;
+                }
+                return s;
+            }
+            func int count(int n) {
+                var int c = 0;
+                for (var int i = n; i >= 0; i = i - 2) { c = c + 1; }
+                return c;
+            }
+            print(total({3, 0, 8, 7, -1}, 5));
+            print(count(9));
+            print(count(-1));
+            """;
+        BytecodeModule m = compile(src, "-O0", "-fpeephole", "-fsuperinstructions");
+        assertUses(m, "LOAD_LOCAL_INDEX");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testReusedLocalSlotsMatchO0() throws Exception {
+        String src = """
+            func int sort3(array<int> a) {
+                if (a[0] > a[1]) { var int t = a[0]; a[0] = a[1]; a[1] = t; }
+                if (a[1] > a[2]) { var int t2 = a[1]; a[1] = a[2]; a[2] = t2; }
+                if (a[0] > a[1]) { var int t3 = a[0]; a[0] = a[1]; a[1] = t3; }
+                return a[0] * 100 + a[1] * 10 + a[2];
+            }
+            func int blocks(int n) {
+                var int r = 0;
+                if (n > 0) { var int x = n * 2; r = r + x; }
+                if (n > 1) { var int y = n + 7; r = r + y; }
+                var array<int> left[2];
+                if (n > 2) { var array<int> right = {n, n}; r = r + right[1]; }
+                return r + len(left);
+            }
+            print(sort3({3, 1, 2}));
+            print(sort3({1, 2, 3}));
+            print(blocks(0));
+            print(blocks(3));
+            """;
+        BytecodeModule m = compile(src, "-O1");
+        assertTrue(localSlots(m) < localSlots(compile(src, "-O1", "-fno-reuse-locals")), disasm(m));
+        assertSameAsO0(src, m);
+    }
+
+    private static int localSlots(BytecodeModule m) {
+        return m.functions.stream().mapToInt(f -> f.localCount).sum();
+    }
+
+    @Test
+    void testRegistersMatchO0() throws Exception {
+        String src = """
+            func int sum(array<int> a, int n) {
+                var int s = 0;
+                for (var int i = 0; i < n; i = i + 1) { s = s + a[i] * 3; }
+                return s;
+            }
+            func float mean(array<float> a, int n) {
+                var float s = 0.0;
+                for (var int i = 0; i < n; i = i + 1) { s = s + a[i]; }
+                return s * 0.5;
+            }
+            func string label(int n) {
+                if (n < 0) return "neg";
+                if (n == 0) return "zero";
+                return "pos";
+            }
+            func int gcd(int a, int b) {
+                while (b != 0) {
+                    var int t = a % b;
+                    a = b;
+                    b = t;
+                }
+                return a;
+            }
+            print(sum({1, 2, 3, 4}, 4));
+            print(mean({1.5, 2.5, 4.0}, 3));
+            print(label(-4) + label(0) + label(9));
+            print(gcd(1071, 462));
+            """;
+        BytecodeModule m = compile(src, "-O2", "-fregisters");
+        assertUses(m, "R_");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testBranchOptimizerMatchesO0() throws Exception {
+        String src = """
+            func int classify(array<int> a) {
+                var int c = 0;
+                for (var int i = 0; i < len(a); i = i + 1) {
+                    var bool pos = a[i] > 0;
+                    if (!pos) { c = c + 1; }
+                    if (a[i] < 0 || a[i] == 0) { c = c + 10; }
+                    if (!(a[i] > 5 && a[i] != 9)) { c = c + 100; } else { return -c; }
+                }
+                return c;
+            }
+            func int first_neg(array<int> a) {
+                for (var int i = 0; i < len(a); i = i + 1) {
+                    if (a[i] < 0) return i;
+                }
+                return -1;
+            }
+            print(classify({1, 0, -1, 9}));
+            print(classify({1, 7}));
+            print(first_neg({3, 4, -2}));
+            print(first_neg({0}));
+            """;
+        BytecodeModule m = compile(src, "-O0", "-fbranches");
+        assertUses(m, "JUMP_TRUE");
+        assertSameAsO0(src, m);
+    }
+
+    @Test
+    void testRotatedLoopsMatchO0() throws Exception {
+        String src = """
+            func int odd(int n) {
+                var int s = 0;
+                var int i = 0;
+                while (i < n) {
+                    i = i + 1;
+                    if (i % 2 == 0) { continue; }
+                    if (i > 11) { break; }
+                    s = s + i;
+                }
+                return s;
+            }
+            func int nested(int n) {
+                var int c = 0;
+                for (var int i = 0; i < n; i = i + 1) {
+                    for (var int j = i; j < n; j = j + 1) {
+                        if (j == 4) continue;
+                        c = c + j;
+                    }
+                }
+                return c;
+            }
+            print(odd(0));
+            print(odd(10));
+            print(odd(40));
+            print(nested(0));
+            print(nested(6));
+            var int k = 3;
+            while (k > 0 && k != 10) { k = k - 1; }
+            print(k);
+            """;
+        BytecodeModule m = compile(src, "-O1");
+        assertUses(m, "GE_JUMP_FALSE");
+        assertSameAsO0(src, m);
+    }
+}
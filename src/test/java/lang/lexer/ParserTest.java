@@ -205,4 +205,23 @@ public class ParserTest {
     void testBreakError() {
         assertThrows(ParseException.class, () -> compile("break;"));
     }
+
+    @Test
+    void testFunctionAnnotation() {
+        String src = """
+            @memo
+            func int fib(int n) {
+                if (n <= 1) return n;
+                return fib(n - 1) + fib(n - 2);
+            }
+            """;
+        Program program = compile(src);
+        assertTrue(program.getFunctions().get(0).hasAnnotation("memo"));
+    }
+
+    @Test
+    void testUnknownAnnotationError() {
+        assertThrows(ParseException.class, () -> compile("@fast func void f() { }"));
+        assertThrows(ParseException.class, () -> compile("@memo var int x = 1;"));
+    }
 }
@@ -105,5 +105,6 @@ public class TokenPatternTest {
         assertTrue(matches("]", TokenType.RBRACK));
         assertTrue(matches(";", TokenType.SEMICOLON));
         assertTrue(matches(",", TokenType.COMMA));
+        assertTrue(matches("@", TokenType.AT));
     }
 }
\ No newline at end of file